@@ -0,0 +1,60 @@
+package com.thermalprinter.test;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+
+/**
+ * Decodes PNG/JPEG data into a bitmap scaled to the printer's dot width and
+ * exposes it row by row to {@link RasterEncoder}.
+ */
+public final class BitmapRaster {
+
+    /** Printable width of an 80mm head at 203 dpi. */
+    public static final int PRINTER_DOTS = 576;
+
+    private BitmapRaster() {
+    }
+
+    /**
+     * Decodes {@code data} and scales it to {@code width} dots wide, keeping
+     * the aspect ratio. Large sources are subsampled while decoding so a
+     * camera-sized JPEG never becomes a full-resolution bitmap.
+     */
+    public static Bitmap decode(byte[] data, int width) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unsupported or corrupt image");
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (decoded == null) {
+            throw new IOException("Failed to decode image");
+        }
+
+        if (decoded.getWidth() == width) {
+            return decoded;
+        }
+        int height = Math.max(1, Math.round((float) decoded.getHeight() * width / decoded.getWidth()));
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    public static RasterEncoder.RowSource rows(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        return (y, argb) -> bitmap.getPixels(argb, 0, width, 0, y, width, 1);
+    }
+}
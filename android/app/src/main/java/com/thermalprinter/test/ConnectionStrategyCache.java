@@ -0,0 +1,54 @@
+package com.thermalprinter.test;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.usb.UsbDevice;
+
+/**
+ * Remembers which connection mode worked for each printer model (VID:PID),
+ * across restarts, so the next connect goes straight to it instead of
+ * probing generic USB first every time.
+ */
+public class ConnectionStrategyCache {
+
+    private static final String PREFS = "connection_strategies";
+
+    public enum Mode {
+        GENERIC,
+        SDK;
+
+        static Mode parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return valueOf(value);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private final SharedPreferences prefs;
+
+    public ConnectionStrategyCache(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    /** Mode that last worked for this model, or null if it hasn't connected yet. */
+    public Mode get(UsbDevice device) {
+        return Mode.parse(prefs.getString(UsbPrinterConnection.modelKey(device), null));
+    }
+
+    public void remember(UsbDevice device, Mode mode) {
+        String key = UsbPrinterConnection.modelKey(device);
+        if (!mode.name().equals(prefs.getString(key, null))) {
+            prefs.edit().putString(key, mode.name()).apply();
+        }
+    }
+
+    /** Drops the cached mode after it stopped working, so the next connect probes again. */
+    public void forget(UsbDevice device) {
+        prefs.edit().remove(UsbPrinterConnection.modelKey(device)).apply();
+    }
+}
@@ -0,0 +1,155 @@
+package com.thermalprinter.test;
+
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Display;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * The customer display, picked once and kept current by
+ * {@link DisplayManager.DisplayListener} callbacks instead of enumerating
+ * {@link DisplayManager#getDisplays()} on every call. The pick is the first
+ * presentation display on Android 12+, otherwise the first non-default
+ * display. Listener callbacks run on the main thread, so they may show or
+ * release a Presentation directly.
+ */
+public class CustomerDisplayIndex {
+    private static final String TAG = "CustomerDisplayIndex";
+
+    public interface Listener {
+        void onCustomerDisplayAttached(Display display);
+        void onCustomerDisplayDetached(int displayId);
+    }
+
+    private final DisplayManager displayManager;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Display customerDisplay;
+    private JSObject customerDisplayInfo;
+    private int displayCount;
+
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+            Log.d(TAG, "Display added: " + displayId);
+            rescan();
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+            Log.d(TAG, "Display removed: " + displayId);
+            rescan();
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            // Same display, possibly a new mode: only the description changes
+            synchronized (CustomerDisplayIndex.this) {
+                if (customerDisplay != null && customerDisplay.getDisplayId() == displayId) {
+                    customerDisplayInfo = describe(customerDisplay);
+                }
+            }
+        }
+    };
+
+    public CustomerDisplayIndex(DisplayManager displayManager, Listener listener) {
+        this.displayManager = displayManager;
+        this.listener = listener;
+        synchronized (this) {
+            Display[] displays = displayManager.getDisplays();
+            displayCount = displays.length;
+            customerDisplay = pick(displays);
+            customerDisplayInfo = customerDisplay != null ? describe(customerDisplay) : null;
+            logDisplays(displays);
+        }
+        displayManager.registerDisplayListener(displayListener, handler);
+    }
+
+    /**
+     * Re-picks the customer display after displays come or go, and reports
+     * it if the pick changed. Main thread only.
+     */
+    private void rescan() {
+        Display previous;
+        Display current;
+        synchronized (this) {
+            Display[] displays = displayManager.getDisplays();
+            previous = customerDisplay;
+            current = pick(displays);
+            displayCount = displays.length;
+            customerDisplay = current;
+            customerDisplayInfo = current != null ? describe(current) : null;
+            logDisplays(displays);
+        }
+        int previousId = previous != null ? previous.getDisplayId() : -1;
+        int currentId = current != null ? current.getDisplayId() : -1;
+        if (previousId == currentId) {
+            return;
+        }
+        if (previous != null) {
+            listener.onCustomerDisplayDetached(previousId);
+        }
+        if (current != null) {
+            listener.onCustomerDisplayAttached(current);
+        }
+    }
+
+    /** The customer display, or null if none is attached. */
+    public synchronized Display getCustomerDisplay() {
+        return customerDisplay;
+    }
+
+    /** Prebuilt description of {@link #getCustomerDisplay()}; shared, don't modify. */
+    public synchronized JSObject getCustomerDisplayInfo() {
+        return customerDisplayInfo;
+    }
+
+    public synchronized int getDisplayCount() {
+        return displayCount;
+    }
+
+    public void close() {
+        displayManager.unregisterDisplayListener(displayListener);
+    }
+
+    private Display pick(Display[] allDisplays) {
+        // Use DISPLAY_CATEGORY_PRESENTATION to find the real external customer display
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
+            Display[] presentationDisplays = displayManager.getDisplays(DisplayManager.DISPLAY_CATEGORY_PRESENTATION);
+            if (presentationDisplays.length > 0) {
+                return presentationDisplays[0];
+            }
+        }
+        // Fallback: Use non-default display
+        for (Display display : allDisplays) {
+            if (display.getDisplayId() != Display.DEFAULT_DISPLAY) {
+                return display;
+            }
+        }
+        return null;
+    }
+
+    private void logDisplays(Display[] allDisplays) {
+        for (Display display : allDisplays) {
+            Log.d(TAG, "Display found - ID: " + display.getDisplayId() +
+                  ", Name: " + display.getName() +
+                  ", State: " + display.getState() +
+                  ", IsDefault: " + (display.getDisplayId() == Display.DEFAULT_DISPLAY));
+        }
+        Log.d(TAG, customerDisplay != null
+                ? "Customer display: ID " + customerDisplay.getDisplayId() + " (" + customerDisplay.getName() + ")"
+                : "No customer display");
+    }
+
+    private static JSObject describe(Display display) {
+        JSObject info = new JSObject();
+        info.put("displayId", display.getDisplayId());
+        info.put("name", display.getName());
+        info.put("width", display.getMode().getPhysicalWidth());
+        info.put("height", display.getMode().getPhysicalHeight());
+        return info;
+    }
+}
@@ -2,22 +2,71 @@ package com.thermalprinter.test;
 
 import android.app.Presentation;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.ViewGroup;
+import android.view.Window;
 import android.view.WindowManager;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
-import android.widget.LinearLayout;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.List;
 
 public class CustomerDisplayPresentation extends Presentation {
     private static final String TAG = "CustomerDisplayPresentation";
+    // Pages opt in to state patches by defining this function
+    private static final String APPLY_STATE = "window.applyDisplayState&&window.applyDisplayState(";
+    
+    /** Page in a WebView, with the native slideshow behind it. */
+    public static final String MODE_HTML = "html";
+    /** {@link CustomerDisplayView}: no WebView; the HTML is not used. */
+    public static final String MODE_NATIVE = "native";
+    
+    private final String mode;
     private String htmlContent;
+    private WebView webView;
+    private ImageView slideView;
+    private CustomerDisplayView nativeView;
+    // Per-frame render times of this window, reset on each show
+    private volatile LatencyHistogram frameTimes = new LatencyHistogram();
+    private Window.OnFrameMetricsAvailableListener frameListener;
+    private boolean pageLoaded = false;
+    private long loadStartNanos;
+    // Everything patched in so far; handed to each newly loaded page in one go
+    private JSONObject state = new JSONObject();
+    private final Runnable onReleased;
+    private boolean released = false;
     
-    public CustomerDisplayPresentation(Context context, Display display, String htmlContent) {
+    /**
+     * @param htmlContent page to load once created, or null to only build the
+     *                    window and WebView ahead of time
+     * @param mode        {@link #MODE_HTML} or {@link #MODE_NATIVE}
+     * @param onReleased  run on the UI thread once the WebView is gone, also when
+     *                    the display is removed
+     */
+    public CustomerDisplayPresentation(Context context, Display display, String htmlContent, String mode,
+                                       Runnable onReleased) {
         super(context, display);
         this.htmlContent = htmlContent;
+        this.mode = mode;
+        this.onReleased = onReleased;
+    }
+    
+    public String getMode() {
+        return mode;
     }
     
     @Override
@@ -36,21 +85,39 @@ public class CustomerDisplayPresentation extends Presentation {
         Log.d(TAG, "  Window type: Presentation (non-Activity window)");
         Log.d(TAG, "  MainActivity should remain the RESUMED activity with touch control");
         
-        // Create layout
-        LinearLayout layout = new LinearLayout(getContext());
-        layout.setOrientation(LinearLayout.VERTICAL);
-        layout.setBackgroundColor(Color.WHITE);
-        layout.setLayoutParams(new LinearLayout.LayoutParams(
-            LinearLayout.LayoutParams.MATCH_PARENT,
-            LinearLayout.LayoutParams.MATCH_PARENT
+        // Create layout: native slideshow at the back, the page on top of it
+        FrameLayout layout = new FrameLayout(getContext());
+        layout.setBackgroundColor(Color.BLACK);
+        
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+            frameListener = (window, metrics, dropped) ->
+                    frameTimes.recordNanos(metrics.getMetric(FrameMetrics.TOTAL_DURATION));
+            getWindow().addOnFrameMetricsAvailableListener(frameListener, new Handler(Looper.getMainLooper()));
+        }
+        
+        if (MODE_NATIVE.equals(mode)) {
+            nativeView = new CustomerDisplayView(getContext());
+            layout.addView(nativeView, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT
+            ));
+            nativeView.setState(state);
+            setContentView(layout);
+            Log.d(TAG, "Customer display Presentation ready in native mode (no WebView)");
+            return;
+        }
+        
+        slideView = new ImageView(getContext());
+        slideView.setScaleType(ImageView.ScaleType.FIT_CENTER);
+        layout.addView(slideView, new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.MATCH_PARENT
         ));
         
         // Create WebView for customer-facing content
-        WebView webView = new WebView(getContext());
-        webView.setLayoutParams(new LinearLayout.LayoutParams(
-            LinearLayout.LayoutParams.MATCH_PARENT,
-            LinearLayout.LayoutParams.MATCH_PARENT
-        ));
+        webView = new WebView(getContext());
+        // Shows the black layout (or the slideshow) until the page paints, so there is no white frame
+        webView.setBackgroundColor(Color.TRANSPARENT);
         
         WebSettings settings = webView.getSettings();
         settings.setJavaScriptEnabled(true);
@@ -58,24 +125,174 @@ public class CustomerDisplayPresentation extends Presentation {
         settings.setLoadWithOverviewMode(true);
         settings.setUseWideViewPort(true);
         
-        webView.loadDataWithBaseURL(null, htmlContent, "text/html", "UTF-8", null);
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                pageLoaded = true;
+                Log.d(TAG, "Customer display page loaded in " + (System.nanoTime() - loadStartNanos) / 1000000 + " ms");
+                if (state.length() > 0) {
+                    view.evaluateJavascript(APPLY_STATE + state + ")", null);
+                }
+            }
+        });
+        
+        if (htmlContent != null) {
+            loadStartNanos = System.nanoTime();
+            webView.loadDataWithBaseURL(null, htmlContent, "text/html", "UTF-8", null);
+        }
         
         // Ensure WebView is completely passive
         webView.setOnTouchListener((v, event) -> true);
         
-        layout.addView(webView);
+        layout.addView(webView, new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.MATCH_PARENT
+        ));
         setContentView(layout);
         
         Log.d(TAG, "Customer display Presentation ready (passive, MainActivity retains focus and touch)");
     }
     
-    public void updateContent(String newHtml) {
-        if (isShowing()) {
-            WebView webView = (WebView) ((LinearLayout) findViewById(android.R.id.content)).getChildAt(0);
-            if (webView != null) {
-                webView.loadDataWithBaseURL(null, newHtml, "text/html", "UTF-8", null);
-                Log.d(TAG, "Customer display content updated");
+    /**
+     * Replaces the page in the existing WebView, unless it already shows
+     * exactly this HTML. UI thread only. Returns whether a load was started
+     * (or, before creation, will be).
+     */
+    public boolean loadHtml(String newHtml) {
+        if (MODE_NATIVE.equals(mode) || newHtml.equals(htmlContent)) {
+            return false;
+        }
+        htmlContent = newHtml;
+        if (webView != null) {
+            pageLoaded = false;
+            loadStartNanos = System.nanoTime();
+            webView.loadDataWithBaseURL(null, newHtml, "text/html", "UTF-8", null);
+            Log.d(TAG, "Customer display content replaced");
+        }
+        return true;
+    }
+    
+    /**
+     * Shows a native slideshow slide behind the page; the page lets it
+     * through where its background is transparent. UI thread only.
+     */
+    public void showSlide(Bitmap slide) {
+        if (slideView != null) {
+            slideView.setImageBitmap(slide);
+        }
+        if (nativeView != null) {
+            nativeView.setSlide(slide);
+        }
+    }
+    
+    /** Resumes the WebView after {@link #show()} and starts a new frame time sample. */
+    public void onShown() {
+        frameTimes = new LatencyHistogram();
+        if (nativeView != null) {
+            nativeView.resetDrawTimes();
+        }
+        if (webView != null) {
+            webView.onResume();
+        }
+    }
+    
+    /**
+     * Pauses the WebView after {@link #hide()} and empties the page's state,
+     * so the next show starts from a clean cart without a reload.
+     */
+    public void onHidden() {
+        if (webView != null) {
+            webView.onPause();
+        }
+        if (state.length() == 0) {
+            return;
+        }
+        JSONObject removal = new JSONObject();
+        Iterator<String> keys = state.keys();
+        try {
+            while (keys.hasNext()) {
+                removal.put(keys.next(), JSONObject.NULL);
             }
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not clear customer display state", e);
+        }
+        state = new JSONObject();
+        if (nativeView != null) {
+            nativeView.setState(state);
+        }
+        if (pageLoaded && webView != null) {
+            webView.evaluateJavascript(APPLY_STATE + removal + ")", null);
+        }
+    }
+    
+    /** Dismisses the window and destroys the WebView. UI thread only. */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (frameListener != null) {
+            getWindow().removeOnFrameMetricsAvailableListener(frameListener);
+            frameListener = null;
+        }
+        dismiss();
+        if (webView != null) {
+            webView.destroy();
+            webView = null;
+        }
+        if (slideView != null) {
+            slideView.setImageBitmap(null);
+            slideView = null;
+        }
+        if (nativeView != null) {
+            nativeView.setSlide(null);
+            nativeView = null;
+        }
+        pageLoaded = false;
+        onReleased.run();
+    }
+    
+    /** Render time of each frame since the last show; empty before Android 7. */
+    public LatencyHistogram getFrameTimes() {
+        return frameTimes;
+    }
+    
+    /** Time spent drawing since the last show in native mode; null in HTML mode or before creation. */
+    public LatencyHistogram getDrawTimes() {
+        return nativeView != null ? nativeView.getDrawTimes() : null;
+    }
+    
+    public boolean isReleased() {
+        return released;
+    }
+    
+    @Override
+    public void onDisplayRemoved() {
+        Log.d(TAG, "Customer display removed, releasing Presentation");
+        release();
+    }
+    
+    /**
+     * Pushes state patches into the loaded page with a single script
+     * evaluation, without reloading it; patches arriving while a page loads
+     * are handed over once it has. UI thread only. Returns the script size.
+     */
+    public int applyState(List<JSONObject> patches) {
+        StringBuilder script = new StringBuilder();
+        for (JSONObject patch : patches) {
+            try {
+                JsonMergePatch.apply(state, patch);
+            } catch (JSONException e) {
+                Log.w(TAG, "Could not merge customer display state", e);
+            }
+            script.append(APPLY_STATE).append(patch).append(");");
+        }
+        if (nativeView != null) {
+            nativeView.setState(state);
+        }
+        if (pageLoaded && webView != null) {
+            webView.evaluateJavascript(script.toString(), null);
         }
+        return script.length();
     }
 }
@@ -0,0 +1,217 @@
+package com.thermalprinter.test;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.view.View;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Native customer display: the slideshow, cart lines and totals drawn
+ * straight onto a hardware-accelerated canvas from the same state model
+ * the HTML page gets, without a second WebView. Layout and text are worked
+ * out when the state or size changes, so drawing a frame allocates
+ * nothing. Same look as the HTML page: the slide fills the screen and the
+ * cart sits in a panel on the right while it has lines.
+ */
+public class CustomerDisplayView extends View {
+
+    private static final String WELCOME = "Welcome! Thank you for shopping with us.";
+    private static final float REFERENCE_HEIGHT = 1080f;  // Sizes below are for a 1080-pixel-high screen
+    private static final float PANEL_WIDTH = 0.4f;
+    private static final float PADDING = 32;
+    private static final float LINE_TEXT = 28;
+    private static final float TOTAL_TEXT = 40;
+    private static final float WELCOME_TEXT = 48;
+
+    /** One cart line, ready to draw. */
+    private static final class Line {
+        final String qty;
+        final String name;
+        final String total;
+        String shownName;
+
+        Line(String qty, String name, String total) {
+            this.qty = qty;
+            this.name = name;
+            this.total = total;
+            this.shownName = name;
+        }
+    }
+
+    private final Paint slidePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint panelPaint = new Paint();
+    private final Paint dividerPaint = new Paint();
+    private final Paint qtyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint amountPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint totalPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint welcomePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF slideRect = new RectF();
+    private volatile LatencyHistogram drawTimes = new LatencyHistogram();
+
+    private List<Line> lines = new ArrayList<>();
+    private String subtotal = "";
+    private String tax = "";
+    private String total = "";
+    private Bitmap slide;
+    private float scale = 1;
+    private float qtyWidth;
+
+    public CustomerDisplayView(Context context) {
+        super(context);
+        panelPaint.setColor(Color.argb(235, 15, 23, 42));
+        dividerPaint.setColor(Color.rgb(71, 85, 105));
+        qtyPaint.setColor(Color.rgb(148, 163, 184));
+        textPaint.setColor(Color.WHITE);
+        amountPaint.setColor(Color.WHITE);
+        amountPaint.setTextAlign(Paint.Align.RIGHT);
+        totalPaint.setColor(Color.WHITE);
+        totalPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        welcomePaint.setColor(Color.WHITE);
+        welcomePaint.setTypeface(Typeface.DEFAULT_BOLD);
+        welcomePaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    /** Redraws from the full display state (see {@link JsonMergePatch}). UI thread only. */
+    public void setState(JSONObject state) {
+        JSONObject items = state.optJSONObject("items");
+        JSONArray order = state.optJSONArray("order");
+        List<Line> next = new ArrayList<>();
+        if (items != null && order != null) {
+            for (int i = 0; i < order.length(); i++) {
+                JSONObject item = items.optJSONObject(order.optString(i));
+                if (item != null) {
+                    next.add(new Line(item.optInt("qty") + " x", item.optString("name", ""),
+                            item.optString("total", "")));
+                }
+            }
+        }
+        lines = next;
+        subtotal = state.optString("subtotal", "");
+        tax = state.optString("tax", "");
+        total = state.optString("total", "");
+        fitNames();
+        invalidate();
+    }
+
+    /** Slide to fill the screen with, or null for black. UI thread only. */
+    public void setSlide(Bitmap slide) {
+        this.slide = slide;
+        fitSlide();
+        invalidate();
+    }
+
+    /** Time spent in {@link #onDraw}, for comparing with the HTML mode's frame times. */
+    public LatencyHistogram getDrawTimes() {
+        return drawTimes;
+    }
+
+    public void resetDrawTimes() {
+        drawTimes = new LatencyHistogram();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        scale = height / REFERENCE_HEIGHT;
+        qtyPaint.setTextSize(LINE_TEXT * scale);
+        textPaint.setTextSize(LINE_TEXT * scale);
+        amountPaint.setTextSize(LINE_TEXT * scale);
+        totalPaint.setTextSize(TOTAL_TEXT * scale);
+        welcomePaint.setTextSize(WELCOME_TEXT * scale);
+        dividerPaint.setStrokeWidth(2 * scale);
+        qtyWidth = qtyPaint.measureText("00 x ");
+        fitSlide();
+        fitNames();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        int width = getWidth();
+        int height = getHeight();
+        canvas.drawColor(Color.BLACK);
+        if (slide != null) {
+            canvas.drawBitmap(slide, null, slideRect, slidePaint);
+        }
+
+        if (lines.isEmpty()) {
+            canvas.drawText(WELCOME, width / 2f, height - PADDING * 1.25f * scale, welcomePaint);
+        } else {
+            float left = width * (1 - PANEL_WIDTH);
+            float right = width - PADDING * scale;
+            float textLeft = left + PADDING * scale;
+            canvas.drawRect(left, 0, width, height, panelPaint);
+
+            // Totals from the bottom up, lines from the top down until they meet
+            float lineHeight = LINE_TEXT * scale * 1.6f;
+            float totalsTop = height - PADDING * scale - TOTAL_TEXT * scale * 1.6f - 2 * lineHeight;
+            float y = PADDING * scale + LINE_TEXT * scale;
+            for (int i = 0; i < lines.size() && y < totalsTop; i++) {
+                Line line = lines.get(i);
+                canvas.drawText(line.qty, textLeft, y, qtyPaint);
+                canvas.drawText(line.shownName, textLeft + qtyWidth, y, textPaint);
+                canvas.drawText(line.total, right, y, amountPaint);
+                y += lineHeight;
+            }
+
+            y = totalsTop + lineHeight;
+            canvas.drawText("Subtotal", textLeft, y, textPaint);
+            canvas.drawText(subtotal, right, y, amountPaint);
+            y += lineHeight;
+            canvas.drawText("Tax", textLeft, y, textPaint);
+            canvas.drawText(tax, right, y, amountPaint);
+            y += PADDING * scale * 0.5f;
+            canvas.drawLine(textLeft, y, right, y, dividerPaint);
+            y += TOTAL_TEXT * scale * 1.3f;
+            canvas.drawText("Total", textLeft, y, totalPaint);
+            totalPaint.setTextAlign(Paint.Align.RIGHT);
+            canvas.drawText(total, right, y, totalPaint);
+            totalPaint.setTextAlign(Paint.Align.LEFT);
+        }
+        drawTimes.recordSince(start);
+    }
+
+    // Fit-center, like object-fit: contain on the page
+    private void fitSlide() {
+        int width = getWidth();
+        int height = getHeight();
+        if (slide == null || width == 0 || height == 0) {
+            return;
+        }
+        float fit = Math.min((float) width / slide.getWidth(), (float) height / slide.getHeight());
+        float slideWidth = slide.getWidth() * fit;
+        float slideHeight = slide.getHeight() * fit;
+        slideRect.set((width - slideWidth) / 2, (height - slideHeight) / 2,
+                (width + slideWidth) / 2, (height + slideHeight) / 2);
+    }
+
+    // Shortens names that would run into the line total
+    private void fitNames() {
+        if (getWidth() == 0) {
+            return;
+        }
+        float available = getWidth() * PANEL_WIDTH - 2 * PADDING * scale - qtyWidth;
+        for (Line line : lines) {
+            float room = available - amountPaint.measureText(line.total) - PADDING * scale;
+            String name = line.name;
+            if (textPaint.measureText(name) > room) {
+                while (name.length() > 1 && textPaint.measureText(name + "...") > room) {
+                    name = name.substring(0, name.length() - 1);
+                }
+                name = name + "...";
+            }
+            line.shownName = name;
+        }
+    }
+}
@@ -1,142 +1,239 @@
 package com.thermalprinter.test;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.hardware.display.DisplayManager;
+import android.os.Debug;
+import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Display;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 public class DualScreenManager {
     private static final String TAG = "DualScreenManager";
+    private static final String MEDIA_CACHE_DIR = "media-cache";
+    private static final long MEDIA_CACHE_BYTES = 64L * 1024 * 1024;
+    
+    /** Customer display hot-plug, delivered on the main thread. */
+    public interface DisplayListener {
+        void onCustomerDisplayChanged(JSObject displayInfo, boolean attached, boolean shown);
+    }
     
     private Activity activity;
-    private DisplayManager displayManager;
-    private CustomerDisplayPresentation presentation;
-    private boolean isCustomerDisplayActive = false;
+    private final CustomerDisplayIndex displayIndex;
+    private DisplayListener displayListener;
+    // What the app last asked for, so a re-plugged display comes back showing it
+    private boolean wantShown = false;
+    private String shownHtml;
+    // Renderer of the last show, also used to pre-warm
+    private String shownMode = CustomerDisplayPresentation.MODE_HTML;
+    // Created once (ahead of time if possible) and kept across hide/show; UI thread only
+    private volatile CustomerDisplayPresentation presentation;
+    private volatile boolean isCustomerDisplayActive = false;
+    // Created on the first startSlideshow; UI thread only
+    private SlideshowEngine slideshow;
+    
+    // State patches waiting for the next frame, merged into as few as possible (usually one)
+    private final Object stateLock = new Object();
+    private List<JSONObject> pendingPatches = new ArrayList<>();
+    private List<JSONObject> sendingPatches = new ArrayList<>();
+    private int pendingUpdates = 0;
+    private long pendingSinceNanos;
+    private boolean framePosted = false;
+    private final Choreographer.FrameCallback pushState = frameTimeNanos -> flushState();
+
+    // A hidden Presentation is only worth keeping while memory is not tight
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+                activity.runOnUiThread(() -> releaseIfHidden("trim memory level " + level));
+            }
+        }
+        
+        @Override
+        public void onLowMemory() {
+            activity.runOnUiThread(() -> releaseIfHidden("low memory"));
+        }
+        
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
 
     public DualScreenManager(Activity activity) {
         this.activity = activity;
-        this.displayManager = (DisplayManager) activity.getSystemService(Context.DISPLAY_SERVICE);
-    }
-
-    public void checkSecondaryDisplay(PluginCall call) {
-        try {
-            // Use DISPLAY_CATEGORY_PRESENTATION to find external customer displays
-            Display[] presentationDisplays = null;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-                presentationDisplays = displayManager.getDisplays(DisplayManager.DISPLAY_CATEGORY_PRESENTATION);
+        DisplayManager displayManager = (DisplayManager) activity.getSystemService(Context.DISPLAY_SERVICE);
+        this.displayIndex = new CustomerDisplayIndex(displayManager, new CustomerDisplayIndex.Listener() {
+            @Override
+            public void onCustomerDisplayAttached(Display display) {
+                onDisplayAttached(display);
             }
             
-            Display[] allDisplays = displayManager.getDisplays();
-            
-            // Log all displays for diagnostics
-            for (Display display : allDisplays) {
-                Log.d(TAG, "Display found - ID: " + display.getDisplayId() + 
-                      ", Name: " + display.getName() + 
-                      ", State: " + display.getState() +
-                      ", IsDefault: " + (display.getDisplayId() == Display.DEFAULT_DISPLAY));
+            @Override
+            public void onCustomerDisplayDetached(int displayId) {
+                onDisplayDetached(displayId);
             }
-            
-            // Find the external presentation display (true customer screen)
-            Display customerDisplay = null;
-            
-            // First try presentation displays (Android 12+)
-            if (presentationDisplays != null && presentationDisplays.length > 0) {
-                customerDisplay = presentationDisplays[0];
-                Log.d(TAG, "Using PRESENTATION display ID " + customerDisplay.getDisplayId() + " for customer screen");
-            } else {
-                // Fallback: Use non-default display
-                for (Display display : allDisplays) {
-                    if (display.getDisplayId() != Display.DEFAULT_DISPLAY) {
-                        customerDisplay = display;
-                        Log.d(TAG, "Using non-default display ID " + customerDisplay.getDisplayId() + " for customer screen");
-                        break;
-                    }
+        });
+        activity.getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+    }
+    
+    public void setDisplayListener(DisplayListener listener) {
+        this.displayListener = listener;
+    }
+    
+    /**
+     * Builds the Presentation and its WebView for the customer display once
+     * the UI thread is idle, so the first show only has to load the page.
+     * Does nothing without a customer display.
+     */
+    public void prewarm() {
+        activity.runOnUiThread(() -> Looper.myQueue().addIdleHandler(() -> {
+            if (presentation == null && !activity.isFinishing()) {
+                Display display = displayIndex.getCustomerDisplay();
+                if (display != null) {
+                    prewarmOn(display);
                 }
             }
-            
-            JSObject result = new JSObject();
-            result.put("hasSecondaryDisplay", customerDisplay != null);
-            result.put("displayCount", allDisplays.length);
-            
-            if (customerDisplay != null) {
-                JSObject displayInfo = new JSObject();
-                displayInfo.put("displayId", customerDisplay.getDisplayId());
-                displayInfo.put("name", customerDisplay.getName());
-                displayInfo.put("width", customerDisplay.getMode().getPhysicalWidth());
-                displayInfo.put("height", customerDisplay.getMode().getPhysicalHeight());
-                result.put("secondaryDisplayInfo", displayInfo);
+            return false;
+        }));
+    }
+    
+    private void prewarmOn(Display display) {
+        long start = System.nanoTime();
+        presentation = newPresentation(display);
+        presentation.create();
+        Log.d(TAG, "Customer display Presentation pre-warmed on display " + display.getDisplayId()
+                + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+    
+    /** Releases the Presentation and stops watching memory; call when the plugin goes away. */
+    public void release() {
+        displayIndex.close();
+        activity.getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+        activity.runOnUiThread(() -> {
+            if (slideshow != null) {
+                slideshow.close();
+                slideshow = null;
             }
-            
-            call.resolve(result);
-        } catch (Exception e) {
-            Log.e(TAG, "Error checking secondary display", e);
-            call.reject("Failed to check secondary display: " + e.getMessage());
+            if (presentation != null) {
+                presentation.release();
+            }
+        });
+    }
+    
+    private CustomerDisplayPresentation newPresentation(Display display) {
+        return newPresentation(display, shownMode);
+    }
+    
+    private CustomerDisplayPresentation newPresentation(Display display, String mode) {
+        return new CustomerDisplayPresentation(activity, display, null, mode, this::onPresentationReleased);
+    }
+    
+    private void onPresentationReleased() {
+        if (presentation != null && presentation.isReleased()) {
+            presentation = null;
+            isCustomerDisplayActive = false;
         }
     }
-
-    public void showOnSecondaryDisplay(String html, PluginCall call) {
+    
+    private void releaseIfHidden(String reason) {
+        if (slideshow != null) {
+            slideshow.trimMemory();
+        }
+        if (presentation != null && !isCustomerDisplayActive) {
+            Log.d(TAG, "Releasing hidden customer display Presentation (" + reason + ")");
+            presentation.release();
+        }
+    }
+    
+    /** Main thread. Shows what the app last showed again if it was still meant to be up. */
+    private void onDisplayAttached(Display display) {
+        boolean shown = false;
+        if (slideshow != null) {
+            slideshow.resize(display.getMode().getPhysicalWidth(), display.getMode().getPhysicalHeight());
+        }
+        if (presentation != null) {
+            presentation.release();
+        }
         try {
-            // Use DISPLAY_CATEGORY_PRESENTATION to find the real external customer display
-            Display[] presentationDisplays = null;
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.S) {
-                presentationDisplays = displayManager.getDisplays(DisplayManager.DISPLAY_CATEGORY_PRESENTATION);
-            }
-            
-            Display[] allDisplays = displayManager.getDisplays();
-            
-            // Find the external presentation display (true customer screen)
-            Display customerDisplay = null;
-            
-            // First try presentation displays (Android 12+)
-            if (presentationDisplays != null && presentationDisplays.length > 0) {
-                customerDisplay = presentationDisplays[0];
-                Log.d(TAG, "Selected PRESENTATION display ID " + customerDisplay.getDisplayId() + 
-                      " (" + customerDisplay.getName() + ") for customer display");
+            if (wantShown) {
+                showOn(display, shownHtml, shownMode);
+                shown = true;
+                Log.d(TAG, "Customer display " + display.getDisplayId() + " attached, Presentation reattached");
             } else {
-                // Fallback: Use non-default display
-                for (Display display : allDisplays) {
-                    if (display.getDisplayId() != Display.DEFAULT_DISPLAY) {
-                        customerDisplay = display;
-                        Log.d(TAG, "Selected non-default display ID " + customerDisplay.getDisplayId() + 
-                              " (" + customerDisplay.getName() + ") for customer display");
-                        break;
-                    }
-                }
+                prewarmOn(display);
             }
-            
-            if (customerDisplay == null) {
-                call.reject("No external customer display found");
-                return;
-            }
-            
-            Display targetDisplay = customerDisplay;
-            
+        } catch (Exception e) {
+            Log.e(TAG, "Could not reattach customer display Presentation", e);
+        }
+        if (displayListener != null) {
+            displayListener.onCustomerDisplayChanged(displayIndex.getCustomerDisplayInfo(), true, shown);
+        }
+    }
+    
+    /** Main thread. The Presentation goes with its display; the app's intent to show is kept. */
+    private void onDisplayDetached(int displayId) {
+        if (presentation != null && presentation.getDisplay().getDisplayId() == displayId) {
+            presentation.release();
+        }
+        synchronized (stateLock) {
+            pendingPatches.clear();
+            pendingUpdates = 0;
+        }
+        if (displayListener != null) {
+            JSObject info = new JSObject();
+            info.put("displayId", displayId);
+            displayListener.onCustomerDisplayChanged(info, false, false);
+        }
+    }
+
+    public void checkSecondaryDisplay(PluginCall call) {
+        JSObject info = displayIndex.getCustomerDisplayInfo();
+        
+        JSObject result = new JSObject();
+        result.put("hasSecondaryDisplay", info != null);
+        result.put("displayCount", displayIndex.getDisplayCount());
+        if (info != null) {
+            result.put("secondaryDisplayInfo", info);
+        }
+        call.resolve(result);
+    }
+
+    /**
+     * Shows the customer display with the given renderer, {@link
+     * CustomerDisplayPresentation#MODE_HTML} (needs {@code html}) or {@link
+     * CustomerDisplayPresentation#MODE_NATIVE}. Switching renderers rebuilds
+     * the Presentation, so it counts as a cold show.
+     */
+    public void showOnSecondaryDisplay(String html, String mode, PluginCall call) {
+        try {
             activity.runOnUiThread(() -> {
                 try {
-                    // CRITICAL FIX: Use Presentation instead of separate Activity
-                    // This keeps MainActivity as the ONLY resumed activity
-                    // Touch routing stays with MainActivity, avoiding Ilitek firmware touch steal
+                    Display targetDisplay = displayIndex.getCustomerDisplay();
                     
-                    if (presentation != null && presentation.isShowing()) {
-                        presentation.dismiss();
+                    if (targetDisplay == null) {
+                        call.reject("No external customer display found");
+                        return;
                     }
                     
-                    presentation = new CustomerDisplayPresentation(activity, targetDisplay, html);
-                    presentation.show();
-                    
-                    Log.d(TAG, "Presentation shown on display " + targetDisplay.getDisplayId());
-                    Log.d(TAG, "MainActivity remains RESUMED with touch control (Presentation is non-Activity window)");
-                    
-                    isCustomerDisplayActive = true;
-                    
-                    JSObject result = new JSObject();
-                    result.put("success", true);
-                    result.put("message", "Customer display shown via Presentation (MainActivity keeps touch)");
-                    call.resolve(result);
+                    wantShown = true;
+                    shownHtml = html;
+                    shownMode = mode;
+                    call.resolve(showOn(targetDisplay, html, mode));
                     
                 } catch (Exception e) {
                     Log.e(TAG, "Error showing customer display presentation", e);
@@ -148,15 +245,243 @@ public class DualScreenManager {
             call.reject("Failed to show on secondary display: " + e.getMessage());
         }
     }
+    
+    /** Main thread. Shows {@code html} on {@code targetDisplay}, reusing a warm Presentation there. */
+    private JSObject showOn(Display targetDisplay, String html, String mode) {
+        // CRITICAL FIX: Use Presentation instead of separate Activity
+        // This keeps MainActivity as the ONLY resumed activity
+        // Touch routing stays with MainActivity, avoiding Ilitek firmware touch steal
+        
+        long start = System.nanoTime();
+        boolean warm = presentation != null
+                && presentation.getDisplay().getDisplayId() == targetDisplay.getDisplayId()
+                && presentation.getMode().equals(mode);
+        if (!warm) {
+            if (presentation != null) {
+                presentation.release();
+            }
+            presentation = newPresentation(targetDisplay, mode);
+        }
+        
+        // Warm: the window and WebView exist; the page only reloads if the HTML changed
+        boolean reloaded = html != null && presentation.loadHtml(html);
+        presentation.show();
+        presentation.onShown();
+        isCustomerDisplayActive = true;
+        if (slideshow != null) {
+            slideshow.resume();
+        }
+        
+        long showMicros = (System.nanoTime() - start) / 1000;
+        TraceLog.event(TraceLog.DISPLAY_SHOWN, warm ? 1 : 0, showMicros, reloaded ? 1 : 0);
+        Log.d(TAG, (warm ? "Warm" : "Cold") + " " + mode + " show on display " + targetDisplay.getDisplayId()
+                + " took " + showMicros / 1000.0 + " ms" + (reloaded ? " (page loading)" : ""));
+        Log.d(TAG, "MainActivity remains RESUMED with touch control (Presentation is non-Activity window)");
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("message", "Customer display shown via Presentation (MainActivity keeps touch)");
+        result.put("mode", mode);
+        result.put("warm", warm);
+        result.put("reloaded", reloaded);
+        result.put("showMs", showMicros / 1000.0);
+        return result;
+    }
 
+    /**
+     * Runs the native slideshow behind the customer display page, from the
+     * offline media cache (see {@link SlideshowEngine}). Replaces any
+     * running slideshow.
+     */
+    public void startSlideshow(List<String> sources, long intervalMs, PluginCall call) {
+        activity.runOnUiThread(() -> {
+            try {
+                Display display = displayIndex.getCustomerDisplay();
+                if (display == null) {
+                    call.reject("No external customer display found");
+                    return;
+                }
+                int width = display.getMode().getPhysicalWidth();
+                int height = display.getMode().getPhysicalHeight();
+                if (slideshow == null) {
+                    MediaCache cache = new MediaCache(new File(activity.getFilesDir(), MEDIA_CACHE_DIR), MEDIA_CACHE_BYTES);
+                    slideshow = new SlideshowEngine(activity, cache, width, height);
+                } else {
+                    slideshow.resize(width, height);
+                }
+                slideshow.start(sources, intervalMs, this::showSlide);
+                if (!isCustomerDisplayActive) {
+                    slideshow.pause();  // Starts with the next show
+                }
+                call.resolve(slideshowToJSObject());
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting slideshow", e);
+                call.reject("Failed to start slideshow: " + e.getMessage());
+            }
+        });
+    }
+    
+    public void stopSlideshow(PluginCall call) {
+        activity.runOnUiThread(() -> {
+            if (slideshow != null) {
+                slideshow.stop();
+            }
+            if (presentation != null) {
+                presentation.showSlide(null);
+            }
+            call.resolve(slideshowToJSObject());
+        });
+    }
+    
+    private void showSlide(Bitmap slide) {
+        if (presentation != null) {
+            presentation.showSlide(slide);
+        }
+    }
+    
+    private JSObject slideshowToJSObject() {
+        JSObject result = new JSObject();
+        result.put("running", slideshow != null && slideshow.isRunning());
+        if (slideshow != null) {
+            MediaCache cache = slideshow.getCache();
+            result.put("slides", slideshow.getSlideCount());
+            result.put("failedSlides", slideshow.getFailedCount());
+            result.put("memoryBytes", slideshow.getMemoryBytes());
+            result.put("cacheBytes", cache.getBytes());
+            result.put("cacheMaxBytes", cache.getMaxBytes());
+            result.put("cacheEntries", cache.getEntryCount());
+            result.put("cacheHits", cache.getHits());
+            result.put("cacheMisses", cache.getMisses());
+        }
+        return result;
+    }
+    
+    /**
+     * Frame times and memory of the customer display's current renderer, to
+     * compare the HTML and native modes on the same hardware: show one,
+     * drive the cart for a while, read the stats, then do the same with the
+     * other. Frame times cover the display window since it was last shown
+     * (Android 7+). Memory is this process only; with a multiprocess WebView
+     * (Android 8+ on most devices) the page's renderer process comes on top
+     * in HTML mode, so compare that one in dumpsys meminfo as well.
+     */
+    public void getCustomerDisplayStats(PluginCall call) {
+        activity.runOnUiThread(() -> {
+            JSObject result = new JSObject();
+            result.put("showing", isCustomerDisplayActive);
+            if (presentation != null) {
+                result.put("mode", presentation.getMode());
+                result.put("frames", histogramToJSObject(presentation.getFrameTimes()));
+                LatencyHistogram drawTimes = presentation.getDrawTimes();
+                if (drawTimes != null) {
+                    result.put("draw", histogramToJSObject(drawTimes));
+                }
+            }
+            
+            Runtime runtime = Runtime.getRuntime();
+            JSObject memory = new JSObject();
+            memory.put("pssKb", Debug.getPss());
+            memory.put("javaHeapKb", (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+            memory.put("nativeHeapKb", Debug.getNativeHeapAllocatedSize() / 1024);
+            result.put("memory", memory);
+            call.resolve(result);
+        });
+    }
+    
+    private static JSObject histogramToJSObject(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        JSObject result = new JSObject();
+        result.put("count", snapshot.getCount());
+        result.put("min", snapshot.getMin());
+        result.put("mean", Math.round(snapshot.getMean()));
+        result.put("p50", snapshot.getValueAtPercentile(50));
+        result.put("p90", snapshot.getValueAtPercentile(90));
+        result.put("p99", snapshot.getValueAtPercentile(99));
+        result.put("max", snapshot.getMax());
+        return result;
+    }
+    
+    /**
+     * Queues a JSON merge patch of the customer display state for the page
+     * shown by {@link #showOnSecondaryDisplay}. Patches are coalesced and
+     * pushed into the page once per frame, so bursts of cart changes cost
+     * one script evaluation and never reload the page.
+     */
+    public void updateSecondaryDisplay(JSONObject patch, PluginCall call) {
+        if (!isCustomerDisplayActive) {
+            call.reject("Customer display is not showing", "NOT_SHOWING");
+            return;
+        }
+        
+        boolean post;
+        try {
+            synchronized (stateLock) {
+                int last = pendingPatches.size() - 1;
+                if (last < 0 || !JsonMergePatch.compose(pendingPatches.get(last), patch)) {
+                    JSONObject copy = new JSONObject();
+                    JsonMergePatch.compose(copy, patch);
+                    pendingPatches.add(copy);
+                }
+                if (pendingUpdates++ == 0) {
+                    pendingSinceNanos = System.nanoTime();
+                }
+                post = !framePosted;
+                framePosted = true;
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid display state: " + e.getMessage(), "INVALID_STATE");
+            return;
+        }
+        
+        if (post) {
+            activity.runOnUiThread(() -> Choreographer.getInstance().postFrameCallback(pushState));
+        }
+        
+        JSObject result = new JSObject();
+        result.put("coalesced", !post);
+        call.resolve(result);
+    }
+    
+    private void flushState() {
+        List<JSONObject> patches;
+        int updates;
+        long waitedNanos;
+        synchronized (stateLock) {
+            patches = pendingPatches;
+            pendingPatches = sendingPatches;
+            sendingPatches = patches;
+            updates = pendingUpdates;
+            pendingUpdates = 0;
+            waitedNanos = System.nanoTime() - pendingSinceNanos;
+            framePosted = false;
+        }
+        
+        CustomerDisplayPresentation target = presentation;
+        if (target != null && isCustomerDisplayActive && !patches.isEmpty()) {
+            int bytes = target.applyState(patches);
+            TraceLog.event(TraceLog.DISPLAY_UPDATE, bytes, updates, waitedNanos / 1000);
+        }
+        patches.clear();
+    }
+    
     public void hideSecondaryDisplay(PluginCall call) {
         try {
             activity.runOnUiThread(() -> {
-                // Dismiss the presentation window
+                wantShown = false;
+                
+                // Hide the window but keep it and its WebView for the next show
                 if (presentation != null && presentation.isShowing()) {
-                    presentation.dismiss();
-                    presentation = null;
-                    Log.d(TAG, "Customer display Presentation dismissed");
+                    presentation.hide();
+                    presentation.onHidden();
+                    Log.d(TAG, "Customer display Presentation hidden (kept warm)");
+                }
+                if (slideshow != null) {
+                    slideshow.pause();
+                }
+                
+                synchronized (stateLock) {
+                    pendingPatches.clear();
+                    pendingUpdates = 0;
                 }
                 
                 isCustomerDisplayActive = false;
@@ -0,0 +1,248 @@
+package com.thermalprinter.test;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logos and static headers kept in the printer's own graphics memory.
+ *
+ * A graphic is rasterised once when it is registered. The first receipt
+ * that uses it on a printer carries the define command ahead of the print
+ * command; once that job has printed, the graphic is recorded as resident on
+ * that printer (vendorId:productId:serial) and later receipts send only the
+ * 11-byte print command. NV graphics survive power cycles, so their
+ * residency is persisted. Download graphics live in printer RAM and are
+ * forgotten on every reconnect. A content change or a different printer
+ * triggers a fresh upload. Printers without a readable serial can't be told
+ * apart from others of the same model, so NV residency is never recorded for
+ * them; their graphics are sent as download graphics instead, defined once
+ * per connection, so NV memory isn't rewritten with every receipt.
+ */
+public class GraphicsStore {
+
+    private static final String TAG = "GraphicsStore";
+    private static final String PREFS_NAME = "printer_graphics";
+    private static final String GRAPHIC_PREFIX = "graphic.";
+    private static final String RESIDENT_PREFIX = "resident.";
+
+    // Key codes are 'G' followed by one printable ASCII character
+    private static final int KEY_CODE_1 = 'G';
+    private static final int FIRST_KEY_CODE_2 = 0x21;
+    private static final int LAST_KEY_CODE_2 = 0x7E;
+
+    public static class Graphic {
+        public final String key;
+        public final int keyCode;
+        public final boolean nv;
+        public final int width;
+        public final int height;
+        public final String hash;
+        // Null for graphics restored from preferences but not registered again yet
+        final byte[] bits;
+
+        Graphic(String key, int keyCode, boolean nv, int width, int height, String hash, byte[] bits) {
+            this.key = key;
+            this.keyCode = keyCode;
+            this.nv = nv;
+            this.width = width;
+            this.height = height;
+            this.hash = hash;
+            this.bits = bits;
+        }
+
+        String toPreference() {
+            return keyCode + "," + (nv ? 1 : 0) + "," + width + "," + height + "," + hash;
+        }
+
+        static Graphic fromPreference(String key, String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                return new Graphic(key, Integer.parseInt(parts[0]), "1".equals(parts[1]),
+                        Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), parts[4], null);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final Map<String, Graphic> graphics = new HashMap<>();
+    // deviceKey/keyCode -> hash, for download graphics (printer RAM)
+    private final Map<String, String> volatileResidency = new HashMap<>();
+
+    public GraphicsStore(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (entry.getKey().startsWith(GRAPHIC_PREFIX) && entry.getValue() instanceof String) {
+                String key = entry.getKey().substring(GRAPHIC_PREFIX.length());
+                Graphic graphic = Graphic.fromPreference(key, (String) entry.getValue());
+                if (graphic != null) {
+                    graphics.put(key, graphic);
+                }
+            }
+        }
+        Log.d(TAG, "Restored " + graphics.size() + " graphic(s)");
+    }
+
+    /**
+     * Registers (or updates) a graphic from 1-bit raster rows. Keeps the key
+     * code of an existing graphic with the same key, so a content change
+     * overwrites the old slot in the printer instead of filling a new one.
+     */
+    public synchronized Graphic register(String key, boolean nv, int width, int height, byte[] bits) {
+        Graphic existing = graphics.get(key);
+        int keyCode = existing != null ? existing.keyCode : nextKeyCode();
+        if (keyCode < 0) {
+            throw new IllegalStateException("No free graphic key codes");
+        }
+        Graphic graphic = new Graphic(key, keyCode, nv, width, height, hash(width, height, bits), bits);
+        graphics.put(key, graphic);
+        prefs.edit().putString(GRAPHIC_PREFIX + key, graphic.toPreference()).apply();
+        return graphic;
+    }
+
+    public synchronized Graphic get(String key) {
+        return graphics.get(key);
+    }
+
+    /** Download graphics don't survive the printer losing power; call on (re)connect. */
+    public synchronized void forgetVolatile() {
+        volatileResidency.clear();
+    }
+
+    /** Starts encoding a receipt for the printer identified by {@code deviceKey} (may be null). */
+    public Batch batch(String deviceKey) {
+        return new Batch(deviceKey);
+    }
+
+    // vendorId:productId: with an empty serial names a model, not one printer
+    private static boolean identifiesPrinter(String deviceKey) {
+        return deviceKey != null && !deviceKey.endsWith(":");
+    }
+
+    // NV only where residency can be kept per printer; otherwise printer RAM
+    private static boolean storeInNv(String deviceKey, Graphic graphic) {
+        return graphic.nv && identifiesPrinter(deviceKey);
+    }
+
+    private synchronized boolean isResident(String deviceKey, Graphic graphic) {
+        if (deviceKey == null) {
+            return false;
+        }
+        String slot = deviceKey + "/" + graphic.keyCode;
+        String hash = storeInNv(deviceKey, graphic)
+                ? prefs.getString(RESIDENT_PREFIX + slot, null)
+                : volatileResidency.get(slot);
+        return graphic.hash.equals(hash);
+    }
+
+    private synchronized void markResident(String deviceKey, List<Graphic> uploaded) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Graphic graphic : uploaded) {
+            String slot = deviceKey + "/" + graphic.keyCode;
+            if (storeInNv(deviceKey, graphic)) {
+                editor.putString(RESIDENT_PREFIX + slot, graphic.hash);
+            } else {
+                volatileResidency.put(slot, graphic.hash);
+            }
+        }
+        editor.apply();
+    }
+
+    private int nextKeyCode() {
+        boolean[] used = new boolean[LAST_KEY_CODE_2 + 1];
+        for (Graphic graphic : graphics.values()) {
+            used[graphic.keyCode] = true;
+        }
+        for (int code = FIRST_KEY_CODE_2; code <= LAST_KEY_CODE_2; code++) {
+            if (!used[code]) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    private static String hash(int width, int height, byte[] bits) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(new byte[] {
+                    (byte) width, (byte) (width >> 8), (byte) height, (byte) (height >> 8)
+            });
+            digest.update(bits);
+            byte[] sum = digest.digest();
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((sum[i] >> 4) & 0xF, 16)).append(Character.forDigit(sum[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Resolves graphic ops for one receipt. Graphics not yet resident on the
+     * target printer are defined inline; call {@link #commit} once the job
+     * has printed to record them.
+     */
+    public class Batch implements ReceiptDescription.GraphicResolver {
+
+        private final String deviceKey;
+        private final List<Graphic> uploaded = new ArrayList<>();
+
+        Batch(String deviceKey) {
+            this.deviceKey = deviceKey;
+        }
+
+        @Override
+        public void emit(String key, EscPosEncoder encoder) throws JSONException {
+            Graphic graphic = get(key);
+            if (graphic == null) {
+                throw new JSONException("Unknown graphic: " + key);
+            }
+            boolean nv = storeInNv(deviceKey, graphic);
+            if (!isResident(deviceKey, graphic) && !uploaded.contains(graphic)) {
+                if (graphic.bits == null) {
+                    throw new JSONException("Graphic '" + key + "' must be registered again");
+                }
+                encoder.defineGraphic(nv, KEY_CODE_1, graphic.keyCode, graphic.width, graphic.height, graphic.bits);
+                uploaded.add(graphic);
+            }
+            encoder.printGraphic(nv, KEY_CODE_1, graphic.keyCode);
+        }
+
+        public int getUploadCount() {
+            return uploaded.size();
+        }
+
+        /**
+         * Records the uploaded graphics as resident on the printer this batch
+         * was encoded for, if {@code printedOn} (the printer connected when
+         * the job finished) is still that one.
+         */
+        public void commit(String printedOn) {
+            if (uploaded.isEmpty() || deviceKey == null) {
+                return;
+            }
+            if (!deviceKey.equals(printedOn)) {
+                Log.d(TAG, "Printer changed from " + deviceKey + " to " + printedOn + "; not recording graphics");
+                return;
+            }
+            markResident(deviceKey, uploaded);
+            Log.d(TAG, uploaded.size() + " graphic(s) now resident on " + deviceKey);
+        }
+    }
+}
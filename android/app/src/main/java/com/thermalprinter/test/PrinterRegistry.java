@@ -0,0 +1,361 @@
+package com.thermalprinter.test;
+
+import android.hardware.usb.UsbDevice;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Printers kept open side by side as named stations (e.g. "receipt",
+ * "kitchen", "bar"), so an order can go to several of them without
+ * reconnecting. Each station owns its USB connection, transport thread and
+ * print queue; stations are keyed by the device's bus path, so two
+ * identical printers on one hub are separate stations. A station whose
+ * printer is unplugged keeps its queue and reconnects when the same printer
+ * is plugged back in. Stations use the generic USB path only. Thread-safe.
+ */
+public class PrinterRegistry {
+    private static final String TAG = "PrinterRegistry";
+
+    public interface Listener {
+        void onJobChanged(Station station, PrintJob job);
+        void onStatusChanged(Station station, PrinterStatus status);
+        void onConnectionChanged(Station station, boolean connected);
+    }
+
+    /** One open printer and its queue. */
+    public static final class Station {
+        private volatile String name;
+        private final PrintSpooler spooler;
+        private volatile String deviceKey;
+        private volatile UsbPrinterConnection printer;
+        private volatile boolean connected;
+
+        private Station(String name, UsbPrinterConnection printer, PrintSpooler spooler) {
+            this.name = name;
+            this.printer = printer;
+            this.spooler = spooler;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public UsbDevice getDevice() {
+            return printer.getDevice();
+        }
+
+        public String getDeviceKey() {
+            return deviceKey;
+        }
+
+        /** False while the printer is unplugged; jobs queue up meanwhile. */
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public PrintSpooler getSpooler() {
+            return spooler;
+        }
+
+        /** Latest reported status, or null if the printer has no status channel. */
+        public PrinterStatus getStatus() {
+            UsbTransport transport = printer.getTransport();
+            return transport != null ? transport.getStatus() : null;
+        }
+    }
+
+    /** One job of a fan-out: {@code data} for the station called {@code station}. */
+    public static final class Target {
+        final String station;
+        final byte[] data;
+
+        public Target(String station, byte[] data) {
+            this.station = station;
+            this.data = data;
+        }
+    }
+
+    private final UsbPrinterManager manager;
+    private final Listener listener;
+    private final Map<String, Station> stations = new LinkedHashMap<>();  // By bus path
+    private final List<Station> detached = new ArrayList<>();
+    // Station names by bus path, for devices being opened outside the lock
+    private final Map<String, String> opening = new HashMap<>();
+
+    public PrinterRegistry(UsbPrinterManager manager, Listener listener) {
+        this.manager = manager;
+        this.listener = listener;
+        manager.setRegistry(this);
+    }
+
+    /**
+     * Opens {@code device} as station {@code name}. If the device is already
+     * open it is only renamed, so calling this at the start of every shift is
+     * cheap. Permission must already have been granted. The device and the
+     * name are reserved while the device is opened, so concurrent calls (or
+     * connectToPrinter) can't claim either meanwhile.
+     */
+    public Station open(String name, UsbDevice device) throws IOException {
+        String path = device.getDeviceName();
+        // The manager's lock: connectToPrinter can't take the device between the check and the reservation
+        synchronized (manager) {
+            if (path.equals(manager.getCurrentDeviceName())) {
+                throw new IOException("Printer is already connected through connectToPrinter");
+            }
+            synchronized (this) {
+                Station existing = stations.get(path);
+                if (existing != null && existing.name.equals(name)) {
+                    return existing;
+                }
+                if (opening.containsKey(path)) {
+                    throw new IOException(path + " is already being opened as station " + opening.get(path));
+                }
+                Station named = find(name);
+                if (named != null && named != existing) {
+                    throw new IOException("Station " + name + " is already open on " + named.getDevice().getDeviceName());
+                }
+                if (opening.containsValue(name)) {
+                    throw new IOException("Station " + name + " is already being opened");
+                }
+                if (existing != null) {
+                    existing.name = name;
+                    return existing;
+                }
+                opening.put(path, name);
+            }
+        }
+
+        try {
+            UsbPrinterConnection printer = UsbPrinterConnection.open(manager.getUsbManager(), device);
+            if (printer == null) {
+                throw new IOException("Failed to open " + path + " as a generic USB printer");
+            }
+            Station station;
+            synchronized (this) {
+                // Opening an unplugged station's name on another printer moves its queue there
+                station = find(detached, name);
+                detached.remove(station);
+            }
+            if (station == null) {
+                station = newStation(name, printer);
+            }
+            attach(station, printer);
+            Log.d(TAG, "Opened station " + name + " on " + path);
+            return station;
+        } finally {
+            synchronized (this) {
+                opening.remove(path);
+            }
+        }
+    }
+
+    private Station newStation(String name, UsbPrinterConnection printer) {
+        Station[] holder = new Station[1];
+        PrintSpooler spooler = new PrintSpooler(PrintSpooler.DEFAULT_MAX_QUEUE_DEPTH, new PrintSpooler.Listener() {
+            @Override
+            public void onJobStateChanged(PrintJob job) {
+                listener.onJobChanged(holder[0], job);
+            }
+
+            @Override
+            public void onJobProgress(PrintJob job) {
+                listener.onJobChanged(holder[0], job);
+            }
+        });
+        holder[0] = new Station(name, printer, spooler);
+        return holder[0];
+    }
+
+    private void attach(Station station, UsbPrinterConnection printer) {
+        UsbDevice device = printer.getDevice();
+        station.printer = printer;
+        station.deviceKey = UsbPrinterConnection.deviceKey(device);
+        PrinterMetrics.Device metrics = manager.getMetrics().forDevice(station.deviceKey);
+        printer.start(manager.loadFlowController(device, printer.getEndpoint()),
+                status -> listener.onStatusChanged(station, status), metrics);
+        metrics.onConnected();
+        synchronized (this) {
+            stations.put(device.getDeviceName(), station);
+        }
+        station.connected = true;
+        station.spooler.setSink(printer);
+        listener.onConnectionChanged(station, true);
+    }
+
+    /**
+     * Hot-plug: a station's printer was unplugged. Its queue is held until
+     * the printer comes back.
+     */
+    public void onDeviceDetached(UsbDevice device) {
+        Station station;
+        synchronized (this) {
+            station = stations.remove(device.getDeviceName());
+            if (station == null) {
+                return;
+            }
+            detached.add(station);
+        }
+        station.connected = false;
+        station.spooler.setSink(null);
+        manager.saveTransportProfile(station.getDevice(), station.printer.getTransport());
+        station.printer.close();
+        manager.getMetrics().forDevice(station.deviceKey).onDisconnected();
+        Log.d(TAG, "Station " + station.name + " unplugged, holding its queue");
+        listener.onConnectionChanged(station, false);
+    }
+
+    /**
+     * Hot-plug: reconnects an unplugged station if {@code device} is its
+     * printer. Without permission for the re-plugged device, asks for it;
+     * call again once it is granted. Blocks for up to about a second.
+     */
+    public void onDeviceAttached(UsbDevice device) {
+        String path = device.getDeviceName();
+        Station station = null;
+        synchronized (this) {
+            if (opening.containsKey(path) || stations.containsKey(path)) {
+                return;
+            }
+            for (Station candidate : detached) {
+                if (UsbDeviceIndex.matches(candidate.deviceKey, device)) {
+                    station = candidate;
+                    break;
+                }
+            }
+            if (station == null) {
+                return;
+            }
+            opening.put(path, station.name);
+        }
+        try {
+            if (!manager.ensurePermission(device)) {
+                return;
+            }
+            UsbPrinterConnection printer = UsbPrinterConnection.openWithRetry(manager.getUsbManager(), device);
+            if (printer == null) {
+                Log.w(TAG, "Station " + station.name + " is back but couldn't be opened");
+                return;
+            }
+            synchronized (this) {
+                if (!detached.remove(station)) {
+                    printer.close();  // Closed or reopened meanwhile
+                    return;
+                }
+            }
+            attach(station, printer);
+            Log.d(TAG, "Station " + station.name + " reconnected on " + path);
+        } finally {
+            synchronized (this) {
+                opening.remove(path);
+            }
+        }
+    }
+
+    /** Closes station {@code name}; its queued jobs fail. Returns false if it isn't open. */
+    public boolean close(String name) {
+        Station station;
+        synchronized (this) {
+            station = find(name);
+            if (station != null) {
+                stations.remove(station.getDevice().getDeviceName());
+            } else {
+                station = find(detached, name);
+                if (station == null) {
+                    return false;
+                }
+                detached.remove(station);
+            }
+        }
+        shutdown(station);
+        return true;
+    }
+
+    public void closeAll() {
+        List<Station> open;
+        synchronized (this) {
+            open = new ArrayList<>(stations.values());
+            open.addAll(detached);
+            stations.clear();
+            detached.clear();
+        }
+        for (Station station : open) {
+            shutdown(station);
+        }
+    }
+
+    private void shutdown(Station station) {
+        station.spooler.setSink(null);
+        if (station.connected) {
+            station.connected = false;
+            manager.saveTransportProfile(station.getDevice(), station.printer.getTransport());
+            station.printer.close();
+            manager.getMetrics().forDevice(station.deviceKey).onDisconnected();
+        }
+        station.spooler.cancelAll();
+        Log.d(TAG, "Closed station " + station.name);
+    }
+
+    public synchronized Station get(String name) {
+        Station station = find(name);
+        return station != null ? station : find(detached, name);
+    }
+
+    /** Connected stations first, then unplugged ones. */
+    public synchronized List<Station> getStations() {
+        List<Station> all = new ArrayList<>(stations.values());
+        all.addAll(detached);
+        return all;
+    }
+
+    /** Name of the station {@code device} is open (or being opened) as, or null. */
+    public synchronized String stationFor(UsbDevice device) {
+        Station station = stations.get(device.getDeviceName());
+        return station != null ? station.name : opening.get(device.getDeviceName());
+    }
+
+    private Station find(String name) {
+        return find(stations.values(), name);
+    }
+
+    private static Station find(Iterable<Station> candidates, String name) {
+        for (Station station : candidates) {
+            if (station.name.equals(name)) {
+                return station;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queues each target's data on its station, all at once, so the
+     * printers work in parallel. {@code fanOutListener} is told the outcome
+     * once {@code quorum} stations have printed or the quorum can no longer
+     * be met. Unknown stations and full queues count as failures.
+     */
+    public FanOut print(List<Target> targets, int quorum, int priority, FanOut.Listener fanOutListener) {
+        String[] names = new String[targets.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = targets.get(i).station;
+        }
+        FanOut fanOut = new FanOut(names, quorum, fanOutListener);
+        for (int i = 0; i < names.length; i++) {
+            Station station = get(names[i]);
+            if (station == null) {
+                fanOut.fail(i, "Station " + names[i] + " is not open");
+                continue;
+            }
+            try {
+                station.spooler.submit(targets.get(i).data, priority, fanOut.callbackFor(i));
+            } catch (PrintSpooler.QueueFullException e) {
+                fanOut.fail(i, e.getMessage());
+            }
+        }
+        return fanOut;
+    }
+}
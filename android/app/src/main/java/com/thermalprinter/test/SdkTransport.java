@@ -0,0 +1,81 @@
+package com.thermalprinter.test;
+
+import android.util.Log;
+
+import com.printer.sdk.PrinterInstance;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writes jobs through the VOLCORA SDK. The SDK's sends are blocking and
+ * only take whole arrays, so jobs are copied if needed and sent one at a
+ * time on a single worker thread. The SDK reports no printer status. The
+ * {@link PrinterInstance} itself is opened and closed by the caller.
+ */
+public class SdkTransport implements PrinterTransport {
+    private static final String TAG = "SdkTransport";
+
+    private final PrinterInstance instance;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public SdkTransport(PrinterInstance instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public void submit(byte[] data, int offset, int length, TransferCallback callback) {
+        byte[] payload = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+        try {
+            executor.execute(() -> send(payload, callback));
+        } catch (RejectedExecutionException e) {
+            callback.onError("Printer not connected");
+        }
+    }
+
+    @Override
+    public PrinterStatus getStatus() {
+        return null;
+    }
+
+    /** Stops taking jobs; a send already in progress finishes. */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void send(byte[] data, TransferCallback callback) {
+        try {
+            long start = System.nanoTime();
+            int result = instance.sendBytesData(data);
+
+            if (result < 0) {
+                String errorMsg;
+                switch (result) {
+                    case -1:
+                        errorMsg = "Printer not initialized";
+                        break;
+                    case -2:
+                        errorMsg = "Data is empty or invalid";
+                        break;
+                    case -3:
+                        errorMsg = "Failed to send data to printer";
+                        break;
+                    default:
+                        errorMsg = "Unknown error: " + result;
+                        break;
+                }
+                callback.onError(errorMsg);
+                return;
+            }
+
+            TraceLog.event(TraceLog.SDK_SENT, result, (System.nanoTime() - start) / 1000);
+            callback.onComplete(result);
+        } catch (Exception e) {
+            Log.e(TAG, "Error printing data", e);
+            callback.onError("Failed to print data: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.thermalprinter.test;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Native slideshow for the customer display. Each slide is fetched once,
+ * downsampled to fit the display's physical resolution and kept in a
+ * {@link MediaCache} on disk, so after the first run the slideshow needs no
+ * network. Decoded slides sit in a small memory cache; the next slide is
+ * decoded on a background thread while the current one shows, so a
+ * transition only swaps a bitmap on the main thread. A slide that isn't
+ * ready in time keeps the current one up a little longer instead of
+ * stalling, and one that can't be loaded is skipped.
+ *
+ * Sources are http(s) URLs, local files (file:// or an absolute path) or
+ * paths in the app's bundled web assets.
+ */
+public class SlideshowEngine {
+    private static final String TAG = "SlideshowEngine";
+
+    /** Receives each slide on the main thread. */
+    public interface Target {
+        void showSlide(Bitmap slide);
+    }
+
+    private static final int MEMORY_SLIDES = 3;  // Showing, next and one spare
+    private static final int JPEG_QUALITY = 90;
+    private static final int MAX_SOURCE_BYTES = 32 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 20000;
+    private static final long NOT_READY_RETRY_MS = 250;
+
+    private final Context context;
+    private final MediaCache cache;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> bitmaps;
+    private final Set<String> loading = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile int width;
+    private volatile int height;
+
+    // Main thread only
+    private List<String> slides = Collections.emptyList();
+    private long intervalMs;
+    private int index = -1;
+    private boolean running = false;
+    private Target target;
+    private final Runnable advance = this::advance;
+
+    public SlideshowEngine(Context context, MediaCache cache, int width, int height) {
+        this.context = context;
+        this.cache = cache;
+        this.width = width;
+        this.height = height;
+        this.bitmaps = new LruCache<String, Bitmap>(MEMORY_SLIDES * width * height * 4) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Starts showing {@code sources} in turn, {@code intervalMs} apart,
+     * replacing any running slideshow. Slides not cached yet are fetched in
+     * the background, first ones first. Main thread only.
+     */
+    public void start(List<String> sources, long intervalMs, Target target) {
+        handler.removeCallbacks(advance);
+        this.slides = new ArrayList<>(sources);
+        this.intervalMs = intervalMs;
+        this.target = target;
+        this.index = -1;
+        this.running = true;
+        failed.clear();
+        if (slides.isEmpty()) {
+            return;
+        }
+        prefetch(0);
+        prefetch(1 % slides.size());
+        List<String> rest = new ArrayList<>(slides);
+        loader.execute(() -> {
+            // Fill the disk cache while online, so later rounds work offline
+            for (String source : rest) {
+                if (!cache.contains(cacheKey(source))) {
+                    try {
+                        ingest(source);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not fetch slide " + source + ": " + e.getMessage());
+                    }
+                }
+            }
+        });
+        advance();
+    }
+
+    /** Keeps the current slide; {@link #resume()} carries on from it. Main thread only. */
+    public void pause() {
+        running = false;
+        handler.removeCallbacks(advance);
+    }
+
+    public void resume() {
+        if (!running && target != null && !slides.isEmpty()) {
+            running = true;
+            handler.postDelayed(advance, intervalMs);
+        }
+    }
+
+    public void stop() {
+        pause();
+        target = null;
+        slides = Collections.emptyList();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** New display resolution: later slides are fetched and cached at this size. */
+    public void resize(int width, int height) {
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            bitmaps.evictAll();
+            bitmaps.resize(MEMORY_SLIDES * width * height * 4);
+        }
+    }
+
+    /** Drops decoded slides; the disk cache stays. */
+    public void trimMemory() {
+        bitmaps.evictAll();
+    }
+
+    public void close() {
+        stop();
+        loader.shutdownNow();
+        bitmaps.evictAll();
+    }
+
+    public int getSlideCount() {
+        return slides.size();
+    }
+
+    public int getFailedCount() {
+        return failed.size();
+    }
+
+    public int getMemoryBytes() {
+        return bitmaps.size();
+    }
+
+    public MediaCache getCache() {
+        return cache;
+    }
+
+    private void advance() {
+        if (!running || slides.isEmpty() || target == null) {
+            return;
+        }
+        int count = slides.size();
+        for (int step = 1; step <= count; step++) {
+            int next = (index + step) % count;
+            String source = slides.get(next);
+            if (failed.contains(source)) {
+                continue;
+            }
+            Bitmap slide = bitmaps.get(source);
+            if (slide == null) {
+                // Not decoded yet: keep the current slide up until it is
+                prefetch(next);
+                handler.postDelayed(advance, NOT_READY_RETRY_MS);
+                return;
+            }
+            index = next;
+            target.showSlide(slide);
+            prefetch((next + 1) % count);
+            handler.postDelayed(advance, intervalMs);
+            return;
+        }
+        // Nothing loadable right now; try again next round, e.g. once back online
+        failed.clear();
+        handler.postDelayed(advance, intervalMs);
+    }
+
+    private void prefetch(int slideIndex) {
+        String source = slides.get(slideIndex);
+        if (bitmaps.get(source) != null || !loading.add(source)) {
+            return;
+        }
+        loader.execute(() -> {
+            try {
+                bitmaps.put(source, load(source));
+            } catch (IOException e) {
+                Log.w(TAG, "Skipping slide " + source + ": " + e.getMessage());
+                failed.add(source);
+            } finally {
+                loading.remove(source);
+            }
+        });
+    }
+
+    // Loader thread: from the disk cache, else fetched and ingested
+    private Bitmap load(String source) throws IOException {
+        File file = cache.get(cacheKey(source));
+        if (file != null) {
+            Bitmap slide = BitmapFactory.decodeFile(file.getPath(), null);
+            if (slide != null) {
+                return slide;
+            }
+            cache.remove(cacheKey(source));  // Corrupt; fetch it again
+        }
+        return ingest(source);
+    }
+
+    /**
+     * Fetches {@code source}, downsamples it to fit the display and stores
+     * it in the disk cache. Large sources are subsampled while decoding, so
+     * a full-size photo never becomes a full-size bitmap.
+     */
+    private Bitmap ingest(String source) throws IOException {
+        long start = System.nanoTime();
+        byte[] data = read(source);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unsupported or corrupt image");
+        }
+
+        int targetWidth = width;
+        int targetHeight = height;
+        float scale = Math.min(1f, Math.min((float) targetWidth / options.outWidth,
+                (float) targetHeight / options.outHeight));
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= options.outWidth * scale
+                && options.outHeight / (sampleSize * 2) >= options.outHeight * scale) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (decoded == null) {
+            throw new IOException("Failed to decode image");
+        }
+
+        int scaledWidth = Math.max(1, Math.round(options.outWidth * scale));
+        int scaledHeight = Math.max(1, Math.round(options.outHeight * scale));
+        Bitmap slide = decoded;
+        if (decoded.getWidth() > scaledWidth || decoded.getHeight() > scaledHeight) {
+            slide = Bitmap.createScaledBitmap(decoded, scaledWidth, scaledHeight, true);
+            if (slide != decoded) {
+                decoded.recycle();
+            }
+        }
+
+        Bitmap stored = slide;
+        cache.put(cacheKey(source), out -> {
+            if (!stored.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Failed to encode slide");
+            }
+        });
+        Log.d(TAG, "Cached slide " + source + ": " + options.outWidth + "x" + options.outHeight + " -> "
+                + slide.getWidth() + "x" + slide.getHeight() + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return slide;
+    }
+
+    private byte[] read(String source) throws IOException {
+        InputStream in;
+        if (source.startsWith("http://") || source.startsWith("https://")) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(source).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("HTTP " + connection.getResponseCode());
+            }
+            in = connection.getInputStream();
+        } else if (source.startsWith("file://")) {
+            in = new FileInputStream(source.substring("file://".length()));
+        } else if (source.startsWith("/")) {
+            in = new FileInputStream(source);
+        } else {
+            // Bundled web assets, relative to the web app's root
+            in = context.getAssets().open("public/" + source);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (out.size() + read > MAX_SOURCE_BYTES) {
+                    throw new IOException("Image larger than " + MAX_SOURCE_BYTES + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    // Slides are stored at the display's size; another size is another entry
+    private String cacheKey(String source) {
+        return source + "@" + width + "x" + height;
+    }
+}
@@ -1,24 +1,142 @@
 package com.thermalprinter.test;
 
+import android.graphics.Bitmap;
+import android.hardware.usb.UsbDevice;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 @CapacitorPlugin(name = "ThermalPrinter")
 public class ThermalPrinterPlugin extends Plugin {
 
     private static final String TAG = "ThermalPrinterPlugin";
+    private static final String SPOOL_JOURNAL_FILE = "print-spool.journal";
+    private static final String CRASH_TRACE_FILE = "crash-trace.txt";
+    private static final String CAPTURE_DIR = "captures";
+    private static final String CAPTURE_EXTENSION = ".tpcap";
+    private static final long METRICS_INTERVAL_MS = 5000;
     private UsbPrinterManager usbPrinterManager;
     private DualScreenManager dualScreenManager;
+    private PrintSpooler printSpooler;
+    private final BufferPool bufferPool = new BufferPool(4);
+    private BinaryPrintServer binaryPrintServer;
+    private final EscPosEncoder receiptEncoder = new EscPosEncoder();
+    private final RasterEncoder rasterEncoder = new RasterEncoder();
+    private GraphicsStore graphicsStore;
+    private final TemplateCache templateCache = new TemplateCache(TemplateCache.DEFAULT_MAX_TEMPLATES);
+    private PrinterRegistry printerRegistry;
+    private volatile PrinterSimulator printerSimulator;
+    private final PrinterMetrics printerMetrics = new PrinterMetrics();
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private long reportedMetricsActivity = -1;
+    private final Runnable metricsReporter = new Runnable() {
+        @Override
+        public void run() {
+            // Only while someone listens, and only if anything was recorded since last time
+            long activity = printerMetrics.getActivity();
+            if (activity != reportedMetricsActivity && hasListeners("printerMetrics")) {
+                reportedMetricsActivity = activity;
+                notifyListeners("printerMetrics", metricsToJSObject());
+            }
+            metricsHandler.postDelayed(this, METRICS_INTERVAL_MS);
+        }
+    };
 
     @Override
     public void load() {
         super.load();
         try {
             android.util.Log.d(TAG, "ThermalPrinter plugin loading...");
-            usbPrinterManager = new UsbPrinterManager(getActivity());
+            installCrashTraceDump();
+            printSpooler = new PrintSpooler(PrintSpooler.DEFAULT_MAX_QUEUE_DEPTH, new PrintSpooler.Listener() {
+                @Override
+                public void onJobStateChanged(PrintJob job) {
+                    notifyListeners("printJobStatus", jobToJSObject(job));
+                }
+
+                @Override
+                public void onJobProgress(PrintJob job) {
+                    notifyListeners("printJobStatus", jobToJSObject(job));
+                }
+            });
+            restoreSpool();
+            // Before any listener below: USB hot-plug callbacks can arrive as soon as one is set
+            graphicsStore = new GraphicsStore(getContext());
+            usbPrinterManager = new UsbPrinterManager(getActivity(), printSpooler, printerMetrics);
+            usbPrinterManager.setStatusListener(status -> notifyListeners("printerStatus", statusToJSObject(status)));
+            printerRegistry = new PrinterRegistry(usbPrinterManager, new PrinterRegistry.Listener() {
+                @Override
+                public void onJobChanged(PrinterRegistry.Station station, PrintJob job) {
+                    JSObject event = jobToJSObject(job, station.getSpooler());
+                    event.put("station", station.getName());
+                    notifyListeners("printJobStatus", event);
+                }
+
+                @Override
+                public void onStatusChanged(PrinterRegistry.Station station, PrinterStatus status) {
+                    JSObject event = statusToJSObject(status);
+                    event.put("station", station.getName());
+                    notifyListeners("printerStatus", event);
+                }
+
+                @Override
+                public void onConnectionChanged(PrinterRegistry.Station station, boolean connected) {
+                    JSObject event = stationToJSObject(station);
+                    event.put("connected", connected);
+                    notifyListeners("printerConnection", event);
+                }
+            });
+            usbPrinterManager.setDeviceListener(new UsbPrinterManager.DeviceListener() {
+                @Override
+                public void onDevicesChanged(UsbDeviceIndex.Entry entry, boolean attached) {
+                    JSObject event = new JSObject();
+                    event.put("action", attached ? "attached" : "detached");
+                    event.put("device", entry.toJSObject());
+                    notifyListeners("usbDevicesChanged", event);
+                }
+
+                @Override
+                public void onConnectionChanged(UsbDevice device, boolean connected) {
+                    if (connected) {
+                        // Download graphics don't survive a power cycle
+                        graphicsStore.forgetVolatile();
+                    }
+                    JSObject event = new JSObject();
+                    event.put("connected", connected);
+                    event.put("deviceName", device.getDeviceName());
+                    event.put("vendorId", device.getVendorId());
+                    event.put("productId", device.getProductId());
+                    notifyListeners("printerConnection", event);
+                }
+            });
             dualScreenManager = new DualScreenManager(getActivity());
+            dualScreenManager.setDisplayListener((displayInfo, attached, shown) -> {
+                JSObject event = new JSObject();
+                event.put("action", attached ? "attached" : "detached");
+                event.put("display", displayInfo);
+                event.put("shown", shown);
+                notifyListeners("customerDisplayChanged", event);
+            });
+            dualScreenManager.prewarm();
+            metricsHandler.postDelayed(metricsReporter, METRICS_INTERVAL_MS);
             android.util.Log.d(TAG, "ThermalPrinter plugin loaded successfully!");
         } catch (Exception e) {
             android.util.Log.e(TAG, "Failed to load ThermalPrinter plugin", e);
@@ -27,6 +145,45 @@ public class ThermalPrinterPlugin extends Plugin {
         }
     }
 
+    /**
+     * Writes the trace ring to {@link #CRASH_TRACE_FILE} when the process
+     * dies of an uncaught exception, so the last print path events before a
+     * crash can be pulled with dumpTrace after the restart.
+     */
+    private void installCrashTraceDump() {
+        File file = new File(getContext().getFilesDir(), CRASH_TRACE_FILE);
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, error) -> {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                out.write("Uncaught " + error + " on thread " + thread.getName() + "\n");
+                TraceLog.dump(out);
+            } catch (IOException | RuntimeException e) {
+                // Best effort; the process is going down either way
+            }
+            if (previous != null) {
+                previous.uncaughtException(thread, error);
+            }
+        });
+    }
+
+    /**
+     * Replays jobs left in the on-disk spool by a previous process (e.g. after
+     * an OOM kill) and journals new jobs from here on. They print once a
+     * printer is connected.
+     */
+    private void restoreSpool() {
+        try {
+            SpoolJournal journal = SpoolJournal.open(new File(getContext().getFilesDir(), SPOOL_JOURNAL_FILE));
+            int recovered = journal.getRecoveredJobs().size();
+            printSpooler.restore(journal.getRecoveredJobs());
+            printSpooler.setJournal(journal);
+            android.util.Log.d(TAG, "Spool journal opened, " + recovered + " job(s) recovered");
+        } catch (IOException e) {
+            // Printing still works, queued jobs just won't survive a crash
+            android.util.Log.e(TAG, "Failed to open spool journal", e);
+        }
+    }
+
     @PluginMethod
     public void listUsbDevices(PluginCall call) {
         usbPrinterManager.listUsbDevices(call);
@@ -42,7 +199,9 @@ public class ThermalPrinterPlugin extends Plugin {
             return;
         }
         
-        usbPrinterManager.connectToPrinter(vendorId, productId, call);
+        // Download graphics may not survive a reconnect; upload them again
+        graphicsStore.forgetVolatile();
+        usbPrinterManager.connectToPrinter(vendorId, productId, call.getString("deviceName"), call);
     }
 
     @PluginMethod
@@ -50,6 +209,87 @@ public class ThermalPrinterPlugin extends Plugin {
         usbPrinterManager.disconnectPrinter(call);
     }
 
+    /** Raw TCP printer (or the simulator) in place of the USB printer. */
+    @PluginMethod
+    public void connectToNetworkPrinter(PluginCall call) {
+        String host = call.getString("host");
+        int port = call.getInt("port", SocketTransport.DEFAULT_PORT);
+        
+        if (host == null) {
+            call.reject("host is required");
+            return;
+        }
+        
+        graphicsStore.forgetVolatile();
+        usbPrinterManager.connectToNetworkPrinter(host, port, call);
+    }
+
+    /**
+     * Starts an in-process ESC/POS printer on localhost for load tests;
+     * connect to it with connectToNetworkPrinter. Port 0 (the default)
+     * picks a free port; bytesPerSecond throttles it like a slow printer.
+     */
+    @PluginMethod
+    public void startPrinterSimulator(PluginCall call) {
+        int port = call.getInt("port", 0);
+        long bytesPerSecond = call.getInt("bytesPerSecond", 0);
+        try {
+            PrinterSimulator simulator;
+            synchronized (this) {
+                if (printerSimulator != null) {
+                    printerSimulator.close();
+                    printerSimulator = null;
+                }
+                simulator = new PrinterSimulator(port, bytesPerSecond);
+                printerSimulator = simulator;
+                android.util.Log.d(TAG, "Printer simulator listening on port " + simulator.getPort());
+            }
+            
+            JSObject result = new JSObject();
+            result.put("host", simulator.getHost());
+            result.put("port", simulator.getPort());
+            result.put("bytesPerSecond", bytesPerSecond);
+            call.resolve(result);
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Failed to start printer simulator", e);
+            call.reject("Failed to start printer simulator: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getPrinterSimulatorStats(PluginCall call) {
+        PrinterSimulator simulator = printerSimulator;
+        if (simulator == null) {
+            call.reject("Printer simulator is not running", "NOT_RUNNING");
+            return;
+        }
+        
+        PrinterSimulator.Stats stats = simulator.getStats();
+        JSObject result = new JSObject();
+        result.put("connections", stats.connections);
+        result.put("bytes", stats.bytes);
+        result.put("bytesPerSecond", stats.bytesPerSecond);
+        result.put("commands", stats.commands);
+        result.put("textBytes", stats.textBytes);
+        result.put("lines", stats.lines);
+        result.put("cuts", stats.cuts);
+        result.put("rasterBytes", stats.rasterBytes);
+        result.put("graphicsBytes", stats.graphicsBytes);
+        result.put("statusRequests", stats.statusRequests);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void stopPrinterSimulator(PluginCall call) {
+        synchronized (this) {
+            if (printerSimulator != null) {
+                printerSimulator.close();
+                printerSimulator = null;
+            }
+        }
+        call.resolve();
+    }
+
     @PluginMethod
     public void printRawData(PluginCall call) {
         String data = call.getString("data");
@@ -59,7 +299,731 @@ public class ThermalPrinterPlugin extends Plugin {
             return;
         }
         
-        usbPrinterManager.printRawData(data, call);
+        if (!usbPrinterManager.isConnected()) {
+            call.reject("Printer not connected");
+            return;
+        }
+        
+        // Fail fast instead of timing out against a printer that can't print;
+        // with hold the job waits in the queue until the printer recovers
+        PrinterStatus status = usbPrinterManager.getPrinterStatus();
+        if (status != null && status.isError() && !call.getBoolean("hold", false)) {
+            call.reject("Printer not ready: " + status, "PRINTER_ERROR");
+            return;
+        }
+        
+        try {
+            byte[] bytes = decodePayload(data);
+            int priority = PrintJob.parsePriority(call.getString("priority"));
+            
+            // Goes through the spooler so concurrent calls never race on the
+            // connection; resolves once the job has been written
+            printSpooler.submit(bytes, priority, new TransferCallback() {
+                @Override
+                public void onProgress(int bytesSent, int totalBytes) {
+                }
+
+                @Override
+                public void onComplete(int bytesTransferred) {
+                    JSObject result = new JSObject();
+                    result.put("success", true);
+                    result.put("bytesTransferred", bytesTransferred);
+                    result.put("message", "Data sent to printer successfully");
+                    call.resolve(result);
+                }
+
+                @Override
+                public void onError(String message) {
+                    call.reject("Failed to send data to printer (" + message + ")");
+                }
+            });
+        } catch (PrintSpooler.QueueFullException e) {
+            call.reject(e.getMessage(), "QUEUE_FULL");
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error printing data", e);
+            call.reject("Failed to print data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Latest paper/cover/error status from the printer. Changes are also
+     * pushed as "printerStatus" events. {@code available} is false when the
+     * printer has no status channel (or is driven through the SDK).
+     */
+    @PluginMethod
+    public void getPrinterStatus(PluginCall call) {
+        PrinterStatus status = usbPrinterManager.getPrinterStatus();
+        if (status == null) {
+            JSObject result = new JSObject();
+            result.put("available", false);
+            result.put("connected", usbPrinterManager.isConnected());
+            call.resolve(result);
+            return;
+        }
+        call.resolve(statusToJSObject(status));
+    }
+
+    /**
+     * Diagnostic: throughput, chunk size, depth and timeout learned for the
+     * connected printer, plus saved profiles of every model seen so far.
+     */
+    @PluginMethod
+    public void getTransportProfile(PluginCall call) {
+        call.resolve(usbPrinterManager.getTransportProfile());
+    }
+
+    /**
+     * Opens a printer as a named station (e.g. "kitchen") that stays
+     * connected alongside the others. {@code deviceName} picks one of several
+     * identical printers. Opening an already open printer only renames it.
+     */
+    @PluginMethod
+    public void openStation(PluginCall call) {
+        String name = call.getString("station");
+        Integer vendorId = call.getInt("vendorId");
+        Integer productId = call.getInt("productId");
+        
+        if (name == null || vendorId == null || productId == null) {
+            call.reject("station, vendorId and productId are required");
+            return;
+        }
+        
+        UsbDevice device = usbPrinterManager.findDevice(vendorId, productId, call.getString("deviceName"));
+        if (device == null) {
+            call.reject("Device not found with vendorId: " + vendorId + " and productId: " + productId);
+            return;
+        }
+        
+        // Stays pending while the user answers the permission dialog, if any
+        usbPrinterManager.requestPermission(device, new UsbPrinterManager.PermissionCallback() {
+            @Override
+            public void onGranted(UsbDevice granted) {
+                try {
+                    call.resolve(stationToJSObject(printerRegistry.open(name, granted)));
+                } catch (IOException e) {
+                    android.util.Log.e(TAG, "Error opening station " + name, e);
+                    call.reject("Failed to open station: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void onDenied(String message, String code) {
+                call.reject(message, code);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void closeStation(PluginCall call) {
+        String name = call.getString("station");
+        
+        if (name == null) {
+            call.reject("station is required");
+            return;
+        }
+        
+        JSObject result = new JSObject();
+        result.put("closed", printerRegistry.close(name));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void listStations(PluginCall call) {
+        JSArray stations = new JSArray();
+        for (PrinterRegistry.Station station : printerRegistry.getStations()) {
+            stations.put(stationToJSObject(station));
+        }
+        
+        JSObject result = new JSObject();
+        result.put("stations", stations);
+        call.resolve(result);
+    }
+
+    /**
+     * Sends one order to several stations in parallel. Each target is
+     * {@code {station, data}} (data defaults to the top-level data). Resolves
+     * once {@code quorum} stations (default: all) have printed, or rejects
+     * with QUORUM_NOT_MET as soon as too many have failed; stations still
+     * printing then keep reporting through "printJobStatus" events.
+     */
+    @PluginMethod
+    public void printToStations(PluginCall call) {
+        JSArray targets = call.getArray("targets");
+        
+        if (targets == null || targets.length() == 0) {
+            call.reject("targets is required");
+            return;
+        }
+        
+        try {
+            String shared = call.getString("data");
+            byte[] sharedBytes = shared != null ? decodePayload(shared) : null;
+            List<PrinterRegistry.Target> jobs = new ArrayList<>(targets.length());
+            for (int i = 0; i < targets.length(); i++) {
+                org.json.JSONObject target = targets.getJSONObject(i);
+                String station = target.optString("station", null);
+                String data = target.optString("data", null);
+                byte[] bytes = data != null ? decodePayload(data) : sharedBytes;
+                if (station == null || bytes == null) {
+                    call.reject("Each target needs a station and data");
+                    return;
+                }
+                jobs.add(new PrinterRegistry.Target(station, bytes));
+            }
+            
+            int quorum = call.getInt("quorum", jobs.size());
+            int priority = PrintJob.parsePriority(call.getString("priority"));
+            printerRegistry.print(jobs, quorum, priority, (fanOut, quorumMet) -> {
+                JSObject result = fanOutToJSObject(fanOut, quorumMet);
+                if (quorumMet) {
+                    call.resolve(result);
+                } else {
+                    call.reject("Only " + fanOut.getPrinted() + " of " + fanOut.getQuorum()
+                            + " required stations printed", "QUORUM_NOT_MET", result);
+                }
+            });
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error printing to stations", e);
+            call.reject("Failed to print to stations: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void submitPrintJob(PluginCall call) {
+        String data = call.getString("data");
+        
+        if (data == null) {
+            call.reject("data is required");
+            return;
+        }
+        
+        try {
+            byte[] bytes = decodePayload(data);
+            int priority = PrintJob.parsePriority(call.getString("priority"));
+            
+            // Resolves as soon as the job is queued; progress and completion
+            // are reported through "printJobStatus" events
+            PrintJob job = printSpooler.submit(bytes, priority, null);
+            call.resolve(jobToJSObject(job));
+        } catch (PrintSpooler.QueueFullException e) {
+            call.reject(e.getMessage(), "QUEUE_FULL");
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error submitting print job", e);
+            call.reject("Failed to submit print job: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes a structured receipt description natively (see
+     * {@link ReceiptDescription}) and queues it. With dryRun the receipt is
+     * only encoded, {@code iterations} times, and the average encode time is
+     * returned for benchmarking against the JS path.
+     */
+    @PluginMethod
+    public void printReceipt(PluginCall call) {
+        JSArray ops = call.getArray("ops");
+        
+        if (ops == null) {
+            call.reject("ops is required");
+            return;
+        }
+        
+        int columns = call.getInt("columns", ReceiptDescription.DEFAULT_COLUMNS);
+        EscPosEncoder.CodePage codePage = EscPosEncoder.CodePage.parse(call.getString("codePage"));
+        boolean dryRun = call.getBoolean("dryRun", false);
+        int iterations = dryRun ? Math.max(1, call.getInt("iterations", 1)) : 1;
+        
+        try {
+            synchronized (receiptEncoder) {
+                String deviceKey = usbPrinterManager.getDeviceKey();
+                GraphicsStore.Batch graphics = null;
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    graphics = graphicsStore.batch(deviceKey);
+                    receiptEncoder.reset();
+                    ReceiptDescription.encode(ops, columns, codePage, receiptEncoder, graphics);
+                }
+                double encodeMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+                int size = receiptEncoder.size();
+                
+                if (dryRun) {
+                    JSObject result = new JSObject();
+                    result.put("totalBytes", size);
+                    result.put("encodeMicros", encodeMicros);
+                    call.resolve(result);
+                    return;
+                }
+                
+                printerMetrics.getEncode().recordSince(start);
+                GraphicsStore.Batch uploads = graphics;
+                PrintJob job = submitCopy(receiptEncoder.array(), size, PrintJob.parsePriority(call.getString("priority")),
+                        () -> uploads.commit(usbPrinterManager.getDeviceKey()));
+                JSObject result = jobToJSObject(job);
+                result.put("encodeMicros", encodeMicros);
+                result.put("graphicsUploaded", graphics.getUploadCount());
+                call.resolve(result);
+            }
+        } catch (PrintSpooler.QueueFullException e) {
+            call.reject(e.getMessage(), "QUEUE_FULL");
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error encoding receipt", e);
+            call.reject("Failed to encode receipt: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints a PNG/JPEG (Base64 in {@code data}) as a dithered raster image
+     * scaled to the printer width. Strips are encoded straight from the
+     * decoded bitmap rows; dryRun reports sizes and timings without printing.
+     */
+    @PluginMethod
+    public void printImage(PluginCall call) {
+        String data = call.getString("data");
+        
+        if (data == null) {
+            call.reject("data is required");
+            return;
+        }
+        
+        int width = call.getInt("width", BitmapRaster.PRINTER_DOTS);
+        RasterEncoder.Dither dither = RasterEncoder.Dither.parse(call.getString("dither"));
+        RasterEncoder.Format format = RasterEncoder.Format.parse(call.getString("format"));
+        EscPosEncoder.Alignment alignment = EscPosEncoder.Alignment.parse(call.getString("align", "center"));
+        int feed = call.getInt("feed", 0);
+        boolean dryRun = call.getBoolean("dryRun", false);
+        
+        Bitmap bitmap = null;
+        try {
+            long start = System.nanoTime();
+            bitmap = BitmapRaster.decode(decodePayload(data), width);
+            long decoded = System.nanoTime();
+            
+            synchronized (receiptEncoder) {
+                receiptEncoder.reset().initialize().align(alignment);
+                rasterEncoder.encode(BitmapRaster.rows(bitmap), bitmap.getWidth(), bitmap.getHeight(),
+                        dither, format, receiptEncoder);
+                receiptEncoder.align(EscPosEncoder.Alignment.LEFT);
+                if (feed > 0) {
+                    receiptEncoder.feed(feed);
+                }
+                long encoded = System.nanoTime();
+                
+                JSObject result;
+                if (dryRun) {
+                    result = new JSObject();
+                    result.put("totalBytes", receiptEncoder.size());
+                } else {
+                    printerMetrics.getEncode().recordNanos(encoded - decoded);
+                    PrintJob job = submitCopy(receiptEncoder.array(), receiptEncoder.size(),
+                            PrintJob.parsePriority(call.getString("priority")));
+                    result = jobToJSObject(job);
+                }
+                result.put("width", bitmap.getWidth());
+                result.put("height", bitmap.getHeight());
+                result.put("decodeMicros", (decoded - start) / 1000.0);
+                result.put("rasterMicros", (encoded - decoded) / 1000.0);
+                call.resolve(result);
+            }
+        } catch (PrintSpooler.QueueFullException e) {
+            call.reject(e.getMessage(), "QUEUE_FULL");
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error rasterising image", e);
+            call.reject("Failed to print image: " + e.getMessage());
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Compiles a receipt template (see {@link ReceiptTemplate}) and caches it
+     * under id/version. Re-registering an id/version that is still cached is
+     * a no-op, so the web layer can register on every start.
+     */
+    @PluginMethod
+    public void registerTemplate(PluginCall call) {
+        String id = call.getString("id");
+        JSArray ops = call.getArray("ops");
+        
+        if (id == null || ops == null) {
+            call.reject("id and ops are required");
+            return;
+        }
+        
+        int version = call.getInt("version", 1);
+        
+        try {
+            ReceiptTemplate template = templateCache.get(id, version);
+            boolean cached = template != null;
+            long start = System.nanoTime();
+            if (!cached) {
+                template = ReceiptTemplate.compile(id, version, ops,
+                        call.getInt("columns", ReceiptDescription.DEFAULT_COLUMNS),
+                        EscPosEncoder.CodePage.parse(call.getString("codePage")));
+                templateCache.put(template);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("id", id);
+            result.put("version", version);
+            result.put("cached", cached);
+            result.put("segments", template.getSegmentCount());
+            result.put("slots", template.getSlotCount());
+            result.put("staticBytes", template.getStaticBytes());
+            result.put("compileMicros", (System.nanoTime() - start) / 1000.0);
+            call.resolve(result);
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error compiling template", e);
+            call.reject("Failed to compile template: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renders a registered template with the per-sale {@code values} and
+     * queues it. Rejects with TEMPLATE_NOT_FOUND if the template was never
+     * registered or has been evicted, so the caller can register it again.
+     */
+    @PluginMethod
+    public void printTemplate(PluginCall call) {
+        String id = call.getString("id");
+        JSObject values = call.getObject("values", new JSObject());
+        
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+        
+        Integer version = call.getInt("version");
+        ReceiptTemplate template = version != null ? templateCache.get(id, version) : templateCache.getLatest(id);
+        if (template == null) {
+            call.reject("Template " + id + " is not registered", "TEMPLATE_NOT_FOUND");
+            return;
+        }
+        
+        boolean dryRun = call.getBoolean("dryRun", false);
+        int iterations = dryRun ? Math.max(1, call.getInt("iterations", 1)) : 1;
+        
+        try {
+            synchronized (receiptEncoder) {
+                String deviceKey = usbPrinterManager.getDeviceKey();
+                GraphicsStore.Batch graphics = null;
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    graphics = graphicsStore.batch(deviceKey);
+                    receiptEncoder.reset();
+                    template.render(values, receiptEncoder, graphics);
+                }
+                double renderMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+                int size = receiptEncoder.size();
+                
+                JSObject result;
+                if (dryRun) {
+                    result = new JSObject();
+                    result.put("totalBytes", size);
+                } else {
+                    printerMetrics.getEncode().recordSince(start);
+                    GraphicsStore.Batch uploads = graphics;
+                    PrintJob job = submitCopy(receiptEncoder.array(), size, PrintJob.parsePriority(call.getString("priority")),
+                            () -> uploads.commit(usbPrinterManager.getDeviceKey()));
+                    result = jobToJSObject(job);
+                    result.put("graphicsUploaded", graphics.getUploadCount());
+                }
+                result.put("renderMicros", renderMicros);
+                call.resolve(result);
+            }
+        } catch (PrintSpooler.QueueFullException e) {
+            call.reject(e.getMessage(), "QUEUE_FULL");
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error rendering template", e);
+            call.reject("Failed to render template: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rasterises a logo or header image and registers it under {@code key}
+     * for use as a {@code graphic} op in printReceipt. It is uploaded to the
+     * printer's NV (default) or download graphics memory by the first receipt
+     * that uses it, and only referenced after that.
+     */
+    @PluginMethod
+    public void registerGraphic(PluginCall call) {
+        String key = call.getString("key");
+        String data = call.getString("data");
+        
+        if (key == null || data == null) {
+            call.reject("key and data are required");
+            return;
+        }
+        
+        int width = call.getInt("width", BitmapRaster.PRINTER_DOTS);
+        boolean nv = !"download".equalsIgnoreCase(call.getString("storage", "nv"));
+        RasterEncoder.Dither dither = RasterEncoder.Dither.parse(call.getString("dither"));
+        
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapRaster.decode(decodePayload(data), width);
+            byte[] bits;
+            synchronized (receiptEncoder) {
+                bits = rasterEncoder.encodeBitmap(BitmapRaster.rows(bitmap), bitmap.getWidth(), bitmap.getHeight(), dither);
+            }
+            GraphicsStore.Graphic graphic = graphicsStore.register(key, nv, bitmap.getWidth(), bitmap.getHeight(), bits);
+            
+            JSObject result = new JSObject();
+            result.put("key", graphic.key);
+            result.put("storage", graphic.nv ? "nv" : "download");
+            result.put("width", graphic.width);
+            result.put("height", graphic.height);
+            result.put("hash", graphic.hash);
+            result.put("totalBytes", bits.length);
+            call.resolve(result);
+        } catch (Exception e) {
+            android.util.Log.e(TAG, "Error registering graphic", e);
+            call.reject("Failed to register graphic: " + e.getMessage());
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Starts (once) the loopback endpoint the web layer can POST raw print
+     * bytes to, avoiding the Base64 round-trip of printRawData.
+     */
+    @PluginMethod
+    public void openBinaryChannel(PluginCall call) {
+        try {
+            synchronized (this) {
+                if (binaryPrintServer == null) {
+                    binaryPrintServer = new BinaryPrintServer(printSpooler, bufferPool);
+                    android.util.Log.d(TAG, "Binary print channel listening on port " + binaryPrintServer.getPort());
+                }
+            }
+            
+            JSObject result = new JSObject();
+            result.put("url", binaryPrintServer.getUrl());
+            result.put("token", binaryPrintServer.getToken());
+            result.put("maxBytes", BufferPool.maxBufferSize());
+            call.resolve(result);
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Failed to open binary print channel", e);
+            call.reject("Failed to open binary print channel: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getPrintJob(PluginCall call) {
+        Long jobId = call.getLong("jobId");
+        
+        if (jobId == null) {
+            call.reject("jobId is required");
+            return;
+        }
+        
+        PrintJob job = printSpooler.getJob(jobId);
+        if (job == null) {
+            call.reject("Unknown print job: " + jobId);
+            return;
+        }
+        
+        call.resolve(jobToJSObject(job));
+    }
+
+    @PluginMethod
+    public void cancelPrintJob(PluginCall call) {
+        Long jobId = call.getLong("jobId");
+        
+        if (jobId == null) {
+            call.reject("jobId is required");
+            return;
+        }
+        
+        JSObject result = new JSObject();
+        result.put("cancelled", printSpooler.cancel(jobId));
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getSpoolerStatus(PluginCall call) {
+        PrintJob activeJob = printSpooler.getActiveJob();
+        
+        JSObject result = new JSObject();
+        result.put("online", printSpooler.isOnline());
+        result.put("queueDepth", printSpooler.getQueueDepth());
+        result.put("maxQueueDepth", printSpooler.getMaxQueueDepth());
+        if (activeJob != null) {
+            result.put("activeJob", jobToJSObject(activeJob));
+        }
+        call.resolve(result);
+    }
+
+    /**
+     * Latency histograms (microseconds) and counters for the print path: payload
+     * decode and encode overall, then per printer queue wait, transfer and
+     * end-to-end time, bytes sent, retries, short writes and connects /
+     * disconnects. Also pushed as a "printerMetrics" event every few seconds
+     * while something is listening and anything changed.
+     */
+    @PluginMethod
+    public void getPrinterMetrics(PluginCall call) {
+        call.resolve(metricsToJSObject());
+    }
+
+    /**
+     * Returns the print path trace (see {@link TraceLog}), oldest event
+     * first, plus the trace saved by the last crash if there was one. With
+     * clear, both are dropped afterwards. {@code enabled} turns recording
+     * on or off from here on.
+     */
+    @PluginMethod
+    public void dumpTrace(PluginCall call) {
+        Boolean enabled = call.getBoolean("enabled");
+        File crashFile = new File(getContext().getFilesDir(), CRASH_TRACE_FILE);
+        
+        JSArray events = new JSArray();
+        for (String line : TraceLog.dump()) {
+            events.put(line);
+        }
+        
+        JSObject result = new JSObject();
+        result.put("events", events);
+        result.put("recorded", TraceLog.getRecorded());
+        result.put("capacity", TraceLog.CAPACITY);
+        if (crashFile.exists()) {
+            try {
+                result.put("lastCrash", readText(crashFile));
+            } catch (IOException e) {
+                android.util.Log.e(TAG, "Failed to read crash trace", e);
+            }
+        }
+        
+        if (call.getBoolean("clear", false)) {
+            TraceLog.clear();
+            if (crashFile.exists() && !crashFile.delete()) {
+                android.util.Log.w(TAG, "Failed to delete crash trace");
+            }
+        }
+        if (enabled != null) {
+            TraceLog.setEnabled(enabled);
+        }
+        result.put("enabled", TraceLog.isEnabled());
+        call.resolve(result);
+    }
+
+    /**
+     * Starts recording the exact bytes and timing of every job sent to the
+     * connected printer into {@code name}.tpcap in the app's files
+     * directory, replacing any capture in progress. Pull the file (see
+     * {@code path}) and replay it with the printer-core replayCapture task,
+     * or on the device with replayCapture.
+     */
+    @PluginMethod
+    public void startCapture(PluginCall call) {
+        String name = call.getString("name", "capture-" + System.currentTimeMillis());
+        
+        File file = captureFile(name);
+        if (file == null) {
+            call.reject("Invalid capture name: " + name);
+            return;
+        }
+        
+        try {
+            PrintCapture previous = usbPrinterManager.setCapture(PrintCapture.create(file));
+            if (previous != null) {
+                previous.close();
+            }
+            JSObject result = new JSObject();
+            result.put("name", name);
+            result.put("path", file.getAbsolutePath());
+            call.resolve(result);
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Failed to start capture", e);
+            call.reject("Failed to start capture: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void stopCapture(PluginCall call) {
+        PrintCapture capture = usbPrinterManager.setCapture(null);
+        if (capture == null) {
+            call.reject("No capture in progress", "NOT_RUNNING");
+            return;
+        }
+        
+        JSObject result = new JSObject();
+        result.put("path", capture.getFile().getAbsolutePath());
+        result.put("jobs", capture.getJobCount());
+        result.put("bytes", capture.getBytes());
+        try {
+            capture.close();
+        } catch (IOException e) {
+            android.util.Log.e(TAG, "Failed to close capture", e);
+            result.put("error", e.getMessage());
+        }
+        if (capture.getLastError() != null) {
+            result.put("error", capture.getLastError().getMessage());
+        }
+        call.resolve(result);
+    }
+
+    /**
+     * Replays capture {@code name} through the print queue, the same way
+     * printRawData jobs go, at the recorded pace or {@code speed} ("max" or
+     * a factor). Resolves once the last job has printed, with the recorded
+     * and replayed transfer times.
+     */
+    @PluginMethod
+    public void replayCapture(PluginCall call) {
+        String name = call.getString("name");
+        
+        File file = name != null ? captureFile(name) : null;
+        if (file == null || !file.exists()) {
+            call.reject("Unknown capture: " + name);
+            return;
+        }
+        
+        double speed;
+        try {
+            speed = CaptureReplayer.parseSpeed(call.getString("speed"));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        
+        Thread replay = new Thread(() -> {
+            try {
+                CaptureReplayer.Result replayed = new CaptureReplayer(speed).replay(file,
+                        (record, callback) -> printSpooler.submit(record.data, record.priority, callback));
+                JSObject result = new JSObject();
+                result.put("jobs", replayed.jobs);
+                result.put("failed", replayed.failed);
+                result.put("bytes", replayed.bytes);
+                result.put("elapsedMs", replayed.elapsedNanos / 1000000);
+                result.put("recordedTransferP50", replayed.recorded.getValueAtPercentile(50));
+                result.put("recordedTransferP99", replayed.recorded.getValueAtPercentile(99));
+                result.put("replayedTransferP50", replayed.replayed.getValueAtPercentile(50));
+                result.put("replayedTransferP99", replayed.replayed.getValueAtPercentile(99));
+                call.resolve(result);
+            } catch (Exception e) {
+                android.util.Log.e(TAG, "Error replaying capture", e);
+                call.reject("Failed to replay capture: " + e.getMessage());
+            }
+        }, "CaptureReplay");
+        replay.setDaemon(true);
+        replay.start();
+    }
+
+    /** Null if {@code name} would leave the captures directory. */
+    private File captureFile(String name) {
+        if (name.isEmpty() || name.contains("/") || name.startsWith(".")) {
+            return null;
+        }
+        File dir = new File(getContext().getFilesDir(), CAPTURE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        return new File(dir, name.endsWith(CAPTURE_EXTENSION) ? name : name + CAPTURE_EXTENSION);
     }
 
     @PluginMethod
@@ -70,17 +1034,269 @@ public class ThermalPrinterPlugin extends Plugin {
     @PluginMethod
     public void showOnSecondaryDisplay(PluginCall call) {
         String html = call.getString("html");
+        String mode = call.getString("mode", CustomerDisplayPresentation.MODE_HTML);
         
-        if (html == null) {
+        if (!CustomerDisplayPresentation.MODE_HTML.equals(mode) && !CustomerDisplayPresentation.MODE_NATIVE.equals(mode)) {
+            call.reject("mode must be 'html' or 'native'", "INVALID_MODE");
+            return;
+        }
+        if (html == null && CustomerDisplayPresentation.MODE_HTML.equals(mode)) {
             call.reject("html is required");
             return;
         }
         
-        dualScreenManager.showOnSecondaryDisplay(html, call);
+        dualScreenManager.showOnSecondaryDisplay(html, mode, call);
+    }
+
+    @PluginMethod
+    public void getCustomerDisplayStats(PluginCall call) {
+        dualScreenManager.getCustomerDisplayStats(call);
+    }
+
+    @PluginMethod
+    public void updateSecondaryDisplay(PluginCall call) {
+        JSObject state = call.getObject("state");
+        
+        if (state == null) {
+            call.reject("state is required");
+            return;
+        }
+        
+        dualScreenManager.updateSecondaryDisplay(state, call);
+    }
+
+    @PluginMethod
+    public void startSlideshow(PluginCall call) {
+        JSArray sources = call.getArray("sources");
+        long intervalMs = call.getInt("intervalMs", 5000);
+        
+        if (sources == null || sources.length() == 0) {
+            call.reject("sources is required");
+            return;
+        }
+        if (intervalMs < 500) {
+            call.reject("intervalMs must be at least 500");
+            return;
+        }
+        
+        List<String> slides = new ArrayList<>();
+        for (int i = 0; i < sources.length(); i++) {
+            String source = sources.optString(i, "");
+            if (source.isEmpty()) {
+                call.reject("sources must be an array of image URLs or paths");
+                return;
+            }
+            slides.add(source);
+        }
+        dualScreenManager.startSlideshow(slides, intervalMs, call);
+    }
+    
+    @PluginMethod
+    public void stopSlideshow(PluginCall call) {
+        dualScreenManager.stopSlideshow(call);
     }
 
     @PluginMethod
     public void hideSecondaryDisplay(PluginCall call) {
         dualScreenManager.hideSecondaryDisplay(call);
     }
+
+    /** Base64Payload.decode, timed into the decode histogram and the trace. */
+    private byte[] decodePayload(String data) {
+        long start = System.nanoTime();
+        byte[] bytes = Base64Payload.decode(data);
+        long elapsed = System.nanoTime() - start;
+        printerMetrics.getDecode().recordNanos(elapsed);
+        TraceLog.event(TraceLog.PAYLOAD_DECODED, bytes.length, elapsed / 1000);
+        return bytes;
+    }
+
+    private static String readText(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Queues a copy of {@code data} held in a pooled buffer, so callers can
+     * keep reusing their own buffer. The pooled buffer is returned once the
+     * job finishes; {@code onPrinted} (optional) runs if it printed.
+     */
+    private PrintJob submitCopy(byte[] data, int length, int priority) throws PrintSpooler.QueueFullException {
+        return submitCopy(data, length, priority, null);
+    }
+
+    private PrintJob submitCopy(byte[] data, int length, int priority, Runnable onPrinted)
+            throws PrintSpooler.QueueFullException {
+        byte[] buffer = bufferPool.acquire(length);
+        System.arraycopy(data, 0, buffer, 0, length);
+        try {
+            return printSpooler.submit(buffer, length, priority, new TransferCallback() {
+                @Override
+                public void onProgress(int bytesSent, int totalBytes) {
+                }
+
+                @Override
+                public void onComplete(int bytesTransferred) {
+                    bufferPool.release(buffer);
+                    if (onPrinted != null) {
+                        onPrinted.run();
+                    }
+                }
+
+                @Override
+                public void onError(String message) {
+                    bufferPool.release(buffer);
+                }
+            });
+        } catch (PrintSpooler.QueueFullException e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        metricsHandler.removeCallbacks(metricsReporter);
+        PrintCapture capture = usbPrinterManager.setCapture(null);
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                android.util.Log.e(TAG, "Failed to close capture", e);
+            }
+        }
+        printerRegistry.closeAll();
+        usbPrinterManager.close();
+        dualScreenManager.release();
+        synchronized (this) {
+            if (binaryPrintServer != null) {
+                binaryPrintServer.close();
+                binaryPrintServer = null;
+            }
+            if (printerSimulator != null) {
+                printerSimulator.close();
+                printerSimulator = null;
+            }
+        }
+        super.handleOnDestroy();
+    }
+
+    private JSObject statusToJSObject(PrinterStatus status) {
+        JSObject result = new JSObject();
+        result.put("available", true);
+        result.put("connected", true);
+        result.put("ready", !status.isError());
+        result.put("offline", status.isOffline());
+        result.put("coverOpen", status.isCoverOpen());
+        result.put("paperNearEnd", status.isPaperNearEnd());
+        result.put("paperEnd", status.isPaperEnd());
+        result.put("cutterError", status.isCutterError());
+        result.put("unrecoverableError", status.isUnrecoverableError());
+        result.put("autoRecoverableError", status.isAutoRecoverableError());
+        result.put("message", status.toString());
+        return result;
+    }
+
+    private JSObject metricsToJSObject() {
+        JSArray printers = new JSArray();
+        for (PrinterMetrics.Device device : printerMetrics.getDevices()) {
+            JSObject printer = new JSObject();
+            printer.put("deviceKey", device.getKey());
+            printer.put("queueWait", histogramToJSObject(device.getQueueWait()));
+            printer.put("transfer", histogramToJSObject(device.getTransfer()));
+            printer.put("endToEnd", histogramToJSObject(device.getEndToEnd()));
+            printer.put("jobs", device.getJobs());
+            printer.put("failedJobs", device.getFailedJobs());
+            printer.put("bytesSent", device.getBytesSent());
+            printer.put("retries", device.getRetries());
+            printer.put("shortWrites", device.getShortWrites());
+            printer.put("connects", device.getConnects());
+            printer.put("disconnects", device.getDisconnects());
+            printers.put(printer);
+        }
+        
+        JSObject result = new JSObject();
+        result.put("decode", histogramToJSObject(printerMetrics.getDecode()));
+        result.put("encode", histogramToJSObject(printerMetrics.getEncode()));
+        result.put("printers", printers);
+        result.put("deviceKey", usbPrinterManager.getDeviceKey());
+        return result;
+    }
+
+    private JSObject histogramToJSObject(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        JSObject result = new JSObject();
+        result.put("count", snapshot.getCount());
+        result.put("min", snapshot.getMin());
+        result.put("mean", Math.round(snapshot.getMean()));
+        result.put("p50", snapshot.getValueAtPercentile(50));
+        result.put("p90", snapshot.getValueAtPercentile(90));
+        result.put("p99", snapshot.getValueAtPercentile(99));
+        result.put("p999", snapshot.getValueAtPercentile(99.9));
+        result.put("max", snapshot.getMax());
+        return result;
+    }
+
+    private JSObject stationToJSObject(PrinterRegistry.Station station) {
+        JSObject result = new JSObject();
+        result.put("station", station.getName());
+        result.put("deviceName", station.getDevice().getDeviceName());
+        result.put("deviceKey", station.getDeviceKey());
+        result.put("connected", station.isConnected());
+        result.put("queueDepth", station.getSpooler().getQueueDepth());
+        PrinterStatus status = station.getStatus();
+        if (status != null) {
+            result.put("ready", !status.isError());
+            result.put("message", status.toString());
+        }
+        return result;
+    }
+
+    private JSObject fanOutToJSObject(FanOut fanOut, boolean quorumMet) {
+        JSArray results = new JSArray();
+        for (int i = 0; i < fanOut.getTargetCount(); i++) {
+            JSObject target = new JSObject();
+            target.put("station", fanOut.getTarget(i));
+            target.put("state", fanOut.getState(i).name().toLowerCase());
+            target.put("bytesTransferred", fanOut.getBytesTransferred(i));
+            if (fanOut.getError(i) != null) {
+                target.put("error", fanOut.getError(i));
+            }
+            results.put(target);
+        }
+        
+        JSObject result = new JSObject();
+        result.put("quorumMet", quorumMet);
+        result.put("quorum", fanOut.getQuorum());
+        result.put("printed", fanOut.getPrinted());
+        result.put("failed", fanOut.getFailed());
+        result.put("elapsedMs", fanOut.getElapsedMillis());
+        result.put("results", results);
+        return result;
+    }
+
+    private JSObject jobToJSObject(PrintJob job) {
+        return jobToJSObject(job, printSpooler);
+    }
+
+    private JSObject jobToJSObject(PrintJob job, PrintSpooler spooler) {
+        JSObject result = new JSObject();
+        result.put("jobId", job.getId());
+        result.put("state", job.getState().name().toLowerCase());
+        result.put("priority", PrintJob.priorityName(job.getPriority()));
+        result.put("bytesSent", job.getBytesSent());
+        result.put("totalBytes", job.getTotalBytes());
+        result.put("queueDepth", spooler.getQueueDepth());
+        if (job.getError() != null) {
+            result.put("error", job.getError());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,253 @@
+package com.thermalprinter.test;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attached USB devices, kept current by the attach/detach broadcasts instead
+ * of walking {@link UsbManager#getDeviceList()} on every call. Each device is
+ * classified once when it appears: printer-class interface, known printer
+ * vendor, or touch display, ranked in the order the web layer picks a
+ * printer. Listener callbacks run on a dedicated background thread, so they
+ * may do blocking work such as reopening a connection.
+ */
+public class UsbDeviceIndex {
+    private static final String TAG = "UsbDeviceIndex";
+
+    // Spirit / VOLCORA thermal printer (also in res/xml/device_filter.xml)
+    private static final int SPIRIT_VENDOR_ID = 0x0483;
+    private static final int SPIRIT_PRODUCT_ID = 0x5720;
+    private static final int VOLCORA_VENDOR_ID = 0x1155;
+    // Ilitek touch controllers on the built-in displays
+    private static final int ILITEK_VENDOR_ID = 0x222A;
+
+    /** Selection order, best first; displays are never picked. */
+    public static final int RANK_PRINTER_CLASS = 1;
+    public static final int RANK_SPIRIT = 2;
+    public static final int RANK_VOLCORA = 3;
+    public static final int RANK_OTHER = 4;
+    public static final int RANK_DISPLAY = 5;
+
+    public interface Listener {
+        void onDeviceAttached(Entry entry);
+        void onDeviceDetached(Entry entry);
+    }
+
+    /** One attached device and its precomputed classification. */
+    public static final class Entry {
+        public final UsbDevice device;
+        public final int rank;
+        final JSObject info;
+
+        private Entry(UsbDevice device, int rank, JSObject info) {
+            this.device = device;
+            this.rank = rank;
+            this.info = info;
+        }
+
+        public boolean isPrinter() {
+            return rank < RANK_OTHER;
+        }
+
+        /** Device description for the web layer; shared, don't modify. */
+        public JSObject toJSObject() {
+            return info;
+        }
+    }
+
+    private final Context context;
+    private final UsbManager usbManager;
+    private final Listener listener;
+    private final HandlerThread thread = new HandlerThread("usb-hotplug");
+    private final Handler handler;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();  // By bus path
+    private List<Entry> ranked = Collections.emptyList();
+    private JSArray rankedInfo = new JSArray();
+
+    private final BroadcastReceiver hotplugReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+            if (device == null) {
+                return;
+            }
+            if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) {
+                Entry entry = classify(device);
+                synchronized (UsbDeviceIndex.this) {
+                    entries.put(device.getDeviceName(), entry);
+                    reindex();
+                }
+                Log.d(TAG, "Attached: " + device.getDeviceName() + " rank " + entry.rank);
+                listener.onDeviceAttached(entry);
+            } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(intent.getAction())) {
+                Entry entry;
+                synchronized (UsbDeviceIndex.this) {
+                    entry = entries.remove(device.getDeviceName());
+                    reindex();
+                }
+                Log.d(TAG, "Detached: " + device.getDeviceName());
+                listener.onDeviceDetached(entry != null ? entry : classify(device));
+            }
+        }
+    };
+
+    public UsbDeviceIndex(Context context, UsbManager usbManager, Listener listener) {
+        this.context = context;
+        this.usbManager = usbManager;
+        this.listener = listener;
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        rescan();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
+        filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(hotplugReceiver, filter, null, handler, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(hotplugReceiver, filter, null, handler);
+        }
+    }
+
+    /** Rebuilds the index from the device list, e.g. in case a broadcast was missed. */
+    public void rescan() {
+        HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
+        synchronized (this) {
+            entries.clear();
+            for (UsbDevice device : deviceList.values()) {
+                entries.put(device.getDeviceName(), classify(device));
+            }
+            reindex();
+        }
+    }
+
+    /** All attached devices, best printer candidate first. */
+    public synchronized List<Entry> getEntries() {
+        return ranked;
+    }
+
+    /** Same as {@link #getEntries()}, as prebuilt device descriptions. */
+    public synchronized JSArray toJSArray() {
+        return rankedInfo;
+    }
+
+    /** Best printer candidate, or null if only displays are attached. */
+    public synchronized Entry getPreferredPrinter() {
+        return !ranked.isEmpty() && ranked.get(0).rank < RANK_DISPLAY ? ranked.get(0) : null;
+    }
+
+    /**
+     * First attached device matching the ids; {@code deviceName} (bus path)
+     * picks one of several identical printers. Null if none is attached.
+     */
+    public synchronized UsbDevice find(int vendorId, int productId, String deviceName) {
+        for (Entry entry : ranked) {
+            UsbDevice device = entry.device;
+            if (device.getVendorId() == vendorId && device.getProductId() == productId
+                    && (deviceName == null || deviceName.equals(device.getDeviceName()))) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether {@code device} may be the printer identified by {@code deviceKey}
+     * (see {@link UsbPrinterConnection#deviceKey}). Serials are compared only
+     * when both are known; without permission a re-plugged device's serial
+     * can't be read yet.
+     */
+    public static boolean matches(String deviceKey, UsbDevice device) {
+        String[] parts = deviceKey.split(":", 3);
+        if (parts.length < 2
+                || !parts[0].equals(String.valueOf(device.getVendorId()))
+                || !parts[1].equals(String.valueOf(device.getProductId()))) {
+            return false;
+        }
+        String serial = parts.length == 3 ? parts[2] : "";
+        String currentSerial = UsbPrinterConnection.serialNumber(device);
+        return serial.isEmpty() || currentSerial.isEmpty() || serial.equals(currentSerial);
+    }
+
+    /** Runs {@code task} on the hot-plug thread, after any pending attach/detach callbacks. */
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    public void close() {
+        try {
+            context.unregisterReceiver(hotplugReceiver);
+        } catch (IllegalArgumentException e) {
+            // Not registered
+        }
+        thread.quitSafely();
+    }
+
+    private void reindex() {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.rank, b.rank));
+        JSArray info = new JSArray();
+        for (Entry entry : sorted) {
+            info.put(entry.info);
+        }
+        ranked = Collections.unmodifiableList(sorted);
+        rankedInfo = info;
+    }
+
+    private static Entry classify(UsbDevice device) {
+        int rank = rank(device);
+        JSObject info = new JSObject();
+        info.put("deviceName", device.getDeviceName());
+        info.put("vendorId", device.getVendorId());
+        info.put("productId", device.getProductId());
+        info.put("deviceClass", device.getDeviceClass());
+        info.put("deviceSubclass", device.getDeviceSubclass());
+        info.put("manufacturerName", device.getManufacturerName());
+        info.put("productName", device.getProductName());
+        info.put("isPrinter", rank < RANK_OTHER);
+        info.put("isDisplay", rank == RANK_DISPLAY);
+        info.put("rank", rank);
+        return new Entry(device, rank, info);
+    }
+
+    private static int rank(UsbDevice device) {
+        String manufacturer = device.getManufacturerName();
+        if (device.getVendorId() == ILITEK_VENDOR_ID
+                || (manufacturer != null && manufacturer.toLowerCase().contains("ilitek"))) {
+            return RANK_DISPLAY;
+        }
+        if (device.getDeviceClass() == UsbConstants.USB_CLASS_PRINTER) {
+            return RANK_PRINTER_CLASS;
+        }
+        for (int i = 0; i < device.getInterfaceCount(); i++) {
+            if (device.getInterface(i).getInterfaceClass() == UsbConstants.USB_CLASS_PRINTER) {
+                return RANK_PRINTER_CLASS;
+            }
+        }
+        if (device.getVendorId() == SPIRIT_VENDOR_ID && device.getProductId() == SPIRIT_PRODUCT_ID) {
+            return RANK_SPIRIT;
+        }
+        if (device.getVendorId() == VOLCORA_VENDOR_ID) {
+            return RANK_VOLCORA;
+        }
+        return RANK_OTHER;
+    }
+}
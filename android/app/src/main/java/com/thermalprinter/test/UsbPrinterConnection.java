@@ -0,0 +1,241 @@
+package com.thermalprinter.test;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+import android.util.Log;
+
+/**
+ * One printer opened in generic USB mode: the claimed interface, its bulk
+ * OUT endpoint, the optional bulk IN (status) endpoint and, once started,
+ * the {@link UsbTransport} writing to it. Several can be open at once, one
+ * per device.
+ */
+public class UsbPrinterConnection implements PrintSpooler.Sink {
+    private static final String TAG = "UsbPrinterConnection";
+    private static final int[] REOPEN_DELAYS_MS = {0, 100, 200, 300, 400};
+
+    private final UsbDevice device;
+    private final UsbDeviceConnection connection;
+    private final UsbInterface usbInterface;
+    private final UsbEndpoint endpoint;
+    private final UsbEndpoint statusEndpoint;
+    private volatile UsbTransport transport;
+    private volatile PrinterMetrics.Device metrics;
+
+    private UsbPrinterConnection(UsbDevice device, UsbDeviceConnection connection, UsbInterface usbInterface,
+                                 UsbEndpoint endpoint, UsbEndpoint statusEndpoint) {
+        this.device = device;
+        this.connection = connection;
+        this.usbInterface = usbInterface;
+        this.endpoint = endpoint;
+        this.statusEndpoint = statusEndpoint;
+    }
+
+    /**
+     * Opens {@code device}, claims interface 0 and finds its bulk endpoints.
+     * Returns null if the device can't be driven as a generic USB printer.
+     * Permission must already have been granted.
+     */
+    public static UsbPrinterConnection open(UsbManager usbManager, UsbDevice device) {
+        UsbDeviceConnection connection = null;
+        try {
+            TraceLog.event(TraceLog.USB_OPEN, device.getVendorId(), device.getProductId(), device.getInterfaceCount());
+
+            // Open USB connection
+            connection = usbManager.openDevice(device);
+            if (connection == null) {
+                Log.e(TAG, "❌ Failed to open USB connection - device may not be accessible");
+                return null;
+            }
+
+            // Find the printer interface (usually interface 0)
+            if (device.getInterfaceCount() == 0) {
+                Log.e(TAG, "❌ No USB interfaces found on device");
+                connection.close();
+                return null;
+            }
+
+            UsbInterface usbInterface = device.getInterface(0);
+            TraceLog.event(TraceLog.USB_INTERFACE, usbInterface.getInterfaceClass(),
+                    usbInterface.getInterfaceSubclass(), usbInterface.getEndpointCount());
+
+            // Claim the interface
+            if (!connection.claimInterface(usbInterface, true)) {
+                Log.e(TAG, "❌ Failed to claim USB interface - device may be in use");
+                connection.close();
+                return null;
+            }
+
+            // Find the bulk OUT endpoint for sending data to printer, and the
+            // bulk IN endpoint the printer reports status on (if it has one)
+            UsbEndpoint endpoint = null;
+            UsbEndpoint statusEndpoint = null;
+            for (int i = 0; i < usbInterface.getEndpointCount(); i++) {
+                UsbEndpoint candidate = usbInterface.getEndpoint(i);
+                TraceLog.event(TraceLog.USB_ENDPOINT, i, candidate.getDirection() | candidate.getType(),
+                        candidate.getMaxPacketSize());
+
+                if (candidate.getType() != UsbConstants.USB_ENDPOINT_XFER_BULK) {
+                    continue;
+                }
+                if (candidate.getDirection() == UsbConstants.USB_DIR_OUT && endpoint == null) {
+                    endpoint = candidate;
+                } else if (candidate.getDirection() == UsbConstants.USB_DIR_IN && statusEndpoint == null) {
+                    statusEndpoint = candidate;
+                }
+            }
+
+            if (endpoint == null) {
+                Log.e(TAG, "❌ No bulk OUT endpoint found - device may not be a printer");
+                connection.releaseInterface(usbInterface);
+                connection.close();
+                return null;
+            }
+
+            TraceLog.event(TraceLog.USB_OPENED, endpoint.getMaxPacketSize(), statusEndpoint != null ? 1 : 0);
+            return new UsbPrinterConnection(device, connection, usbInterface, endpoint, statusEndpoint);
+
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Exception in generic USB connection: " + e.getMessage(), e);
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (Exception ex) {
+                    // Ignore
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Identifies a printer as vendorId:productId:serial so state kept about
+     * it (e.g. stored graphics) isn't applied to another unit of the same
+     * model.
+     */
+    public static String deviceKey(UsbDevice device) {
+        return device.getVendorId() + ":" + device.getProductId() + ":" + serialNumber(device);
+    }
+
+    /** vendorId:productId; settings learned for one unit apply to the whole model. */
+    public static String modelKey(UsbDevice device) {
+        return device.getVendorId() + ":" + device.getProductId();
+    }
+
+    /**
+     * Whether interface 0 has a bulk OUT endpoint, i.e. whether {@link #open}
+     * can work at all. Reads cached descriptors only; no I/O.
+     */
+    public static boolean hasBulkOut(UsbDevice device) {
+        if (device.getInterfaceCount() == 0) {
+            return false;
+        }
+        UsbInterface usbInterface = device.getInterface(0);
+        for (int i = 0; i < usbInterface.getEndpointCount(); i++) {
+            UsbEndpoint endpoint = usbInterface.getEndpoint(i);
+            if (endpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK
+                    && endpoint.getDirection() == UsbConstants.USB_DIR_OUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Serial number, or "" if the device has none or it can't be read yet. */
+    static String serialNumber(UsbDevice device) {
+        String serial = null;
+        try {
+            serial = device.getSerialNumber();
+        } catch (SecurityException e) {
+            // Serial needs permission on Android 10+; fall back to VID:PID
+        }
+        return serial != null ? serial : "";
+    }
+
+    /**
+     * {@link #open} for a printer that was just plugged in, which can refuse
+     * to open for a moment while it finishes enumerating. Gives up after
+     * about a second. Blocks; don't call on the main thread.
+     */
+    public static UsbPrinterConnection openWithRetry(UsbManager usbManager, UsbDevice device) {
+        for (int delay : REOPEN_DELAYS_MS) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            UsbPrinterConnection printer = open(usbManager, device);
+            if (printer != null) {
+                return printer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts the writer (and status reader) with the given pacing. Call once.
+     *
+     * @param metrics where this printer's jobs, retries and short writes are recorded, or null
+     */
+    public void start(FlowController flow, PrinterTransport.StatusListener statusListener,
+                      PrinterMetrics.Device metrics) {
+        this.metrics = metrics;
+        transport = new UsbTransport(connection, endpoint, statusEndpoint, statusListener, flow, metrics);
+    }
+
+    public UsbDevice getDevice() {
+        return device;
+    }
+
+    public UsbEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /** Null until {@link #start} has been called. */
+    public UsbTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Spooler sink: chunked bulk transfer on the transport's writer thread;
+     * completes once the last byte is acknowledged.
+     */
+    @Override
+    public void write(PrintJob job, TransferCallback callback) {
+        UsbTransport writer = transport;
+        if (writer == null) {
+            callback.onError("Printer not connected");
+            return;
+        }
+        PrinterMetrics.Device tracked = metrics;
+        writer.submit(job.getData(), 0, job.getTotalBytes(), tracked != null ? tracked.track(job, callback) : callback);
+    }
+
+    /**
+     * Stops the transport and releases the device, once the transport's
+     * threads are done with it (possibly after this returns).
+     */
+    public void close() {
+        UsbTransport writer = transport;
+        transport = null;
+        if (writer != null) {
+            writer.close(this::release);
+        } else {
+            release();
+        }
+    }
+
+    private void release() {
+        try {
+            connection.releaseInterface(usbInterface);
+        } catch (Exception e) {
+            // Device may already be gone
+        }
+        connection.close();
+    }
+}
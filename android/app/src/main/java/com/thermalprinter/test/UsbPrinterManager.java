@@ -6,15 +6,13 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
-import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.util.Base64;
 import android.util.Log;
 
 import com.getcapacitor.JSArray;
@@ -23,27 +21,80 @@ import com.getcapacitor.PluginCall;
 import com.printer.sdk.PrinterInstance;
 import com.printer.sdk.PrinterConstants;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class UsbPrinterManager {
     private static final String TAG = "UsbPrinterManager";
     private static final String ACTION_USB_PERMISSION = "com.thermalprinter.test.USB_PERMISSION";
+    private static final String PROFILE_PREFS = "transport_profiles";
+    private static final String PROFILE_PREFIX = "profile.";
+    private static final String NAME_PREFIX = "name.";
+    private static final long PROFILE_SAVE_INTERVAL_MS = 30000;
+    private static final long PERMISSION_TIMEOUT_MS = 30000;
+    private static final long GENERIC_PROBE_DEADLINE_MS = 1500;
+    private static final long LATE_PROBE_WAIT_MS = 5000;
     
     private Activity activity;
     private UsbManager usbManager;
+    private final PrinterLink link;           // Spooler sink, whichever transport is attached
+    private final PrinterMetrics metrics;
     private UsbDevice currentDevice;
     private PrinterInstance printerInstance;  // For VOLCORA SDK mode
-    private UsbDeviceConnection usbConnection; // For generic USB mode
-    private UsbInterface usbInterface;
-    private UsbEndpoint usbEndpoint;
+    private UsbPrinterConnection usbPrinter;  // For generic USB mode
+    private UsbTransport usbTransport;        // Writer thread for generic USB mode
     private boolean isGenericMode = false;
     private PluginCall pendingCall;
+    private long pendingCallStart;
+    private PrinterTransport.StatusListener statusListener;
+    private long lastProfileSave;
+    private PrinterRegistry registry;
+    private final ConnectionStrategyCache strategies;
+    private final UsbDeviceIndex deviceIndex;
+    private volatile DeviceListener deviceListener;  // Set from the plugin thread, read on the hot-plug thread
+    // Printer lost to an unplug, reconnected when it is plugged back in
+    private String reconnectKey;
+    private boolean reconnectGeneric;
+    
+    // Callers waiting for the user to answer a permission dialog, by bus path
+    private final Map<String, List<PermissionWaiter>> permissionWaiters = new HashMap<>();
+    private final Handler permissionTimeouts = new Handler(Looper.getMainLooper());
+    
+    /** Outcome of a permission request; exactly one method is called, on the hot-plug thread. */
+    public interface PermissionCallback {
+        void onGranted(UsbDevice device);
+        void onDenied(String message, String code);
+    }
+    
+    private static final class PermissionWaiter {
+        final PermissionCallback callback;
+        Runnable timeout;
+
+        PermissionWaiter(PermissionCallback callback) {
+            this.callback = callback;
+        }
+    }
+    
+    /** Hot-plug notifications, delivered on the index's background thread. */
+    public interface DeviceListener {
+        void onDevicesChanged(UsbDeviceIndex.Entry entry, boolean attached);
+        void onConnectionChanged(UsbDevice device, boolean connected);
+    }
+    
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor();
     
     private final Handler connectionHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
-            if (pendingCall == null) return;
-            
             switch (msg.what) {
                 case PrinterConstants.Connect.SUCCESS:
                     Log.d(TAG, "Printer connected successfully via VOLCORA SDK");
@@ -51,11 +102,24 @@ public class UsbPrinterManager {
                     if (printerInstance != null) {
                         printerInstance.initPrinter();
                         Log.d(TAG, "Printer initialized");
+                        link.attach(new SdkTransport(printerInstance), metricsFor(currentDevice));
+                    }
+                    if (currentDevice != null) {
+                        strategies.remember(currentDevice, ConnectionStrategyCache.Mode.SDK);
                     }
                     
+                    if (pendingCall == null) {
+                        // Reconnected after an unplug
+                        if (deviceListener != null && currentDevice != null) {
+                            deviceListener.onConnectionChanged(currentDevice, true);
+                        }
+                        break;
+                    }
                     JSObject successResult = new JSObject();
                     successResult.put("success", true);
                     successResult.put("deviceName", currentDevice != null ? currentDevice.getDeviceName() : "Unknown");
+                    successResult.put("mode", "sdk");
+                    successResult.put("connectMs", (System.nanoTime() - pendingCallStart) / 1000000);
                     successResult.put("message", "Connected to printer successfully");
                     pendingCall.resolve(successResult);
                     pendingCall = null;
@@ -63,8 +127,13 @@ public class UsbPrinterManager {
                     
                 case PrinterConstants.Connect.FAILED:
                     Log.e(TAG, "Printer connection failed");
-                    pendingCall.reject("Failed to connect to printer");
-                    pendingCall = null;
+                    if (currentDevice != null && strategies.get(currentDevice) == ConnectionStrategyCache.Mode.SDK) {
+                        strategies.forget(currentDevice);
+                    }
+                    if (pendingCall != null) {
+                        pendingCall.reject("Failed to connect to printer");
+                        pendingCall = null;
+                    }
                     break;
                     
                 case PrinterConstants.Connect.CLOSED:
@@ -86,23 +155,49 @@ public class UsbPrinterManager {
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
             if (ACTION_USB_PERMISSION.equals(action)) {
-                synchronized (this) {
-                    UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-                    if (intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false)) {
-                        if (device != null) {
-                            Log.d(TAG, "USB permission granted for device: " + device.getDeviceName());
-                        }
-                    } else {
-                        Log.d(TAG, "USB permission denied for device: " + device);
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device == null) {
+                    return;
+                }
+                boolean granted = intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false);
+                Log.d(TAG, "USB permission " + (granted ? "granted" : "denied") + " for device: " + device.getDeviceName());
+                
+                // Continue whatever was waiting for the answer off the main thread
+                List<PermissionWaiter> waiters;
+                synchronized (permissionWaiters) {
+                    waiters = permissionWaiters.remove(device.getDeviceName());
+                }
+                if (waiters != null) {
+                    for (PermissionWaiter waiter : waiters) {
+                        permissionTimeouts.removeCallbacks(waiter.timeout);
+                        deviceIndex.post(() -> {
+                            if (granted) {
+                                waiter.callback.onGranted(device);
+                            } else {
+                                waiter.callback.onDenied("USB permission denied for " + device.getDeviceName(), "PERMISSION_DENIED");
+                            }
+                        });
                     }
                 }
+                if (granted) {
+                    // May be a printer waiting to be reconnected after an unplug
+                    deviceIndex.post(() -> onDeviceAttached(device));
+                }
             }
         }
     };
 
-    public UsbPrinterManager(Activity activity) {
+    public UsbPrinterManager(Activity activity, PrintSpooler printSpooler, PrinterMetrics metrics) {
         this.activity = activity;
+        this.metrics = metrics;
+        this.link = new PrinterLink(printSpooler, (transport, bytes) -> {
+            // Persist the learned generic USB pacing now and then
+            if (transport == usbTransport && System.currentTimeMillis() - lastProfileSave > PROFILE_SAVE_INTERVAL_MS) {
+                saveTransportProfile();
+            }
+        });
         this.usbManager = (UsbManager) activity.getSystemService(Context.USB_SERVICE);
+        this.strategies = new ConnectionStrategyCache(activity);
         
         IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
@@ -110,210 +205,417 @@ public class UsbPrinterManager {
         } else {
             activity.registerReceiver(usbPermissionReceiver, filter);
         }
+        
+        deviceIndex = new UsbDeviceIndex(activity, usbManager, new UsbDeviceIndex.Listener() {
+            @Override
+            public void onDeviceAttached(UsbDeviceIndex.Entry entry) {
+                if (deviceListener != null) {
+                    deviceListener.onDevicesChanged(entry, true);
+                }
+                UsbPrinterManager.this.onDeviceAttached(entry.device);
+            }
+
+            @Override
+            public void onDeviceDetached(UsbDeviceIndex.Entry entry) {
+                UsbPrinterManager.this.onDeviceDetached(entry.device);
+                if (deviceListener != null) {
+                    deviceListener.onDevicesChanged(entry, false);
+                }
+            }
+        });
     }
 
-    public void listUsbDevices(PluginCall call) {
+    public void setDeviceListener(DeviceListener listener) {
+        this.deviceListener = listener;
+    }
+
+    /** Stops hot-plug tracking. */
+    public void close() {
+        deviceIndex.close();
         try {
-            HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
-            JSArray devices = new JSArray();
-            
-            for (UsbDevice device : deviceList.values()) {
-                JSObject deviceInfo = new JSObject();
-                deviceInfo.put("deviceName", device.getDeviceName());
-                deviceInfo.put("vendorId", device.getVendorId());
-                deviceInfo.put("productId", device.getProductId());
-                deviceInfo.put("deviceClass", device.getDeviceClass());
-                deviceInfo.put("deviceSubclass", device.getDeviceSubclass());
-                deviceInfo.put("manufacturerName", device.getManufacturerName());
-                deviceInfo.put("productName", device.getProductName());
-                devices.put(deviceInfo);
+            activity.unregisterReceiver(usbPermissionReceiver);
+        } catch (IllegalArgumentException e) {
+            // Not registered
+        }
+    }
+
+    /**
+     * Attached devices from the hot-plug index, best printer candidate first,
+     * each flagged isPrinter/isDisplay. {@code preferred} is the device to
+     * connect to, if any.
+     */
+    public void listUsbDevices(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("devices", deviceIndex.toJSArray());
+        UsbDeviceIndex.Entry preferred = deviceIndex.getPreferredPrinter();
+        if (preferred != null) {
+            result.put("preferred", preferred.toJSObject());
+        }
+        call.resolve(result);
+    }
+
+    /**
+     * First attached device matching the ids; {@code deviceName} (bus path)
+     * picks one of several identical printers. Null if none is attached.
+     */
+    UsbDevice findDevice(int vendorId, int productId, String deviceName) {
+        return deviceIndex.find(vendorId, productId, deviceName);
+    }
+
+    /**
+     * True if the app may open {@code device}; otherwise asks the user and
+     * returns false. Hot-plug reconnects resume by themselves once granted.
+     */
+    boolean ensurePermission(UsbDevice device) {
+        if (usbManager.hasPermission(device)) {
+            return true;
+        }
+        requestPermission(device, null);
+        return false;
+    }
+
+    /**
+     * Asks the user for permission to open {@code device} and reports the
+     * answer to {@code callback} (if not null), or PERMISSION_TIMEOUT if
+     * there is none within {@link #PERMISSION_TIMEOUT_MS}. Several callers
+     * can wait on the same device; the dialog is shown once.
+     */
+    void requestPermission(UsbDevice device, PermissionCallback callback) {
+        if (usbManager.hasPermission(device)) {
+            if (callback != null) {
+                deviceIndex.post(() -> callback.onGranted(device));
+            }
+            return;
+        }
+        
+        boolean alreadyAsked;
+        synchronized (permissionWaiters) {
+            List<PermissionWaiter> waiters = permissionWaiters.get(device.getDeviceName());
+            alreadyAsked = waiters != null;
+            if (waiters == null) {
+                waiters = new ArrayList<>();
+                permissionWaiters.put(device.getDeviceName(), waiters);
+            }
+            if (callback != null) {
+                PermissionWaiter waiter = new PermissionWaiter(callback);
+                waiter.timeout = () -> {
+                    boolean waiting;
+                    synchronized (permissionWaiters) {
+                        List<PermissionWaiter> current = permissionWaiters.get(device.getDeviceName());
+                        waiting = current != null && current.remove(waiter);
+                        if (waiting && current.isEmpty()) {
+                            // Ask again next time instead of waiting on a lost dialog
+                            permissionWaiters.remove(device.getDeviceName());
+                        }
+                    }
+                    if (waiting) {
+                        deviceIndex.post(() -> callback.onDenied(
+                                "No answer to the USB permission request for " + device.getDeviceName(), "PERMISSION_TIMEOUT"));
+                    }
+                };
+                waiters.add(waiter);
+                permissionTimeouts.postDelayed(waiter.timeout, PERMISSION_TIMEOUT_MS);
             }
-            
-            JSObject result = new JSObject();
-            result.put("devices", devices);
-            call.resolve(result);
-        } catch (Exception e) {
-            Log.e(TAG, "Error listing USB devices", e);
-            call.reject("Failed to list USB devices: " + e.getMessage());
         }
+        if (alreadyAsked) {
+            return;
+        }
+        
+        // Explicit intent: Android 14 rejects mutable PendingIntents with implicit ones
+        Intent intent = new Intent(ACTION_USB_PERMISSION);
+        intent.setPackage(activity.getPackageName());
+        PendingIntent permissionIntent = PendingIntent.getBroadcast(
+            activity, 
+            0, 
+            intent, 
+            PendingIntent.FLAG_MUTABLE
+        );
+        usbManager.requestPermission(device, permissionIntent);
+    }
+
+    UsbManager getUsbManager() {
+        return usbManager;
     }
 
-    public void connectToPrinter(int vendorId, int productId, PluginCall call) {
+    /** Bus path of the printer connected through this manager, or null. */
+    String getCurrentDeviceName() {
+        UsbDevice device = currentDevice;
+        return device != null ? device.getDeviceName() : null;
+    }
+
+    public synchronized void connectToPrinter(int vendorId, int productId, String deviceName, PluginCall call) {
         try {
-            HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
-            UsbDevice targetDevice = null;
-            
-            for (UsbDevice device : deviceList.values()) {
-                if (device.getVendorId() == vendorId && device.getProductId() == productId) {
-                    targetDevice = device;
-                    break;
-                }
-            }
+            UsbDevice targetDevice = findDevice(vendorId, productId, deviceName);
             
             if (targetDevice == null) {
                 call.reject("Device not found with vendorId: " + vendorId + " and productId: " + productId);
                 return;
             }
             
+            String station = registry != null ? registry.stationFor(targetDevice) : null;
+            if (station != null) {
+                call.reject("Printer is already open as station " + station, "DEVICE_IN_USE");
+                return;
+            }
+            
             if (!usbManager.hasPermission(targetDevice)) {
-                PendingIntent permissionIntent = PendingIntent.getBroadcast(
-                    activity, 
-                    0, 
-                    new Intent(ACTION_USB_PERMISSION), 
-                    PendingIntent.FLAG_MUTABLE
-                );
-                usbManager.requestPermission(targetDevice, permissionIntent);
-                call.reject("USB permission requested. Please grant permission and try again.");
+                // The call stays pending until the user answers the dialog
+                Log.d(TAG, "Requesting USB permission for " + targetDevice.getDeviceName());
+                requestPermission(targetDevice, new PermissionCallback() {
+                    @Override
+                    public void onGranted(UsbDevice device) {
+                        connectDevice(device, call);
+                    }
+
+                    @Override
+                    public void onDenied(String message, String code) {
+                        call.reject(message, code);
+                    }
+                });
                 return;
             }
             
-            currentDevice = targetDevice;
+            connectDevice(targetDevice, call);
+        } catch (Exception e) {
+            Log.e(TAG, "Error connecting to printer", e);
+            call.reject("Failed to connect to printer: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Connects in the mode cached for this model, if any. Unknown models
+     * probe generic USB (bounded by {@link #GENERIC_PROBE_DEADLINE_MS}) and
+     * then the VOLCORA SDK. The two can't run at the same time since both
+     * claim the printer's interface. Whichever works is cached.
+     */
+    private synchronized void connectDevice(UsbDevice targetDevice, PluginCall call) {
+        try {
+            // Checked again here: a station may have claimed it while permission was pending
+            String station = registry != null ? registry.stationFor(targetDevice) : null;
+            if (station != null) {
+                call.reject("Printer is already open as station " + station, "DEVICE_IN_USE");
+                return;
+            }
+            reconnectKey = null;
+            if (link.getTransport() != null || currentDevice != null) {
+                closeConnection();
+            }
+            long start = System.nanoTime();
+            ConnectionStrategyCache.Mode cached = strategies.get(targetDevice);
             
-            // Try Generic USB connection first
-            if (connectGenericUSB(targetDevice)) {
-                isGenericMode = true;
-                Log.d(TAG, "Connected to generic USB printer: " + targetDevice.getDeviceName());
+            if (cached == ConnectionStrategyCache.Mode.SDK) {
+                Log.d(TAG, "VOLCORA SDK cached for " + UsbPrinterConnection.modelKey(targetDevice) + ", skipping generic probe");
+                if (connectSdk(targetDevice, call, start)) {
+                    return;
+                }
+                // Worked before but not now: probe from scratch
+                strategies.forget(targetDevice);
+                cached = null;
+            }
+            
+            if (openGeneric(targetDevice, probeGeneric(targetDevice, cached == null))) {
+                strategies.remember(targetDevice, ConnectionStrategyCache.Mode.GENERIC);
                 
                 JSObject result = new JSObject();
                 result.put("success", true);
                 result.put("deviceName", targetDevice.getDeviceName());
                 result.put("mode", "generic");
+                result.put("strategy", cached != null ? "cached" : "probed");
+                result.put("connectMs", (System.nanoTime() - start) / 1000000);
                 result.put("message", "Connected to generic USB thermal printer");
                 call.resolve(result);
                 return;
             }
+            if (cached != null) {
+                strategies.forget(targetDevice);
+            }
             
             // Fall back to VOLCORA SDK
             Log.d(TAG, "Generic USB failed, trying VOLCORA SDK...");
-            pendingCall = call;
-            
-            printerInstance = PrinterInstance.getPrinterInstance(activity, targetDevice, connectionHandler);
-            
-            boolean connected = printerInstance.openConnection();
-            
-            if (!connected) {
-                pendingCall = null;
+            if (!connectSdk(targetDevice, call, start)) {
                 call.reject("Failed to connect to printer (both generic and VOLCORA SDK failed)");
-                return;
             }
             
-            isGenericMode = false;
-            Log.d(TAG, "VOLCORA SDK: Attempting to connect to printer: " + targetDevice.getDeviceName());
-            
         } catch (Exception e) {
             Log.e(TAG, "Error connecting to printer", e);
             pendingCall = null;
             call.reject("Failed to connect to printer: " + e.getMessage());
         }
     }
-    
-    private boolean connectGenericUSB(UsbDevice device) {
-        try {
-            Log.d(TAG, "=== Attempting Generic USB Connection ===");
-            Log.d(TAG, "Device: " + device.getDeviceName());
-            Log.d(TAG, "VID: 0x" + Integer.toHexString(device.getVendorId()) + ", PID: 0x" + Integer.toHexString(device.getProductId()));
-            Log.d(TAG, "Device Class: " + device.getDeviceClass() + ", Subclass: " + device.getDeviceSubclass());
-            Log.d(TAG, "Interface Count: " + device.getInterfaceCount());
-            
-            // Open USB connection
-            usbConnection = usbManager.openDevice(device);
-            if (usbConnection == null) {
-                Log.e(TAG, "❌ Failed to open USB connection - device may not be accessible");
-                return false;
-            }
-            
-            Log.d(TAG, "✓ USB connection opened successfully");
-            
-            // Find the printer interface (usually interface 0)
-            if (device.getInterfaceCount() == 0) {
-                Log.e(TAG, "❌ No USB interfaces found on device");
-                usbConnection.close();
-                usbConnection = null;
-                return false;
-            }
-            
-            usbInterface = device.getInterface(0);
-            Log.d(TAG, "Interface 0: Class=" + usbInterface.getInterfaceClass() + 
-                      ", Subclass=" + usbInterface.getInterfaceSubclass() +
-                      ", Protocol=" + usbInterface.getInterfaceProtocol() +
-                      ", Endpoints=" + usbInterface.getEndpointCount());
-            
-            // Claim the interface
-            if (!usbConnection.claimInterface(usbInterface, true)) {
-                Log.e(TAG, "❌ Failed to claim USB interface - device may be in use");
-                usbConnection.close();
-                usbConnection = null;
-                return false;
-            }
-            
-            Log.d(TAG, "✓ Interface claimed successfully");
-            
-            // Find the bulk OUT endpoint for sending data to printer
-            Log.d(TAG, "Searching for bulk OUT endpoint...");
-            for (int i = 0; i < usbInterface.getEndpointCount(); i++) {
-                UsbEndpoint endpoint = usbInterface.getEndpoint(i);
-                Log.d(TAG, "  Endpoint " + i + ": Type=" + endpoint.getType() + 
-                          ", Direction=" + endpoint.getDirection() +
-                          ", MaxPacketSize=" + endpoint.getMaxPacketSize());
-                          
-                if (endpoint.getType() == android.hardware.usb.UsbConstants.USB_ENDPOINT_XFER_BULK &&
-                    endpoint.getDirection() == android.hardware.usb.UsbConstants.USB_DIR_OUT) {
-                    usbEndpoint = endpoint;
-                    Log.d(TAG, "✓ Found bulk OUT endpoint at index " + i);
-                    break;
-                }
-            }
-            
-            if (usbEndpoint == null) {
-                Log.e(TAG, "❌ No bulk OUT endpoint found - device may not be a printer");
-                usbConnection.releaseInterface(usbInterface);
-                usbConnection.close();
-                usbConnection = null;
-                return false;
-            }
-            
-            Log.d(TAG, "✅ Successfully connected to generic USB printer!");
+
+    // The call completes through connectionHandler
+    private boolean connectSdk(UsbDevice device, PluginCall call, long startNanos) {
+        pendingCall = call;
+        pendingCallStart = startNanos;
+        if (openSdk(device)) {
             return true;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Exception in generic USB connection: " + e.getMessage(), e);
-            if (usbConnection != null) {
-                try {
-                    usbConnection.close();
-                } catch (Exception ex) {
-                    // Ignore
-                }
-                usbConnection = null;
-            }
+        }
+        pendingCall = null;
+        return false;
+    }
+
+    /**
+     * Opens {@code device} for generic USB, giving up after the deadline so a
+     * wedged device can't stall the SDK fallback. An unknown model whose
+     * descriptors have no bulk OUT endpoint isn't probed at all. A probe that
+     * overruns is waited for and its connection closed before this returns,
+     * so the SDK never claims the interface while the probe might.
+     *
+     * @throws IOException if an overrunning probe still hasn't finished
+     */
+    private UsbPrinterConnection probeGeneric(UsbDevice device, boolean unknownModel) throws IOException {
+        if (unknownModel && !UsbPrinterConnection.hasBulkOut(device)) {
+            Log.d(TAG, "No bulk OUT endpoint on interface 0, skipping generic probe");
+            return null;
+        }
+        Future<UsbPrinterConnection> probe = probeExecutor.submit(() -> UsbPrinterConnection.open(usbManager, device));
+        try {
+            return probe.get(GENERIC_PROBE_DEADLINE_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Generic USB probe exceeded " + GENERIC_PROBE_DEADLINE_MS + " ms");
+            releaseLateProbe(probe);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Generic USB probe failed", e.getCause());
+            return null;
+        }
+    }
+
+    // Waits for an overrunning probe and releases the interface if it got it after all
+    private void releaseLateProbe(Future<UsbPrinterConnection> probe) throws IOException {
+        UsbPrinterConnection late;
+        try {
+            late = probe.get(LATE_PROBE_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            probe.cancel(true);
+            throw new IOException("generic USB probe still holds the device");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for the generic USB probe");
+        } catch (ExecutionException e) {
+            // Probe failed; nothing to release
+            return;
+        }
+        if (late != null) {
+            late.close();
+        }
+    }
+    
+    private boolean openGeneric(UsbDevice device, UsbPrinterConnection printer) {
+        if (printer == null) {
+            return false;
+        }
+        currentDevice = device;
+        usbPrinter = printer;
+        isGenericMode = true;
+        PrinterMetrics.Device deviceMetrics = metricsFor(device);
+        printer.start(loadFlowController(device, printer.getEndpoint()), statusListener, deviceMetrics);
+        usbTransport = printer.getTransport();
+        link.attach(usbTransport, deviceMetrics);
+        Log.d(TAG, "Connected to generic USB printer: " + device.getDeviceName());
+        return true;
+    }
+
+    // Completes asynchronously through connectionHandler
+    private boolean openSdk(UsbDevice device) {
+        currentDevice = device;
+        printerInstance = PrinterInstance.getPrinterInstance(activity, device, connectionHandler);
+        if (!printerInstance.openConnection()) {
+            printerInstance = null;
+            currentDevice = null;
             return false;
         }
+        isGenericMode = false;
+        Log.d(TAG, "VOLCORA SDK: Attempting to connect to printer: " + device.getDeviceName());
+        return true;
+    }
+
+    /**
+     * Hot-plug: the connected printer was unplugged. Its connection is torn
+     * down and queued jobs are held until it is plugged back in.
+     */
+    private synchronized void onDeviceDetached(UsbDevice device) {
+        if (registry != null) {
+            registry.onDeviceDetached(device);
+        }
+        UsbDevice lost = currentDevice;
+        if (lost == null || !lost.getDeviceName().equals(device.getDeviceName())) {
+            return;
+        }
+        reconnectKey = UsbPrinterConnection.deviceKey(lost);
+        reconnectGeneric = isGenericMode;
+        closeConnection();
+        Log.d(TAG, "Printer unplugged, will reconnect when " + reconnectKey + " is back");
+        if (deviceListener != null) {
+            deviceListener.onConnectionChanged(lost, false);
+        }
     }
 
-    public void disconnectPrinter(PluginCall call) {
+    /**
+     * Hot-plug: reconnects to a printer lost to an unplug (or a station's)
+     * when it reappears. A re-plugged device needs permission again unless
+     * the app is its default handler; without it, this asks and is called
+     * again from the permission receiver once granted.
+     */
+    private synchronized void onDeviceAttached(UsbDevice device) {
+        if (registry != null) {
+            registry.onDeviceAttached(device);
+        }
+        String key = reconnectKey;
+        if (key == null || currentDevice != null || !UsbDeviceIndex.matches(key, device)
+                || (registry != null && registry.stationFor(device) != null) || !ensurePermission(device)) {
+            return;
+        }
+        boolean reconnected = reconnectGeneric
+                ? openGeneric(device, UsbPrinterConnection.openWithRetry(usbManager, device))
+                : openSdk(device);
+        if (!reconnected) {
+            Log.w(TAG, "Printer " + key + " is back but couldn't be reopened");
+            return;
+        }
+        reconnectKey = null;
+        // SDK mode reports through connectionHandler once connected
+        if (isGenericMode && deviceListener != null) {
+            deviceListener.onConnectionChanged(device, true);
+        }
+    }
+
+    /**
+     * Connects to a raw TCP (port 9100) printer or a {@link PrinterSimulator}
+     * in place of the USB printer. Replaces any current connection; queued
+     * jobs carry on on the new printer. Blocks for up to the connect timeout.
+     */
+    public synchronized void connectToNetworkPrinter(String host, int port, PluginCall call) {
+        reconnectKey = null;
+        if (link.getTransport() != null || currentDevice != null) {
+            closeConnection();
+        }
+        long start = System.nanoTime();
         try {
-            if (isGenericMode) {
-                // Disconnect generic USB
-                if (usbInterface != null && usbConnection != null) {
-                    usbConnection.releaseInterface(usbInterface);
-                }
-                if (usbConnection != null) {
-                    usbConnection.close();
-                    usbConnection = null;
-                }
-                usbInterface = null;
-                usbEndpoint = null;
-                Log.d(TAG, "Disconnected from generic USB printer");
-            } else {
-                // Disconnect VOLCORA SDK
-                if (printerInstance != null) {
-                    printerInstance.closeConnection();
-                    printerInstance = null;
-                }
-                Log.d(TAG, "Disconnected from printer via VOLCORA SDK");
-            }
+            SocketTransport socket = SocketTransport.connect(host, port, statusListener);
+            link.attach(socket, metrics.forDevice("tcp:" + socket.getAddress()));
+            Log.d(TAG, "Connected to network printer " + socket.getAddress());
             
-            currentDevice = null;
-            isGenericMode = false;
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("address", socket.getAddress());
+            result.put("mode", "network");
+            result.put("connectMs", (System.nanoTime() - start) / 1000000);
+            result.put("message", "Connected to network printer");
+            call.resolve(result);
+        } catch (IOException e) {
+            Log.e(TAG, "Error connecting to network printer " + host + ":" + port, e);
+            call.reject("Failed to connect to " + host + ":" + port + ": " + e.getMessage(), "NETWORK_ERROR");
+        }
+    }
+
+    public synchronized void disconnectPrinter(PluginCall call) {
+        try {
+            reconnectKey = null;
+            closeConnection();
             
             JSObject result = new JSObject();
             result.put("success", true);
@@ -326,72 +628,162 @@ public class UsbPrinterManager {
         }
     }
 
-    public void printRawData(String base64Data, PluginCall call) {
-        try {
-            if (!isGenericMode && printerInstance == null) {
-                call.reject("Printer not connected");
-                return;
+    private void closeConnection() {
+        // Hold queued jobs until a printer is connected again
+        PrinterTransport active = link.detach();
+        
+        if (active instanceof SocketTransport) {
+            active.close();
+            Log.d(TAG, "Disconnected from network printer " + ((SocketTransport) active).getAddress());
+        } else if (isGenericMode) {
+            // Disconnect generic USB
+            saveTransportProfile();
+            usbTransport = null;
+            if (usbPrinter != null) {
+                usbPrinter.close();
+                usbPrinter = null;
             }
-            
-            if (isGenericMode && usbConnection == null) {
-                call.reject("Printer not connected");
-                return;
+            Log.d(TAG, "Disconnected from generic USB printer");
+        } else {
+            // Disconnect VOLCORA SDK
+            if (active != null) {
+                active.close();
             }
-            
-            byte[] data = Base64.decode(base64Data, Base64.DEFAULT);
-            
-            if (isGenericMode) {
-                // Send via generic USB bulk transfer
-                int bytesTransferred = usbConnection.bulkTransfer(usbEndpoint, data, data.length, 5000);
-                
-                if (bytesTransferred < 0) {
-                    call.reject("Failed to send data to printer (USB transfer failed)");
-                    return;
-                }
-                
-                JSObject result = new JSObject();
-                result.put("success", true);
-                result.put("bytesTransferred", bytesTransferred);
-                result.put("message", "Data sent to generic USB printer successfully");
-                call.resolve(result);
-                
-                Log.d(TAG, "Sent " + bytesTransferred + " bytes to generic USB printer");
-                return;
+            if (printerInstance != null) {
+                printerInstance.closeConnection();
+                printerInstance = null;
             }
-            
-            // VOLCORA SDK mode
-            int result = printerInstance.sendBytesData(data);
-            
-            if (result < 0) {
-                String errorMsg;
-                switch (result) {
-                    case -1:
-                        errorMsg = "Printer not initialized";
-                        break;
-                    case -2:
-                        errorMsg = "Data is empty or invalid";
-                        break;
-                    case -3:
-                        errorMsg = "Failed to send data to printer";
-                        break;
-                    default:
-                        errorMsg = "Unknown error: " + result;
-                        break;
-                }
-                call.reject(errorMsg);
-                return;
+            Log.d(TAG, "Disconnected from printer via VOLCORA SDK");
+        }
+        
+        currentDevice = null;
+        isGenericMode = false;
+    }
+
+    private SharedPreferences profiles() {
+        return activity.getSharedPreferences(PROFILE_PREFS, Context.MODE_PRIVATE);
+    }
+
+    FlowController loadFlowController(UsbDevice device, UsbEndpoint endpoint) {
+        FlowController flow = UsbTransport.newFlowController(endpoint);
+        String model = UsbPrinterConnection.modelKey(device);
+        if (flow.restore(profiles().getString(PROFILE_PREFIX + model, null))) {
+            Log.d(TAG, "Restored transport profile for " + model + ": " + flow.encode());
+        }
+        String name = ((device.getManufacturerName() != null ? device.getManufacturerName() + " " : "")
+                + (device.getProductName() != null ? device.getProductName() : "")).trim();
+        profiles().edit().putString(NAME_PREFIX + model, name).apply();
+        return flow;
+    }
+
+    private void saveTransportProfile() {
+        lastProfileSave = System.currentTimeMillis();
+        saveTransportProfile(currentDevice, usbTransport);
+    }
+
+    void saveTransportProfile(UsbDevice device, UsbTransport transport) {
+        if (transport == null || device == null || !transport.getFlowController().takeDirty()) {
+            return;
+        }
+        profiles().edit().putString(PROFILE_PREFIX + UsbPrinterConnection.modelKey(device), transport.getFlowController().encode()).apply();
+    }
+
+    /**
+     * Learned pacing for the connected printer plus every saved model
+     * profile, for comparing printers side by side.
+     */
+    public JSObject getTransportProfile() {
+        JSObject result = new JSObject();
+        UsbTransport transport = usbTransport;
+        UsbDevice device = currentDevice;
+        if (isGenericMode && transport != null && device != null) {
+            result.put("current", profileToJSObject(UsbPrinterConnection.modelKey(device), transport.getFlowController()));
+        }
+        
+        SharedPreferences prefs = profiles();
+        JSArray saved = new JSArray();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(PROFILE_PREFIX) || !(entry.getValue() instanceof String)) {
+                continue;
             }
-            
-            JSObject resultObj = new JSObject();
-            resultObj.put("success", true);
-            resultObj.put("bytesTransferred", result);
-            resultObj.put("message", "Data sent to printer successfully");
-            call.resolve(resultObj);
-            
-            Log.d(TAG, "VOLCORA SDK: Sent " + result + " bytes to printer");
-        } catch (Exception e) {
-            Log.e(TAG, "Error printing data", e);
-            call.reject("Failed to print data: " + e.getMessage());
+            FlowController flow = new FlowController(64, UsbTransport.MAX_CHUNK_SIZE, UsbTransport.MAX_REQUESTS_IN_FLIGHT);
+            if (flow.restore((String) entry.getValue())) {
+                saved.put(profileToJSObject(entry.getKey().substring(PROFILE_PREFIX.length()), flow));
+            }
+        }
+        result.put("profiles", saved);
+        return result;
+    }
+
+    private JSObject profileToJSObject(String model, FlowController flow) {
+        JSObject profile = new JSObject();
+        profile.put("model", model);
+        profile.put("name", profiles().getString(NAME_PREFIX + model, ""));
+        profile.put("bytesPerSecond", Math.round(flow.getBytesPerSecond()));
+        profile.put("rasterMmPerSecond", Math.round(flow.getRasterMmPerSecond() * 10) / 10.0);
+        profile.put("chunkSize", flow.getChunkSize());
+        profile.put("depth", flow.getDepth());
+        profile.put("chunkTimeoutMs", flow.getChunkTimeoutMs());
+        profile.put("samples", flow.getSamples());
+        profile.put("stalls", flow.getStalls());
+        return profile;
+    }
+
+    /**
+     * Captures every job sent to the connected printer from now on (see
+     * {@link PrintCapture}); null stops. Returns the previous capture, still
+     * open, for the caller to close.
+     */
+    public PrintCapture setCapture(PrintCapture capture) {
+        return link.setCapture(capture);
+    }
+
+    /** Print path metrics, shared with the plugin and the stations. */
+    public PrinterMetrics getMetrics() {
+        return metrics;
+    }
+
+    private PrinterMetrics.Device metricsFor(UsbDevice device) {
+        return device != null ? metrics.forDevice(UsbPrinterConnection.deviceKey(device)) : null;
+    }
+
+    /** Stations opened alongside this connection; a device can't be open in both. */
+    void setRegistry(PrinterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Receives printer status changes on the generic USB path. Set before connecting. */
+    public void setStatusListener(PrinterTransport.StatusListener listener) {
+        this.statusListener = listener;
+    }
+
+    /**
+     * Latest status reported by the printer, or null if it isn't connected
+     * or has no status channel (VOLCORA SDK mode).
+     */
+    public PrinterStatus getPrinterStatus() {
+        return link.getStatus();
+    }
+
+    public boolean isConnected() {
+        return link.isConnected();
+    }
+
+    /**
+     * Identifies the connected printer as vendorId:productId:serial so state
+     * kept about a printer (e.g. stored graphics) isn't applied to another
+     * unit of the same model; tcp:host:port for a network printer. Null
+     * when nothing is connected.
+     */
+    public String getDeviceKey() {
+        PrinterTransport active = link.getTransport();
+        if (active instanceof SocketTransport) {
+            return "tcp:" + ((SocketTransport) active).getAddress();
+        }
+        UsbDevice device = currentDevice;
+        if (device == null || !isConnected()) {
+            return null;
         }
+        return UsbPrinterConnection.deviceKey(device);
     }
 }
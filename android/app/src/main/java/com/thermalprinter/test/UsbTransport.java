@@ -0,0 +1,625 @@
+package com.thermalprinter.test;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbRequest;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writer thread for the generic USB path.
+ *
+ * Jobs are queued from the plugin thread and written on a dedicated I/O thread,
+ * split into chunks that are a multiple of the endpoint's max packet size. On
+ * Android 8.0+ several UsbRequests are kept in flight so the host controller
+ * always has the next chunk ready; older releases fall back to chunked
+ * bulkTransfer calls. Chunk size, depth and timeouts come from a
+ * {@link FlowController} that learns the printer's real throughput. Short
+ * writes are resumed from the first unsent byte and the job callback only
+ * fires once the last byte has been acknowledged.
+ *
+ * When the printer has a bulk IN endpoint, a reader thread collects status
+ * from it. Automatic Status Back is enabled on start, and DLE EOT 1-4 is
+ * polled between jobs (never inside one). Jobs wait while the printer
+ * reports an error, and a transfer that stalls during an error waits for
+ * recovery instead of timing out.
+ */
+public class UsbTransport implements PrinterTransport {
+    private static final String TAG = "UsbTransport";
+
+    // UsbRequest buffers are capped at 16 KB before Android 9
+    static final int MAX_CHUNK_SIZE = 16384;
+    static final int MAX_REQUESTS_IN_FLIGHT = 8;
+    private static final int TRANSFER_TIMEOUT_MS = FlowController.DEFAULT_TIMEOUT_MS;
+    private static final int MAX_RETRIES = 3;
+
+    private static final int IDLE_POLL_MS = 2000;
+    private static final int ERROR_POLL_MS = 500;
+    private static final int STATUS_REPLY_MS = 200;
+    private static final int STALL_CHECK_MS = 1000;
+    private static final int READ_TIMEOUT_MS = 250;
+
+    // GS a n - push status on online/offline, error and paper sensor changes
+    private static final byte[] ENABLE_AUTO_STATUS = {0x1D, 'a', 0x0E};
+    // DLE EOT 1..4 - printer, offline cause, error cause, paper sensor
+    private static final byte[] REQUEST_STATUS = {
+            0x10, 0x04, 1, 0x10, 0x04, 2, 0x10, 0x04, 3, 0x10, 0x04, 4
+    };
+
+    private static class Job {
+        final byte[] data;
+        final int offset;
+        final int length;
+        final TransferCallback callback;
+
+        Job(byte[] data, int offset, int length, TransferCallback callback) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.callback = callback;
+        }
+    }
+
+    private final UsbDeviceConnection connection;
+    private final UsbEndpoint endpoint;
+    private final UsbEndpoint statusEndpoint;
+    private final StatusListener statusListener;
+    private final int bufferSize;
+    private final FlowController flow;
+    private final PrinterMetrics.Device metrics;
+    private final LinkedBlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private final Thread readerThread;
+    private volatile boolean running = true;
+
+    // Guarded by statusLock; notified on every status update
+    private final Object statusLock = new Object();
+    private final PrinterStatus.Parser statusParser = new PrinterStatus.Parser();
+    private PrinterStatus status;
+    private long statusUpdatedAt;
+
+    // Only touched on the writer thread
+    private UsbRequest[] requests;
+
+    // Handed from close() to the writer thread as it exits; guarded by stopLock
+    private final Object stopLock = new Object();
+    private boolean stopped;
+    private Runnable onStopped;
+
+    public UsbTransport(UsbDeviceConnection connection, UsbEndpoint endpoint) {
+        this(connection, endpoint, null, null, null, null);
+    }
+
+    /**
+     * @param statusEndpoint bulk IN endpoint, or null if the printer has none
+     * @param statusListener called on the reader thread whenever the status changes
+     * @param flow learned pacing for this printer, or null to start from defaults
+     * @param metrics where short writes and retries are counted, or null
+     */
+    public UsbTransport(UsbDeviceConnection connection, UsbEndpoint endpoint, UsbEndpoint statusEndpoint,
+                        StatusListener statusListener, FlowController flow, PrinterMetrics.Device metrics) {
+        this.connection = connection;
+        this.endpoint = endpoint;
+        this.statusEndpoint = statusEndpoint;
+        this.statusListener = statusListener;
+        this.bufferSize = chunkSizeFor(endpoint.getMaxPacketSize());
+        this.flow = flow != null ? flow : newFlowController(endpoint);
+        this.metrics = metrics;
+        this.writerThread = new Thread(this::runWriter, "UsbTransport-writer");
+        this.writerThread.setDaemon(true);
+        if (statusEndpoint != null) {
+            this.readerThread = new Thread(this::runReader, "UsbTransport-status");
+            this.readerThread.setDaemon(true);
+            this.readerThread.start();
+        } else {
+            this.readerThread = null;
+        }
+        this.writerThread.start();
+        Log.d(TAG, "Writer thread started (chunk size " + this.flow.getChunkSize() + " bytes, depth "
+                + this.flow.getDepth() + ", status " + (statusEndpoint != null ? "enabled" : "unavailable") + ")");
+    }
+
+    public static FlowController newFlowController(UsbEndpoint endpoint) {
+        return new FlowController(endpoint.getMaxPacketSize(), chunkSizeFor(endpoint.getMaxPacketSize()),
+                MAX_REQUESTS_IN_FLIGHT);
+    }
+
+    public FlowController getFlowController() {
+        return flow;
+    }
+
+    static int chunkSizeFor(int maxPacketSize) {
+        return FlowController.alignedChunkSize(maxPacketSize, MAX_CHUNK_SIZE);
+    }
+
+    public void submit(byte[] data, TransferCallback callback) {
+        submit(data, 0, data.length, callback);
+    }
+
+    @Override
+    public void submit(byte[] data, int offset, int length, TransferCallback callback) {
+        if (!running) {
+            callback.onError("USB transport is closed");
+            return;
+        }
+        jobs.add(new Job(data, offset, length, callback));
+    }
+
+    /** Latest reported status, or null if the printer hasn't reported any. */
+    @Override
+    public PrinterStatus getStatus() {
+        synchronized (statusLock) {
+            return status;
+        }
+    }
+
+    /**
+     * Stops the writer and status threads and fails any queued jobs. The
+     * threads may still be using the connection when this returns; use
+     * {@link #close(Runnable)} to close it.
+     */
+    @Override
+    public void close() {
+        close(null);
+    }
+
+    /**
+     * Like {@link #close()}, then runs {@code onStopped} once neither thread
+     * can touch the connection any more, so it may close it. Cancelling a
+     * pipelined job can take several transfer timeouts; rather than block
+     * the caller that long, {@code onStopped} then runs on the writer thread
+     * as it exits.
+     */
+    public void close(Runnable onStopped) {
+        running = false;
+        writerThread.interrupt();
+        synchronized (statusLock) {
+            statusLock.notifyAll();
+        }
+        synchronized (stopLock) {
+            if (!stopped) {
+                this.onStopped = onStopped;
+                onStopped = null;
+            }
+        }
+        if (onStopped != null) {
+            onStopped.run();
+        }
+        try {
+            writerThread.join(TRANSFER_TIMEOUT_MS);
+            if (readerThread != null) {
+                readerThread.join(READ_TIMEOUT_MS * 2);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        try {
+            if (statusEndpoint != null) {
+                connection.bulkTransfer(endpoint, ENABLE_AUTO_STATUS, ENABLE_AUTO_STATUS.length, STATUS_REPLY_MS);
+                requestStatus();
+            }
+            while (running) {
+                if (statusEndpoint == null) {
+                    write(jobs.take());
+                    continue;
+                }
+                Job job = jobs.poll(isPrinterError() ? ERROR_POLL_MS : IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    // Idle: nothing in flight, safe to interleave a status request
+                    requestStatus();
+                    continue;
+                }
+                try {
+                    awaitReady();
+                } catch (InterruptedException e) {
+                    job.callback.onError("USB transport is closed");
+                    throw e;
+                }
+                write(job);
+            }
+        } catch (InterruptedException e) {
+            // Closing
+        } finally {
+            Job job;
+            while ((job = jobs.poll()) != null) {
+                job.callback.onError("USB transport is closed");
+            }
+            releaseRequests();
+            Log.d(TAG, "Writer thread stopped");
+            onWriterStopped();
+        }
+    }
+
+    // Writer thread, last thing it does
+    private void onWriterStopped() {
+        if (readerThread != null) {
+            Thread.interrupted();  // join() would throw on the interrupt from close()
+            try {
+                readerThread.join();  // Ends within READ_TIMEOUT_MS of running going false
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Runnable done;
+        synchronized (stopLock) {
+            stopped = true;
+            done = onStopped;
+            onStopped = null;
+        }
+        if (done != null) {
+            done.run();
+        }
+    }
+
+    private void runReader() {
+        byte[] buffer = new byte[Math.max(64, statusEndpoint.getMaxPacketSize())];
+        while (running) {
+            int read = connection.bulkTransfer(statusEndpoint, buffer, buffer.length, READ_TIMEOUT_MS);
+            if (read <= 0) {
+                continue;
+            }
+            PrinterStatus parsed;
+            boolean changed;
+            synchronized (statusLock) {
+                parsed = statusParser.feed(buffer, read);
+                if (parsed == null) {
+                    continue;
+                }
+                changed = !parsed.equals(status);
+                status = parsed;
+                statusUpdatedAt = System.nanoTime();
+                statusLock.notifyAll();
+            }
+            if (changed) {
+                Log.d(TAG, "Printer status: " + parsed);
+                if (statusListener != null) {
+                    statusListener.onStatusChanged(parsed);
+                }
+            }
+        }
+        Log.d(TAG, "Status reader stopped");
+    }
+
+    /** Sends DLE EOT 1-4; replies arrive on the reader thread. Writer thread only, between jobs. */
+    private void requestStatus() {
+        synchronized (statusLock) {
+            statusParser.expectRealTime();
+        }
+        connection.bulkTransfer(endpoint, REQUEST_STATUS, REQUEST_STATUS.length, STATUS_REPLY_MS);
+    }
+
+    private boolean isPrinterError() {
+        synchronized (statusLock) {
+            return status != null && status.isError();
+        }
+    }
+
+    /**
+     * Holds the next job while the printer reports an error, polling until it
+     * recovers. A stale status is refreshed first so a paper-out that began
+     * while idle isn't missed. Between jobs only: see {@link #awaitRecovery}.
+     */
+    private void awaitReady() throws InterruptedException {
+        long updatedAt;
+        synchronized (statusLock) {
+            updatedAt = statusUpdatedAt;
+        }
+        if (System.nanoTime() - updatedAt > TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MS)) {
+            requestStatus();
+            synchronized (statusLock) {
+                if (statusUpdatedAt == updatedAt) {
+                    statusLock.wait(STATUS_REPLY_MS);
+                }
+            }
+        }
+        if (!isPrinterError()) {
+            return;
+        }
+        Log.w(TAG, "Holding print job: " + getStatus());
+        while (running && isPrinterError()) {
+            requestStatus();
+            synchronized (statusLock) {
+                statusLock.wait(ERROR_POLL_MS);
+            }
+        }
+        if (!running) {
+            throw new InterruptedException();
+        }
+        Log.d(TAG, "Printer recovered, resuming");
+    }
+
+    /**
+     * Mid-job counterpart of {@link #awaitReady}. A DLE EOT sent now would
+     * land inside the job's data (the middle of a GS v 0 or GS ( L image,
+     * say) and be printed as part of it, so this only waits for Automatic
+     * Status Back to report recovery. Returns after {@link #STALL_CHECK_MS}
+     * either way; resending the unsent chunk then serves as the probe for
+     * printers that recover without reporting it.
+     */
+    private void awaitRecovery() throws InterruptedException {
+        synchronized (statusLock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STALL_CHECK_MS);
+            long remaining;
+            while (running && status != null && status.isError()
+                    && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(statusLock, remaining);
+            }
+        }
+        if (!running) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void write(Job job) {
+        try {
+            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+                writeQueued(job);
+            } else {
+                writeBlocking(job);
+            }
+        } catch (TransferException e) {
+            Log.e(TAG, "USB transfer failed: " + e.getMessage());
+            job.callback.onError(e.getMessage());
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error in USB transfer", e);
+            job.callback.onError("USB transfer failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pipelined path: keeps up to the flow controller's depth of chunks queued
+     * on the endpoint. Completions on a single bulk endpoint arrive in
+     * submission order, so the head of {@code inFlight} is always the next to
+     * complete.
+     */
+    private void writeQueued(Job job) throws TransferException {
+        ensureRequests();
+
+        ArrayDeque<UsbRequest> idle = new ArrayDeque<>(MAX_REQUESTS_IN_FLIGHT);
+        ArrayDeque<UsbRequest> inFlight = new ArrayDeque<>(MAX_REQUESTS_IN_FLIGHT);
+        for (UsbRequest request : requests) {
+            idle.add(request);
+        }
+
+        int next = job.offset;
+        int end = job.offset + job.length;
+        int acknowledged = 0;
+        int retries = 0;
+        long start = System.nanoTime();
+        flow.onJobStart(start);
+        TraceLog.event(TraceLog.USB_WRITE_START, job.length, flow.getChunkSize(), flow.getDepth());
+
+        while (acknowledged < job.length) {
+            while (!idle.isEmpty() && next < end && inFlight.size() < flow.getDepth()) {
+                UsbRequest request = idle.poll();
+                ByteBuffer buffer = (ByteBuffer) request.getClientData();
+                int length = Math.min(flow.getChunkSize(), end - next);
+                buffer.clear();
+                buffer.put(job.data, next, length);
+                buffer.flip();
+                next += length;
+                queue(request, inFlight);
+            }
+
+            UsbRequest completed = awaitCompletion(inFlight);
+            ByteBuffer buffer = (ByteBuffer) completed.getClientData();
+
+            if (!buffer.hasRemaining()) {
+                acknowledged += buffer.limit();
+                idle.add(completed);
+                flow.onChunkComplete(buffer.limit(), System.nanoTime());
+                job.callback.onProgress(acknowledged, job.length);
+                continue;
+            }
+
+            // Short write: stop the pipeline so the remainder is resent before
+            // any later chunk, then resume every buffer from its own position
+            flow.onStall();
+            onShortWrite();
+            TraceLog.event(TraceLog.USB_SHORT_WRITE, acknowledged, buffer.remaining(), retries + 1);
+            if (++retries > MAX_RETRIES) {
+                cancelAll(inFlight);
+                throw new TransferException("Short write after " + MAX_RETRIES + " retries ("
+                        + acknowledged + " of " + job.length + " bytes sent)");
+            }
+            onRetry();
+            Log.w(TAG, "Short write (" + buffer.remaining() + " bytes unsent), resuming");
+
+            ArrayDeque<UsbRequest> resume = new ArrayDeque<>(MAX_REQUESTS_IN_FLIGHT);
+            resume.add(completed);
+            resume.addAll(cancelAll(inFlight));
+            for (UsbRequest request : resume) {
+                ByteBuffer pending = (ByteBuffer) request.getClientData();
+                if (pending.hasRemaining()) {
+                    queue(request, inFlight);
+                } else {
+                    acknowledged += pending.limit();
+                    idle.add(request);
+                }
+            }
+        }
+
+        TraceLog.event(TraceLog.USB_WRITE_DONE, acknowledged, (System.nanoTime() - start) / 1000, retries);
+        job.callback.onComplete(acknowledged);
+    }
+
+    private void queue(UsbRequest request, ArrayDeque<UsbRequest> inFlight) throws TransferException {
+        if (!request.queue((ByteBuffer) request.getClientData())) {
+            cancelAll(inFlight);
+            throw new TransferException("Failed to queue USB request");
+        }
+        inFlight.add(request);
+    }
+
+    /**
+     * Waits for the next completion, up to the flow controller's timeout.
+     * Time spent while the printer reports an error (paper out, cover open)
+     * doesn't count; the requests stay queued and complete once the printer
+     * takes data again.
+     */
+    private UsbRequest awaitCompletion(ArrayDeque<UsbRequest> inFlight) throws TransferException {
+        UsbRequest completed = null;
+        int timeoutMs = flow.getChunkTimeoutMs();
+        int checkMs = Math.min(STALL_CHECK_MS, timeoutMs);
+        int stalledMs = 0;
+        while (completed == null) {
+            try {
+                completed = connection.requestWait(checkMs);
+                if (completed == null) {
+                    break;
+                }
+            } catch (TimeoutException e) {
+                if (!running) {
+                    cancelAll(inFlight);
+                    throw new TransferException("USB transport is closed");
+                }
+                if (isPrinterError()) {
+                    stalledMs = 0;
+                    continue;
+                }
+                stalledMs += checkMs;
+                if (stalledMs >= timeoutMs) {
+                    flow.onStall();
+                    cancelAll(inFlight);
+                    throw new TransferException("USB transfer timed out after " + timeoutMs + " ms");
+                }
+            }
+        }
+        if (completed == null || !inFlight.remove(completed)) {
+            cancelAll(inFlight);
+            throw new TransferException("USB transfer failed (request error)");
+        }
+        return completed;
+    }
+
+    /**
+     * Cancels every in-flight request and waits for each to come back. The
+     * returned requests keep their original order and buffer positions.
+     */
+    private ArrayDeque<UsbRequest> cancelAll(ArrayDeque<UsbRequest> inFlight) {
+        ArrayDeque<UsbRequest> cancelled = new ArrayDeque<>(inFlight);
+        for (UsbRequest request : cancelled) {
+            request.cancel();
+        }
+        for (int i = 0; i < cancelled.size(); i++) {
+            try {
+                connection.requestWait(TRANSFER_TIMEOUT_MS);
+            } catch (TimeoutException e) {
+                break;
+            }
+        }
+        inFlight.clear();
+        return cancelled;
+    }
+
+    /**
+     * Pre-Oreo path: requestWait() has no timeout there, so chunks are sent
+     * with synchronous bulkTransfer calls instead.
+     */
+    private void writeBlocking(Job job) throws TransferException {
+        int next = job.offset;
+        int end = job.offset + job.length;
+        int retries = 0;
+        boolean holding = false;
+        long start = System.nanoTime();
+        flow.onJobStart(start);
+        TraceLog.event(TraceLog.USB_WRITE_START, job.length, flow.getChunkSize(), 1);
+
+        while (next < end) {
+            int length = Math.min(flow.getChunkSize(), end - next);
+            int sent = connection.bulkTransfer(endpoint, job.data, next, length, flow.getChunkTimeoutMs());
+            if (sent == length) {
+                if (holding) {
+                    holding = false;
+                    Log.d(TAG, "Printer took data again, resuming job");
+                }
+                next += length;
+                flow.onChunkComplete(length, System.nanoTime());
+                job.callback.onProgress(next - job.offset, job.length);
+                continue;
+            }
+            if (sent > 0) {
+                next += sent;
+            }
+            flow.onStall();
+            onShortWrite();
+            TraceLog.event(TraceLog.USB_SHORT_WRITE, next - job.offset, end - next, retries + 1);
+            if (statusEndpoint != null && isPrinterError()) {
+                // Printer stopped taking data; wait for it rather than spending retries
+                if (!holding) {
+                    holding = true;
+                    Log.w(TAG, "Holding job mid-transfer: " + getStatus());
+                }
+                try {
+                    awaitRecovery();
+                } catch (InterruptedException e) {
+                    throw new TransferException("USB transport is closed");
+                }
+                continue;
+            }
+            if (++retries > MAX_RETRIES) {
+                throw new TransferException("Short write after " + MAX_RETRIES + " retries ("
+                        + (next - job.offset) + " of " + job.length + " bytes sent)");
+            }
+            onRetry();
+        }
+
+        TraceLog.event(TraceLog.USB_WRITE_DONE, job.length, (System.nanoTime() - start) / 1000, retries);
+        job.callback.onComplete(job.length);
+    }
+
+    private void onShortWrite() {
+        if (metrics != null) {
+            metrics.onShortWrite();
+        }
+    }
+
+    private void onRetry() {
+        if (metrics != null) {
+            metrics.onRetry();
+        }
+    }
+
+    private void ensureRequests() throws TransferException {
+        if (requests != null) {
+            return;
+        }
+        UsbRequest[] created = new UsbRequest[MAX_REQUESTS_IN_FLIGHT];
+        for (int i = 0; i < created.length; i++) {
+            UsbRequest request = new UsbRequest();
+            if (!request.initialize(connection, endpoint)) {
+                for (int j = 0; j < i; j++) {
+                    created[j].close();
+                }
+                throw new TransferException("Failed to initialize USB request");
+            }
+            request.setClientData(ByteBuffer.allocateDirect(bufferSize));
+            created[i] = request;
+        }
+        requests = created;
+    }
+
+    private void releaseRequests() {
+        if (requests == null) {
+            return;
+        }
+        for (UsbRequest request : requests) {
+            request.close();
+        }
+        requests = null;
+    }
+
+    private static class TransferException extends Exception {
+        TransferException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.thermalprinter.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a job into bulk transfers: one transfer for the whole job,
+ * one per max packet, and the packet-aligned 16 KB chunks the USB
+ * transport uses. Runs against {@link FakeEndpoint}, so the timings are the
+ * host-side cost only, not the printer's.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkedWriteBenchmark {
+
+    // Same cap as UsbTransport: UsbRequest buffers are limited to 16 KB before Android 9
+    static final int MAX_CHUNK_SIZE = 16384;
+
+    @Param({"2048", "20480", "204800"})
+    public int size;
+
+    @Param({"64", "512"})
+    public int maxPacketSize;
+
+    @Param({"100"})
+    public long transferCost;
+
+    private byte[] payload;
+    private FakeEndpoint endpoint;
+
+    @Setup
+    public void setUp() {
+        payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        endpoint = new FakeEndpoint(maxPacketSize, transferCost, MAX_CHUNK_SIZE * 4);
+    }
+
+    @Benchmark
+    public int oneShot() {
+        return endpoint.bulkTransfer(payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public int packetChunked() {
+        return write(endpoint.getMaxPacketSize());
+    }
+
+    @Benchmark
+    public int alignedChunked() {
+        return write(FlowController.alignedChunkSize(endpoint.getMaxPacketSize(), MAX_CHUNK_SIZE));
+    }
+
+    int write(int chunkSize) {
+        int sent = 0;
+        while (sent < payload.length) {
+            sent += endpoint.bulkTransfer(payload, sent, Math.min(chunkSize, payload.length - sent));
+        }
+        return sent;
+    }
+
+    FakeEndpoint getEndpoint() {
+        return endpoint;
+    }
+}
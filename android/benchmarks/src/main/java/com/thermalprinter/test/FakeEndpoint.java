@@ -0,0 +1,62 @@
+package com.thermalprinter.test;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * In-memory stand-in for a USB bulk OUT endpoint. Each transfer copies the
+ * data into a device-side buffer and burns a fixed amount of CPU, standing
+ * in for the per-URB cost of the kernel round trip, so the number of
+ * transfers shows up in the timings the way it does on a device.
+ */
+final class FakeEndpoint {
+
+    private final int maxPacketSize;
+    private final long transferCost;
+    private final byte[] device;
+    private int position;
+    private int transfers;
+
+    /**
+     * @param transferCost JMH CPU tokens spent per transfer
+     * @param capacity device buffer size; writes wrap around it
+     */
+    FakeEndpoint(int maxPacketSize, long transferCost, int capacity) {
+        this.maxPacketSize = maxPacketSize;
+        this.transferCost = transferCost;
+        this.device = new byte[capacity];
+    }
+
+    int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    /** Like UsbDeviceConnection.bulkTransfer; always takes everything. */
+    int bulkTransfer(byte[] data, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            int n = Math.min(length - copied, device.length - position);
+            System.arraycopy(data, offset + copied, device, position, n);
+            position = (position + n) % device.length;
+            copied += n;
+        }
+        transfers++;
+        if (transferCost > 0) {
+            Blackhole.consumeCPU(transferCost);
+        }
+        return length;
+    }
+
+    /** Transfers since the last reset. */
+    int getTransfers() {
+        return transfers;
+    }
+
+    byte[] getDeviceBuffer() {
+        return device;
+    }
+
+    void reset() {
+        position = 0;
+        transfers = 0;
+    }
+}
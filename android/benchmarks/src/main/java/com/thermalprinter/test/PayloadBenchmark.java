@@ -0,0 +1,87 @@
+package com.thermalprinter.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting a job's bytes out of a plugin call: Base64 decoding as in
+ * printRawData, against reading raw bytes into a pooled buffer the way
+ * {@link BinaryPrintServer} reads a request body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    private static final int READ_SIZE = 8192;
+
+    @Param({"2048", "20480", "204800"})
+    public int size;
+
+    private byte[] payload;
+    private String base64;
+    private final BufferPool pool = new BufferPool(4);
+
+    @Setup
+    public void setUp() {
+        payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        base64 = Base64.getEncoder().encodeToString(payload);
+    }
+
+    /** printRawData / submitPrintJob today: a fresh array per call. */
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64Payload.decode(base64);
+    }
+
+    @Benchmark
+    public int base64DecodeIntoPool() {
+        byte[] buffer = pool.acquire(Base64Payload.decodedLength(base64));
+        int length = Base64Payload.decode(base64, buffer, 0);
+        pool.release(buffer);
+        return length;
+    }
+
+    /** JDK decoder, for scale; not available at the app's minSdk. */
+    @Benchmark
+    public byte[] jdkBase64Decode() {
+        return Base64.getDecoder().decode(base64);
+    }
+
+    /** Binary channel: the body streamed into a pooled buffer. */
+    @Benchmark
+    public int rawBytes() throws IOException {
+        InputStream in = new ByteArrayInputStream(payload);
+        byte[] buffer = pool.acquire(size);
+        int length = 0;
+        while (length < size) {
+            int read = in.read(buffer, length, Math.min(READ_SIZE, size - length));
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        pool.release(buffer);
+        return length;
+    }
+}
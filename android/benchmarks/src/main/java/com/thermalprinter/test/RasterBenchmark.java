@@ -0,0 +1,66 @@
+package com.thermalprinter.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline for printing the logo: a full-width (576-dot, 80 mm) image
+ * dithered and packed into GS v 0 strips by {@link RasterEncoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterBenchmark {
+
+    static final int WIDTH = 576;
+    static final int HEIGHT = 200;
+
+    @Param({"THRESHOLD", "FLOYD_STEINBERG", "ATKINSON", "ORDERED"})
+    public RasterEncoder.Dither dither;
+
+    private int[] image;
+    private final RasterEncoder rasterEncoder = new RasterEncoder();
+    private final EscPosEncoder out = new EscPosEncoder(WIDTH / 8 * HEIGHT + 1024);
+
+    @Setup
+    public void setUp() {
+        image = logo(WIDTH, HEIGHT);
+    }
+
+    /** Diagonal gradient with a solid bar, so every dither has work to do. */
+    static int[] logo(int width, int height) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = (x + y) * 255 / (width + height);
+                if (y > height / 3 && y < height / 2) {
+                    level = 0;
+                }
+                argb[y * width + x] = 0xFF000000 | level << 16 | level << 8 | level;
+            }
+        }
+        return argb;
+    }
+
+    @Benchmark
+    public int imageToRaster() {
+        out.reset();
+        rasterEncoder.encode((y, row) -> System.arraycopy(image, y * WIDTH, row, 0, WIDTH),
+                WIDTH, HEIGHT, dither, RasterEncoder.Format.RASTER, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,58 @@
+package com.thermalprinter.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning receipt text into printer bytes: the web layer's generateESCPOS
+ * plus TextEncoder (and btoa for the bridge) against {@link EscPosEncoder}
+ * producing the same commands into a reused buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptBenchmark {
+
+    @Param({"20", "60", "200"})
+    public int lines;
+
+    private String text;
+    private final EscPosEncoder encoder = new EscPosEncoder();
+
+    @Setup
+    public void setUp() {
+        text = WebReference.receiptText(lines);
+    }
+
+    /** generateESCPOS + TextEncoder, what goes over the binary channel. */
+    @Benchmark
+    public byte[] webGenerateEscPos() {
+        return WebReference.textEncoder(WebReference.generateEscPos(text));
+    }
+
+    /** The same plus the byte string and btoa() for submitPrintJob. */
+    @Benchmark
+    public String webGenerateEscPosBase64() {
+        return WebReference.btoa(WebReference.textEncoder(WebReference.generateEscPos(text)));
+    }
+
+    @Benchmark
+    public int nativeEncoder() {
+        encoder.reset().initialize().text(text).newline().newline().newline().cut();
+        return encoder.size();
+    }
+}
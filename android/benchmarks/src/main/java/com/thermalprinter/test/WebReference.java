@@ -0,0 +1,101 @@
+package com.thermalprinter.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Java ports of what the web layer (src/app.js) does to a receipt before it
+ * reaches the plugin, kept line for line so the benchmarks measure today's
+ * behaviour rather than a tidied-up version of it.
+ */
+final class WebReference {
+
+    private static final char ESC = '\u001B';
+    private static final char GS = '\u001D';
+
+    private WebReference() {
+    }
+
+    /** generateESCPOS(text): reset, the text, three line feeds, feed and cut. */
+    static String generateEscPos(String text) {
+        String commands = "";
+        commands += ESC + "@";
+        commands += text;
+        commands += "\n\n\n";
+        commands += GS + "V" + "A" + "\u0003";
+        return commands;
+    }
+
+    /** new TextEncoder().encode(data) */
+    static byte[] textEncoder(String data) {
+        return data.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** sendToPrinter's bridge path: one char per byte, then btoa(). */
+    static String btoa(byte[] byteArray) {
+        StringBuilder binary = new StringBuilder();
+        for (int i = 0; i < byteArray.length; i++) {
+            binary.append((char) (byteArray[i] & 0xFF));
+        }
+        return Base64.getEncoder().encodeToString(binary.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * generateReceiptText() with enough cart items for about {@code lines}
+     * lines: 18 lines of header and totals plus 2 per item.
+     */
+    static String receiptText(int lines) {
+        int items = Math.max(1, (lines - 18) / 2);
+        double subtotal = 0;
+        StringBuilder receipt = new StringBuilder();
+        receipt.append("================================\n");
+        receipt.append("       YOUR BUSINESS NAME\n");
+        receipt.append("================================\n");
+        receipt.append("Date: 1/2/2025\n");
+        receipt.append("Time: 12:34:56 PM\n");
+        receipt.append("Receipt #: K3J9X2M1A\n");
+        receipt.append("--------------------------------\n");
+        receipt.append("ITEMS\n");
+        receipt.append("--------------------------------\n");
+        for (int i = 0; i < items; i++) {
+            double price = 1.25 + (i % 7);
+            int qty = 1 + i % 3;
+            double total = price * qty;
+            subtotal += total;
+            receipt.append(padEnd("Item " + (i + 1), 20)).append(padStart("$" + money(total), 8)).append('\n');
+            receipt.append("  $").append(money(price)).append(" x ").append(qty).append('\n');
+        }
+        double tax = subtotal * 0.10;
+        receipt.append("--------------------------------\n");
+        receipt.append("Subtotal:$").append(padStart(money(subtotal), 18)).append('\n');
+        receipt.append("Tax(10%):$").append(padStart(money(tax), 18)).append('\n');
+        receipt.append("================================\n");
+        receipt.append("TOTAL:   $").append(padStart(money(subtotal + tax), 18)).append('\n');
+        receipt.append("================================\n");
+        receipt.append('\n');
+        receipt.append("    Thank you for your business!\n");
+        receipt.append('\n');
+        return receipt.toString();
+    }
+
+    private static String money(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    private static String padEnd(String s, int width) {
+        StringBuilder out = new StringBuilder(s);
+        while (out.length() < width) {
+            out.append(' ');
+        }
+        return out.toString();
+    }
+
+    private static String padStart(String s, int width) {
+        StringBuilder out = new StringBuilder();
+        while (out.length() + s.length() < width) {
+            out.append(' ');
+        }
+        return out.append(s).toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks that the variants each benchmark compares produce the same
+ * output, so the timings compare like with like.
+ */
+public class BenchmarkEquivalenceTest {
+
+    @Test
+    public void webAndNativeReceiptsAreIdentical() {
+        for (int lines : new int[] {20, 60, 200}) {
+            ReceiptBenchmark benchmark = new ReceiptBenchmark();
+            benchmark.lines = lines;
+            benchmark.setUp();
+            byte[] web = benchmark.webGenerateEscPos();
+            assertEquals(web.length, benchmark.nativeEncoder());
+
+            String text = WebReference.receiptText(lines);
+            byte[] nativeBytes = new EscPosEncoder().initialize().text(text).newline().newline().newline().cut()
+                    .toByteArray();
+            assertArrayEquals(web, nativeBytes);
+            assertEquals(lines, text.split("\n", -1).length - 1);
+        }
+    }
+
+    @Test
+    public void payloadPathsDecodeTheSameBytes() throws Exception {
+        PayloadBenchmark benchmark = new PayloadBenchmark();
+        benchmark.size = 20480;
+        benchmark.setUp();
+        assertArrayEquals(benchmark.jdkBase64Decode(), benchmark.base64Decode());
+        assertEquals(20480, benchmark.base64DecodeIntoPool());
+        assertEquals(20480, benchmark.rawBytes());
+    }
+
+    @Test
+    public void chunkedWritesDeliverThePayloadIntact() {
+        ChunkedWriteBenchmark benchmark = new ChunkedWriteBenchmark();
+        benchmark.size = 20480;
+        benchmark.maxPacketSize = 64;
+        benchmark.transferCost = 0;
+        benchmark.setUp();
+        FakeEndpoint endpoint = benchmark.getEndpoint();
+
+        assertEquals(20480, benchmark.oneShot());
+        assertEquals(1, endpoint.getTransfers());
+        byte[] expected = Arrays.copyOf(endpoint.getDeviceBuffer(), 20480);
+
+        endpoint.reset();
+        assertEquals(20480, benchmark.packetChunked());
+        assertEquals(20480 / 64, endpoint.getTransfers());
+        assertArrayEquals(expected, Arrays.copyOf(endpoint.getDeviceBuffer(), 20480));
+
+        endpoint.reset();
+        assertEquals(20480, benchmark.alignedChunked());
+        assertEquals(2, endpoint.getTransfers());
+        assertArrayEquals(expected, Arrays.copyOf(endpoint.getDeviceBuffer(), 20480));
+    }
+
+    @Test
+    public void logoEncodesToFullWidthRaster() {
+        RasterBenchmark benchmark = new RasterBenchmark();
+        benchmark.dither = RasterEncoder.Dither.FLOYD_STEINBERG;
+        benchmark.setUp();
+        int bytes = benchmark.imageToRaster();
+        assertTrue(bytes > RasterBenchmark.WIDTH / 8 * RasterBenchmark.HEIGHT);
+    }
+}
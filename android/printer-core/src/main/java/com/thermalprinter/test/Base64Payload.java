@@ -0,0 +1,103 @@
+package com.thermalprinter.test;
+
+import java.util.Arrays;
+
+/**
+ * Decodes the Base64 print payloads the web layer sends over the bridge.
+ * Accepts what android.util.Base64.DEFAULT does: the standard alphabet,
+ * line breaks and other whitespace anywhere, and missing padding. Kept
+ * here rather than using android.util.Base64 (or java.util.Base64, which
+ * needs API 26) so payload handling runs and is tested on any JVM.
+ */
+public final class Base64Payload {
+
+    private static final int WHITESPACE = -2;
+    private static final int INVALID = -1;
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+        VALUES[' '] = WHITESPACE;
+        VALUES['\t'] = WHITESPACE;
+        VALUES['\n'] = WHITESPACE;
+        VALUES['\r'] = WHITESPACE;
+    }
+
+    private Base64Payload() {
+    }
+
+    /** Number of bytes {@code text} decodes to. */
+    public static int decodedLength(String text) {
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            if (c < 128 && VALUES[c] >= 0) {
+                digits++;
+            }
+        }
+        return digits * 3 / 4;
+    }
+
+    /** Decodes {@code text} into a new array of exactly the decoded length. */
+    public static byte[] decode(String text) {
+        byte[] out = new byte[decodedLength(text)];
+        decode(text, out, 0);
+        return out;
+    }
+
+    /**
+     * Decodes {@code text} into {@code dest} at {@code offset}, e.g. straight
+     * into a pooled buffer. Returns the number of bytes written.
+     *
+     * @throws IllegalArgumentException if {@code text} isn't valid Base64
+     *         or {@code dest} is too small
+     */
+    public static int decode(String text, byte[] dest, int offset) {
+        int pos = offset;
+        int bits = 0;
+        int digits = 0;
+        int length = text.length();
+        try {
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == '=') {
+                    break;
+                }
+                int value = c < 128 ? VALUES[c] : INVALID;
+                if (value == WHITESPACE) {
+                    continue;
+                }
+                if (value == INVALID) {
+                    throw new IllegalArgumentException("bad base-64 character at " + i);
+                }
+                bits = bits << 6 | value;
+                if (++digits == 4) {
+                    dest[pos++] = (byte) (bits >> 16);
+                    dest[pos++] = (byte) (bits >> 8);
+                    dest[pos++] = (byte) bits;
+                    bits = 0;
+                    digits = 0;
+                }
+            }
+            // 2 or 3 trailing digits carry 1 or 2 bytes; a single one is malformed
+            if (digits == 1) {
+                throw new IllegalArgumentException("bad base-64: truncated");
+            } else if (digits == 2) {
+                dest[pos++] = (byte) (bits >> 4);
+            } else if (digits == 3) {
+                dest[pos++] = (byte) (bits >> 10);
+                dest[pos++] = (byte) (bits >> 2);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Destination too small for decoded payload");
+        }
+        return pos - offset;
+    }
+}
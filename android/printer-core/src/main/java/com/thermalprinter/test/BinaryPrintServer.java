@@ -0,0 +1,346 @@
+package com.thermalprinter.test;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback HTTP endpoint that takes raw print data from the WebView.
+ *
+ * The Capacitor bridge only carries JSON, so binary payloads otherwise pay
+ * for a Base64 encode in JS and a decode here (plus a 33% larger message).
+ * Instead the page POSTs the bytes with fetch() to 127.0.0.1; the body is
+ * read straight into a pooled buffer and handed to the spooler without
+ * further copies. Requests must carry the per-session token returned by
+ * openBinaryChannel, since any local app can reach a loopback port.
+ *
+ * <pre>
+ * POST /print?token=...&amp;priority=receipt&amp;wait=0
+ * Content-Type: application/octet-stream
+ * </pre>
+ * With wait=1 the response is sent once the job has been written to the
+ * printer, mirroring printRawData; otherwise as soon as it is queued. A
+ * waiting request holds its worker until then, so only a few may wait at
+ * once (more get 503) and the pool keeps threads free for other submits.
+ */
+public class BinaryPrintServer {
+
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final int MAX_HEADER_LINES = 64;
+    private static final int WORKER_THREADS = 2;
+    private static final int MAX_WAITERS = 4;
+    private static final int SOCKET_TIMEOUT_MS = 10000;
+    private static final long WAIT_TIMEOUT_MS = 120000;
+
+    private final PrintSpooler spooler;
+    private final BufferPool bufferPool;
+    private final String token;
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final Semaphore waiters = new Semaphore(MAX_WAITERS);
+    private final Thread acceptThread;
+    private volatile boolean running = true;
+
+    public BinaryPrintServer(PrintSpooler spooler, BufferPool bufferPool) throws IOException {
+        this.spooler = spooler;
+        this.bufferPool = bufferPool;
+        this.token = newToken();
+        this.serverSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        // Waiters can hold at most MAX_WAITERS threads; the rest keep serving
+        this.workers = Executors.newFixedThreadPool(WORKER_THREADS + MAX_WAITERS, runnable -> {
+            Thread thread = new Thread(runnable, "BinaryPrintServer-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.acceptThread = new Thread(this::acceptLoop, "BinaryPrintServer-accept");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + getPort() + "/print";
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        workers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                workers.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(SOCKET_TIMEOUT_MS);
+            client.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(client.getInputStream(), MAX_HEADER_BYTES);
+            OutputStream out = client.getOutputStream();
+
+            String[] requestLine = readLine(in).split(" ");
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            int headerLines = 0;
+            while (!(line = readLine(in)).isEmpty()) {
+                if (++headerLines > MAX_HEADER_LINES) {
+                    respond(out, 431, headers.get("origin"), error("Too many header lines"));
+                    return;
+                }
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+                }
+            }
+            String origin = headers.get("origin");
+
+            if (requestLine.length < 2) {
+                respond(out, 400, origin, error("Malformed request"));
+                return;
+            }
+            if ("OPTIONS".equals(requestLine[0])) {
+                respond(out, 204, origin, null);
+                return;
+            }
+
+            String target = requestLine[1];
+            int query = target.indexOf('?');
+            String path = query < 0 ? target : target.substring(0, query);
+            Map<String, String> params = parseQuery(query < 0 ? "" : target.substring(query + 1));
+
+            if (!"POST".equals(requestLine[0]) || !"/print".equals(path)) {
+                respond(out, 404, origin, error("Not found"));
+                return;
+            }
+            if (!token.equals(params.get("token"))) {
+                respond(out, 403, origin, error("Invalid token"));
+                return;
+            }
+
+            int length;
+            try {
+                length = Integer.parseInt(headers.get("content-length"));
+            } catch (NumberFormatException e) {
+                respond(out, 411, origin, error("Content-Length required"));
+                return;
+            }
+            if (length <= 0 || length > BufferPool.maxBufferSize()) {
+                respond(out, 413, origin, error("Payload must be 1.." + BufferPool.maxBufferSize() + " bytes"));
+                return;
+            }
+
+            byte[] buffer = bufferPool.acquire(length);
+            try {
+                readFully(in, buffer, length);
+            } catch (IOException e) {
+                bufferPool.release(buffer);
+                throw e;
+            }
+            submit(buffer, length, params, out, origin);
+        } catch (IOException e) {
+            // Client went away; nothing to report back
+        }
+    }
+
+    private void submit(byte[] buffer, int length, Map<String, String> params, OutputStream out, String origin)
+            throws IOException {
+        boolean wait = "1".equals(params.get("wait")) || "true".equals(params.get("wait"));
+        int priority = PrintJob.parsePriority(params.get("priority"));
+        if (wait && !waiters.tryAcquire()) {
+            bufferPool.release(buffer);
+            respond(out, 503, origin, "{\"error\":\"Too many requests waiting for completion\",\"code\":\"TOO_MANY_WAITERS\"}");
+            return;
+        }
+        try {
+            enqueue(buffer, length, priority, wait, out, origin);
+        } finally {
+            if (wait) {
+                waiters.release();
+            }
+        }
+    }
+
+    private void enqueue(byte[] buffer, int length, int priority, boolean wait, OutputStream out, String origin)
+            throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        String[] failure = new String[1];
+
+        PrintJob job;
+        try {
+            job = spooler.submit(buffer, length, priority, new TransferCallback() {
+                @Override
+                public void onProgress(int bytesSent, int totalBytes) {
+                }
+
+                @Override
+                public void onComplete(int bytesTransferred) {
+                    bufferPool.release(buffer);
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(String message) {
+                    failure[0] = message;
+                    bufferPool.release(buffer);
+                    done.countDown();
+                }
+            });
+        } catch (PrintSpooler.QueueFullException e) {
+            bufferPool.release(buffer);
+            respond(out, 503, origin, "{\"error\":\"" + escape(e.getMessage()) + "\",\"code\":\"QUEUE_FULL\"}");
+            return;
+        }
+
+        if (wait) {
+            try {
+                if (!done.await(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    respond(out, 504, origin, error("Timed out waiting for job " + job.getId()));
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (failure[0] != null) {
+                respond(out, 502, origin, "{\"jobId\":" + job.getId() + ",\"error\":\"" + escape(failure[0]) + "\"}");
+                return;
+            }
+        }
+
+        respond(out, 200, origin, "{\"jobId\":" + job.getId()
+                + ",\"state\":\"" + job.getState().name().toLowerCase() + "\""
+                + ",\"totalBytes\":" + length
+                + ",\"bytesTransferred\":" + job.getBytesSent()
+                + ",\"queueDepth\":" + spooler.getQueueDepth() + "}");
+    }
+
+    private static void respond(OutputStream out, int status, String origin, String json) throws IOException {
+        byte[] body = json == null ? new byte[0] : json.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        head.append("Access-Control-Allow-Origin: ").append(origin != null ? origin : "*").append("\r\n");
+        head.append("Access-Control-Allow-Methods: POST, OPTIONS\r\n");
+        head.append("Access-Control-Allow-Headers: Content-Type\r\n");
+        head.append("Access-Control-Allow-Private-Network: true\r\n");
+        head.append("Access-Control-Max-Age: 600\r\n");
+        if (json != null) {
+            head.append("Content-Type: application/json\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 400: return "Bad Request";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "Error";
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + escape(message) + "\"}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_HEADER_BYTES) {
+                throw new IOException("Header line too long");
+            }
+            line.append((char) c);
+        }
+        throw new EOFException();
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Body truncated at " + read + " of " + length + " bytes");
+            }
+            read += n;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+        }
+        return params;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder(32);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.thermalprinter.test;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of reusable payload buffers in power-of-two size classes, so large
+ * print jobs (raster logos) don't allocate a fresh array every receipt.
+ * Buffers handed out may be larger than requested.
+ */
+public class BufferPool {
+
+    private static final int MIN_SHIFT = 12;   // 4 KB
+    private static final int MAX_SHIFT = 22;   // 4 MB
+
+    private final int buffersPerClass;
+    private final ArrayDeque<byte[]>[] classes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int buffersPerClass) {
+        this.buffersPerClass = buffersPerClass;
+        this.classes = new ArrayDeque[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayDeque<>(buffersPerClass);
+        }
+    }
+
+    public static int maxBufferSize() {
+        return 1 << MAX_SHIFT;
+    }
+
+    /**
+     * Returns a buffer of at least {@code size} bytes. Sizes above
+     * {@link #maxBufferSize()} are allocated directly and never pooled.
+     */
+    public byte[] acquire(int size) {
+        int index = classIndex(size);
+        if (index < 0) {
+            return new byte[size];
+        }
+        synchronized (this) {
+            byte[] buffer = classes[index].poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[1 << (index + MIN_SHIFT)];
+    }
+
+    public void release(byte[] buffer) {
+        int index = classIndex(buffer.length);
+        if (index < 0 || buffer.length != 1 << (index + MIN_SHIFT)) {
+            return;
+        }
+        synchronized (this) {
+            if (classes[index].size() < buffersPerClass) {
+                classes[index].push(buffer);
+            }
+        }
+    }
+
+    private static int classIndex(int size) {
+        if (size > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        int shift = MIN_SHIFT;
+        while ((1 << shift) < size) {
+            shift++;
+        }
+        return shift - MIN_SHIFT;
+    }
+}
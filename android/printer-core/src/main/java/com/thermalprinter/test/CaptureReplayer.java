@@ -0,0 +1,228 @@
+package com.thermalprinter.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds a {@link PrintCapture} back into a printer: at the recorded pace
+ * (optionally sped up) or as fast as the target takes it. At most
+ * {@link #MAX_IN_FLIGHT} jobs are outstanding, so a long capture replayed
+ * at full speed neither overflows a spooler nor loads the whole file.
+ * Replayed transfer times are collected next to the recorded ones so the
+ * same traffic can be compared across printers and firmware.
+ *
+ * Also a command line tool for a plain JVM:
+ * <pre>
+ * CaptureReplayer capture.tpcap [--speed=recorded|max|FACTOR]
+ *                 [--to=simulator[:BYTES_PER_SECOND] | --to=HOST[:PORT] | --to=file:PATH]
+ * </pre>
+ */
+public class CaptureReplayer {
+
+    public static final int MAX_IN_FLIGHT = 8;
+    private static final long DRAIN_TIMEOUT_MS = 60000;
+
+    /** Where replayed jobs go; {@code callback} must be called exactly once per job. */
+    public interface Target {
+        void submit(PrintCapture.Record record, TransferCallback callback) throws Exception;
+    }
+
+    /** What a replay did, with its transfer times next to the recorded ones. */
+    public static final class Result {
+        public final int jobs;
+        public final int failed;
+        public final long bytes;
+        public final long elapsedNanos;
+        public final LatencyHistogram.Snapshot recorded;
+        public final LatencyHistogram.Snapshot replayed;
+
+        Result(int jobs, int failed, long bytes, long elapsedNanos,
+               LatencyHistogram.Snapshot recorded, LatencyHistogram.Snapshot replayed) {
+            this.jobs = jobs;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.recorded = recorded;
+            this.replayed = replayed;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(java.util.Locale.US,
+                    "%d jobs (%d failed), %d bytes in %.2f s (%.0f B/s); transfer p50/p99/max"
+                            + " recorded %d/%d/%d us, replayed %d/%d/%d us",
+                    jobs, failed, bytes, seconds, seconds > 0 ? bytes / seconds : 0,
+                    recorded.getValueAtPercentile(50), recorded.getValueAtPercentile(99), recorded.getMax(),
+                    replayed.getValueAtPercentile(50), replayed.getValueAtPercentile(99), replayed.getMax());
+        }
+    }
+
+    private final double speed;
+
+    /** @param speed 1 for the recorded pace, 2 for twice as fast, 0 for as fast as possible */
+    public CaptureReplayer(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Replays every record in {@code file} into {@code target} and waits for
+     * the last one to finish. Blocks; interrupt the thread to stop early.
+     */
+    public Result replay(File file, Target target) throws IOException, InterruptedException {
+        LatencyHistogram recorded = new LatencyHistogram();
+        LatencyHistogram replayed = new LatencyHistogram();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        int jobs = 0;
+        long start = System.nanoTime();
+        long firstQueuedAt = -1;
+
+        try (PrintCapture.Reader reader = PrintCapture.open(file)) {
+            PrintCapture.Record record;
+            while ((record = reader.next()) != null) {
+                if (firstQueuedAt < 0) {
+                    firstQueuedAt = record.queuedAtMicros;
+                }
+                if (speed > 0) {
+                    long dueNanos = (long) ((record.queuedAtMicros - firstQueuedAt) * 1000 / speed);
+                    long waitNanos = dueNanos - (System.nanoTime() - start);
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                }
+                inFlight.acquire();
+                recorded.recordMicros(record.transferMicros);
+                jobs++;
+                submit(target, record, inFlight, replayed, failed, bytes);
+            }
+        }
+        if (!inFlight.tryAcquire(MAX_IN_FLIGHT, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Replay target stopped responding with "
+                    + (MAX_IN_FLIGHT - inFlight.availablePermits()) + " job(s) outstanding");
+        }
+        return new Result(jobs, failed.get(), bytes.get(), System.nanoTime() - start,
+                recorded.snapshot(), replayed.snapshot());
+    }
+
+    private static void submit(Target target, PrintCapture.Record record, Semaphore inFlight,
+                               LatencyHistogram replayed, AtomicInteger failed, AtomicLong bytes) {
+        long submitted = System.nanoTime();
+        TransferCallback callback = new TransferCallback() {
+            @Override
+            public void onProgress(int bytesSent, int totalBytes) {
+            }
+
+            @Override
+            public void onComplete(int bytesTransferred) {
+                replayed.recordSince(submitted);
+                bytes.addAndGet(bytesTransferred);
+                inFlight.release();
+            }
+
+            @Override
+            public void onError(String message) {
+                failed.incrementAndGet();
+                inFlight.release();
+            }
+        };
+        try {
+            target.submit(record, callback);
+        } catch (Exception e) {
+            callback.onError(e.getMessage());
+        }
+    }
+
+    /** "recorded" (or null) is 1, "max" is 0, anything else a speed-up factor. */
+    public static double parseSpeed(String value) {
+        if (value == null || "recorded".equals(value)) {
+            return 1;
+        }
+        if ("max".equals(value)) {
+            return 0;
+        }
+        double factor = Double.parseDouble(value);
+        if (!(factor >= 0)) {
+            throw new IllegalArgumentException("Bad replay speed " + value);
+        }
+        return factor;
+    }
+
+    /** Sends each job straight to {@code transport}, in order. */
+    public static Target toTransport(PrinterTransport transport) {
+        return (record, callback) -> transport.submit(record.data, 0, record.data.length, callback);
+    }
+
+    /** Appends every job to {@code out}, e.g. to diff against a known-good capture. */
+    public static Target toStream(OutputStream out) {
+        return (record, callback) -> {
+            synchronized (out) {
+                out.write(record.data);
+            }
+            callback.onComplete(record.data.length);
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: CaptureReplayer CAPTURE [--speed=recorded|max|FACTOR]"
+                    + " [--to=simulator[:BYTES_PER_SECOND] | --to=HOST[:PORT] | --to=file:PATH]");
+            System.exit(2);
+        }
+        File capture = new File(args[0]);
+        double speed = 1;
+        String to = "simulator";
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--speed=")) {
+                speed = parseSpeed(args[i].substring("--speed=".length()));
+            } else if (args[i].startsWith("--to=")) {
+                to = args[i].substring("--to=".length());
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        CaptureReplayer replayer = new CaptureReplayer(speed);
+        if (to.startsWith("file:")) {
+            try (OutputStream out = new FileOutputStream(to.substring("file:".length()))) {
+                System.out.println(replayer.replay(capture, toStream(out)));
+            }
+            return;
+        }
+
+        PrinterSimulator simulator = null;
+        String host = to;
+        int port = SocketTransport.DEFAULT_PORT;
+        if (to.equals("simulator") || to.startsWith("simulator:")) {
+            long bytesPerSecond = to.length() > "simulator".length()
+                    ? Long.parseLong(to.substring("simulator:".length())) : 0;
+            simulator = new PrinterSimulator(0, bytesPerSecond);
+            host = simulator.getHost();
+            port = simulator.getPort();
+        } else if (to.lastIndexOf(':') > 0) {
+            host = to.substring(0, to.lastIndexOf(':'));
+            port = Integer.parseInt(to.substring(to.lastIndexOf(':') + 1));
+        }
+        SocketTransport transport = SocketTransport.connect(host, port, null);
+        try {
+            System.out.println("Replaying " + capture + " to " + transport.getAddress()
+                    + (speed > 0 ? " at " + speed + "x the recorded pace" : " at full speed"));
+            System.out.println(replayer.replay(capture, toTransport(transport)));
+            if (simulator != null) {
+                System.out.println(simulator.getStats());
+            }
+        } finally {
+            transport.close();
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+}
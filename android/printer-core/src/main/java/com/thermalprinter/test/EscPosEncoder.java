@@ -0,0 +1,362 @@
+package com.thermalprinter.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Fluent ESC/POS command builder.
+ *
+ * Commands are written into one growable byte buffer that is reused across
+ * receipts via {@link #reset()}, so building a receipt allocates nothing once
+ * the buffer has grown to size. Text is encoded straight into the printer's
+ * code page (CP437 by default) instead of UTF-8, which keeps box-drawing and
+ * accented characters intact.
+ *
+ * Not thread-safe; use one encoder per thread or guard it externally.
+ */
+public class EscPosEncoder {
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final byte LF = 0x0A;
+
+    public enum Alignment {
+        LEFT(0),
+        CENTER(1),
+        RIGHT(2);
+
+        final int value;
+
+        Alignment(int value) {
+            this.value = value;
+        }
+
+        public static Alignment parse(String name) {
+            if ("center".equalsIgnoreCase(name)) {
+                return CENTER;
+            }
+            if ("right".equalsIgnoreCase(name)) {
+                return RIGHT;
+            }
+            return LEFT;
+        }
+    }
+
+    /**
+     * Printer code pages, selected with ESC t n. Each table lists the
+     * characters for bytes 0x80-0xFF; the lower half is plain ASCII.
+     */
+    public enum CodePage {
+        CP437(0,
+                "\u00c7\u00fc\u00e9\u00e2\u00e4\u00e0\u00e5\u00e7\u00ea\u00eb\u00e8\u00ef\u00ee\u00ec\u00c4\u00c5" +
+                "\u00c9\u00e6\u00c6\u00f4\u00f6\u00f2\u00fb\u00f9\u00ff\u00d6\u00dc\u00a2\u00a3\u00a5\u20a7\u0192" +
+                "\u00e1\u00ed\u00f3\u00fa\u00f1\u00d1\u00aa\u00ba\u00bf\u2310\u00ac\u00bd\u00bc\u00a1\u00ab\u00bb" +
+                "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255d\u255c\u255b\u2510" +
+                "\u2514\u2534\u252c\u251c\u2500\u253c\u255e\u255f\u255a\u2554\u2569\u2566\u2560\u2550\u256c\u2567" +
+                "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256b\u256a\u2518\u250c\u2588\u2584\u258c\u2590\u2580" +
+                "\u03b1\u00df\u0393\u03c0\u03a3\u03c3\u00b5\u03c4\u03a6\u0398\u03a9\u03b4\u221e\u03c6\u03b5\u2229" +
+                "\u2261\u00b1\u2265\u2264\u2320\u2321\u00f7\u2248\u00b0\u2219\u00b7\u221a\u207f\u00b2\u25a0\u00a0"),
+        CP850(2,
+                "\u00c7\u00fc\u00e9\u00e2\u00e4\u00e0\u00e5\u00e7\u00ea\u00eb\u00e8\u00ef\u00ee\u00ec\u00c4\u00c5" +
+                "\u00c9\u00e6\u00c6\u00f4\u00f6\u00f2\u00fb\u00f9\u00ff\u00d6\u00dc\u00f8\u00a3\u00d8\u00d7\u0192" +
+                "\u00e1\u00ed\u00f3\u00fa\u00f1\u00d1\u00aa\u00ba\u00bf\u00ae\u00ac\u00bd\u00bc\u00a1\u00ab\u00bb" +
+                "\u2591\u2592\u2593\u2502\u2524\u00c1\u00c2\u00c0\u00a9\u2563\u2551\u2557\u255d\u00a2\u00a5\u2510" +
+                "\u2514\u2534\u252c\u251c\u2500\u253c\u00e3\u00c3\u255a\u2554\u2569\u2566\u2560\u2550\u256c\u00a4" +
+                "\u00f0\u00d0\u00ca\u00cb\u00c8\u0131\u00cd\u00ce\u00cf\u2518\u250c\u2588\u2584\u00a6\u00cc\u2580" +
+                "\u00d3\u00df\u00d4\u00d2\u00f5\u00d5\u00b5\u00fe\u00de\u00da\u00db\u00d9\u00fd\u00dd\u00af\u00b4" +
+                "\u00ad\u00b1\u2017\u00be\u00b6\u00a7\u00f7\u00b8\u00b0\u00a8\u00b7\u00b9\u00b3\u00b2\u25a0\u00a0"),
+        CP858(19,
+                "\u00c7\u00fc\u00e9\u00e2\u00e4\u00e0\u00e5\u00e7\u00ea\u00eb\u00e8\u00ef\u00ee\u00ec\u00c4\u00c5" +
+                "\u00c9\u00e6\u00c6\u00f4\u00f6\u00f2\u00fb\u00f9\u00ff\u00d6\u00dc\u00f8\u00a3\u00d8\u00d7\u0192" +
+                "\u00e1\u00ed\u00f3\u00fa\u00f1\u00d1\u00aa\u00ba\u00bf\u00ae\u00ac\u00bd\u00bc\u00a1\u00ab\u00bb" +
+                "\u2591\u2592\u2593\u2502\u2524\u00c1\u00c2\u00c0\u00a9\u2563\u2551\u2557\u255d\u00a2\u00a5\u2510" +
+                "\u2514\u2534\u252c\u251c\u2500\u253c\u00e3\u00c3\u255a\u2554\u2569\u2566\u2560\u2550\u256c\u00a4" +
+                "\u00f0\u00d0\u00ca\u00cb\u00c8\u20ac\u00cd\u00ce\u00cf\u2518\u250c\u2588\u2584\u00a6\u00cc\u2580" +
+                "\u00d3\u00df\u00d4\u00d2\u00f5\u00d5\u00b5\u00fe\u00de\u00da\u00db\u00d9\u00fd\u00dd\u00af\u00b4" +
+                "\u00ad\u00b1\u2017\u00be\u00b6\u00a7\u00f7\u00b8\u00b0\u00a8\u00b7\u00b9\u00b3\u00b2\u25a0\u00a0"),
+        WPC1252(16,
+                "\u20ac\ufffd\u201a\u0192\u201e\u2026\u2020\u2021\u02c6\u2030\u0160\u2039\u0152\ufffd\u017d\ufffd" +
+                "\ufffd\u2018\u2019\u201c\u201d\u2022\u2013\u2014\u02dc\u2122\u0161\u203a\u0153\ufffd\u017e\u0178" +
+                "\u00a0\u00a1\u00a2\u00a3\u00a4\u00a5\u00a6\u00a7\u00a8\u00a9\u00aa\u00ab\u00ac\u00ad\u00ae\u00af" +
+                "\u00b0\u00b1\u00b2\u00b3\u00b4\u00b5\u00b6\u00b7\u00b8\u00b9\u00ba\u00bb\u00bc\u00bd\u00be\u00bf" +
+                "\u00c0\u00c1\u00c2\u00c3\u00c4\u00c5\u00c6\u00c7\u00c8\u00c9\u00ca\u00cb\u00cc\u00cd\u00ce\u00cf" +
+                "\u00d0\u00d1\u00d2\u00d3\u00d4\u00d5\u00d6\u00d7\u00d8\u00d9\u00da\u00db\u00dc\u00dd\u00de\u00df" +
+                "\u00e0\u00e1\u00e2\u00e3\u00e4\u00e5\u00e6\u00e7\u00e8\u00e9\u00ea\u00eb\u00ec\u00ed\u00ee\u00ef" +
+                "\u00f0\u00f1\u00f2\u00f3\u00f4\u00f5\u00f6\u00f7\u00f8\u00f9\u00fa\u00fb\u00fc\u00fd\u00fe\u00ff");
+
+        final int selector;
+        // Sorted characters and their bytes, for binary search when encoding
+        private final char[] chars;
+        private final byte[] bytes;
+
+        CodePage(int selector, String upperHalf) {
+            this.selector = selector;
+            char[] sorted = upperHalf.toCharArray();
+            Arrays.sort(sorted);
+            this.chars = sorted;
+            this.bytes = new byte[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                bytes[i] = (byte) (0x80 + upperHalf.indexOf(sorted[i]));
+            }
+        }
+
+        byte encode(char c) {
+            if (c < 0x80) {
+                return (byte) c;
+            }
+            int index = Arrays.binarySearch(chars, c);
+            return index >= 0 && c != '\ufffd' ? bytes[index] : (byte) '?';
+        }
+
+        public static CodePage parse(String name) {
+            if (name != null) {
+                for (CodePage page : values()) {
+                    if (page.name().equalsIgnoreCase(name)) {
+                        return page;
+                    }
+                }
+            }
+            return CP437;
+        }
+    }
+
+    private byte[] buffer;
+    private int size;
+    private CodePage codePage = CodePage.CP437;
+
+    public EscPosEncoder() {
+        this(4096);
+    }
+
+    public EscPosEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /** Clears the buffer for the next receipt, keeping its capacity. */
+    public EscPosEncoder reset() {
+        size = 0;
+        codePage = CodePage.CP437;
+        return this;
+    }
+
+    /** ESC @ - resets the printer to its power-on state. */
+    public EscPosEncoder initialize() {
+        codePage = CodePage.CP437;
+        return write(ESC, '@');
+    }
+
+    /** ESC t n - selects the character code table used by {@link #text}. */
+    public EscPosEncoder codePage(CodePage page) {
+        codePage = page;
+        return write(ESC, 't', page.selector);
+    }
+
+    /**
+     * Sets the code page {@link #text} encodes into without writing ESC t,
+     * for appending text after pre-encoded bytes that already selected it.
+     */
+    public EscPosEncoder setCodePage(CodePage page) {
+        codePage = page;
+        return this;
+    }
+
+    public CodePage getCodePage() {
+        return codePage;
+    }
+
+    /** ESC a n */
+    public EscPosEncoder align(Alignment alignment) {
+        return write(ESC, 'a', alignment.value);
+    }
+
+    /** ESC E n */
+    public EscPosEncoder bold(boolean on) {
+        return write(ESC, 'E', on ? 1 : 0);
+    }
+
+    /** ESC - n */
+    public EscPosEncoder underline(boolean on) {
+        return write(ESC, '-', on ? 1 : 0);
+    }
+
+    /** GS ! n - character width and height multipliers, 1 to 8. */
+    public EscPosEncoder size(int width, int height) {
+        int w = Math.max(1, Math.min(8, width)) - 1;
+        int h = Math.max(1, Math.min(8, height)) - 1;
+        return write(GS, '!', (w << 4) | h);
+    }
+
+    /** Text in the current code page, without a line feed. */
+    public EscPosEncoder text(CharSequence text) {
+        return text(text, 0, text.length());
+    }
+
+    public EscPosEncoder text(CharSequence text, int start, int end) {
+        ensureCapacity(end - start);
+        for (int i = start; i < end; i++) {
+            buffer[size++] = codePage.encode(text.charAt(i));
+        }
+        return this;
+    }
+
+    public EscPosEncoder line(CharSequence text) {
+        return text(text).newline();
+    }
+
+    public EscPosEncoder newline() {
+        ensureCapacity(1);
+        buffer[size++] = LF;
+        return this;
+    }
+
+    /** {@code count} copies of {@code c}, e.g. for separator rules. */
+    public EscPosEncoder repeat(char c, int count) {
+        if (count <= 0) {
+            return this;
+        }
+        ensureCapacity(count);
+        byte b = codePage.encode(c);
+        Arrays.fill(buffer, size, size + count, b);
+        size += count;
+        return this;
+    }
+
+    /**
+     * One line with {@code left} flush left and {@code right} flush right
+     * within {@code columns} characters. The left text is truncated if the
+     * two don't fit.
+     */
+    public EscPosEncoder columns(CharSequence left, CharSequence right, int columns) {
+        int rightLength = Math.min(right.length(), columns);
+        int leftLength = Math.min(left.length(), Math.max(0, columns - rightLength - 1));
+        text(left, 0, leftLength);
+        repeat(' ', columns - leftLength - rightLength);
+        text(right, 0, rightLength);
+        return newline();
+    }
+
+    /** ESC d n - prints the buffer and feeds {@code lines} lines. */
+    public EscPosEncoder feed(int lines) {
+        return write(ESC, 'd', Math.max(0, Math.min(255, lines)));
+    }
+
+    /** GS V 65 n - feeds to the cutter (plus n dots) and cuts. */
+    public EscPosEncoder cut() {
+        return write(GS, 'V', 0x41, 0x03);
+    }
+
+    /**
+     * GS ( L fn 67 (NV) or fn 83 (download) - stores a 1-bit raster image in
+     * the printer under key code {@code kc1 kc2}. {@code bits} holds
+     * {@code (width + 7) / 8} bytes per row. Payloads over 64 KB use the
+     * GS 8 L form with a 32-bit length.
+     */
+    public EscPosEncoder defineGraphic(boolean nv, int kc1, int kc2, int width, int height, byte[] bits) {
+        int dataLength = ((width + 7) >> 3) * height;
+        int p = 11 + dataLength;
+        ensureCapacity(p + 8);
+        buffer[size++] = GS;
+        if (p <= 0xFFFF) {
+            buffer[size++] = '(';
+            buffer[size++] = 'L';
+            buffer[size++] = (byte) p;
+            buffer[size++] = (byte) (p >> 8);
+        } else {
+            buffer[size++] = '8';
+            buffer[size++] = 'L';
+            buffer[size++] = (byte) p;
+            buffer[size++] = (byte) (p >> 8);
+            buffer[size++] = (byte) (p >> 16);
+            buffer[size++] = (byte) (p >> 24);
+        }
+        buffer[size++] = 48;
+        buffer[size++] = (byte) (nv ? 67 : 83);
+        buffer[size++] = 48;                       // raster format
+        buffer[size++] = (byte) kc1;
+        buffer[size++] = (byte) kc2;
+        buffer[size++] = 1;                        // one colour
+        buffer[size++] = (byte) width;
+        buffer[size++] = (byte) (width >> 8);
+        buffer[size++] = (byte) height;
+        buffer[size++] = (byte) (height >> 8);
+        buffer[size++] = 49;                       // colour 1 (black)
+        return raw(bits, 0, dataLength);
+    }
+
+    /** GS ( L fn 69 (NV) or fn 85 (download) - prints a stored graphic at normal size. */
+    public EscPosEncoder printGraphic(boolean nv, int kc1, int kc2) {
+        ensureCapacity(11);
+        buffer[size++] = GS;
+        buffer[size++] = '(';
+        buffer[size++] = 'L';
+        buffer[size++] = 6;
+        buffer[size++] = 0;
+        buffer[size++] = 48;
+        buffer[size++] = (byte) (nv ? 69 : 85);
+        buffer[size++] = (byte) kc1;
+        buffer[size++] = (byte) kc2;
+        buffer[size++] = 1;
+        buffer[size++] = 1;
+        return this;
+    }
+
+    /** Pre-encoded command bytes, copied as-is. */
+    public EscPosEncoder raw(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    public EscPosEncoder raw(byte[] data) {
+        return raw(data, 0, data.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Backing buffer; only the first {@link #size()} bytes are valid. */
+    public byte[] array() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    private EscPosEncoder write(int b0, int b1) {
+        ensureCapacity(2);
+        buffer[size++] = (byte) b0;
+        buffer[size++] = (byte) b1;
+        return this;
+    }
+
+    private EscPosEncoder write(int b0, int b1, int b2) {
+        ensureCapacity(3);
+        buffer[size++] = (byte) b0;
+        buffer[size++] = (byte) b1;
+        buffer[size++] = (byte) b2;
+        return this;
+    }
+
+    private EscPosEncoder write(int b0, int b1, int b2, int b3) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) b0;
+        buffer[size++] = (byte) b1;
+        buffer[size++] = (byte) b2;
+        buffer[size++] = (byte) b3;
+        return this;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.thermalprinter.test;
+
+/**
+ * Incremental ESC/POS stream parser, the printer's side of
+ * {@link EscPosEncoder}. Splits a byte stream into text, line feeds and
+ * commands, skipping over image and graphics payloads without buffering
+ * them, so it can sit on a socket and count what a real printer would
+ * execute. Input may be split anywhere, including inside a command header.
+ * Unknown commands are assumed to take no parameters. Not thread-safe.
+ */
+public class EscPosParser {
+
+    public static final int DLE = 0x10;
+    public static final int FS = 0x1C;
+    public static final int ESC = 0x1B;
+    public static final int GS = 0x1D;
+    private static final int LF = 0x0A;
+
+    /** DLE EOT n - real-time status request. */
+    public static final int DLE_EOT = DLE << 8 | 0x04;
+    /** GS a n - enable Automatic Status Back. */
+    public static final int GS_AUTO_STATUS = GS << 8 | 'a';
+    /** GS V m [n] - cut. */
+    public static final int GS_CUT = GS << 8 | 'V';
+    /** GS v 0 - raster bit image. */
+    public static final int GS_RASTER = GS << 8 | 'v';
+    /** ESC * - bit image, one band. */
+    public static final int ESC_BIT_IMAGE = ESC << 8 | '*';
+    /** GS ( fn and GS 8 L - extended commands, graphics when fn is 'L'. */
+    public static final int GS_EXTENDED = GS << 8 | '(';
+    public static final int GS_EXTENDED_LONG = GS << 8 | '8';
+
+    public interface Listener {
+        /** A run of printable bytes; long runs may be reported in several parts. */
+        void onText(int length);
+
+        void onLineFeed();
+
+        /**
+         * A complete command header. {@code command} is prefix &lt;&lt; 8 | code
+         * (e.g. {@link #GS_CUT}); {@code function} is its first parameter byte
+         * (the function letter for GS ( and GS 8), or -1 if it has none;
+         * {@code payloadLength} data bytes follow and are skipped.
+         */
+        void onCommand(int command, int function, long payloadLength);
+    }
+
+    // Parameter bytes after ESC, GS and FS codes with fixed-length arguments
+    private static final int[] ESC_PARAMS = new int[128];
+    private static final int[] GS_PARAMS = new int[128];
+    private static final int[] FS_PARAMS = new int[128];
+
+    static {
+        for (char c : "!-EGJMRTVadert{ %=3".toCharArray()) {
+            ESC_PARAMS[c] = 1;
+        }
+        ESC_PARAMS['c'] = 2;
+        ESC_PARAMS['$'] = 2;
+        ESC_PARAMS['\\'] = 2;
+        ESC_PARAMS['p'] = 3;
+        ESC_PARAMS['W'] = 8;
+        for (char c : "!BHIEabfhrw/".toCharArray()) {
+            GS_PARAMS[c] = 1;
+        }
+        GS_PARAMS['L'] = 2;
+        GS_PARAMS['W'] = 2;
+        GS_PARAMS['P'] = 2;
+        GS_PARAMS['$'] = 2;
+        GS_PARAMS['\\'] = 2;
+        GS_PARAMS['^'] = 3;
+        for (char c : "!-W".toCharArray()) {
+            FS_PARAMS[c] = 1;
+        }
+        FS_PARAMS['p'] = 2;
+        FS_PARAMS['S'] = 2;
+    }
+
+    private final Listener listener;
+    private final int[] header = new int[8];
+    private int headerLength;
+    private long payloadRemaining;
+    private boolean skipToNul;
+
+    public EscPosParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            if (payloadRemaining > 0) {
+                int n = (int) Math.min(payloadRemaining, end - i);
+                payloadRemaining -= n;
+                i += n;
+                continue;
+            }
+            if (skipToNul) {
+                while (i < end && data[i] != 0) {
+                    i++;
+                }
+                if (i < end) {
+                    skipToNul = false;
+                    i++;
+                }
+                continue;
+            }
+            int b = data[i] & 0xFF;
+            if (headerLength > 0) {
+                header[headerLength++] = b;
+                i++;
+                if (headerComplete()) {
+                    headerLength = 0;
+                }
+                continue;
+            }
+            if (b == ESC || b == GS || b == DLE || b == FS) {
+                header[0] = b;
+                headerLength = 1;
+                i++;
+                continue;
+            }
+            if (b == LF) {
+                listener.onLineFeed();
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < end && !isSpecial(data[i] & 0xFF)) {
+                i++;
+            }
+            listener.onText(i - start);
+        }
+    }
+
+    private static boolean isSpecial(int b) {
+        return b == ESC || b == GS || b == DLE || b == FS || b == LF;
+    }
+
+    /** Whether the header collected so far is a whole command; dispatches it if so. */
+    private boolean headerComplete() {
+        if (headerLength < 2) {
+            return false;
+        }
+        int prefix = header[0];
+        int code = header[1];
+        int command = prefix << 8 | code;
+        switch (prefix) {
+            case ESC:
+                if (code == '*') {
+                    // ESC * m nL nH, 3 bytes per column in 24-dot modes
+                    if (headerLength < 5) {
+                        return false;
+                    }
+                    return dispatch(command, header[2], (long) (header[3] | header[4] << 8) * (header[2] >= 32 ? 3 : 1));
+                }
+                if (code == '(') {
+                    return extended(command);
+                }
+                if (code == 'D') {
+                    // Tab stops, NUL-terminated
+                    skipToNul = true;
+                    return dispatch(command, -1, 0);
+                }
+                return fixed(command, code < 128 ? ESC_PARAMS[code] : 0);
+            case GS:
+                switch (code) {
+                    case 'v':
+                        // GS v 0 m xL xH yL yH
+                        if (headerLength < 3) {
+                            return false;
+                        }
+                        if (header[2] != '0') {
+                            return dispatch(command, header[2], 0);
+                        }
+                        if (headerLength < 8) {
+                            return false;
+                        }
+                        return dispatch(command, header[3], (long) (header[4] | header[5] << 8) * (header[6] | header[7] << 8));
+                    case '(':
+                        return extended(command);
+                    case '8':
+                        // GS 8 L p1 p2 p3 p4
+                        if (headerLength < 3) {
+                            return false;
+                        }
+                        if (header[2] != 'L') {
+                            return dispatch(command, header[2], 0);
+                        }
+                        if (headerLength < 7) {
+                            return false;
+                        }
+                        return dispatch(command, header[2], (header[3] | header[4] << 8 | header[5] << 16 | (long) header[6] << 24));
+                    case 'k':
+                        // GS k m d1..dk NUL (m <= 6) or GS k m n d1..dn
+                        if (headerLength < 3) {
+                            return false;
+                        }
+                        if (header[2] <= 6) {
+                            skipToNul = true;
+                            return dispatch(command, header[2], 0);
+                        }
+                        if (headerLength < 4) {
+                            return false;
+                        }
+                        return dispatch(command, header[2], header[3]);
+                    case 'V':
+                        // GS V m, plus a feed amount for the "feed and cut" forms
+                        if (headerLength < 3) {
+                            return false;
+                        }
+                        int m = header[2];
+                        boolean feed = m == 65 || m == 66 || m == 97 || m == 98 || m == 103 || m == 104;
+                        return fixed(command, feed ? 2 : 1);
+                    case '*':
+                        // GS * x y, x * y * 8 bytes
+                        if (headerLength < 4) {
+                            return false;
+                        }
+                        return dispatch(command, header[2], (long) header[2] * header[3] * 8);
+                    default:
+                        return fixed(command, code < 128 ? GS_PARAMS[code] : 0);
+                }
+            case FS:
+                if (code == '(') {
+                    return extended(command);
+                }
+                return fixed(command, code < 128 ? FS_PARAMS[code] : 0);
+            default:
+                // DLE EOT n, DLE ENQ n, DLE DC4 fn m t
+                return fixed(command, code == 0x14 ? 3 : code == 0x04 || code == 0x05 ? 1 : 0);
+        }
+    }
+
+    // GS ( fn pL pH and friends
+    private boolean extended(int command) {
+        if (headerLength < 5) {
+            return false;
+        }
+        return dispatch(command, header[2], header[3] | header[4] << 8);
+    }
+
+    private boolean fixed(int command, int params) {
+        if (headerLength < 2 + params) {
+            return false;
+        }
+        return dispatch(command, params > 0 ? header[2] : -1, 0);
+    }
+
+    private boolean dispatch(int command, int function, long payloadLength) {
+        payloadRemaining = payloadLength;
+        listener.onCommand(command, function, payloadLength);
+        return true;
+    }
+}
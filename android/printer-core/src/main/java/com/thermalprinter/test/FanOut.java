@@ -0,0 +1,139 @@
+package com.thermalprinter.test;
+
+/**
+ * Tracks one order sent to several printers at once and settles as soon as
+ * the outcome is known: when {@code quorum} targets have printed, or when so
+ * many have failed that the quorum can no longer be reached. Targets still
+ * printing at that point carry on; their results are visible through
+ * {@link #getState(int)} but no longer affect the outcome. Thread-safe.
+ */
+public class FanOut {
+
+    public enum State {
+        PENDING,
+        PRINTED,
+        FAILED
+    }
+
+    public interface Listener {
+        /** Called exactly once, on the thread of the completion that decided it. */
+        void onSettled(FanOut fanOut, boolean quorumMet);
+    }
+
+    private final String[] targets;
+    private final int quorum;
+    private final Listener listener;
+    private final State[] states;
+    private final String[] errors;
+    private final int[] bytesTransferred;
+    private final long startNanos;
+    private int printed;
+    private int failed;
+    private boolean settled;
+    private long settledNanos;
+
+    /** {@code quorum} is clamped to 1..targets.length. */
+    public FanOut(String[] targets, int quorum, Listener listener) {
+        if (targets.length == 0) {
+            throw new IllegalArgumentException("No targets");
+        }
+        this.targets = targets.clone();
+        this.quorum = Math.max(1, Math.min(targets.length, quorum));
+        this.listener = listener;
+        this.states = new State[targets.length];
+        this.errors = new String[targets.length];
+        this.bytesTransferred = new int[targets.length];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = State.PENDING;
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    /** Completion callback for the job sent to target {@code index}. */
+    public TransferCallback callbackFor(int index) {
+        return new TransferCallback() {
+            @Override
+            public void onProgress(int bytesSent, int totalBytes) {
+            }
+
+            @Override
+            public void onComplete(int bytes) {
+                finish(index, State.PRINTED, bytes, null);
+            }
+
+            @Override
+            public void onError(String message) {
+                finish(index, State.FAILED, 0, message);
+            }
+        };
+    }
+
+    /** Records that the job for {@code index} couldn't be submitted at all. */
+    public void fail(int index, String message) {
+        finish(index, State.FAILED, 0, message);
+    }
+
+    private void finish(int index, State state, int bytes, String error) {
+        boolean quorumMet;
+        synchronized (this) {
+            if (states[index] != State.PENDING) {
+                return;
+            }
+            states[index] = state;
+            bytesTransferred[index] = bytes;
+            errors[index] = error;
+            if (state == State.PRINTED) {
+                printed++;
+            } else {
+                failed++;
+            }
+            if (settled) {
+                return;
+            }
+            quorumMet = printed >= quorum;
+            if (!quorumMet && failed <= targets.length - quorum) {
+                return;
+            }
+            settled = true;
+            settledNanos = System.nanoTime();
+        }
+        listener.onSettled(this, quorumMet);
+    }
+
+    public int getTargetCount() {
+        return targets.length;
+    }
+
+    public String getTarget(int index) {
+        return targets[index];
+    }
+
+    public int getQuorum() {
+        return quorum;
+    }
+
+    public synchronized State getState(int index) {
+        return states[index];
+    }
+
+    public synchronized String getError(int index) {
+        return errors[index];
+    }
+
+    public synchronized int getBytesTransferred(int index) {
+        return bytesTransferred[index];
+    }
+
+    public synchronized int getPrinted() {
+        return printed;
+    }
+
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /** Time from creation until the outcome was decided, or until now if it hasn't been. */
+    public synchronized long getElapsedMillis() {
+        return ((settled ? settledNanos : System.nanoTime()) - startNanos) / 1000000;
+    }
+}
@@ -0,0 +1,177 @@
+package com.thermalprinter.test;
+
+/**
+ * Paces bulk writes to what the printer actually accepts.
+ *
+ * Throughput is an exponentially weighted average of the rate at which
+ * chunks complete, measured from the start of each job so idle time doesn't
+ * count. The chunk size targets about {@link #TARGET_CHUNK_MS} of transfer
+ * at that rate, rounded to whole USB packets. Depth (chunks in flight) grows
+ * by one after a run of clean completions and halves on a stall (a timeout
+ * or short write, i.e. the printer's buffer was full). Timeouts cover the
+ * time the whole in-flight window should take to drain, with a wide margin.
+ * Until enough samples exist the transport's fixed defaults apply.
+ *
+ * A profile can be saved with {@link #encode()} and restored per printer
+ * model so each connection starts from what was learned last time.
+ */
+public class FlowController {
+
+    public static final int DEFAULT_TIMEOUT_MS = 5000;
+    static final int MIN_TIMEOUT_MS = 1000;
+    static final int MAX_TIMEOUT_MS = 30000;
+    static final int TARGET_CHUNK_MS = 100;
+    static final int MIN_SAMPLES = 8;
+    private static final double ALPHA = 0.2;
+    private static final int TIMEOUT_MARGIN = 4;
+
+    // 80mm head: 72 bytes per raster row, 8 rows per mm at 203 dpi
+    private static final double RASTER_BYTES_PER_MM = 72 * 8;
+
+    private final int packetSize;
+    private final int minChunk;
+    private final int maxChunk;
+    private final int maxDepth;
+
+    private int chunkSize;
+    private int depth;
+    private double bytesPerSecond;
+    private long samples;
+    private int stalls;
+    private int cleanCompletions;
+    private long windowStartNanos;
+    private boolean dirty;
+
+    public FlowController(int packetSize, int maxChunk, int maxDepth) {
+        this.packetSize = Math.max(1, packetSize);
+        this.maxChunk = alignedChunkSize(this.packetSize, maxChunk);
+        this.minChunk = Math.min(this.maxChunk, this.packetSize * 8);
+        this.maxDepth = Math.max(1, maxDepth);
+        this.chunkSize = this.maxChunk;
+        this.depth = Math.min(4, this.maxDepth);
+    }
+
+    /**
+     * Largest multiple of {@code packetSize} (at least one packet) that fits
+     * in {@code maxChunk}, so no chunk ends in a short packet mid-job.
+     * {@code packetSize} of 0 or less means unknown; {@code maxChunk} is used.
+     */
+    public static int alignedChunkSize(int packetSize, int maxChunk) {
+        if (packetSize <= 0) {
+            return maxChunk;
+        }
+        return Math.max(packetSize, maxChunk - maxChunk % packetSize);
+    }
+
+    public synchronized int getChunkSize() {
+        return chunkSize;
+    }
+
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    public synchronized double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized int getStalls() {
+        return stalls;
+    }
+
+    /** Paper speed implied by the throughput if the data were full-width raster. */
+    public synchronized double getRasterMmPerSecond() {
+        return bytesPerSecond / RASTER_BYTES_PER_MM;
+    }
+
+    /** How long to wait for the next completion before declaring a stall. */
+    public synchronized int getChunkTimeoutMs() {
+        if (samples < MIN_SAMPLES || bytesPerSecond <= 0) {
+            return DEFAULT_TIMEOUT_MS;
+        }
+        double drainMs = (double) chunkSize * depth * 1000.0 / bytesPerSecond;
+        long timeout = Math.round(drainMs * TIMEOUT_MARGIN) + 250;
+        return (int) Math.max(MIN_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, timeout));
+    }
+
+    /** Starts a measurement window; call when a job begins so idle time is excluded. */
+    public synchronized void onJobStart(long nowNanos) {
+        windowStartNanos = nowNanos;
+    }
+
+    public synchronized void onChunkComplete(int bytes, long nowNanos) {
+        long elapsed = nowNanos - windowStartNanos;
+        windowStartNanos = nowNanos;
+        if (elapsed <= 0 || bytes <= 0) {
+            return;
+        }
+        double rate = bytes * 1e9 / elapsed;
+        bytesPerSecond = samples == 0 ? rate : bytesPerSecond + ALPHA * (rate - bytesPerSecond);
+        samples++;
+        dirty = true;
+
+        if (samples >= MIN_SAMPLES) {
+            chunkSize = clampChunk((int) (bytesPerSecond * TARGET_CHUNK_MS / 1000));
+        }
+        if (++cleanCompletions >= depth * 4 && depth < maxDepth) {
+            depth++;
+            cleanCompletions = 0;
+        }
+    }
+
+    /** The printer stopped accepting data in time: back off. */
+    public synchronized void onStall() {
+        stalls++;
+        cleanCompletions = 0;
+        depth = Math.max(1, depth / 2);
+        chunkSize = clampChunk(chunkSize / 2);
+        dirty = true;
+    }
+
+    /** True once per change since the last call; lets callers persist lazily. */
+    public synchronized boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    /** Serialises the learned profile: bytesPerSecond,chunkSize,depth,samples,stalls. */
+    public synchronized String encode() {
+        return Math.round(bytesPerSecond) + "," + chunkSize + "," + depth + "," + samples + "," + stalls;
+    }
+
+    /** Restores a profile from {@link #encode()}; malformed input is ignored. */
+    public synchronized boolean restore(String profile) {
+        if (profile == null) {
+            return false;
+        }
+        String[] parts = profile.split(",");
+        if (parts.length != 5) {
+            return false;
+        }
+        try {
+            double restoredRate = Double.parseDouble(parts[0]);
+            int restoredChunk = Integer.parseInt(parts[1]);
+            int restoredDepth = Integer.parseInt(parts[2]);
+            long restoredSamples = Long.parseLong(parts[3]);
+            int restoredStalls = Integer.parseInt(parts[4]);
+            bytesPerSecond = Math.max(0, restoredRate);
+            chunkSize = clampChunk(restoredChunk);
+            depth = Math.max(1, Math.min(maxDepth, restoredDepth));
+            samples = Math.max(0, restoredSamples);
+            stalls = Math.max(0, restoredStalls);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private int clampChunk(int size) {
+        int rounded = size - size % packetSize;
+        return Math.max(minChunk, Math.min(maxChunk, rounded));
+    }
+}
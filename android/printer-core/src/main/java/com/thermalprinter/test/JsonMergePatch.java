@@ -0,0 +1,95 @@
+package com.thermalprinter.test;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * JSON merge patches (RFC 7386) for the customer display state: a patch
+ * names only the keys that changed, nested objects merge key by key, null
+ * removes a key and anything else (arrays included) replaces the old value.
+ */
+public final class JsonMergePatch {
+
+    private JsonMergePatch() {
+    }
+
+    /** Applies {@code patch} to {@code target} in place; nulls remove keys. */
+    public static void apply(JSONObject target, JSONObject patch) throws JSONException {
+        Iterator<String> keys = patch.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = patch.get(key);
+            if (value == JSONObject.NULL) {
+                target.remove(key);
+            } else if (value instanceof JSONObject) {
+                Object current = target.opt(key);
+                JSONObject merged = current instanceof JSONObject ? (JSONObject) current : new JSONObject();
+                apply(merged, (JSONObject) value);
+                target.put(key, merged);
+            } else {
+                target.put(key, copy(value));
+            }
+        }
+    }
+
+    /**
+     * Folds {@code patch} into {@code pending} in place, so that applying
+     * {@code pending} once has the same effect as applying the old
+     * {@code pending} and then {@code patch}. Unlike {@link #apply} nulls are
+     * kept, since they still have to remove the key downstream.
+     *
+     * Returns false, leaving {@code pending} untouched, where a single patch
+     * cannot say it: an object merged into a key that {@code pending} sets to
+     * a scalar or removes would also keep whatever the target had there
+     * before. Apply the two patches one after the other instead.
+     */
+    public static boolean compose(JSONObject pending, JSONObject patch) throws JSONException {
+        if (!composable(pending, patch)) {
+            return false;
+        }
+        merge(pending, patch);
+        return true;
+    }
+
+    private static boolean composable(JSONObject pending, JSONObject patch) {
+        Iterator<String> keys = patch.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = patch.opt(key);
+            Object current = pending.opt(key);
+            if (value instanceof JSONObject && current != null) {
+                if (!(current instanceof JSONObject) || !composable((JSONObject) current, (JSONObject) value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void merge(JSONObject pending, JSONObject patch) throws JSONException {
+        Iterator<String> keys = patch.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = patch.get(key);
+            Object current = pending.opt(key);
+            if (value instanceof JSONObject && current instanceof JSONObject) {
+                merge((JSONObject) current, (JSONObject) value);
+            } else {
+                pending.put(key, copy(value));
+            }
+        }
+    }
+
+    private static Object copy(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            return new JSONObject(value.toString());
+        }
+        if (value instanceof JSONArray) {
+            return new JSONArray(value.toString());
+        }
+        return value;
+    }
+}
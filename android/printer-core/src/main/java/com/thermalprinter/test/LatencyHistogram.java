@@ -0,0 +1,138 @@
+package com.thermalprinter.test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in microseconds, bucketed the way
+ * HdrHistogram does it: exact below 32, then 16 linear sub-buckets per
+ * power of two, so any recorded value is reported within about 6%. Covers
+ * up to 2^40 microseconds (about 12 days); longer values are clamped.
+ * Recording is a handful of atomic increments and never allocates, so it
+ * is safe on the transport threads; snapshots may be taken from any
+ * thread while recording continues.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKET_COUNT = indexFor(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /** Records the time elapsed since {@code startNanos} (a System.nanoTime() value). */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        counts.incrementAndGet(indexFor(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long seen;
+        while (value < (seen = min.get()) && !min.compareAndSet(seen, value)) {
+            // Lost a race with another thread; re-read
+        }
+        while (value > (seen = max.get()) && !max.compareAndSet(seen, value)) {
+            // Lost a race with another thread; re-read
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    /** Copies the current counts; fields may be a few samples apart while recording continues. */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long lowest = min.get();
+        return new Snapshot(copy, count, count > 0 ? sum.get() : 0, lowest == Long.MAX_VALUE ? 0 : lowest, max.get());
+    }
+
+    static int indexFor(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /** Largest value that lands in bucket {@code index}. */
+    static long highestValueAt(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /** Point-in-time view of a histogram; all values in microseconds. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * Value at or below which {@code percentile} percent of the samples
+         * fall, rounded up to its bucket and never above the recorded max.
+         * 0 when nothing has been recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.max(min, Math.min(highestValueAt(i), max));
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.thermalprinter.test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Files on disk keyed by source (e.g. a slide's URL), bounded in total size
+ * and evicted least recently used first. Recency survives restarts through
+ * each file's modification time, so a store that lost its network keeps
+ * the media it showed last. Entries are written to a temporary file and
+ * renamed into place, so a crash never leaves a truncated entry behind.
+ * Thread-safe; writing an entry happens outside the lock.
+ */
+public class MediaCache {
+
+    /** Writes an entry's content. */
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final long maxBytes;
+    // File name -> size, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /** Opens (creating if needed) the cache in {@code dir}, picking up entries already there. */
+    public MediaCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create media cache in " + dir);
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized (this) {
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();  // Left over from a crash mid-write
+                } else if (file.isFile()) {
+                    entries.put(file.getName(), file.length());
+                    bytes += file.length();
+                }
+            }
+            trim(null);
+        }
+    }
+
+    /** The entry for {@code key}, marked as just used, or null if it isn't cached. */
+    public File get(String key) {
+        String name = fileName(key);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        File file = new File(dir, name);
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(fileName(key));
+    }
+
+    /**
+     * Stores what {@code writer} writes as the entry for {@code key},
+     * replacing any previous one, then evicts older entries until the cache
+     * fits. Returns the entry's file.
+     */
+    public File put(String key, Writer writer) throws IOException {
+        String name = fileName(key);
+        File temp = File.createTempFile(name, TEMP_SUFFIX, dir);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                writer.writeTo(out);
+            }
+            File file = new File(dir, name);
+            synchronized (this) {
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Cannot store media cache entry " + file);
+                }
+                Long previous = entries.put(name, file.length());
+                bytes += file.length() - (previous != null ? previous : 0);
+                trim(name);
+            }
+            return file;
+        } finally {
+            temp.delete();  // No-op once renamed
+        }
+    }
+
+    public synchronized void remove(String key) {
+        String name = fileName(key);
+        Long size = entries.remove(name);
+        if (size != null) {
+            bytes -= size;
+            new File(dir, name).delete();
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Evicts least recently used entries, never keep, until the cache fits
+    private void trim(String keep) {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            bytes -= entry.getValue();
+            new File(dir, entry.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    /** Hex SHA-1 of {@code key}: any source string becomes a safe, fixed-length file name. */
+    static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] sum = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(sum.length * 2);
+            for (byte b : sum) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
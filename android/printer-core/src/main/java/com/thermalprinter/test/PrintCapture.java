@@ -0,0 +1,242 @@
+package com.thermalprinter.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Records the exact bytes of every job a printer was sent, with when it was
+ * queued and how long its transfer took, so a receipt that printed wrong or
+ * slowly in a store can be replayed against another printer or firmware
+ * (see {@link CaptureReplayer}). Records are appended as jobs finish, on
+ * the transport's thread; a write error stops the capture and is kept in
+ * {@link #getLastError()}, printing carries on regardless.
+ *
+ * Layout (little-endian):
+ * <pre>
+ * file header:  magic:int version:int startMillis:long
+ * record:       magic:int flags:byte priority:byte reserved:short
+ *               queuedAtMicros:long transferMicros:long length:int payload[length]
+ * </pre>
+ * queuedAtMicros counts from the start of the capture; flags bit 0 is set
+ * if the job printed. A record cut short by a crash ends the capture.
+ */
+public class PrintCapture implements Closeable {
+
+    /** One captured job. */
+    public static class Record {
+        public final long queuedAtMicros;
+        public final long transferMicros;
+        public final boolean completed;
+        public final int priority;
+        public final byte[] data;
+
+        Record(long queuedAtMicros, long transferMicros, boolean completed, int priority, byte[] data) {
+            this.queuedAtMicros = queuedAtMicros;
+            this.transferMicros = transferMicros;
+            this.completed = completed;
+            this.priority = priority;
+            this.data = data;
+        }
+    }
+
+    private static final int FILE_MAGIC = 0x46435054;    // "TPCF"
+    private static final int RECORD_MAGIC = 0x52435054;  // "TPCR"
+    private static final int VERSION = 1;
+
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 28;
+
+    private static final int FLAG_COMPLETED = 1;
+
+    private final File file;
+    private final long startNanos;
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private OutputStream out;
+    private int jobs;
+    private long bytes;
+    private IOException lastError;
+
+    private PrintCapture(File file, OutputStream out) {
+        this.file = file;
+        this.out = out;
+        this.startNanos = System.nanoTime();
+    }
+
+    /** Starts a new capture in {@code file}, replacing any previous one. */
+    public static PrintCapture create(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(FILE_MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        try {
+            out.write(header.array());
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return new PrintCapture(file, out);
+    }
+
+    /**
+     * Returns {@code callback} wrapped to append {@code job} once its
+     * transfer finishes, before the callback runs (and e.g. returns a pooled
+     * buffer). Call when the sink takes the job.
+     */
+    public TransferCallback track(PrintJob job, TransferCallback callback) {
+        long startNanos = System.nanoTime();
+        return new TransferCallback() {
+            @Override
+            public void onProgress(int bytesSent, int totalBytes) {
+                callback.onProgress(bytesSent, totalBytes);
+            }
+
+            @Override
+            public void onComplete(int bytesTransferred) {
+                append(job, System.nanoTime() - startNanos, true);
+                callback.onComplete(bytesTransferred);
+            }
+
+            @Override
+            public void onError(String message) {
+                append(job, System.nanoTime() - startNanos, false);
+                callback.onError(message);
+            }
+        };
+    }
+
+    /** Returns false if the capture has been closed or has failed. */
+    public synchronized boolean append(PrintJob job, long transferNanos, boolean completed) {
+        if (out == null) {
+            return false;
+        }
+        int length = job.getTotalBytes();
+        header.clear();
+        header.putInt(RECORD_MAGIC)
+                .put((byte) (completed ? FLAG_COMPLETED : 0))
+                .put((byte) job.getPriority())
+                .putShort((short) 0)
+                .putLong(Math.max(0, job.getQueuedAtNanos() - startNanos) / 1000)
+                .putLong(transferNanos / 1000)
+                .putInt(length);
+        try {
+            out.write(header.array());
+            out.write(job.getData(), 0, length);
+            // Jobs are infrequent; don't leave the last ones in the buffer if the process dies
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+        jobs++;
+        bytes += length;
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int getJobCount() {
+        return jobs;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized IOException getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            OutputStream closing = out;
+            out = null;
+            closing.close();
+        }
+    }
+
+    private void fail(IOException e) {
+        lastError = e;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        out = null;
+    }
+
+    /** Opens {@code file} for reading its records in order. */
+    public static Reader open(File file) throws IOException {
+        return new Reader(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    }
+
+    /** Reads a capture back, one record at a time. */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final long startMillis;
+
+        Reader(InputStream stream) throws IOException {
+            in = new DataInputStream(stream);
+            ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                in.readFully(fileHeader.array());
+            } catch (EOFException e) {
+                in.close();
+                throw new IOException("Not a print capture (too short)");
+            }
+            if (fileHeader.getInt() != FILE_MAGIC || fileHeader.getInt() != VERSION) {
+                in.close();
+                throw new IOException("Not a print capture, or an unsupported version");
+            }
+            startMillis = fileHeader.getLong();
+        }
+
+        /** Wall-clock time the capture was started. */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        /** The next record, or null at the end of the capture (or where it was cut short). */
+        public Record next() throws IOException {
+            try {
+                in.readFully(header.array());
+                header.clear();
+                if (header.getInt() != RECORD_MAGIC) {
+                    return null;
+                }
+                int flags = header.get();
+                int priority = header.get();
+                header.getShort();
+                long queuedAtMicros = header.getLong();
+                long transferMicros = header.getLong();
+                int length = header.getInt();
+                if (length < 0) {
+                    return null;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                return new Record(queuedAtMicros, transferMicros, (flags & FLAG_COMPLETED) != 0, priority, data);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.thermalprinter.test;
+
+/**
+ * A unit of work for the print spooler: one ESC/POS payload plus its
+ * priority and live status. Status fields are written by the spooler and
+ * may be read from any thread.
+ */
+public class PrintJob {
+
+    public enum State {
+        QUEUED,
+        PRINTING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    // Lower value prints first
+    public static final int PRIORITY_HIGH = 0;    // Customer receipts
+    public static final int PRIORITY_NORMAL = 1;  // Default for ad-hoc prints
+    public static final int PRIORITY_LOW = 2;     // Kitchen tickets, reprints
+
+    private final long id;
+    private final int priority;
+    private final byte[] data;
+    private final int length;
+    private final TransferCallback callback;
+    private final long queuedAtNanos;
+
+    private volatile State state = State.QUEUED;
+    private volatile int bytesSent;
+    private volatile String error;
+
+    PrintJob(long id, int priority, byte[] data, int length, TransferCallback callback) {
+        this.id = id;
+        this.priority = priority;
+        this.data = data;
+        this.length = length;
+        this.callback = callback;
+        this.queuedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Maps the priority names used by the web layer ("receipt", "kitchen",
+     * "reprint", ...) onto spooler priorities.
+     */
+    public static int parsePriority(String name) {
+        if (name == null) {
+            return PRIORITY_NORMAL;
+        }
+        switch (name.toLowerCase()) {
+            case "high":
+            case "receipt":
+                return PRIORITY_HIGH;
+            case "low":
+            case "kitchen":
+            case "reprint":
+                return PRIORITY_LOW;
+            default:
+                return PRIORITY_NORMAL;
+        }
+    }
+
+    public static String priorityName(int priority) {
+        switch (priority) {
+            case PRIORITY_HIGH:
+                return "high";
+            case PRIORITY_LOW:
+                return "low";
+            default:
+                return "normal";
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Payload buffer. Only the first {@link #getTotalBytes()} bytes belong to
+     * the job; pooled buffers may be larger.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getTotalBytes() {
+        return length;
+    }
+
+    public long getQueuedAtNanos() {
+        return queuedAtNanos;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getBytesSent() {
+        return bytesSent;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    TransferCallback getCallback() {
+        return callback;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void setBytesSent(int bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+}
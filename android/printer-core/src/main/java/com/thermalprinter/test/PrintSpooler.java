@@ -0,0 +1,269 @@
+package com.thermalprinter.test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Native print queue between the plugin and the printer connection.
+ *
+ * Jobs are ordered by priority, then by submission order, and written one at
+ * a time to the current {@link Sink}. While no sink is attached (printer
+ * disconnected) jobs stay queued. Queue depth is bounded; submit() throws
+ * {@link QueueFullException} instead of growing without limit so the web
+ * layer can back off.
+ *
+ * When a {@link SpoolJournal} is attached, every job is journaled before it
+ * is queued and acknowledged once it reaches a final state, so queued jobs
+ * survive the process being killed and are restored on the next start.
+ */
+public class PrintSpooler {
+
+    public static final int DEFAULT_MAX_QUEUE_DEPTH = 32;
+
+    // Finished jobs kept around so their status can still be queried
+    private static final int FINISHED_JOB_HISTORY = 64;
+
+    /** Destination for spooled jobs, normally the connected printer. */
+    public interface Sink {
+        void write(PrintJob job, TransferCallback callback);
+    }
+
+    public interface Listener {
+        void onJobStateChanged(PrintJob job);
+        void onJobProgress(PrintJob job);
+    }
+
+    public static class QueueFullException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        QueueFullException(int maxQueueDepth) {
+            super("Print queue is full (" + maxQueueDepth + " jobs pending)");
+        }
+    }
+
+    private final int maxQueueDepth;
+    private final Listener listener;
+    private final PriorityQueue<PrintJob> queue = new PriorityQueue<>(16, (a, b) -> {
+        if (a.getPriority() != b.getPriority()) {
+            return Integer.compare(a.getPriority(), b.getPriority());
+        }
+        return Long.compare(a.getId(), b.getId());
+    });
+    private final Map<Long, PrintJob> jobs = new LinkedHashMap<Long, PrintJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PrintJob> eldest) {
+            return size() > FINISHED_JOB_HISTORY + maxQueueDepth + 1 && eldest.getValue().isFinished();
+        }
+    };
+
+    private Sink sink;
+    private SpoolJournal journal;
+    private PrintJob activeJob;
+    private long nextJobId = 1;
+
+    public PrintSpooler(int maxQueueDepth, Listener listener) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.listener = listener;
+    }
+
+    /**
+     * Attaches the sink jobs are written to, or detaches it when null. Queued
+     * jobs are held while detached and start draining once a sink is set.
+     */
+    public void setSink(Sink sink) {
+        synchronized (this) {
+            this.sink = sink;
+        }
+        dispatchNext();
+    }
+
+    public synchronized void setJournal(SpoolJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Re-queues jobs recovered from the journal under their original ids.
+     * They are already journaled, so they are not appended again.
+     */
+    public void restore(List<SpoolJournal.Record> records) {
+        List<PrintJob> restored = new ArrayList<>(records.size());
+        synchronized (this) {
+            for (SpoolJournal.Record record : records) {
+                PrintJob job = new PrintJob(record.jobId, record.priority, record.data, record.data.length, null);
+                queue.add(job);
+                jobs.put(job.getId(), job);
+                nextJobId = Math.max(nextJobId, record.jobId + 1);
+                restored.add(job);
+            }
+        }
+        for (PrintJob job : restored) {
+            listener.onJobStateChanged(job);
+        }
+        dispatchNext();
+    }
+
+    public synchronized boolean isOnline() {
+        return sink != null;
+    }
+
+    /**
+     * Queues a job. The optional callback is invoked when the job completes
+     * or fails, on the transport's I/O thread.
+     */
+    public PrintJob submit(byte[] data, int priority, TransferCallback callback) throws QueueFullException {
+        return submit(data, data.length, priority, callback);
+    }
+
+    /**
+     * Queues the first {@code length} bytes of {@code data} without copying.
+     * The buffer must not be modified until the callback has fired.
+     */
+    public PrintJob submit(byte[] data, int length, int priority, TransferCallback callback) throws QueueFullException {
+        PrintJob job;
+        synchronized (this) {
+            if (queue.size() >= maxQueueDepth) {
+                throw new QueueFullException(maxQueueDepth);
+            }
+            job = new PrintJob(nextJobId++, priority, data, length, callback);
+            if (journal != null) {
+                journal.append(job.getId(), priority, data, length);
+            }
+            queue.add(job);
+            jobs.put(job.getId(), job);
+        }
+        TraceLog.event(TraceLog.JOB_QUEUED, job.getId(), length, priority);
+        listener.onJobStateChanged(job);
+        dispatchNext();
+        return job;
+    }
+
+    /**
+     * Cancels a job that has not started printing yet.
+     */
+    public boolean cancel(long jobId) {
+        PrintJob job;
+        synchronized (this) {
+            job = jobs.get(jobId);
+            if (job == null || job.getState() != PrintJob.State.QUEUED || !queue.remove(job)) {
+                return false;
+            }
+            job.setState(PrintJob.State.CANCELLED);
+            if (journal != null) {
+                journal.acknowledge(jobId);
+            }
+        }
+        TraceLog.event(TraceLog.JOB_CANCELLED, jobId);
+        listener.onJobStateChanged(job);
+        if (job.getCallback() != null) {
+            job.getCallback().onError("Print job cancelled");
+        }
+        return true;
+    }
+
+    /**
+     * Cancels every job that has not started printing; returns how many were.
+     */
+    public int cancelAll() {
+        List<Long> queued;
+        synchronized (this) {
+            queued = new ArrayList<>(queue.size());
+            for (PrintJob job : queue) {
+                queued.add(job.getId());
+            }
+        }
+        int cancelled = 0;
+        for (long jobId : queued) {
+            if (cancel(jobId)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    public synchronized PrintJob getJob(long jobId) {
+        return jobs.get(jobId);
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public synchronized PrintJob getActiveJob() {
+        return activeJob;
+    }
+
+    private void dispatchNext() {
+        PrintJob job;
+        Sink target;
+        synchronized (this) {
+            if (activeJob != null || sink == null || queue.isEmpty()) {
+                return;
+            }
+            job = queue.poll();
+            job.setState(PrintJob.State.PRINTING);
+            activeJob = job;
+            target = sink;
+        }
+        TraceLog.event(TraceLog.JOB_STARTED, job.getId(), (System.nanoTime() - job.getQueuedAtNanos()) / 1000);
+        listener.onJobStateChanged(job);
+        target.write(job, new JobCallback(job));
+    }
+
+    private void finish(PrintJob job, PrintJob.State state, String error) {
+        synchronized (this) {
+            job.setState(state);
+            job.setError(error);
+            if (journal != null) {
+                journal.acknowledge(job.getId());
+            }
+            if (activeJob == job) {
+                activeJob = null;
+            }
+        }
+        TraceLog.event(state == PrintJob.State.COMPLETED ? TraceLog.JOB_COMPLETED : TraceLog.JOB_FAILED,
+                job.getId(), job.getBytesSent());
+        listener.onJobStateChanged(job);
+        dispatchNext();
+    }
+
+    private class JobCallback implements TransferCallback {
+        private final PrintJob job;
+
+        JobCallback(PrintJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void onProgress(int bytesSent, int totalBytes) {
+            job.setBytesSent(bytesSent);
+            listener.onJobProgress(job);
+            if (job.getCallback() != null) {
+                job.getCallback().onProgress(bytesSent, totalBytes);
+            }
+        }
+
+        @Override
+        public void onComplete(int bytesTransferred) {
+            job.setBytesSent(bytesTransferred);
+            finish(job, PrintJob.State.COMPLETED, null);
+            if (job.getCallback() != null) {
+                job.getCallback().onComplete(bytesTransferred);
+            }
+        }
+
+        @Override
+        public void onError(String message) {
+            finish(job, PrintJob.State.FAILED, message);
+            if (job.getCallback() != null) {
+                job.getCallback().onError(message);
+            }
+        }
+    }
+}
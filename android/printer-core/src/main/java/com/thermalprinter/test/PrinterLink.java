@@ -0,0 +1,127 @@
+package com.thermalprinter.test;
+
+/**
+ * The connection the main print queue writes to, whichever transport it
+ * uses. Attaching a transport puts the spooler online; detaching takes it
+ * offline so queued jobs are held for the next printer. Opening and closing
+ * the underlying device stays with the caller. Jobs, connects and
+ * disconnects are recorded in the attached printer's metrics, if any.
+ * Thread-safe.
+ */
+public class PrinterLink implements PrintSpooler.Sink {
+
+    public interface WriteListener {
+        /** Called on the transport's thread after a job was written, before its callback. */
+        void onJobWritten(PrinterTransport transport, int bytes);
+    }
+
+    private final PrintSpooler spooler;
+    private final WriteListener writeListener;
+    private volatile PrinterTransport transport;
+    private volatile PrinterMetrics.Device metrics;
+    private volatile PrintCapture capture;
+
+    /** @param writeListener told about every job written, may be null */
+    public PrinterLink(PrintSpooler spooler, WriteListener writeListener) {
+        this.spooler = spooler;
+        this.writeListener = writeListener;
+    }
+
+    /** Sends queued and future jobs to {@code transport}, replacing any previous one. */
+    public void attach(PrinterTransport transport) {
+        attach(transport, null);
+    }
+
+    /** @param metrics where this printer's jobs and link flaps are recorded, may be null */
+    public synchronized void attach(PrinterTransport transport, PrinterMetrics.Device metrics) {
+        this.transport = transport;
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.onConnected();
+        }
+        spooler.setSink(this);
+    }
+
+    /**
+     * Holds further jobs in the queue and returns the transport that was
+     * attached, still open, or null if there was none.
+     */
+    public synchronized PrinterTransport detach() {
+        spooler.setSink(null);
+        PrinterTransport previous = transport;
+        if (previous != null && metrics != null) {
+            metrics.onDisconnected();
+        }
+        transport = null;
+        metrics = null;
+        return previous;
+    }
+
+    /**
+     * Appends every job written from now on to {@code capture}, whichever
+     * printer is attached; null stops capturing. Returns the previous
+     * capture, still open.
+     */
+    public PrintCapture setCapture(PrintCapture capture) {
+        PrintCapture previous = this.capture;
+        this.capture = capture;
+        return previous;
+    }
+
+    /** Null while detached. */
+    public PrinterTransport getTransport() {
+        return transport;
+    }
+
+    /** Attached and, for a network printer, the socket is still up. */
+    public boolean isConnected() {
+        PrinterTransport active = transport;
+        return active != null && (!(active instanceof SocketTransport) || ((SocketTransport) active).isOpen());
+    }
+
+    /** Latest status from the attached printer, or null if none is attached or it can't report. */
+    public PrinterStatus getStatus() {
+        PrinterTransport active = transport;
+        return active != null ? active.getStatus() : null;
+    }
+
+    /** Spooler sink: called one job at a time. */
+    @Override
+    public void write(PrintJob job, TransferCallback callback) {
+        PrinterTransport active = transport;
+        PrinterMetrics.Device tracked = metrics;
+        PrintCapture capturing = capture;
+        if (active == null) {
+            callback.onError("Printer not connected");
+            return;
+        }
+        TransferCallback target = writeListener != null ? notifyWritten(active, callback) : callback;
+        if (tracked != null) {
+            target = tracked.track(job, target);
+        }
+        if (capturing != null) {
+            target = capturing.track(job, target);
+        }
+        active.submit(job.getData(), 0, job.getTotalBytes(), target);
+    }
+
+    private TransferCallback notifyWritten(PrinterTransport active, TransferCallback callback) {
+        return new TransferCallback() {
+            @Override
+            public void onProgress(int bytesSent, int totalBytes) {
+                callback.onProgress(bytesSent, totalBytes);
+            }
+
+            @Override
+            public void onComplete(int bytesTransferred) {
+                writeListener.onJobWritten(active, bytesTransferred);
+                callback.onComplete(bytesTransferred);
+            }
+
+            @Override
+            public void onError(String message) {
+                callback.onError(message);
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.thermalprinter.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters for every stage of the print path.
+ * Decoding the bridge payload and encoding receipts happen before a job
+ * has a printer, so those are kept once; queue wait, transfer and
+ * end-to-end times and the transfer counters are kept per printer (see
+ * {@link Device}), keyed the way UsbPrinterManager.getDeviceKey() names
+ * it. Everything is cumulative since the process started. Thread-safe and
+ * lock-free on the recording side.
+ */
+public final class PrinterMetrics {
+
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram encode = new LatencyHistogram();
+    private final ConcurrentHashMap<String, Device> devices = new ConcurrentHashMap<>();
+
+    /** Base64 payload decode, for every call that receives print data. */
+    public LatencyHistogram getDecode() {
+        return decode;
+    }
+
+    /** Native receipt, template and raster encoding. */
+    public LatencyHistogram getEncode() {
+        return encode;
+    }
+
+    /** Metrics for the printer called {@code key}, created on first use. */
+    public Device forDevice(String key) {
+        Device device = devices.get(key);
+        if (device == null) {
+            Device created = new Device(key);
+            device = devices.putIfAbsent(key, created);
+            if (device == null) {
+                device = created;
+            }
+        }
+        return device;
+    }
+
+    /** Every printer seen so far, connected or not. */
+    public List<Device> getDevices() {
+        return new ArrayList<>(devices.values());
+    }
+
+    /**
+     * Total number of samples and events recorded; unchanged means nothing
+     * happened since the last call, so a periodic report can be skipped.
+     */
+    public long getActivity() {
+        long activity = decode.getCount() + encode.getCount();
+        for (Device device : devices.values()) {
+            activity += device.getActivity();
+        }
+        return activity;
+    }
+
+    /** One printer's share: how its jobs waited, how they transferred, how its link behaved. */
+    public static final class Device {
+        private final String key;
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram transfer = new LatencyHistogram();
+        private final LatencyHistogram endToEnd = new LatencyHistogram();
+        private final AtomicLong jobs = new AtomicLong();
+        private final AtomicLong failedJobs = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong shortWrites = new AtomicLong();
+        private final AtomicLong connects = new AtomicLong();
+        private final AtomicLong disconnects = new AtomicLong();
+
+        private Device(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /** From submit to the printer's sink taking the job. */
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+
+        /** From the sink taking the job to its last byte being acknowledged. */
+        public LatencyHistogram getTransfer() {
+            return transfer;
+        }
+
+        /** From submit to the last byte being acknowledged. */
+        public LatencyHistogram getEndToEnd() {
+            return endToEnd;
+        }
+
+        public long getJobs() {
+            return jobs.get();
+        }
+
+        public long getFailedJobs() {
+            return failedJobs.get();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        public long getShortWrites() {
+            return shortWrites.get();
+        }
+
+        public long getConnects() {
+            return connects.get();
+        }
+
+        public long getDisconnects() {
+            return disconnects.get();
+        }
+
+        /** A transfer resent data after a short write. */
+        public void onRetry() {
+            retries.incrementAndGet();
+        }
+
+        /** The printer acknowledged fewer bytes than were sent. */
+        public void onShortWrite() {
+            shortWrites.incrementAndGet();
+        }
+
+        public void onConnected() {
+            connects.incrementAndGet();
+        }
+
+        public void onDisconnected() {
+            disconnects.incrementAndGet();
+        }
+
+        /**
+         * Records {@code job}'s queue wait now, when a sink takes it, and
+         * returns {@code callback} wrapped to record its transfer and
+         * end-to-end time (or failure) once the transport reports back.
+         */
+        public TransferCallback track(PrintJob job, TransferCallback callback) {
+            long startNanos = System.nanoTime();
+            queueWait.recordNanos(startNanos - job.getQueuedAtNanos());
+            return new TransferCallback() {
+                @Override
+                public void onProgress(int bytesSent, int totalBytes) {
+                    callback.onProgress(bytesSent, totalBytes);
+                }
+
+                @Override
+                public void onComplete(int bytesTransferred) {
+                    long now = System.nanoTime();
+                    transfer.recordNanos(now - startNanos);
+                    endToEnd.recordNanos(now - job.getQueuedAtNanos());
+                    jobs.incrementAndGet();
+                    bytesSent.addAndGet(bytesTransferred);
+                    callback.onComplete(bytesTransferred);
+                }
+
+                @Override
+                public void onError(String message) {
+                    failedJobs.incrementAndGet();
+                    callback.onError(message);
+                }
+            };
+        }
+
+        long getActivity() {
+            return queueWait.getCount() + jobs.get() + failedJobs.get() + retries.get()
+                    + shortWrites.get() + connects.get() + disconnects.get();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.thermalprinter.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process network printer for load tests: listens on 127.0.0.1 like a
+ * port 9100 printer, parses everything it receives as ESC/POS and counts
+ * what a real printer would have done. Answers DLE EOT status requests and
+ * sends Automatic Status Back when enabled, so {@link SocketTransport} sees
+ * a ready (or, on request, paper-out) printer.
+ *
+ * With a byte rate set, reads are throttled to it and TCP backpressure
+ * reaches the sender the way a slow print head does. Plain Java with no
+ * Android dependencies; {@link #main} runs it standalone on a Linux box:
+ *
+ * <pre>
+ * java -cp classes com.thermalprinter.test.PrinterSimulator [port] [bytesPerSecond]
+ * </pre>
+ */
+public class PrinterSimulator {
+
+    private static final int READ_BUFFER_SIZE = 16384;
+    private static final long THROTTLE_TICK_MS = 10;
+
+    /** Counters since the simulator started. Immutable snapshot. */
+    public static final class Stats {
+        public final long connections;
+        public final long bytes;
+        public final long commands;
+        public final long textBytes;
+        public final long lines;
+        public final long cuts;
+        public final long rasterBytes;
+        public final long graphicsBytes;
+        public final long statusRequests;
+        /** Average rate from the first byte received to the last. */
+        public final long bytesPerSecond;
+
+        private Stats(PrinterSimulator s) {
+            connections = s.connections.get();
+            bytes = s.bytes.get();
+            commands = s.commands.get();
+            textBytes = s.textBytes.get();
+            lines = s.lines.get();
+            cuts = s.cuts.get();
+            rasterBytes = s.rasterBytes.get();
+            graphicsBytes = s.graphicsBytes.get();
+            statusRequests = s.statusRequests.get();
+            long span = s.lastByteNanos.get() - s.firstByteNanos.get();
+            bytesPerSecond = span > 0 ? (long) (bytes * 1e9 / span) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return bytes + " bytes (" + bytesPerSecond + " B/s), " + commands + " commands, "
+                    + lines + " lines, " + cuts + " cuts, " + rasterBytes + " raster bytes, "
+                    + graphicsBytes + " graphics bytes, " + connections + " connections";
+        }
+    }
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final long bytesPerSecond;
+    private final Thread ioThread;
+    private volatile boolean running = true;
+    private volatile boolean paperEnd;
+    private volatile boolean statusChanged;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong textBytes = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong cuts = new AtomicLong();
+    private final AtomicLong rasterBytes = new AtomicLong();
+    private final AtomicLong graphicsBytes = new AtomicLong();
+    private final AtomicLong statusRequests = new AtomicLong();
+    private final AtomicLong firstByteNanos = new AtomicLong();
+    private final AtomicLong lastByteNanos = new AtomicLong();
+
+    // Only touched on the I/O thread
+    private double allowance;
+    private long allowanceNanos;
+
+    /** One client connection and its parser state. */
+    private final class Client implements EscPosParser.Listener {
+        final SocketChannel channel;
+        final EscPosParser parser = new EscPosParser(this);
+        final ByteBuffer replies = ByteBuffer.allocate(256);
+        boolean autoStatus;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            replies.flip();
+        }
+
+        @Override
+        public void onText(int length) {
+            textBytes.addAndGet(length);
+        }
+
+        @Override
+        public void onLineFeed() {
+            lines.incrementAndGet();
+        }
+
+        @Override
+        public void onCommand(int command, int function, long payloadLength) {
+            commands.incrementAndGet();
+            if (command == EscPosParser.GS_CUT) {
+                cuts.incrementAndGet();
+            } else if (command == EscPosParser.GS_RASTER || command == EscPosParser.ESC_BIT_IMAGE) {
+                rasterBytes.addAndGet(payloadLength);
+            } else if ((command == EscPosParser.GS_EXTENDED || command == EscPosParser.GS_EXTENDED_LONG)
+                    && function == 'L') {
+                graphicsBytes.addAndGet(payloadLength);
+            } else if (command == EscPosParser.DLE_EOT) {
+                statusRequests.incrementAndGet();
+                reply(statusByte(function));
+            } else if (command == EscPosParser.GS_AUTO_STATUS) {
+                autoStatus = function != 0;
+                if (autoStatus) {
+                    pushStatus();
+                }
+            }
+        }
+
+        // Automatic Status Back block: printer, errors, paper sensor, reserved
+        void pushStatus() {
+            reply(paperEnd ? 0x18 : 0x10, 0x00, paperEnd ? 0x0F : 0x00, 0x00);
+        }
+
+        private void reply(int... data) {
+            replies.compact();
+            for (int b : data) {
+                if (replies.hasRemaining()) {
+                    replies.put((byte) b);
+                }
+            }
+            replies.flip();
+        }
+    }
+
+    /**
+     * Starts listening on 127.0.0.1:{@code port} (0 picks a free port).
+     *
+     * @param bytesPerSecond read rate to simulate, or 0 to read as fast as possible
+     */
+    public PrinterSimulator(int port, long bytesPerSecond) throws IOException {
+        this.bytesPerSecond = bytesPerSecond;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            server.socket().setReuseAddress(true);
+            server.socket().bind(new InetSocketAddress("127.0.0.1", port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        this.ioThread = new Thread(this::run, "PrinterSimulator");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    public String getHost() {
+        return "127.0.0.1";
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Simulates running out of paper: stops reading, like a real printer
+     * whose buffer is full, and reports paper end until cleared.
+     */
+    public void setPaperEnd(boolean paperEnd) {
+        this.paperEnd = paperEnd;
+        statusChanged = true;
+        selector.wakeup();
+    }
+
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // Replies to DLE EOT n; fixed bits 1 and 4 are always set
+    private int statusByte(int n) {
+        switch (n) {
+            case 2:
+                return paperEnd ? 0x32 : 0x12;  // Offline cause: stopped by paper end
+            case 4:
+                return paperEnd ? 0x7E : 0x12;  // Paper sensor: near end and end
+            default:
+                return n == 1 && paperEnd ? 0x1A : 0x12;  // Printer: offline
+        }
+    }
+
+    private void run() {
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        allowanceNanos = System.nanoTime();
+        try {
+            while (running) {
+                boolean notify = statusChanged;
+                statusChanged = false;
+                boolean throttled = paperEnd | (bytesPerSecond > 0 && refill() < 1);
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.attachment() instanceof Client) {
+                        Client client = (Client) key.attachment();
+                        if (notify && client.autoStatus) {
+                            client.pushStatus();
+                        }
+                        key.interestOps((throttled ? 0 : SelectionKey.OP_READ)
+                                | (client.replies.hasRemaining() ? SelectionKey.OP_WRITE : 0));
+                    }
+                }
+                selector.select(bytesPerSecond > 0 ? THROTTLE_TICK_MS : 0);
+                if (!running) {
+                    break;
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            service(key, readBuffer);
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        closeQuietly(key.channel());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Selector failed; shut down
+        } finally {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        if (bytesPerSecond > 0) {
+            // Small window so the sender feels the throttle instead of filling a large buffer
+            channel.socket().setReceiveBufferSize((int) Math.max(4096, Math.min(65536, bytesPerSecond / 10)));
+        }
+        channel.register(selector, SelectionKey.OP_READ, new Client(channel));
+        connections.incrementAndGet();
+    }
+
+    private void service(SelectionKey key, ByteBuffer readBuffer) throws IOException {
+        Client client = (Client) key.attachment();
+        if (key.isReadable()) {
+            readBuffer.clear();
+            if (bytesPerSecond > 0) {
+                readBuffer.limit((int) Math.max(1, Math.min(readBuffer.capacity(), allowance)));
+            }
+            int read = client.channel.read(readBuffer);
+            if (read < 0) {
+                key.cancel();
+                client.channel.close();
+                return;
+            }
+            if (read > 0) {
+                long now = System.nanoTime();
+                firstByteNanos.compareAndSet(0, now);
+                lastByteNanos.set(now);
+                bytes.addAndGet(read);
+                allowance -= read;
+                client.parser.feed(readBuffer.array(), 0, read);
+            }
+        }
+        if (client.replies.hasRemaining() && key.isValid()) {
+            client.channel.write(client.replies);
+        }
+    }
+
+    // Token bucket holding at most one tick's worth of bytes
+    private double refill() {
+        long now = System.nanoTime();
+        allowance = Math.min(bytesPerSecond * THROTTLE_TICK_MS / 1000.0,
+                allowance + bytesPerSecond * (now - allowanceNanos) / 1e9);
+        allowanceNanos = now;
+        return allowance;
+    }
+
+    private static void closeQuietly(java.nio.channels.Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /** Runs a simulator until killed, printing counters once a second. */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SocketTransport.DEFAULT_PORT;
+        long bytesPerSecond = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        PrinterSimulator simulator = new PrinterSimulator(port, bytesPerSecond);
+        System.out.println("Printer simulator listening on " + simulator.getHost() + ":" + simulator.getPort()
+                + (bytesPerSecond > 0 ? " at " + bytesPerSecond + " B/s" : ""));
+        while (true) {
+            Thread.sleep(1000);
+            System.out.println(simulator.getStats());
+        }
+    }
+}
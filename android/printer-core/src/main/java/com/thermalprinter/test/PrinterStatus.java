@@ -0,0 +1,202 @@
+package com.thermalprinter.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Printer condition as reported over the USB bulk IN endpoint, either in
+ * reply to the real-time status requests DLE EOT 1-4 or pushed by the
+ * printer as a 4-byte Automatic Status Back block (GS a). Immutable.
+ */
+public final class PrinterStatus {
+
+    private final boolean offline;
+    private final boolean coverOpen;
+    private final boolean paperNearEnd;
+    private final boolean paperEnd;
+    private final boolean cutterError;
+    private final boolean unrecoverableError;
+    private final boolean autoRecoverableError;
+
+    PrinterStatus(boolean offline, boolean coverOpen, boolean paperNearEnd, boolean paperEnd,
+                  boolean cutterError, boolean unrecoverableError, boolean autoRecoverableError) {
+        this.offline = offline;
+        this.coverOpen = coverOpen;
+        this.paperNearEnd = paperNearEnd;
+        this.paperEnd = paperEnd;
+        this.cutterError = cutterError;
+        this.unrecoverableError = unrecoverableError;
+        this.autoRecoverableError = autoRecoverableError;
+    }
+
+    /** From the replies to DLE EOT 1 (printer), 2 (offline cause), 3 (error cause), 4 (paper sensor). */
+    static PrinterStatus fromRealTime(int printer, int offlineCause, int errorCause, int paper) {
+        return new PrinterStatus(
+                (printer & 0x08) != 0,
+                (offlineCause & 0x04) != 0,
+                (paper & 0x0C) != 0,
+                (paper & 0x60) != 0 || (offlineCause & 0x20) != 0,
+                (errorCause & 0x08) != 0,
+                (errorCause & 0x20) != 0,
+                (errorCause & 0x40) != 0);
+    }
+
+    /** From a 4-byte Automatic Status Back block. */
+    static PrinterStatus fromAutoStatus(int b1, int b2, int b3) {
+        return new PrinterStatus(
+                (b1 & 0x08) != 0,
+                (b1 & 0x20) != 0,
+                (b3 & 0x03) != 0,
+                (b3 & 0x0C) != 0,
+                (b2 & 0x08) != 0,
+                (b2 & 0x20) != 0,
+                (b2 & 0x40) != 0);
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public boolean isCoverOpen() {
+        return coverOpen;
+    }
+
+    public boolean isPaperNearEnd() {
+        return paperNearEnd;
+    }
+
+    public boolean isPaperEnd() {
+        return paperEnd;
+    }
+
+    public boolean isCutterError() {
+        return cutterError;
+    }
+
+    public boolean isUnrecoverableError() {
+        return unrecoverableError;
+    }
+
+    public boolean isAutoRecoverableError() {
+        return autoRecoverableError;
+    }
+
+    /** True when the printer cannot print until someone intervenes (or it cools down). */
+    public boolean isError() {
+        return offline || coverOpen || paperEnd || cutterError || unrecoverableError || autoRecoverableError;
+    }
+
+    /** Short human-readable causes, most actionable first; empty when ready. */
+    public List<String> describe() {
+        List<String> causes = new ArrayList<>();
+        if (paperEnd) {
+            causes.add("Paper out");
+        }
+        if (coverOpen) {
+            causes.add("Cover open");
+        }
+        if (cutterError) {
+            causes.add("Cutter error");
+        }
+        if (unrecoverableError) {
+            causes.add("Unrecoverable error");
+        }
+        if (autoRecoverableError) {
+            causes.add("Print head overheated");
+        }
+        if (offline && causes.isEmpty()) {
+            causes.add("Offline");
+        }
+        if (paperNearEnd && !paperEnd) {
+            causes.add("Paper near end");
+        }
+        return causes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PrinterStatus)) {
+            return false;
+        }
+        PrinterStatus other = (PrinterStatus) o;
+        return offline == other.offline
+                && coverOpen == other.coverOpen
+                && paperNearEnd == other.paperNearEnd
+                && paperEnd == other.paperEnd
+                && cutterError == other.cutterError
+                && unrecoverableError == other.unrecoverableError
+                && autoRecoverableError == other.autoRecoverableError;
+    }
+
+    @Override
+    public int hashCode() {
+        return (offline ? 1 : 0) | (coverOpen ? 2 : 0) | (paperNearEnd ? 4 : 0) | (paperEnd ? 8 : 0)
+                | (cutterError ? 16 : 0) | (unrecoverableError ? 32 : 0) | (autoRecoverableError ? 64 : 0);
+    }
+
+    @Override
+    public String toString() {
+        List<String> causes = describe();
+        if (causes.isEmpty()) {
+            return "Ready";
+        }
+        StringBuilder text = new StringBuilder(causes.get(0));
+        for (int i = 1; i < causes.size(); i++) {
+            text.append(", ").append(causes.get(i));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reassembles statuses from the raw IN stream. Real-time replies are
+     * single bytes with bits 1 and 4 set and are matched to the requests
+     * announced with {@link #expectRealTime()}; an ASB block starts with a
+     * byte that has bit 4 set and bit 1 clear, followed by three bytes with
+     * bits 4 and 7 clear. Anything else is dropped. Not thread-safe.
+     */
+    static final class Parser {
+        private final int[] realTime = new int[4];
+        private int realTimeExpected;
+        private int realTimeReceived;
+        private final int[] block = new int[4];
+        private int blockLength;
+
+        /** Announces that DLE EOT 1, 2, 3 and 4 were just sent, in that order. */
+        void expectRealTime() {
+            realTimeExpected = 4;
+            realTimeReceived = 0;
+        }
+
+        /** Feeds received bytes; returns the last complete status, or null. */
+        PrinterStatus feed(byte[] data, int length) {
+            PrinterStatus status = null;
+            for (int i = 0; i < length; i++) {
+                int b = data[i] & 0xFF;
+                if (blockLength > 0) {
+                    if ((b & 0x90) != 0) {
+                        blockLength = 0;  // Not an ASB continuation, resync
+                    } else {
+                        block[blockLength++] = b;
+                        if (blockLength == 4) {
+                            blockLength = 0;
+                            status = fromAutoStatus(block[0], block[1], block[2]);
+                        }
+                        continue;
+                    }
+                }
+                if ((b & 0x93) == 0x12 && realTimeReceived < realTimeExpected) {
+                    realTime[realTimeReceived++] = b;
+                    if (realTimeReceived == 4) {
+                        realTimeExpected = 0;
+                        realTimeReceived = 0;
+                        status = fromRealTime(realTime[0], realTime[1], realTime[2], realTime[3]);
+                    }
+                } else if ((b & 0x93) == 0x10) {
+                    block[0] = b;
+                    blockLength = 1;
+                }
+            }
+            return status;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.thermalprinter.test;
+
+/**
+ * A connection print jobs are written to: USB bulk transfers, the VOLCORA
+ * SDK or a raw TCP socket. Jobs are written in submission order on the
+ * transport's own thread, and callbacks are invoked on that thread.
+ */
+public interface PrinterTransport {
+
+    interface StatusListener {
+        void onStatusChanged(PrinterStatus status);
+    }
+
+    /**
+     * Queues {@code length} bytes of {@code data} starting at {@code offset}.
+     * The buffer must not be modified until the callback has fired.
+     */
+    void submit(byte[] data, int offset, int length, TransferCallback callback);
+
+    /** Latest status reported by the printer, or null if it hasn't reported any or can't. */
+    PrinterStatus getStatus();
+
+    /** Stops the transport; jobs that haven't been written fail. */
+    void close();
+}
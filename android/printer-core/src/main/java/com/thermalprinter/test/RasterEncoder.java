@@ -0,0 +1,330 @@
+package com.thermalprinter.test;
+
+import java.util.Arrays;
+
+/**
+ * Converts images to 1-bit ESC/POS raster data.
+ *
+ * Pixels are pulled one row at a time from a {@link RowSource} and dithered
+ * on primitive int rows, so the full-size image is never held in memory;
+ * only the current row, two or three error rows and one output strip are
+ * kept, and they are reused between images of the same width. Each strip
+ * of {@code stripRows} rows is emitted as a complete command to a
+ * {@link StripSink} as soon as it is packed.
+ *
+ * Not thread-safe; use one encoder per thread or guard it externally.
+ */
+public class RasterEncoder {
+
+    public static final int DEFAULT_STRIP_ROWS = 64;
+
+    // GS ( L carries at most 65535 parameter bytes, 10 of them header
+    private static final int MAX_GRAPHICS_DATA = 65535 - 10;
+
+    private static final byte GS = 0x1D;
+
+    public enum Dither {
+        THRESHOLD,
+        FLOYD_STEINBERG,
+        ATKINSON,
+        ORDERED;
+
+        public static Dither parse(String name) {
+            if (name == null) {
+                return FLOYD_STEINBERG;
+            }
+            switch (name.toLowerCase().replace("-", "").replace("_", "")) {
+                case "none":
+                case "threshold":
+                    return THRESHOLD;
+                case "atkinson":
+                    return ATKINSON;
+                case "ordered":
+                case "bayer":
+                    return ORDERED;
+                default:
+                    return FLOYD_STEINBERG;
+            }
+        }
+    }
+
+    public enum Format {
+        /** GS v 0 - raster bit image, supported by nearly every printer. */
+        RASTER,
+        /** GS ( L fn 112 + fn 50 - graphics buffer, for printers that drop GS v 0. */
+        GRAPHICS;
+
+        public static Format parse(String name) {
+            return "graphics".equalsIgnoreCase(name) ? GRAPHICS : RASTER;
+        }
+    }
+
+    /** Supplies one row of ARGB pixels. */
+    public interface RowSource {
+        void readRow(int y, int[] argb);
+    }
+
+    /** Receives each finished strip; the buffer is reused once this returns. */
+    public interface StripSink {
+        void write(byte[] data, int offset, int length);
+    }
+
+    // Bayer 8x8 thresholds, 0..63
+    private static final int[] BAYER = {
+         0, 32,  8, 40,  2, 34, 10, 42,
+        48, 16, 56, 24, 50, 18, 58, 26,
+        12, 44,  4, 36, 14, 46,  6, 38,
+        60, 28, 52, 20, 62, 30, 54, 22,
+         3, 35, 11, 43,  1, 33,  9, 41,
+        51, 19, 59, 27, 49, 17, 57, 25,
+        15, 47,  7, 39, 13, 45,  5, 37,
+        63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    private final int stripRows;
+
+    private int width = -1;
+    private int[] pixels;
+    private int[] gray;
+    private int[] err0;
+    private int[] err1;
+    private int[] err2;
+    private byte[] strip;
+
+    public RasterEncoder() {
+        this(DEFAULT_STRIP_ROWS);
+    }
+
+    public RasterEncoder(int stripRows) {
+        this.stripRows = Math.max(1, stripRows);
+    }
+
+    /**
+     * Encodes a {@code width} x {@code height} image into {@code out}.
+     */
+    public void encode(RowSource source, int width, int height, Dither dither, Format format, EscPosEncoder out) {
+        encode(source, width, height, dither, format, out::raw);
+    }
+
+    public void encode(RowSource source, int width, int height, Dither dither, Format format, StripSink sink) {
+        if (width <= 0 || width > 0xFFFF || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        int bytesPerRow = (width + 7) >> 3;
+        int rowsPerStrip = stripRows;
+        if (format == Format.GRAPHICS) {
+            rowsPerStrip = Math.min(rowsPerStrip, MAX_GRAPHICS_DATA / bytesPerRow);
+        }
+        prepare(width, bytesPerRow * rowsPerStrip + 24);
+
+        int y = 0;
+        while (y < height) {
+            int rows = Math.min(rowsPerStrip, height - y);
+            int header = writeHeader(format, width, bytesPerRow, rows);
+            int pos = header;
+            for (int r = 0; r < rows; r++, y++) {
+                ditherRow(source, y, width, dither);
+                pack(width, strip, pos);
+                pos += bytesPerRow;
+            }
+            if (format == Format.GRAPHICS) {
+                // GS ( L 2 0 48 50 - print the graphics buffer
+                strip[pos++] = GS;
+                strip[pos++] = '(';
+                strip[pos++] = 'L';
+                strip[pos++] = 2;
+                strip[pos++] = 0;
+                strip[pos++] = 48;
+                strip[pos++] = 50;
+            }
+            sink.write(strip, 0, pos);
+        }
+    }
+
+    /**
+     * Dithers the whole image into bare 1-bit raster rows ({@code (width + 7) / 8}
+     * bytes each, MSB first, 1 = black) with no command header, for commands
+     * such as stored graphics that frame the data themselves.
+     */
+    public byte[] encodeBitmap(RowSource source, int width, int height, Dither dither) {
+        if (width <= 0 || width > 0xFFFF || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        int bytesPerRow = (width + 7) >> 3;
+        byte[] bits = new byte[bytesPerRow * height];
+        prepare(width, 0);
+        for (int y = 0; y < height; y++) {
+            ditherRow(source, y, width, dither);
+            pack(width, bits, y * bytesPerRow);
+        }
+        return bits;
+    }
+
+    private void ditherRow(RowSource source, int y, int width, Dither dither) {
+        source.readRow(y, pixels);
+        toGray(width);
+        switch (dither) {
+            case FLOYD_STEINBERG:
+                floydSteinberg(width);
+                break;
+            case ATKINSON:
+                atkinson(width);
+                break;
+            case ORDERED:
+                ordered(width, y);
+                break;
+            default:
+                threshold(width);
+                break;
+        }
+    }
+
+    private void prepare(int width, int stripBytes) {
+        if (this.width != width) {
+            this.width = width;
+            pixels = new int[width];
+            gray = new int[width];
+            // Two cells of padding either side so diffusion needs no bounds checks
+            err0 = new int[width + 4];
+            err1 = new int[width + 4];
+            err2 = new int[width + 4];
+        } else {
+            Arrays.fill(err0, 0);
+            Arrays.fill(err1, 0);
+            Arrays.fill(err2, 0);
+        }
+        if (strip == null || strip.length < stripBytes) {
+            strip = new byte[stripBytes];
+        }
+    }
+
+    private int writeHeader(Format format, int width, int bytesPerRow, int rows) {
+        byte[] s = strip;
+        if (format == Format.RASTER) {
+            // GS v 0 m xL xH yL yH
+            s[0] = GS;
+            s[1] = 'v';
+            s[2] = '0';
+            s[3] = 0;
+            s[4] = (byte) bytesPerRow;
+            s[5] = (byte) (bytesPerRow >> 8);
+            s[6] = (byte) rows;
+            s[7] = (byte) (rows >> 8);
+            return 8;
+        }
+        // GS ( L pL pH 48 112 a bx by c xL xH yL yH
+        int p = 10 + bytesPerRow * rows;
+        s[0] = GS;
+        s[1] = '(';
+        s[2] = 'L';
+        s[3] = (byte) p;
+        s[4] = (byte) (p >> 8);
+        s[5] = 48;
+        s[6] = 112;
+        s[7] = 48;
+        s[8] = 1;
+        s[9] = 1;
+        s[10] = 49;
+        s[11] = (byte) width;
+        s[12] = (byte) (width >> 8);
+        s[13] = (byte) rows;
+        s[14] = (byte) (rows >> 8);
+        return 15;
+    }
+
+    // Luminance 0..255, transparent pixels composited onto white paper
+    private void toGray(int width) {
+        int[] px = pixels;
+        int[] g = gray;
+        for (int x = 0; x < width; x++) {
+            int argb = px[x];
+            int a = argb >>> 24;
+            int lum = (((argb >> 16) & 0xFF) * 77 + ((argb >> 8) & 0xFF) * 150 + (argb & 0xFF) * 29) >> 8;
+            if (a != 0xFF) {
+                lum = 255 - ((255 - lum) * a + 127) / 255;
+            }
+            g[x] = lum;
+        }
+    }
+
+    // Output convention: gray[x] becomes 0 for a black dot, 255 for white
+
+    private void threshold(int width) {
+        int[] g = gray;
+        for (int x = 0; x < width; x++) {
+            g[x] = g[x] < 128 ? 0 : 255;
+        }
+    }
+
+    private void ordered(int width, int y) {
+        int[] g = gray;
+        int base = (y & 7) << 3;
+        for (int x = 0; x < width; x++) {
+            g[x] = g[x] < (BAYER[base + (x & 7)] << 2) + 2 ? 0 : 255;
+        }
+    }
+
+    // Errors kept in 1/16ths; cur is this row, next the row below
+    private void floydSteinberg(int width) {
+        int[] g = gray;
+        int[] cur = err0;
+        int[] next = err1;
+        for (int x = 0; x < width; x++) {
+            int v = g[x] + ((cur[x + 2] + 8) >> 4);
+            int out = v < 128 ? 0 : 255;
+            int e = v - out;
+            g[x] = out;
+            cur[x + 3] += e * 7;
+            next[x + 1] += e * 3;
+            next[x + 2] += e * 5;
+            next[x + 3] += e;
+        }
+        Arrays.fill(cur, 0);
+        err0 = next;
+        err1 = cur;
+    }
+
+    // Atkinson spreads 6/8 of the error over two rows, in 1/8ths
+    private void atkinson(int width) {
+        int[] g = gray;
+        int[] cur = err0;
+        int[] next = err1;
+        int[] after = err2;
+        for (int x = 0; x < width; x++) {
+            int v = g[x] + ((cur[x + 2] + 4) >> 3);
+            int out = v < 128 ? 0 : 255;
+            int e = v - out;
+            g[x] = out;
+            cur[x + 3] += e;
+            cur[x + 4] += e;
+            next[x + 1] += e;
+            next[x + 2] += e;
+            next[x + 3] += e;
+            after[x + 2] += e;
+        }
+        Arrays.fill(cur, 0);
+        err0 = next;
+        err1 = after;
+        err2 = cur;
+    }
+
+    private void pack(int width, byte[] s, int pos) {
+        int[] g = gray;
+        int x = 0;
+        while (x + 8 <= width) {
+            int bits = 0;
+            for (int b = 0; b < 8; b++) {
+                bits = (bits << 1) | (g[x++] == 0 ? 1 : 0);
+            }
+            s[pos++] = (byte) bits;
+        }
+        if (x < width) {
+            int bits = 0;
+            int shift = 7;
+            while (x < width) {
+                bits |= (g[x++] == 0 ? 1 : 0) << shift--;
+            }
+            s[pos] = (byte) bits;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.thermalprinter.test;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Encodes the compact receipt description sent by the web layer into ESC/POS.
+ *
+ * A description is a list of ops, each printed in order:
+ * <pre>
+ * { op: "text", value, align?, bold?, underline?, width?, height? }  one line
+ * { op: "row", left, right }                                          two columns
+ * { op: "rule", char? }                                               full-width separator
+ * { op: "feed", lines }
+ * { op: "cut" }
+ * { op: "raw", data }                                                 Base64 command bytes
+ * { op: "graphic", key }                                              logo stored in the printer
+ * </pre>
+ * Styling on a text op applies to that line only.
+ */
+public class ReceiptDescription {
+
+    public static final int DEFAULT_COLUMNS = 32;
+
+    /** Emits the commands for a graphic referenced by key. */
+    public interface GraphicResolver {
+        void emit(String key, EscPosEncoder encoder) throws JSONException;
+    }
+
+    private ReceiptDescription() {
+    }
+
+    public static void encode(JSONArray ops, int columns, EscPosEncoder.CodePage codePage, EscPosEncoder encoder)
+            throws JSONException {
+        encode(ops, columns, codePage, encoder, null);
+    }
+
+    public static void encode(JSONArray ops, int columns, EscPosEncoder.CodePage codePage, EscPosEncoder encoder,
+                              GraphicResolver graphics) throws JSONException {
+        encoder.initialize();
+        if (codePage != EscPosEncoder.CodePage.CP437) {
+            encoder.codePage(codePage);
+        }
+
+        for (int i = 0; i < ops.length(); i++) {
+            encodeOp(ops.getJSONObject(i), columns, encoder, graphics);
+        }
+    }
+
+    static void encodeOp(JSONObject op, int columns, EscPosEncoder encoder, GraphicResolver graphics)
+            throws JSONException {
+        String type = op.optString("op", "text");
+
+        switch (type) {
+            case "text":
+                TextStyle style = new TextStyle(op);
+                style.begin(encoder);
+                encoder.line(op.optString("value", ""));
+                style.end(encoder);
+                break;
+            case "row":
+                encoder.columns(op.optString("left", ""), op.optString("right", ""), columns);
+                break;
+            case "rule":
+                String rule = op.optString("char", "-");
+                encoder.repeat(rule.isEmpty() ? '-' : rule.charAt(0), columns).newline();
+                break;
+            case "feed":
+                encoder.feed(op.optInt("lines", 1));
+                break;
+            case "cut":
+                encoder.cut();
+                break;
+            case "raw":
+                encoder.raw(Base64Payload.decode(op.getString("data")));
+                break;
+            case "graphic":
+                if (graphics == null) {
+                    throw new JSONException("Stored graphics are not available");
+                }
+                EscPosEncoder.Alignment alignment = EscPosEncoder.Alignment.parse(op.optString("align", "center"));
+                encoder.align(alignment);
+                graphics.emit(op.getString("key"), encoder);
+                encoder.align(EscPosEncoder.Alignment.LEFT);
+                break;
+            default:
+                throw new JSONException("Unknown receipt op: " + type);
+        }
+    }
+
+    /**
+     * Styling of a text op, parsed once. Only the attributes that differ
+     * from the defaults are switched on before the line and back off after
+     * it.
+     */
+    static class TextStyle {
+        final EscPosEncoder.Alignment alignment;
+        final boolean bold;
+        final boolean underline;
+        final int width;
+        final int height;
+
+        TextStyle(JSONObject op) {
+            alignment = EscPosEncoder.Alignment.parse(op.optString("align", "left"));
+            bold = op.optBoolean("bold", false);
+            underline = op.optBoolean("underline", false);
+            width = op.optInt("width", 1);
+            height = op.optInt("height", 1);
+        }
+
+        private boolean sized() {
+            return width != 1 || height != 1;
+        }
+
+        void begin(EscPosEncoder encoder) {
+            if (alignment != EscPosEncoder.Alignment.LEFT) {
+                encoder.align(alignment);
+            }
+            if (bold) {
+                encoder.bold(true);
+            }
+            if (underline) {
+                encoder.underline(true);
+            }
+            if (sized()) {
+                encoder.size(width, height);
+            }
+        }
+
+        void end(EscPosEncoder encoder) {
+            if (sized()) {
+                encoder.size(1, 1);
+            }
+            if (underline) {
+                encoder.underline(false);
+            }
+            if (bold) {
+                encoder.bold(false);
+            }
+            if (alignment != EscPosEncoder.Alignment.LEFT) {
+                encoder.align(EscPosEncoder.Alignment.LEFT);
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.thermalprinter.test;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A receipt description compiled once for repeated printing.
+ *
+ * Uses the same ops as {@link ReceiptDescription}. String fields may contain
+ * {@code {{name}}} placeholders, and a
+ * {@code { op: "repeat", each: "items", ops: [...] }} op renders its body
+ * once per element of an array value, with placeholders resolved against
+ * that element. Ops without placeholders (header, rules, footer, cut) are
+ * encoded into ESC/POS byte segments at compile time. Rendering copies those
+ * segments and encodes only the slots between them, in the code page each
+ * segment leaves selected.
+ */
+public class ReceiptTemplate {
+
+    private final String id;
+    private final int version;
+    private final int columns;
+    private final List<Part> parts;
+    private final int staticBytes;
+    private final int slotCount;
+
+    private ReceiptTemplate(String id, int version, int columns, List<Part> parts) {
+        this.id = id;
+        this.version = version;
+        this.columns = columns;
+        this.parts = parts;
+        int bytes = 0;
+        int slots = 0;
+        for (Part part : parts) {
+            if (part instanceof Segment) {
+                bytes += ((Segment) part).bytes.length;
+            } else {
+                slots++;
+            }
+        }
+        this.staticBytes = bytes;
+        this.slotCount = slots;
+    }
+
+    public static ReceiptTemplate compile(String id, int version, JSONArray ops, int columns,
+                                          EscPosEncoder.CodePage codePage) throws JSONException {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.initialize();
+        if (codePage != EscPosEncoder.CodePage.CP437) {
+            encoder.codePage(codePage);
+        }
+        List<Part> parts = new ArrayList<>();
+        compileOps(ops, columns, encoder, parts);
+        flush(encoder, parts);
+        return new ReceiptTemplate(id, version, columns, parts);
+    }
+
+    // Static ops accumulate in the encoder until a slot forces a segment break
+    private static void compileOps(JSONArray ops, int columns, EscPosEncoder encoder, List<Part> parts)
+            throws JSONException {
+        for (int i = 0; i < ops.length(); i++) {
+            JSONObject op = ops.getJSONObject(i);
+            String type = op.optString("op", "text");
+            Part slot = null;
+
+            switch (type) {
+                case "text":
+                    Pattern value = Pattern.parse(op.optString("value", ""));
+                    if (!value.isConstant()) {
+                        slot = new TextSlot(value, new ReceiptDescription.TextStyle(op));
+                    }
+                    break;
+                case "row":
+                    Pattern left = Pattern.parse(op.optString("left", ""));
+                    Pattern right = Pattern.parse(op.optString("right", ""));
+                    if (!left.isConstant() || !right.isConstant()) {
+                        slot = new RowSlot(left, right);
+                    }
+                    break;
+                case "graphic":
+                    // Resolved per render; residency in the printer can change
+                    slot = new GraphicSlot(op.getString("key"),
+                            EscPosEncoder.Alignment.parse(op.optString("align", "center")));
+                    break;
+                case "repeat":
+                    List<Part> body = new ArrayList<>();
+                    EscPosEncoder bodyEncoder = new EscPosEncoder(256);
+                    bodyEncoder.setCodePage(encoder.getCodePage());
+                    compileOps(op.getJSONArray("ops"), columns, bodyEncoder, body);
+                    flush(bodyEncoder, body);
+                    slot = new RepeatSlot(op.getString("each"), body);
+                    break;
+                default:
+                    break;
+            }
+
+            if (slot != null) {
+                flush(encoder, parts);
+                parts.add(slot);
+            } else {
+                ReceiptDescription.encodeOp(op, columns, encoder, null);
+            }
+        }
+    }
+
+    private static void flush(EscPosEncoder encoder, List<Part> parts) {
+        if (encoder.size() > 0) {
+            EscPosEncoder.CodePage codePage = encoder.getCodePage();
+            parts.add(new Segment(encoder.toByteArray(), codePage));
+            encoder.reset();
+            encoder.setCodePage(codePage);  // Still selected in the printer
+        }
+    }
+
+    /**
+     * Appends the receipt for {@code values} to {@code encoder}.
+     */
+    public void render(JSONObject values, EscPosEncoder encoder, ReceiptDescription.GraphicResolver graphics)
+            throws JSONException {
+        renderParts(parts, values, encoder, graphics, new StringBuilder(64), new StringBuilder(64));
+    }
+
+    private void renderParts(List<Part> parts, JSONObject values, EscPosEncoder encoder,
+                             ReceiptDescription.GraphicResolver graphics, StringBuilder a, StringBuilder b)
+            throws JSONException {
+        for (int i = 0, n = parts.size(); i < n; i++) {
+            Part part = parts.get(i);
+            if (part instanceof Segment) {
+                Segment segment = (Segment) part;
+                encoder.raw(segment.bytes, 0, segment.bytes.length);
+                encoder.setCodePage(segment.codePage);
+            } else if (part instanceof TextSlot) {
+                TextSlot slot = (TextSlot) part;
+                a.setLength(0);
+                slot.value.appendTo(a, values);
+                slot.style.begin(encoder);
+                encoder.line(a);
+                slot.style.end(encoder);
+            } else if (part instanceof RowSlot) {
+                RowSlot slot = (RowSlot) part;
+                a.setLength(0);
+                b.setLength(0);
+                slot.left.appendTo(a, values);
+                slot.right.appendTo(b, values);
+                encoder.columns(a, b, columns);
+            } else if (part instanceof GraphicSlot) {
+                if (graphics == null) {
+                    throw new JSONException("Stored graphics are not available");
+                }
+                GraphicSlot slot = (GraphicSlot) part;
+                encoder.align(slot.alignment);
+                graphics.emit(slot.key, encoder);
+                encoder.align(EscPosEncoder.Alignment.LEFT);
+            } else if (part instanceof RepeatSlot) {
+                RepeatSlot slot = (RepeatSlot) part;
+                JSONArray items = values.optJSONArray(slot.each);
+                if (items != null) {
+                    for (int j = 0; j < items.length(); j++) {
+                        renderParts(slot.body, items.getJSONObject(j), encoder, graphics, a, b);
+                    }
+                }
+            }
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getSegmentCount() {
+        return parts.size() - slotCount;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /** Pre-encoded bytes, excluding the bodies of repeat slots. */
+    public int getStaticBytes() {
+        return staticBytes;
+    }
+
+    private interface Part {
+    }
+
+    private static final class Segment implements Part {
+        final byte[] bytes;
+        // Selected once these bytes have been sent
+        final EscPosEncoder.CodePage codePage;
+
+        Segment(byte[] bytes, EscPosEncoder.CodePage codePage) {
+            this.bytes = bytes;
+            this.codePage = codePage;
+        }
+    }
+
+    private static final class TextSlot implements Part {
+        final Pattern value;
+        final ReceiptDescription.TextStyle style;
+
+        TextSlot(Pattern value, ReceiptDescription.TextStyle style) {
+            this.value = value;
+            this.style = style;
+        }
+    }
+
+    private static final class RowSlot implements Part {
+        final Pattern left;
+        final Pattern right;
+
+        RowSlot(Pattern left, Pattern right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class GraphicSlot implements Part {
+        final String key;
+        final EscPosEncoder.Alignment alignment;
+
+        GraphicSlot(String key, EscPosEncoder.Alignment alignment) {
+            this.key = key;
+            this.alignment = alignment;
+        }
+    }
+
+    private static final class RepeatSlot implements Part {
+        final String each;
+        final List<Part> body;
+
+        RepeatSlot(String each, List<Part> body) {
+            this.each = each;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A string split at its placeholders: literals[0] name[0] literals[1] ...
+     */
+    static final class Pattern {
+        private final String[] literals;
+        private final String[] names;
+
+        private Pattern(String[] literals, String[] names) {
+            this.literals = literals;
+            this.names = names;
+        }
+
+        static Pattern parse(String text) {
+            List<String> literals = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            int from = 0;
+            int open;
+            while ((open = text.indexOf("{{", from)) >= 0) {
+                int close = text.indexOf("}}", open + 2);
+                if (close < 0) {
+                    break;
+                }
+                literals.add(text.substring(from, open));
+                names.add(text.substring(open + 2, close).trim());
+                from = close + 2;
+            }
+            literals.add(text.substring(from));
+            return new Pattern(literals.toArray(new String[0]), names.toArray(new String[0]));
+        }
+
+        boolean isConstant() {
+            return names.length == 0;
+        }
+
+        // Missing values render as empty text
+        void appendTo(StringBuilder out, JSONObject values) {
+            out.append(literals[0]);
+            for (int i = 0; i < names.length; i++) {
+                Object value = values.opt(names[i]);
+                if (value != null && value != JSONObject.NULL) {
+                    out.append(value);
+                }
+                out.append(literals[i + 1]);
+            }
+        }
+    }
+}
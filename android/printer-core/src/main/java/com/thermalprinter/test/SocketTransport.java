@@ -0,0 +1,249 @@
+package com.thermalprinter.test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Raw TCP transport for network printers (port 9100, "JetDirect").
+ *
+ * A single I/O thread drives a non-blocking socket through a selector.
+ * Queued jobs are pipelined: each write gathers the unsent tail of every
+ * waiting job, so the socket buffer already holds the next receipt while
+ * the printer works through the current one. TCP has no per-job
+ * acknowledgement, so a job completes once its last byte is accepted by the
+ * socket. If the printer stops accepting data for {@link #STALL_TIMEOUT_MS}
+ * without reporting an error the connection is dropped and the waiting
+ * jobs fail.
+ *
+ * Automatic Status Back is enabled on connect and DLE EOT 1-4 is polled
+ * while the queue is idle; replies come back on the same socket. No
+ * Android APIs are used, so this runs on any JVM.
+ */
+public class SocketTransport implements PrinterTransport {
+
+    public static final int DEFAULT_PORT = 9100;
+    static final int CONNECT_TIMEOUT_MS = 3000;
+    static final long STALL_TIMEOUT_MS = 10000;
+    private static final long IDLE_POLL_MS = 2000;
+    private static final long STALL_CHECK_MS = 1000;
+    private static final int MAX_GATHER = 16;
+
+    // GS a n - push status on online/offline, error and paper sensor changes
+    private static final byte[] ENABLE_AUTO_STATUS = {0x1D, 'a', 0x0E};
+    // DLE EOT 1..4 - printer, offline cause, error cause, paper sensor
+    private static final byte[] REQUEST_STATUS = {
+            0x10, 0x04, 1, 0x10, 0x04, 2, 0x10, 0x04, 3, 0x10, 0x04, 4
+    };
+
+    private static class Job {
+        final ByteBuffer buffer;
+        final int length;
+        final TransferCallback callback;  // Null for status polls
+
+        Job(byte[] data, int offset, int length, TransferCallback callback) {
+            this.buffer = ByteBuffer.wrap(data, offset, length);
+            this.length = length;
+            this.callback = callback;
+        }
+    }
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final String address;
+    private final StatusListener statusListener;
+    private final ConcurrentLinkedQueue<Job> incoming = new ConcurrentLinkedQueue<>();
+    private final Thread ioThread;
+    private volatile boolean running = true;
+    private volatile PrinterStatus status;
+
+    // Only touched on the I/O thread
+    private final ArrayDeque<Job> pending = new ArrayDeque<>();
+    private final PrinterStatus.Parser statusParser = new PrinterStatus.Parser();
+
+    private SocketTransport(SocketChannel channel, String address, StatusListener statusListener) throws IOException {
+        this.channel = channel;
+        this.address = address;
+        this.statusListener = statusListener;
+        this.selector = Selector.open();
+        channel.configureBlocking(false);
+        this.ioThread = new Thread(this::run, "SocketTransport-" + address);
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * Connects to {@code host}:{@code port}, waiting up to
+     * {@link #CONNECT_TIMEOUT_MS}. Blocks; don't call on the main thread.
+     *
+     * @param statusListener called on the I/O thread whenever the status changes, may be null
+     */
+    public static SocketTransport connect(String host, int port, StatusListener statusListener) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            channel.socket().setTcpNoDelay(true);
+            return new SocketTransport(channel, host + ":" + port, statusListener);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** host:port this transport is connected to. */
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public void submit(byte[] data, int offset, int length, TransferCallback callback) {
+        if (!running) {
+            callback.onError("Network printer connection is closed");
+            return;
+        }
+        incoming.add(new Job(data, offset, length, callback));
+        selector.wakeup();
+        if (!running) {
+            failQueued("Network printer connection is closed");
+        }
+    }
+
+    @Override
+    public PrinterStatus getStatus() {
+        return status;
+    }
+
+    public boolean isOpen() {
+        return running;
+    }
+
+    /** Closes the socket; jobs not yet fully written fail. */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        String error = "Network printer connection is closed";
+        try {
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            ByteBuffer readBuffer = ByteBuffer.allocate(256);
+            ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+            pending.add(new Job(ENABLE_AUTO_STATUS, 0, ENABLE_AUTO_STATUS.length, null));
+            pollStatus();
+            long lastActivity = System.nanoTime();
+
+            while (running) {
+                boolean wasIdle = pending.isEmpty();
+                Job job;
+                while ((job = incoming.poll()) != null) {
+                    pending.add(job);
+                }
+                if (wasIdle && !pending.isEmpty()) {
+                    lastActivity = System.nanoTime();
+                }
+                key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.select(pending.isEmpty() ? IDLE_POLL_MS : STALL_CHECK_MS);
+                boolean ready = selector.selectedKeys().remove(key);
+                if (!running) {
+                    break;
+                }
+
+                if (ready && key.isReadable()) {
+                    readBuffer.clear();
+                    int read = channel.read(readBuffer);
+                    if (read < 0) {
+                        throw new IOException("Printer closed the connection");
+                    }
+                    onStatusBytes(readBuffer.array(), read);
+                }
+
+                long now = System.nanoTime();
+                if (!pending.isEmpty()) {
+                    if (ready && key.isWritable() && write(gather) > 0) {
+                        lastActivity = now;
+                    } else if (status != null && status.isError()) {
+                        lastActivity = now;  // Paper out etc.: wait for recovery, not a dead link
+                    } else if ((now - lastActivity) / 1000000 > STALL_TIMEOUT_MS) {
+                        throw new IOException("Printer stopped accepting data for " + STALL_TIMEOUT_MS / 1000 + " s");
+                    }
+                } else if ((now - lastActivity) / 1000000 >= IDLE_POLL_MS) {
+                    pollStatus();
+                    lastActivity = now;
+                }
+            }
+        } catch (IOException e) {
+            error = "Network printer connection lost: " + e.getMessage();
+        } finally {
+            running = false;
+            try {
+                channel.close();
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            for (Job job : pending) {
+                if (job.callback != null) {
+                    job.callback.onError(error);
+                }
+            }
+            pending.clear();
+            failQueued(error);
+        }
+    }
+
+    /** Writes as much of the waiting jobs as the socket takes in one go. */
+    private long write(ByteBuffer[] gather) throws IOException {
+        int count = 0;
+        for (Iterator<Job> it = pending.iterator(); it.hasNext() && count < gather.length; ) {
+            gather[count++] = it.next().buffer;
+        }
+        long written = channel.write(gather, 0, count);
+        TraceLog.event(TraceLog.SOCKET_WRITE, written, count);
+        for (int i = 0; i < count; i++) {
+            gather[i] = null;
+        }
+
+        Job job;
+        while ((job = pending.peek()) != null && !job.buffer.hasRemaining()) {
+            pending.poll();
+            if (job.callback != null) {
+                job.callback.onComplete(job.length);
+            }
+        }
+        if (job != null && job.callback != null && written > 0 && job.buffer.remaining() < job.length) {
+            job.callback.onProgress(job.length - job.buffer.remaining(), job.length);
+        }
+        return written;
+    }
+
+    private void pollStatus() {
+        pending.add(new Job(REQUEST_STATUS, 0, REQUEST_STATUS.length, null));
+        statusParser.expectRealTime();
+    }
+
+    private void onStatusBytes(byte[] data, int length) {
+        PrinterStatus update = statusParser.feed(data, length);
+        if (update == null || update.equals(status)) {
+            return;
+        }
+        status = update;
+        if (statusListener != null) {
+            statusListener.onStatusChanged(update);
+        }
+    }
+
+    private void failQueued(String error) {
+        Job job;
+        while ((job = incoming.poll()) != null) {
+            job.callback.onError(error);
+        }
+    }
+}
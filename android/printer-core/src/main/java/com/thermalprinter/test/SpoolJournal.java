@@ -0,0 +1,376 @@
+package com.thermalprinter.test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal backing the print spooler.
+ *
+ * Every queued job is appended as a checksummed record and a small ACK record
+ * is appended once the job reaches a final state. Because the file is mapped,
+ * an append is a CRC32 plus a memory copy into the page cache; nothing is
+ * fsync'd, which survives a process kill (the case we care about) but not a
+ * power cut. Replay stops at the first record whose checksum does not match,
+ * so a record torn by a crash is discarded together with anything after it.
+ *
+ * The journal is compacted when the last live job is acknowledged (the write
+ * position simply rewinds) or, when it fills up with jobs still pending, by
+ * copying the live records into a fresh file. Each rewind bumps a generation
+ * number stored in the file header and in every record, so stale records left
+ * beyond the write position are never replayed.
+ *
+ * Layout (little-endian):
+ * <pre>
+ * file header:  magic:int version:int generation:int reserved:int
+ * record:       magic:int type:byte priority:byte reserved:short generation:int
+ *               jobId:long length:int crc:int payload[length]
+ * </pre>
+ * The CRC covers everything from type through length plus the payload.
+ */
+public class SpoolJournal implements Closeable {
+
+    /** A job found in the journal that was never acknowledged. */
+    public static class Record {
+        public final long jobId;
+        public final int priority;
+        public final byte[] data;
+
+        Record(long jobId, int priority, byte[] data) {
+            this.jobId = jobId;
+            this.priority = priority;
+            this.data = data;
+        }
+    }
+
+    private static final int FILE_MAGIC = 0x4A535054;    // "TPSJ"
+    private static final int RECORD_MAGIC = 0x52535054;  // "TPSR"
+    private static final int VERSION = 1;
+
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 28;
+
+    private static final byte TYPE_JOB = 1;
+    private static final byte TYPE_ACK = 2;
+
+    private static final int INITIAL_CAPACITY = 1 << 20;   // 1 MB
+    private static final int MAX_CAPACITY = 64 << 20;      // 64 MB
+
+    private static class Entry {
+        final int offset;
+        final int length;
+
+        Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final CRC32 crc = new CRC32();
+    private final LinkedHashMap<Long, Entry> live = new LinkedHashMap<>();
+    private final List<Record> recovered = new ArrayList<>();
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int generation;
+    private int position;
+    private IOException lastError;
+
+    private SpoolJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens (or creates) the journal and replays it. Jobs that were never
+     * acknowledged are available from {@link #getRecoveredJobs()}.
+     */
+    public static SpoolJournal open(File file) throws IOException {
+        SpoolJournal journal = new SpoolJournal(file);
+        journal.load();
+        return journal;
+    }
+
+    public List<Record> getRecoveredJobs() {
+        return recovered;
+    }
+
+    /**
+     * Appends a job record. Returns false if the journal has failed and is no
+     * longer persisting jobs; printing carries on regardless.
+     */
+    public synchronized boolean append(long jobId, int priority, byte[] data) {
+        return append(jobId, priority, data, data.length);
+    }
+
+    public synchronized boolean append(long jobId, int priority, byte[] data, int length) {
+        int size = RECORD_HEADER_SIZE + length;
+        if (buffer == null || FILE_HEADER_SIZE + size > MAX_CAPACITY) {
+            return false;
+        }
+        try {
+            if (position + size > buffer.capacity()) {
+                makeRoom(size);
+            }
+            int offset = position;
+            writeRecord(TYPE_JOB, priority, jobId, data, 0, length);
+            live.put(jobId, new Entry(offset, size));
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Marks a job as done. Once no live jobs remain the journal rewinds to
+     * the start of the file.
+     */
+    public synchronized void acknowledge(long jobId) {
+        if (buffer == null || live.remove(jobId) == null) {
+            return;
+        }
+        if (live.isEmpty()) {
+            startGeneration();
+            return;
+        }
+        try {
+            if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+                makeRoom(RECORD_HEADER_SIZE);
+            }
+            writeRecord(TYPE_ACK, 0, jobId, null, 0, 0);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized int getLiveJobCount() {
+        return live.size();
+    }
+
+    public synchronized IOException getLastError() {
+        return lastError;
+    }
+
+    synchronized int getWritePosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer = null;
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
+    private void load() throws IOException {
+        boolean exists = file.exists() && file.length() >= FILE_HEADER_SIZE;
+        map(exists ? (int) Math.min(file.length(), MAX_CAPACITY) : INITIAL_CAPACITY);
+
+        if (!exists || buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != VERSION) {
+            generation = 0;
+            startGeneration();
+            return;
+        }
+
+        generation = buffer.getInt(8);
+        position = FILE_HEADER_SIZE;
+        LinkedHashMap<Long, Record> pending = new LinkedHashMap<>();
+
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int offset = position;
+            if (buffer.getInt(offset) != RECORD_MAGIC || buffer.getInt(offset + 8) != generation) {
+                break;
+            }
+            byte type = buffer.get(offset + 4);
+            int priority = buffer.get(offset + 5);
+            long jobId = buffer.getLong(offset + 12);
+            int length = buffer.getInt(offset + 20);
+            int storedCrc = buffer.getInt(offset + 24);
+            if (length < 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + RECORD_HEADER_SIZE);
+            view.get(payload);
+            if (checksum(type, priority, jobId, payload, 0, length) != storedCrc) {
+                break;
+            }
+
+            if (type == TYPE_JOB) {
+                pending.put(jobId, new Record(jobId, priority, payload));
+                live.put(jobId, new Entry(offset, RECORD_HEADER_SIZE + length));
+            } else if (type == TYPE_ACK) {
+                pending.remove(jobId);
+                live.remove(jobId);
+            }
+            position = offset + RECORD_HEADER_SIZE + length;
+        }
+
+        recovered.addAll(pending.values());
+
+        // Start clean so the torn tail (if any) is never mistaken for data
+        if (live.isEmpty()) {
+            startGeneration();
+        } else {
+            compact(0);
+        }
+    }
+
+    private void writeRecord(byte type, int priority, long jobId, byte[] data, int offset, int length) {
+        int start = position;
+        int storedCrc = checksum(type, priority, jobId, data, offset, length);
+
+        buffer.putInt(start + 4, (type & 0xFF) | ((priority & 0xFF) << 8));
+        buffer.putInt(start + 8, generation);
+        buffer.putLong(start + 12, jobId);
+        buffer.putInt(start + 20, length);
+        buffer.putInt(start + 24, storedCrc);
+        if (length > 0) {
+            buffer.position(start + RECORD_HEADER_SIZE);
+            buffer.put(data, offset, length);
+        }
+        // Magic last: a record without it is treated as the end of the log
+        buffer.putInt(start, RECORD_MAGIC);
+        position = start + RECORD_HEADER_SIZE + length;
+    }
+
+    private int checksum(byte type, int priority, long jobId, byte[] data, int offset, int length) {
+        crc.reset();
+        crc.update(type);
+        crc.update(priority);
+        for (int shift = 0; shift < 64; shift += 8) {
+            crc.update((int) (jobId >>> shift));
+        }
+        for (int shift = 0; shift < 32; shift += 8) {
+            crc.update(length >>> shift);
+        }
+        if (length > 0) {
+            crc.update(data, offset, length);
+        }
+        return (int) crc.getValue();
+    }
+
+    private void startGeneration() {
+        generation++;
+        buffer.putInt(0, FILE_MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, generation);
+        buffer.putInt(12, 0);
+        position = FILE_HEADER_SIZE;
+        // Invalidate the first record slot so a crash right now replays nothing
+        if (buffer.capacity() >= FILE_HEADER_SIZE + 4) {
+            buffer.putInt(FILE_HEADER_SIZE, 0);
+        }
+    }
+
+    /**
+     * Frees space for a record of {@code size} bytes: first by compacting the
+     * live records into a new file, then by growing the mapping.
+     */
+    private void makeRoom(int size) throws IOException {
+        compact(size);
+        if (position + size > buffer.capacity()) {
+            throw new IOException("Spool journal full (" + buffer.capacity() + " bytes)");
+        }
+    }
+
+    private void compact(int extra) throws IOException {
+        int liveBytes = 0;
+        for (Entry entry : live.values()) {
+            liveBytes += entry.length;
+        }
+        int capacity = buffer.capacity();
+        while (FILE_HEADER_SIZE + liveBytes + extra > capacity / 2 && capacity < MAX_CAPACITY) {
+            capacity = Math.min(capacity * 2, MAX_CAPACITY);
+        }
+
+        // Copy live records out before the old mapping goes away
+        byte[][] records = new byte[live.size()][];
+        long[] ids = new long[live.size()];
+        int index = 0;
+        for (Map.Entry<Long, Entry> item : live.entrySet()) {
+            Entry entry = item.getValue();
+            byte[] copy = new byte[entry.length];
+            buffer.position(entry.offset);
+            buffer.get(copy);
+            records[index] = copy;
+            ids[index] = item.getKey();
+            index++;
+        }
+
+        File compacted = new File(file.getPath() + ".tmp");
+        int nextGeneration = generation + 1;
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            out.setLength(capacity);
+            MappedByteBuffer target = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            target.order(ByteOrder.LITTLE_ENDIAN);
+            target.putInt(0, FILE_MAGIC);
+            target.putInt(4, VERSION);
+            target.putInt(8, nextGeneration);
+            target.putInt(12, 0);
+            int offset = FILE_HEADER_SIZE;
+            live.clear();
+            for (int i = 0; i < records.length; i++) {
+                byte[] record = records[i];
+                target.position(offset);
+                target.put(record);
+                // Only the generation changes; it sits outside the CRC
+                target.putInt(offset + 8, nextGeneration);
+                live.put(ids[i], new Entry(offset, record.length));
+                offset += record.length;
+            }
+            if (offset + 4 <= capacity) {
+                target.putInt(offset, 0);
+            }
+            position = offset;
+        }
+
+        raf.close();
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Failed to replace spool journal " + file);
+        }
+        generation = nextGeneration;
+        map(capacity);
+    }
+
+    private void map(int capacity) throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < capacity) {
+            raf.setLength(capacity);
+        }
+        channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void fail(IOException e) {
+        lastError = e;
+        buffer = null;
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        raf = null;
+        channel = null;
+    }
+}
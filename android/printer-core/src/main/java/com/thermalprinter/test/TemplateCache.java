@@ -0,0 +1,53 @@
+package com.thermalprinter.test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of compiled receipt templates keyed by id and
+ * version. The latest registered version of each id is remembered so callers
+ * can print by id alone. Thread-safe.
+ */
+public class TemplateCache {
+
+    public static final int DEFAULT_MAX_TEMPLATES = 16;
+
+    private final Map<String, ReceiptTemplate> templates;
+    private final Map<String, Integer> latestVersions = new HashMap<>();
+
+    public TemplateCache(int maxTemplates) {
+        this.templates = new LinkedHashMap<String, ReceiptTemplate>(maxTemplates, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ReceiptTemplate> eldest) {
+                return size() > maxTemplates;
+            }
+        };
+    }
+
+    public synchronized void put(ReceiptTemplate template) {
+        templates.put(key(template.getId(), template.getVersion()), template);
+        Integer latest = latestVersions.get(template.getId());
+        if (latest == null || template.getVersion() >= latest) {
+            latestVersions.put(template.getId(), template.getVersion());
+        }
+    }
+
+    public synchronized ReceiptTemplate get(String id, int version) {
+        return templates.get(key(id, version));
+    }
+
+    /** Latest registered version of {@code id}, or null if it was never registered or has been evicted. */
+    public synchronized ReceiptTemplate getLatest(String id) {
+        Integer version = latestVersions.get(id);
+        return version != null ? templates.get(key(id, version)) : null;
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    private static String key(String id, int version) {
+        return id + "@" + version;
+    }
+}
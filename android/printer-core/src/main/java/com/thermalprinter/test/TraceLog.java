@@ -0,0 +1,179 @@
+package com.thermalprinter.test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide trace of print path events for field support, kept in a
+ * preallocated ring of binary records (time, event, thread and up to three
+ * long arguments) instead of being formatted for logcat on every job.
+ * Recording never allocates or locks; with tracing disabled it is a single
+ * volatile read. Records are only turned into text when dumped, oldest
+ * first; the ring keeps the last {@link #CAPACITY} events.
+ *
+ * Each slot carries a sequence stamp, cleared before its fields are written
+ * and set after them. Fields are stored with release semantics and read
+ * with acquire, so a dump taken while other threads record sees a cleared
+ * or newer stamp for any slot being rewritten and skips it instead of
+ * reporting a torn record.
+ */
+public final class TraceLog {
+
+    public static final int CAPACITY = 4096;  // Power of two
+
+    // Event ids index FORMATS; the arguments are filled into the format at dump time
+    public static final int JOB_QUEUED = 1;
+    public static final int JOB_STARTED = 2;
+    public static final int JOB_COMPLETED = 3;
+    public static final int JOB_FAILED = 4;
+    public static final int JOB_CANCELLED = 5;
+    public static final int PAYLOAD_DECODED = 6;
+    public static final int USB_OPEN = 7;
+    public static final int USB_INTERFACE = 8;
+    public static final int USB_ENDPOINT = 9;
+    public static final int USB_OPENED = 10;
+    public static final int USB_WRITE_START = 11;
+    public static final int USB_WRITE_DONE = 12;
+    public static final int USB_SHORT_WRITE = 13;
+    public static final int SDK_SENT = 14;
+    public static final int SOCKET_WRITE = 15;
+    public static final int DISPLAY_UPDATE = 16;
+    public static final int DISPLAY_SHOWN = 17;
+
+    private static final String[] FORMATS = {
+            null,
+            "job.queued id=%d bytes=%d priority=%d",
+            "job.started id=%d waitUs=%d",
+            "job.completed id=%d bytes=%d",
+            "job.failed id=%d bytesSent=%d",
+            "job.cancelled id=%d",
+            "payload.decoded bytes=%d us=%d",
+            "usb.open vid=0x%04x pid=0x%04x interfaces=%d",
+            "usb.interface class=%d subclass=%d endpoints=%d",
+            "usb.endpoint index=%d dirType=0x%02x maxPacket=%d",
+            "usb.opened maxPacket=%d status=%d",
+            "usb.write bytes=%d chunk=%d depth=%d",
+            "usb.written bytes=%d us=%d retries=%d",
+            "usb.shortWrite acked=%d unsent=%d retry=%d",
+            "sdk.sent bytes=%d us=%d",
+            "socket.write bytes=%d jobs=%d",
+            "display.update bytes=%d updates=%d waitUs=%d",
+            "display.shown warm=%d us=%d reloaded=%d",
+    };
+
+    private static final int FIELDS = 5;  // nanos, thread << 32 | event, a, b, c
+
+    private static final AtomicLongArray records = new AtomicLongArray(CAPACITY * FIELDS);
+    // Per slot: sequence + 1 once its fields are complete, 0 while being written
+    private static final AtomicLongArray stamps = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong next = new AtomicLong();
+    private static final long baseMillis = System.currentTimeMillis();
+    private static final long baseNanos = System.nanoTime();
+    private static volatile boolean enabled = true;
+
+    private TraceLog() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Stops or resumes recording; events already in the ring are kept. */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void event(int event) {
+        if (enabled) {
+            record(event, 0, 0, 0);
+        }
+    }
+
+    public static void event(int event, long a) {
+        if (enabled) {
+            record(event, a, 0, 0);
+        }
+    }
+
+    public static void event(int event, long a, long b) {
+        if (enabled) {
+            record(event, a, b, 0);
+        }
+    }
+
+    public static void event(int event, long a, long b, long c) {
+        if (enabled) {
+            record(event, a, b, c);
+        }
+    }
+
+    private static void record(int event, long a, long b, long c) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & (CAPACITY - 1));
+        int base = slot * FIELDS;
+        stamps.set(slot, 0);
+        records.lazySet(base, System.nanoTime());
+        records.lazySet(base + 1, Thread.currentThread().getId() << 32 | event);
+        records.lazySet(base + 2, a);
+        records.lazySet(base + 3, b);
+        records.lazySet(base + 4, c);
+        stamps.lazySet(slot, sequence + 1);
+    }
+
+    /** Number of events recorded since start or the last clear, including overwritten ones. */
+    public static long getRecorded() {
+        return next.get();
+    }
+
+    /** Drops every recorded event. Not meant to race with recording. */
+    public static void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            stamps.set(i, 0);
+        }
+        next.set(0);
+    }
+
+    /** The events still in the ring, oldest first, one formatted line each. */
+    public static List<String> dump() {
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        long end = next.get();
+        long start = Math.max(0, end - CAPACITY);
+        List<String> lines = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & (CAPACITY - 1));
+            int base = slot * FIELDS;
+            if (stamps.get(slot) != sequence + 1) {
+                continue;
+            }
+            long nanos = records.get(base);
+            long header = records.get(base + 1);
+            long a = records.get(base + 2);
+            long b = records.get(base + 3);
+            long c = records.get(base + 4);
+            if (stamps.get(slot) != sequence + 1) {
+                continue;  // Overwritten while we read it
+            }
+            int event = (int) header;
+            String format = event > 0 && event < FORMATS.length ? FORMATS[event] : "event." + event + " %d %d %d";
+            Date at = new Date(baseMillis + (nanos - baseNanos) / 1000000);
+            lines.add(time.format(at) + " [" + (header >>> 32) + "] " + String.format(Locale.US, format, a, b, c));
+        }
+        return lines;
+    }
+
+    /** Writes {@link #dump()} to {@code out}, one event per line. */
+    public static void dump(Writer out) throws IOException {
+        for (String line : dump()) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,11 @@
+package com.thermalprinter.test;
+
+/**
+ * Completion callback for a single write to the printer. Invoked on the
+ * transport's I/O thread.
+ */
+public interface TransferCallback {
+    void onProgress(int bytesSent, int totalBytes);
+    void onComplete(int bytesTransferred);
+    void onError(String message);
+}
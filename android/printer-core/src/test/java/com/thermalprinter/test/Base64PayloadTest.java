@@ -0,0 +1,62 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Local JVM tests for the bridge payload decoder, checked against the JDK's
+ * decoder for the inputs android.util.Base64.DEFAULT accepts.
+ */
+public class Base64PayloadTest {
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void decodesEveryLengthRemainder() {
+        for (int size = 0; size < 64; size++) {
+            byte[] data = random(size, size);
+            String text = java.util.Base64.getEncoder().encodeToString(data);
+            assertEquals(size, Base64Payload.decodedLength(text));
+            assertArrayEquals(data, Base64Payload.decode(text));
+        }
+    }
+
+    @Test
+    public void acceptsMissingPaddingAndLineBreaks() {
+        byte[] data = random(1000, 7);
+        String mime = java.util.Base64.getMimeEncoder().encodeToString(data);
+        assertTrue(mime.contains("\r\n"));
+        assertArrayEquals(data, Base64Payload.decode(mime));
+
+        String unpadded = java.util.Base64.getEncoder().withoutPadding().encodeToString(random(10, 3));
+        assertArrayEquals(random(10, 3), Base64Payload.decode(unpadded));
+    }
+
+    @Test
+    public void decodesIntoBufferAtOffset() {
+        byte[] data = random(300, 11);
+        String text = java.util.Base64.getEncoder().encodeToString(data);
+        byte[] buffer = new byte[512];
+        assertEquals(300, Base64Payload.decode(text, buffer, 100));
+        for (int i = 0; i < 300; i++) {
+            assertEquals(data[i], buffer[100 + i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUrlSafeAlphabet() {
+        Base64Payload.decode("ab-_");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooSmallBuffer() {
+        Base64Payload.decode("AAAAAAAA", new byte[5], 0);
+    }
+}
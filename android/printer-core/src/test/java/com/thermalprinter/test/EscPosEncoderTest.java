@@ -0,0 +1,134 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Local JVM tests for the ESC/POS builder: exact command bytes, code page
+ * selection and mapping, and the length-prefixed GS ( L / GS 8 L framing.
+ */
+public class EscPosEncoderTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+
+    @Test
+    public void formattingCommands() {
+        EscPosEncoder encoder = new EscPosEncoder(4);
+        encoder.initialize()
+                .align(EscPosEncoder.Alignment.CENTER)
+                .bold(true)
+                .underline(false)
+                .size(2, 3)
+                .size(20, 0)
+                .feed(3)
+                .feed(300)
+                .cut();
+        assertArrayEquals(bytes(
+                0x1B, '@',
+                0x1B, 'a', 1,
+                0x1B, 'E', 1,
+                0x1B, '-', 0,
+                0x1D, '!', 0x12,
+                0x1D, '!', 0x70,          // Clamped to 8x1
+                0x1B, 'd', 3,
+                0x1B, 'd', 255,
+                0x1D, 'V', 0x41, 0x03), encoder.toByteArray());
+    }
+
+    @Test
+    public void codePageSelection() {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.codePage(EscPosEncoder.CodePage.CP850)
+                .codePage(EscPosEncoder.CodePage.WPC1252)
+                .codePage(EscPosEncoder.CodePage.CP858)
+                .codePage(EscPosEncoder.CodePage.CP437);
+        assertArrayEquals(bytes(0x1B, 't', 2, 0x1B, 't', 16, 0x1B, 't', 19, 0x1B, 't', 0), encoder.toByteArray());
+        assertEquals(EscPosEncoder.CodePage.CP858, EscPosEncoder.CodePage.parse("cp858"));
+        assertEquals(EscPosEncoder.CodePage.CP437, EscPosEncoder.CodePage.parse("utf-8"));
+        assertEquals(EscPosEncoder.CodePage.CP437, EscPosEncoder.CodePage.parse(null));
+    }
+
+    @Test
+    public void textIsEncodedInTheSelectedCodePage() {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.text("\u20ac\u00f8\u2500");                        // Euro, o-slash, box horizontal
+        encoder.codePage(EscPosEncoder.CodePage.CP858).text("\u20ac\u00f8");
+        encoder.codePage(EscPosEncoder.CodePage.WPC1252).text("\u20ac\u00f8\ufffd");
+        assertArrayEquals(bytes(
+                '?', '?', 0xC4,                                     // CP437 has no euro or o-slash
+                0x1B, 't', 19, 0xD5, 0x9B,
+                0x1B, 't', 16, 0x80, 0xF8, '?'), encoder.toByteArray());
+    }
+
+    @Test
+    public void setCodePageWritesNothing() {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.setCodePage(EscPosEncoder.CodePage.CP858).text("\u20ac");
+        assertArrayEquals(bytes(0xD5), encoder.toByteArray());
+        assertEquals(EscPosEncoder.CodePage.CP858, encoder.getCodePage());
+
+        encoder.reset();
+        assertEquals(0, encoder.size());
+        assertEquals(EscPosEncoder.CodePage.CP437, encoder.getCodePage());
+        encoder.setCodePage(EscPosEncoder.CodePage.CP858).initialize();
+        assertEquals(EscPosEncoder.CodePage.CP437, encoder.getCodePage());
+    }
+
+    @Test
+    public void columnsPadAndTruncate() {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.columns("Tea", "2.50", 10).columns("Cappuccino", "12.50", 10);
+        assertEquals("Tea   2.50\nCapp 12.50\n", new String(encoder.toByteArray()));
+    }
+
+    @Test
+    public void defineGraphicShortFraming() {
+        byte[] bits = {(byte) 0xFF, 0x01, (byte) 0x80, 0x00};  // 9x2 dots, 2 bytes per row
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.defineGraphic(true, 'G', '!', 9, 2, bits);
+        byte[] out = encoder.toByteArray();
+        int p = 11 + bits.length;
+        assertArrayEquals(bytes(
+                0x1D, '(', 'L', p, 0,
+                48, 67, 48, 'G', '!', 1,
+                9, 0, 2, 0, 49,
+                0xFF, 0x01, 0x80, 0x00), out);
+        // p counts everything after pL pH
+        assertEquals(5 + p, out.length);
+    }
+
+    @Test
+    public void defineGraphicLongFramingAbove64K() {
+        int width = 576;
+        int height = 1000;                                      // 72000 data bytes
+        byte[] bits = new byte[width / 8 * height];
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.defineGraphic(false, 'G', '"', width, height, bits);
+        byte[] out = encoder.toByteArray();
+        int p = 11 + bits.length;
+        assertArrayEquals(bytes(
+                0x1D, '8', 'L', p & 0xFF, (p >> 8) & 0xFF, (p >> 16) & 0xFF, 0,
+                48, 83, 48, 'G', '"', 1,
+                width & 0xFF, width >> 8, height & 0xFF, height >> 8, 49),
+                Arrays.copyOf(out, 18));
+        assertEquals(7 + p, out.length);
+    }
+
+    @Test
+    public void printGraphicFraming() {
+        EscPosEncoder encoder = new EscPosEncoder();
+        encoder.printGraphic(true, 'G', '!').printGraphic(false, 'G', '#');
+        assertArrayEquals(bytes(
+                0x1D, '(', 'L', 6, 0, 48, 69, 'G', '!', 1, 1,
+                0x1D, '(', 'L', 6, 0, 48, 85, 'G', '#', 1, 1), encoder.toByteArray());
+    }
+}
@@ -0,0 +1,120 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local JVM tests for the ESC/POS stream parser, fed with what
+ * {@link EscPosEncoder} and {@link RasterEncoder} produce.
+ */
+public class EscPosParserTest {
+
+    /** Tallies what the parser reports. */
+    private static final class Counts implements EscPosParser.Listener {
+        long text;
+        int lines;
+        int commands;
+        int cuts;
+        long raster;
+        long graphics;
+
+        @Override
+        public void onText(int length) {
+            text += length;
+        }
+
+        @Override
+        public void onLineFeed() {
+            lines++;
+        }
+
+        @Override
+        public void onCommand(int command, int function, long payloadLength) {
+            commands++;
+            if (command == EscPosParser.GS_CUT) {
+                cuts++;
+            } else if (command == EscPosParser.GS_RASTER) {
+                raster += payloadLength;
+            } else if (command == EscPosParser.GS_EXTENDED && function == 'L') {
+                graphics += payloadLength;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return text + "/" + lines + "/" + commands + "/" + cuts + "/" + raster + "/" + graphics;
+        }
+    }
+
+    private static byte[] receipt() {
+        EscPosEncoder encoder = new EscPosEncoder()
+                .initialize()
+                .align(EscPosEncoder.Alignment.CENTER)
+                .bold(true)
+                .size(2, 2)
+                .line("STORE")
+                .size(1, 1)
+                .bold(false)
+                .align(EscPosEncoder.Alignment.LEFT)
+                .columns("Coffee", "3.50", 32)
+                .columns("Bagel", "2.25", 32);
+        // 64 x 16 checkerboard as a GS v 0 image
+        new RasterEncoder().encode((y, argb) -> {
+            for (int x = 0; x < argb.length; x++) {
+                argb[x] = ((x / 8 + y / 8) & 1) == 0 ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }, 64, 16, RasterEncoder.Dither.THRESHOLD, RasterEncoder.Format.RASTER, encoder);
+        return encoder.feed(3).cut().toByteArray();
+    }
+
+    @Test
+    public void countsTextLinesImagesAndCuts() {
+        byte[] data = receipt();
+        Counts counts = new Counts();
+        new EscPosParser(counts).feed(data, 0, data.length);
+
+        assertEquals(3, counts.lines);
+        assertEquals("STORE".length() + 64, counts.text);
+        assertEquals(1, counts.cuts);
+        assertEquals(64 / 8 * 16, counts.raster);
+        assertEquals(0, counts.graphics);
+    }
+
+    @Test
+    public void splittingTheStreamAnywhereGivesTheSameResult() {
+        byte[] data = receipt();
+        Counts whole = new Counts();
+        new EscPosParser(whole).feed(data, 0, data.length);
+
+        for (int split = 1; split < data.length; split++) {
+            Counts parts = new Counts();
+            EscPosParser parser = new EscPosParser(parts);
+            parser.feed(data, 0, split);
+            parser.feed(data, split, data.length - split);
+            assertEquals("split at " + split, whole.toString(), parts.toString());
+        }
+
+        Counts bytes = new Counts();
+        EscPosParser parser = new EscPosParser(bytes);
+        for (int i = 0; i < data.length; i++) {
+            parser.feed(data, i, 1);
+        }
+        assertEquals(whole.toString(), bytes.toString());
+    }
+
+    @Test
+    public void skipsGraphicsPayloadsThatLookLikeCommands() {
+        byte[] bits = new byte[8 * 8];
+        java.util.Arrays.fill(bits, (byte) 0x0A);  // LF bytes inside image data
+        byte[] data = new EscPosEncoder().defineGraphic(false, 'A', '1', 64, 8, bits).printGraphic(false, 'A', '1')
+                .toByteArray();
+        Counts counts = new Counts();
+        new EscPosParser(counts).feed(data, 0, data.length);
+
+        assertEquals(0, counts.lines);
+        assertEquals(0, counts.text);
+        assertEquals(2, counts.commands);
+        assertTrue(counts.graphics > bits.length);
+    }
+}
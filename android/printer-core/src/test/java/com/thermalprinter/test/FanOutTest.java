@@ -0,0 +1,133 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local JVM tests for fan-out quorum tracking. Fake transports hold each
+ * job until the test completes or fails it, so completion order is exact.
+ */
+public class FanOutTest {
+
+    private static final byte[] ORDER = {0x1B, '@', 'o', 'k', 0x0A};
+
+    /** Holds submitted jobs until {@link #succeed} or {@link #fail}. */
+    private static final class FakeTransport {
+        final List<TransferCallback> pending = new ArrayList<>();
+        final List<Integer> lengths = new ArrayList<>();
+
+        void submit(byte[] data, int offset, int length, TransferCallback callback) {
+            pending.add(callback);
+            lengths.add(length);
+        }
+
+        void succeed() {
+            pending.remove(0).onComplete(lengths.remove(0));
+        }
+
+        void fail(String message) {
+            lengths.remove(0);
+            pending.remove(0).onError(message);
+        }
+    }
+
+    private static final class RecordingListener implements FanOut.Listener {
+        int calls;
+        Boolean quorumMet;
+
+        @Override
+        public void onSettled(FanOut fanOut, boolean quorumMet) {
+            calls++;
+            this.quorumMet = quorumMet;
+        }
+    }
+
+    private final RecordingListener listener = new RecordingListener();
+
+    private FakeTransport[] sendToAll(FanOut fanOut) {
+        FakeTransport[] transports = new FakeTransport[fanOut.getTargetCount()];
+        for (int i = 0; i < transports.length; i++) {
+            transports[i] = new FakeTransport();
+            transports[i].submit(ORDER, 0, ORDER.length, fanOut.callbackFor(i));
+        }
+        return transports;
+    }
+
+    @Test
+    public void allTargetsPrintingSettlesOnceWithQuorumMet() {
+        FanOut fanOut = new FanOut(new String[] {"kitchen", "bar", "receipt"}, 3, listener);
+        FakeTransport[] transports = sendToAll(fanOut);
+
+        transports[0].succeed();
+        transports[1].succeed();
+        assertEquals(0, listener.calls);
+        transports[2].succeed();
+
+        assertEquals(1, listener.calls);
+        assertTrue(listener.quorumMet);
+        assertEquals(3, fanOut.getPrinted());
+        assertEquals(0, fanOut.getFailed());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(FanOut.State.PRINTED, fanOut.getState(i));
+            assertEquals(ORDER.length, fanOut.getBytesTransferred(i));
+        }
+    }
+
+    @Test
+    public void quorumMetDespiteOneFailure() {
+        FanOut fanOut = new FanOut(new String[] {"kitchen", "bar", "receipt"}, 2, listener);
+        FakeTransport[] transports = sendToAll(fanOut);
+
+        transports[1].fail("Paper out");
+        assertEquals(0, listener.calls);
+        transports[0].succeed();
+        assertEquals(0, listener.calls);
+        transports[2].succeed();
+
+        assertEquals(1, listener.calls);
+        assertTrue(listener.quorumMet);
+        assertEquals(FanOut.State.FAILED, fanOut.getState(1));
+        assertEquals("Paper out", fanOut.getError(1));
+        assertEquals(0, fanOut.getBytesTransferred(1));
+    }
+
+    @Test
+    public void quorumMissedSettlesAsSoonAsItIsUnreachable() {
+        FanOut fanOut = new FanOut(new String[] {"kitchen", "bar", "receipt"}, 2, listener);
+        FakeTransport[] transports = sendToAll(fanOut);
+
+        transports[0].fail("Cover open");
+        fanOut.fail(2, "Print queue is full");
+
+        // Two of three failed: two printed is no longer possible
+        assertEquals(1, listener.calls);
+        assertFalse(listener.quorumMet);
+        assertEquals(FanOut.State.PENDING, fanOut.getState(1));
+
+        // The straggler still reports, but the outcome stands
+        transports[1].succeed();
+        assertEquals(1, listener.calls);
+        assertFalse(listener.quorumMet);
+        assertEquals(FanOut.State.PRINTED, fanOut.getState(1));
+        assertEquals(1, fanOut.getPrinted());
+        assertEquals(2, fanOut.getFailed());
+    }
+
+    @Test
+    public void quorumIsClampedAndRepeatedResultsAreIgnored() {
+        FanOut fanOut = new FanOut(new String[] {"kitchen", "bar"}, 5, listener);
+        assertEquals(2, fanOut.getQuorum());
+        assertEquals(1, new FanOut(new String[] {"kitchen"}, 0, listener).getQuorum());
+
+        TransferCallback kitchen = fanOut.callbackFor(0);
+        kitchen.onComplete(10);
+        kitchen.onError("late error");
+        assertEquals(FanOut.State.PRINTED, fanOut.getState(0));
+        assertNull(fanOut.getError(0));
+        assertEquals(0, listener.calls);
+    }
+}
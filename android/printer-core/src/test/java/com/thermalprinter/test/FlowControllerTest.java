@@ -0,0 +1,162 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local JVM tests for write pacing: chunk sizing, depth growth and the stall
+ * timeout, driven with synthetic completion times.
+ */
+public class FlowControllerTest {
+
+    private static final long MS = 1000000L;
+
+    /** Feeds {@code count} completions of {@code bytes} each, {@code intervalMs} apart. */
+    private static long complete(FlowController flow, long now, int count, int bytes, long intervalMs) {
+        for (int i = 0; i < count; i++) {
+            now += intervalMs * MS;
+            flow.onChunkComplete(bytes, now);
+        }
+        return now;
+    }
+
+    @Test
+    public void alignedChunkSizeRoundsDownToWholePackets() {
+        assertEquals(960, FlowController.alignedChunkSize(64, 1000));
+        assertEquals(16384, FlowController.alignedChunkSize(512, 16384));
+        assertEquals(64, FlowController.alignedChunkSize(64, 10));
+        assertEquals(1000, FlowController.alignedChunkSize(0, 1000));
+    }
+
+    @Test
+    public void chunkSizeFollowsMeasuredThroughput() {
+        FlowController flow = new FlowController(64, 4096, 8);
+        flow.onJobStart(0);
+
+        // 2000 bytes per 100 ms = 20 kB/s; defaults hold until MIN_SAMPLES
+        long now = complete(flow, 0, FlowController.MIN_SAMPLES - 1, 2000, 100);
+        assertEquals(4096, flow.getChunkSize());
+        complete(flow, now, 1, 2000, 100);
+
+        assertEquals(20000.0, flow.getBytesPerSecond(), 0.001);
+        // 100 ms at 20 kB/s is 2000 bytes, rounded down to 31 packets
+        assertEquals(1984, flow.getChunkSize());
+        assertEquals(0, flow.getChunkSize() % 64);
+    }
+
+    @Test
+    public void chunkSizeIsClampedToLimits() {
+        FlowController fast = new FlowController(64, 4096, 8);
+        fast.onJobStart(0);
+        complete(fast, 0, FlowController.MIN_SAMPLES, 100000, 100);
+        assertEquals(4096, fast.getChunkSize());
+
+        FlowController slow = new FlowController(64, 4096, 8);
+        slow.onJobStart(0);
+        complete(slow, 0, FlowController.MIN_SAMPLES, 10, 100);
+        // Never below 8 packets
+        assertEquals(512, slow.getChunkSize());
+    }
+
+    @Test
+    public void idleTimeBetweenJobsIsNotMeasured() {
+        FlowController flow = new FlowController(64, 4096, 8);
+        flow.onJobStart(0);
+        long now = complete(flow, 0, 4, 2000, 100);
+
+        flow.onJobStart(now + 60000 * MS);
+        complete(flow, now + 60000 * MS, 1, 2000, 100);
+
+        assertEquals(20000.0, flow.getBytesPerSecond(), 0.001);
+    }
+
+    @Test
+    public void depthGrowsAfterCleanRuns() {
+        FlowController flow = new FlowController(64, 4096, 6);
+        assertEquals(4, flow.getDepth());
+        flow.onJobStart(0);
+
+        // Four times the current depth of clean completions per step
+        long now = complete(flow, 0, 15, 2000, 100);
+        assertEquals(4, flow.getDepth());
+        now = complete(flow, now, 1, 2000, 100);
+        assertEquals(5, flow.getDepth());
+        now = complete(flow, now, 20, 2000, 100);
+        assertEquals(6, flow.getDepth());
+
+        complete(flow, now, 100, 2000, 100);
+        assertEquals(6, flow.getDepth());
+    }
+
+    @Test
+    public void stallHalvesDepthAndChunk() {
+        FlowController flow = new FlowController(64, 4096, 8);
+        flow.onStall();
+
+        assertEquals(2, flow.getDepth());
+        assertEquals(2048, flow.getChunkSize());
+        assertEquals(1, flow.getStalls());
+
+        for (int i = 0; i < 10; i++) {
+            flow.onStall();
+        }
+        assertEquals(1, flow.getDepth());
+        assertEquals(512, flow.getChunkSize());
+        assertEquals(11, flow.getStalls());
+    }
+
+    @Test
+    public void stallResetsTheCleanRun() {
+        FlowController flow = new FlowController(64, 4096, 8);
+        flow.onJobStart(0);
+        long now = complete(flow, 0, 15, 2000, 100);
+        flow.onStall();
+        assertEquals(2, flow.getDepth());
+
+        // A fresh run of 4 x depth is needed after the stall
+        now = complete(flow, now, 7, 2000, 100);
+        assertEquals(2, flow.getDepth());
+        complete(flow, now, 1, 2000, 100);
+        assertEquals(3, flow.getDepth());
+    }
+
+    @Test
+    public void stallTimeoutCoversTheInFlightWindow() {
+        FlowController flow = new FlowController(64, 4096, 8);
+        assertEquals(FlowController.DEFAULT_TIMEOUT_MS, flow.getChunkTimeoutMs());
+        flow.onJobStart(0);
+        complete(flow, 0, FlowController.MIN_SAMPLES, 2000, 100);
+
+        // 1984 bytes x depth 4 at 20 kB/s drains in 396.8 ms; x4 margin + 250 ms
+        assertEquals(1837, flow.getChunkTimeoutMs());
+    }
+
+    @Test
+    public void stallTimeoutIsClamped() {
+        FlowController fast = new FlowController(64, 4096, 8);
+        fast.onJobStart(0);
+        complete(fast, 0, FlowController.MIN_SAMPLES, 100000, 100);
+        assertEquals(FlowController.MIN_TIMEOUT_MS, fast.getChunkTimeoutMs());
+
+        FlowController slow = new FlowController(64, 4096, 8);
+        slow.onJobStart(0);
+        complete(slow, 0, FlowController.MIN_SAMPLES, 10, 100);
+        assertEquals(FlowController.MAX_TIMEOUT_MS, slow.getChunkTimeoutMs());
+    }
+
+    @Test
+    public void profileRoundTrips() {
+        FlowController learned = new FlowController(64, 4096, 8);
+        learned.onJobStart(0);
+        complete(learned, 0, FlowController.MIN_SAMPLES, 2000, 100);
+        learned.onStall();
+
+        FlowController restored = new FlowController(64, 4096, 8);
+        assertTrue(restored.restore(learned.encode()));
+        assertEquals(learned.getChunkSize(), restored.getChunkSize());
+        assertEquals(learned.getDepth(), restored.getDepth());
+        assertEquals(learned.getChunkTimeoutMs(), restored.getChunkTimeoutMs());
+        assertFalse(restored.restore("garbage"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Local JVM tests for applying and coalescing customer display state patches.
+ */
+public class JsonMergePatchTest {
+
+    @Test
+    public void appliesRfc7386Patches() throws Exception {
+        JSONObject state = new JSONObject("{\"total\":\"$1.00\",\"items\":{\"1\":{\"name\":\"Tea\",\"qty\":1}},"
+                + "\"order\":[1],\"message\":\"Welcome\"}");
+        JsonMergePatch.apply(state, new JSONObject("{\"items\":{\"1\":{\"qty\":2},\"2\":{\"name\":\"Cake\"}},"
+                + "\"order\":[1,2],\"message\":null}"));
+
+        assertEquals("Tea", state.getJSONObject("items").getJSONObject("1").getString("name"));
+        assertEquals(2, state.getJSONObject("items").getJSONObject("1").getInt("qty"));
+        assertEquals("Cake", state.getJSONObject("items").getJSONObject("2").getString("name"));
+        assertEquals(2, state.getJSONArray("order").length());
+        assertFalse(state.has("message"));
+        assertEquals("$1.00", state.getString("total"));
+    }
+
+    @Test
+    public void composedPatchMatchesApplyingEachInTurn() throws Exception {
+        String base = "{\"items\":{\"1\":{\"name\":\"Tea\",\"qty\":1}},\"order\":[1],\"total\":\"$1.00\"}";
+        String[] patches = {
+                "{\"items\":{\"2\":{\"name\":\"Cake\",\"qty\":1}},\"order\":[1,2],\"total\":\"$3.00\"}",
+                "{\"items\":{\"2\":{\"qty\":3}},\"total\":\"$7.00\"}",
+                "{\"items\":{\"1\":null},\"order\":[2],\"total\":\"$6.00\"}",
+                "{\"message\":\"Thank you\"}",
+        };
+
+        JSONObject stepwise = new JSONObject(base);
+        JSONObject pending = new JSONObject();
+        for (String patch : patches) {
+            JsonMergePatch.apply(stepwise, new JSONObject(patch));
+            assertTrue(JsonMergePatch.compose(pending, new JSONObject(patch)));
+        }
+        JSONObject coalesced = new JSONObject(base);
+        JsonMergePatch.apply(coalesced, pending);
+
+        assertTrue(stepwise.similar(coalesced));
+        assertEquals(JSONObject.NULL, pending.getJSONObject("items").get("1"));
+    }
+
+    @Test
+    public void refusesPatchesThatCannotBeCoalesced() throws Exception {
+        JSONObject pending = new JSONObject("{\"items\":{\"1\":null},\"total\":\"$1.00\"}");
+        String before = pending.toString();
+
+        assertFalse(JsonMergePatch.compose(pending, new JSONObject("{\"items\":{\"1\":{\"qty\":2}},\"total\":\"$2.00\"}")));
+        assertEquals(before, pending.toString());
+    }
+
+    @Test
+    public void patchesAreCopiedNotShared() throws Exception {
+        JSONObject patch = new JSONObject("{\"items\":{\"1\":{\"qty\":1}}}");
+        JSONObject pending = new JSONObject();
+        JsonMergePatch.compose(pending, patch);
+        JsonMergePatch.compose(pending, new JSONObject("{\"items\":{\"1\":{\"qty\":5}}}"));
+
+        assertEquals(1, patch.getJSONObject("items").getJSONObject("1").getInt("qty"));
+        assertEquals(5, pending.getJSONObject("items").getJSONObject("1").getInt("qty"));
+    }
+}
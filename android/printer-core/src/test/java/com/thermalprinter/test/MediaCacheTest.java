@@ -0,0 +1,94 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Local JVM tests for the slideshow's disk cache.
+ */
+public class MediaCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MediaCache.Writer bytes(int count) {
+        return out -> out.write(new byte[count]);
+    }
+
+    @Test
+    public void storesAndFindsEntries() throws Exception {
+        MediaCache cache = new MediaCache(folder.newFolder("media"), 1000);
+        assertNull(cache.get("https://example.com/a.jpg"));
+
+        File file = cache.put("https://example.com/a.jpg", bytes(100));
+        assertEquals(file, cache.get("https://example.com/a.jpg"));
+        assertEquals(100, file.length());
+        assertEquals(100, cache.getBytes());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.put("https://example.com/a.jpg", bytes(300));
+        assertEquals(300, cache.getBytes());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() throws Exception {
+        MediaCache cache = new MediaCache(folder.newFolder("media"), 1000);
+        cache.put("a", bytes(400));
+        cache.put("b", bytes(400));
+        cache.get("a");
+        cache.put("c", bytes(400));
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(800, cache.getBytes());
+
+        // An entry larger than the whole cache still stays until the next put
+        cache.put("huge", bytes(2000));
+        assertTrue(cache.contains("huge"));
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void reopensWithRecencyFromDisk() throws Exception {
+        File dir = folder.newFolder("media");
+        MediaCache cache = new MediaCache(dir, 1000);
+        cache.put("old", bytes(400)).setLastModified(System.currentTimeMillis() - 60000);
+        cache.put("new", bytes(400));
+        new File(dir, "leftover" + ".tmp").createNewFile();
+
+        MediaCache reopened = new MediaCache(dir, 1000);
+        assertEquals(2, reopened.getEntryCount());
+        assertEquals(800, reopened.getBytes());
+        assertFalse(new File(dir, "leftover.tmp").exists());
+
+        reopened.put("next", bytes(400));
+        assertFalse(reopened.contains("old"));
+        assertTrue(reopened.contains("new"));
+    }
+
+    @Test
+    public void failedWriteLeavesNothingBehind() throws Exception {
+        File dir = folder.newFolder("media");
+        MediaCache cache = new MediaCache(dir, 1000);
+        try {
+            cache.put("broken", out -> {
+                out.write(new byte[10]);
+                throw new IOException("Network gone");
+            });
+            fail();
+        } catch (IOException expected) {
+            // Expected
+        }
+        assertFalse(cache.contains("broken"));
+        assertEquals(0, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,137 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local JVM tests for capture files and replaying them into a stream and
+ * into the printer simulator.
+ */
+public class PrintCaptureTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final TransferCallback IGNORE = new TransferCallback() {
+        @Override
+        public void onProgress(int bytesSent, int totalBytes) {
+        }
+
+        @Override
+        public void onComplete(int bytesTransferred) {
+        }
+
+        @Override
+        public void onError(String message) {
+        }
+    };
+
+    private static byte[] receipt(int order) {
+        return new EscPosEncoder().initialize().line("Order " + order).feed(2).cut().toByteArray();
+    }
+
+    /** Captures {@code jobs} receipts as if a printer had taken each one; the last one fails. */
+    private File capture(int jobs) throws Exception {
+        File file = folder.newFile("store.tpcap");
+        try (PrintCapture capture = PrintCapture.create(file)) {
+            for (int i = 0; i < jobs; i++) {
+                byte[] data = receipt(i);
+                PrintJob job = new PrintJob(i + 1, PrintJob.PRIORITY_HIGH, data, data.length, null);
+                TransferCallback callback = capture.track(job, IGNORE);
+                if (i < jobs - 1) {
+                    callback.onComplete(data.length);
+                } else {
+                    callback.onError("Printer not connected");
+                }
+            }
+            assertEquals(jobs, capture.getJobCount());
+        }
+        return file;
+    }
+
+    @Test
+    public void recordsRoundTrip() throws Exception {
+        File file = capture(3);
+        try (PrintCapture.Reader reader = PrintCapture.open(file)) {
+            long previous = 0;
+            for (int i = 0; i < 3; i++) {
+                PrintCapture.Record record = reader.next();
+                assertNotNull(record);
+                assertArrayEquals(receipt(i), record.data);
+                assertEquals(PrintJob.PRIORITY_HIGH, record.priority);
+                assertEquals(i < 2, record.completed);
+                assertTrue(record.queuedAtMicros >= previous);
+                previous = record.queuedAtMicros;
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void truncatedRecordEndsTheCapture() throws Exception {
+        File file = capture(2);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (PrintCapture.Reader reader = PrintCapture.open(file)) {
+            assertNotNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void replaysIntoAStreamAtFullSpeed() throws Exception {
+        File file = capture(20);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CaptureReplayer.Result result = new CaptureReplayer(0).replay(file, CaptureReplayer.toStream(out));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            expected.write(receipt(i));
+        }
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        assertEquals(20, result.jobs);
+        assertEquals(0, result.failed);
+        assertEquals(20, result.recorded.getCount());
+    }
+
+    @Test
+    public void replaysIntoTheSimulator() throws Exception {
+        File file = capture(50);
+        PrinterSimulator simulator = new PrinterSimulator(0, 0);
+        SocketTransport transport = SocketTransport.connect(simulator.getHost(), simulator.getPort(), null);
+        try {
+            CaptureReplayer.Result result = new CaptureReplayer(0).replay(file, CaptureReplayer.toTransport(transport));
+            assertEquals(50, result.jobs);
+            assertEquals(0, result.failed);
+            assertEquals(50, result.replayed.getCount());
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (simulator.getStats().cuts < 50 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(50, simulator.getStats().cuts);
+            // Plus the transport's own status requests
+            assertTrue(simulator.getStats().bytes >= result.bytes);
+        } finally {
+            transport.close();
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void parsesSpeeds() {
+        assertEquals(1, CaptureReplayer.parseSpeed(null), 0);
+        assertEquals(1, CaptureReplayer.parseSpeed("recorded"), 0);
+        assertEquals(0, CaptureReplayer.parseSpeed("max"), 0);
+        assertEquals(2.5, CaptureReplayer.parseSpeed("2.5"), 0);
+    }
+}
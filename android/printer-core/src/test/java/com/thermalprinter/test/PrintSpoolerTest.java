@@ -0,0 +1,139 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local JVM tests for the print queue: priority ordering and the queue
+ * depth limit. A recording sink stands in for the printer and finishes
+ * each job only when the test says so.
+ */
+public class PrintSpoolerTest {
+
+    private static final class RecordingSink implements PrintSpooler.Sink {
+        final List<PrintJob> written = new ArrayList<>();
+        final List<TransferCallback> callbacks = new ArrayList<>();
+
+        @Override
+        public void write(PrintJob job, TransferCallback callback) {
+            written.add(job);
+            callbacks.add(callback);
+        }
+
+        void completeLast() {
+            PrintJob job = written.get(written.size() - 1);
+            callbacks.get(callbacks.size() - 1).onComplete(job.getTotalBytes());
+        }
+    }
+
+    private static final PrintSpooler.Listener NO_LISTENER = new PrintSpooler.Listener() {
+        @Override
+        public void onJobStateChanged(PrintJob job) {
+        }
+
+        @Override
+        public void onJobProgress(PrintJob job) {
+        }
+    };
+
+    private PrintSpooler spooler;
+    private RecordingSink sink;
+
+    @Before
+    public void setUp() {
+        spooler = new PrintSpooler(3, NO_LISTENER);
+        sink = new RecordingSink();
+    }
+
+    private PrintJob submit(int priority) throws Exception {
+        return spooler.submit(new byte[] {1, 2, 3}, priority, null);
+    }
+
+    @Test
+    public void jobsDrainByPriorityThenSubmissionOrder() throws Exception {
+        PrintJob low = submit(PrintJob.PRIORITY_LOW);
+        PrintJob normal1 = submit(PrintJob.PRIORITY_NORMAL);
+        PrintJob high = submit(PrintJob.PRIORITY_HIGH);
+        spooler.setSink(sink);
+        PrintJob normal2 = submit(PrintJob.PRIORITY_NORMAL);
+
+        // One job at a time: the next starts only once the current one completes
+        assertEquals(1, sink.written.size());
+        for (int i = 0; i < 4; i++) {
+            sink.completeLast();
+        }
+
+        List<Long> order = new ArrayList<>();
+        for (PrintJob job : sink.written) {
+            order.add(job.getId());
+        }
+        List<Long> expected = new ArrayList<>();
+        expected.add(high.getId());
+        expected.add(normal1.getId());
+        expected.add(normal2.getId());
+        expected.add(low.getId());
+        assertEquals(expected, order);
+        assertEquals(PrintJob.State.COMPLETED, low.getState());
+        assertNull(spooler.getActiveJob());
+    }
+
+    @Test
+    public void submitBeyondMaxDepthThrowsAndLeavesQueueIntact() throws Exception {
+        submit(PrintJob.PRIORITY_NORMAL);
+        submit(PrintJob.PRIORITY_NORMAL);
+        submit(PrintJob.PRIORITY_NORMAL);
+        try {
+            submit(PrintJob.PRIORITY_HIGH);
+            fail("Expected QueueFullException");
+        } catch (PrintSpooler.QueueFullException e) {
+            assertTrue(e.getMessage().contains("3"));
+        }
+        assertEquals(3, spooler.getQueueDepth());
+    }
+
+    @Test
+    public void drainingFreesRoomForNewJobs() throws Exception {
+        submit(PrintJob.PRIORITY_NORMAL);
+        submit(PrintJob.PRIORITY_NORMAL);
+        submit(PrintJob.PRIORITY_NORMAL);
+        spooler.setSink(sink);
+
+        // The active job no longer counts against the limit
+        assertEquals(2, spooler.getQueueDepth());
+        submit(PrintJob.PRIORITY_LOW);
+        assertEquals(3, spooler.getQueueDepth());
+    }
+
+    @Test
+    public void cancelledJobsAreSkippedAndFailTheirCallback() throws Exception {
+        String[] error = new String[1];
+        PrintJob job = spooler.submit(new byte[] {1}, PrintJob.PRIORITY_NORMAL, new TransferCallback() {
+            @Override
+            public void onProgress(int bytesSent, int totalBytes) {
+            }
+
+            @Override
+            public void onComplete(int bytesTransferred) {
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+            }
+        });
+        PrintJob next = submit(PrintJob.PRIORITY_NORMAL);
+
+        assertTrue(spooler.cancel(job.getId()));
+        assertEquals(PrintJob.State.CANCELLED, job.getState());
+        assertNotNull(error[0]);
+
+        spooler.setSink(sink);
+        assertEquals(1, sink.written.size());
+        assertSame(next, sink.written.get(0));
+    }
+}
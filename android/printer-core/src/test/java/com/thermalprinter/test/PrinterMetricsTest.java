@@ -0,0 +1,103 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Local JVM tests for the print path histograms and per-printer counters.
+ */
+public class PrinterMetricsTest {
+
+    private static final TransferCallback IGNORE = new TransferCallback() {
+        @Override
+        public void onProgress(int bytesSent, int totalBytes) {
+        }
+
+        @Override
+        public void onComplete(int bytesTransferred) {
+        }
+
+        @Override
+        public void onError(String message) {
+        }
+    };
+
+    @Test
+    public void bucketsAreContiguousAndCoverTheRange() {
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.indexFor(value);
+            assertTrue(value <= LatencyHistogram.highestValueAt(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueAt(index - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexFor(LatencyHistogram.MAX_VALUE));
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueAt(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10000];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + random.nextInt(2000000);
+            histogram.recordMicros(values[i]);
+        }
+        java.util.Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[0], snapshot.getMin());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = snapshot.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported <= exact + exact / 16);
+        }
+        assertEquals(snapshot.getMax(), snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptyAndOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+        assertEquals(0, histogram.snapshot().getMin());
+
+        histogram.recordMicros(-5);
+        histogram.recordMicros(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    @Test
+    public void tracksJobsPerDevice() {
+        PrinterMetrics metrics = new PrinterMetrics();
+        PrinterMetrics.Device device = metrics.forDevice("tcp:127.0.0.1:9100");
+        assertSame(device, metrics.forDevice("tcp:127.0.0.1:9100"));
+
+        long before = metrics.getActivity();
+        device.track(new PrintJob(1, PrintJob.PRIORITY_NORMAL, new byte[10], 10, null), IGNORE).onComplete(10);
+        device.track(new PrintJob(2, PrintJob.PRIORITY_NORMAL, new byte[20], 20, null), IGNORE).onError("Printer not connected");
+        device.onShortWrite();
+        device.onRetry();
+        device.onConnected();
+        device.onDisconnected();
+
+        assertEquals(1, device.getJobs());
+        assertEquals(1, device.getFailedJobs());
+        assertEquals(10, device.getBytesSent());
+        assertEquals(2, device.getQueueWait().getCount());
+        assertEquals(1, device.getTransfer().getCount());
+        assertEquals(1, device.getEndToEnd().getCount());
+        assertEquals(1, device.getShortWrites());
+        assertEquals(1, device.getRetries());
+        assertEquals(1, device.getConnects());
+        assertEquals(1, device.getDisconnects());
+        assertEquals(1, metrics.getDevices().size());
+        assertTrue(metrics.getActivity() > before);
+    }
+}
@@ -0,0 +1,135 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Local JVM tests for status parsing from the USB bulk IN stream: DLE EOT
+ * 1-4 replies, Automatic Status Back blocks, and both arriving in pieces.
+ */
+public class PrinterStatusTest {
+
+    // Real-time replies carry bits 1 and 4; ASB blocks start with bit 4 only
+    private static final int RT = 0x12;
+    private static final int ASB = 0x10;
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+
+    private static PrinterStatus feed(PrinterStatus.Parser parser, int... values) {
+        byte[] data = bytes(values);
+        return parser.feed(data, data.length);
+    }
+
+    @Test
+    public void realTimeReadyReply() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        parser.expectRealTime();
+        PrinterStatus status = feed(parser, RT | 0x04, RT, RT, RT);
+
+        assertNotNull(status);
+        assertFalse(status.isError());
+        assertEquals("Ready", status.toString());
+    }
+
+    @Test
+    public void realTimePaperEnd() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        parser.expectRealTime();
+        // Offline (DLE EOT 1), stopped for paper end (2), paper end and near end sensors (4)
+        PrinterStatus status = feed(parser, RT | 0x08, RT | 0x20, RT, RT | 0x6C);
+
+        assertTrue(status.isPaperEnd());
+        assertTrue(status.isPaperNearEnd());
+        assertTrue(status.isOffline());
+        assertFalse(status.isCoverOpen());
+        assertTrue(status.isError());
+        assertEquals("Paper out", status.toString());
+    }
+
+    @Test
+    public void realTimeCoverOpen() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        parser.expectRealTime();
+        PrinterStatus status = feed(parser, RT | 0x08, RT | 0x04, RT, RT);
+
+        assertTrue(status.isCoverOpen());
+        assertFalse(status.isPaperEnd());
+        assertTrue(status.isError());
+        assertEquals("Cover open", status.toString());
+    }
+
+    @Test
+    public void realTimeReplySplitAcrossFeeds() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        parser.expectRealTime();
+        assertNull(feed(parser, RT));
+        assertNull(feed(parser, RT | 0x20, RT));
+        PrinterStatus status = feed(parser, RT | 0x60);
+
+        assertNotNull(status);
+        assertTrue(status.isPaperEnd());
+    }
+
+    @Test
+    public void unrequestedRealTimeBytesAreIgnored() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        assertNull(feed(parser, RT, RT, RT, RT));
+    }
+
+    @Test
+    public void autoStatusPaperEndAndCoverOpen() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        PrinterStatus paperOut = feed(parser, ASB | 0x08, 0x00, 0x0C, 0x00);
+        assertTrue(paperOut.isPaperEnd());
+        assertTrue(paperOut.isOffline());
+        assertFalse(paperOut.isCoverOpen());
+
+        PrinterStatus coverOpen = feed(parser, ASB | 0x28, 0x00, 0x00, 0x00);
+        assertTrue(coverOpen.isCoverOpen());
+        assertFalse(coverOpen.isPaperEnd());
+        assertNotEquals(paperOut, coverOpen);
+
+        PrinterStatus ready = feed(parser, ASB, 0x00, 0x00, 0x00);
+        assertFalse(ready.isError());
+    }
+
+    @Test
+    public void autoStatusSplitAcrossFeeds() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        assertNull(feed(parser, ASB | 0x20));
+        assertNull(feed(parser, 0x00, 0x03));
+        PrinterStatus status = feed(parser, 0x00);
+
+        assertNotNull(status);
+        assertTrue(status.isCoverOpen());
+        assertTrue(status.isPaperNearEnd());
+        assertFalse(status.isPaperEnd());
+    }
+
+    @Test
+    public void brokenAutoStatusBlockResyncs() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        // Block interrupted by a byte with bit 4 set, which starts a new block
+        assertNull(feed(parser, ASB | 0x20, 0x00, ASB));
+        PrinterStatus status = feed(parser, 0x00, 0x0C, 0x00);
+
+        assertNotNull(status);
+        assertTrue(status.isPaperEnd());
+        assertFalse(status.isCoverOpen());
+    }
+
+    @Test
+    public void lastCompleteStatusInAFeedWins() {
+        PrinterStatus.Parser parser = new PrinterStatus.Parser();
+        parser.expectRealTime();
+        PrinterStatus status = feed(parser, ASB | 0x20, 0, 0, 0, RT, RT, RT, RT);
+        assertFalse(status.isCoverOpen());
+    }
+}
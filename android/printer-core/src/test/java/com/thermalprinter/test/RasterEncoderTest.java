@@ -0,0 +1,150 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Local JVM tests for the raster pipeline: command headers and strip
+ * splitting for both formats, bit packing and alpha handling. Images are
+ * generated from a function of (x, y) and dithered by threshold so the
+ * expected bits are exact.
+ */
+public class RasterEncoderTest {
+
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private interface Pixels {
+        int at(int x, int y);
+    }
+
+    private static RasterEncoder.RowSource source(Pixels pixels) {
+        return (y, argb) -> {
+            for (int x = 0; x < argb.length; x++) {
+                argb[x] = pixels.at(x, y);
+            }
+        };
+    }
+
+    /** Copies each strip, since the encoder reuses its buffer. */
+    private static List<byte[]> strips(RasterEncoder encoder, Pixels pixels, int width, int height,
+                                       RasterEncoder.Dither dither, RasterEncoder.Format format) {
+        List<byte[]> strips = new ArrayList<>();
+        encoder.encode(source(pixels), width, height, dither, format,
+                (data, offset, length) -> strips.add(Arrays.copyOfRange(data, offset, offset + length)));
+        return strips;
+    }
+
+    private static List<byte[]> strips(RasterEncoder encoder, Pixels pixels, int width, int height,
+                                       RasterEncoder.Format format) {
+        return strips(encoder, pixels, width, height, RasterEncoder.Dither.THRESHOLD, format);
+    }
+
+    /** The packed rows of a one-strip image, without the GS v 0 header. */
+    private static byte[] bits(RasterEncoder encoder, Pixels pixels, int width, int height,
+                               RasterEncoder.Dither dither) {
+        List<byte[]> strips = strips(encoder, pixels, width, height, dither, RasterEncoder.Format.RASTER);
+        assertEquals(1, strips.size());
+        byte[] strip = strips.get(0);
+        return Arrays.copyOfRange(strip, 8, strip.length);
+    }
+
+    private static int u16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    @Test
+    public void rasterHeaderAndStripSplitting() {
+        List<byte[]> strips = strips(new RasterEncoder(2), (x, y) -> BLACK, 10, 5, RasterEncoder.Format.RASTER);
+
+        assertEquals(3, strips.size());
+        int[] rows = {2, 2, 1};
+        for (int i = 0; i < strips.size(); i++) {
+            byte[] strip = strips.get(i);
+            assertArrayEquals(new byte[] {0x1D, 'v', '0', 0}, Arrays.copyOf(strip, 4));
+            assertEquals(2, u16(strip, 4));                    // Bytes per row
+            assertEquals(rows[i], u16(strip, 6));
+            assertEquals(8 + 2 * rows[i], strip.length);
+            // Ten black dots: a full byte, then two bits of the next
+            assertEquals((byte) 0xFF, strip[8]);
+            assertEquals((byte) 0xC0, strip[9]);
+        }
+    }
+
+    @Test
+    public void graphicsHeaderAndPrintTrailer() {
+        List<byte[]> strips = strips(new RasterEncoder(), (x, y) -> BLACK, 16, 3, RasterEncoder.Format.GRAPHICS);
+
+        assertEquals(1, strips.size());
+        byte[] strip = strips.get(0);
+        int data = 2 * 3;
+        assertArrayEquals(new byte[] {0x1D, '(', 'L'}, Arrays.copyOf(strip, 3));
+        assertEquals(10 + data, u16(strip, 3));
+        assertArrayEquals(new byte[] {48, 112, 48, 1, 1, 49}, Arrays.copyOfRange(strip, 5, 11));
+        assertEquals(16, u16(strip, 11));
+        assertEquals(3, u16(strip, 13));
+        assertArrayEquals(new byte[] {0x1D, '(', 'L', 2, 0, 48, 50},
+                Arrays.copyOfRange(strip, 15 + data, strip.length));
+    }
+
+    @Test
+    public void graphicsStripsAreClampedToTheCommandLimit() {
+        int width = 4096;                                      // 512 bytes per row
+        int height = 200;
+        List<byte[]> strips = strips(new RasterEncoder(height), (x, y) -> WHITE, width, height,
+                RasterEncoder.Format.GRAPHICS);
+
+        int maxRows = (65535 - 10) / 512;
+        assertEquals(2, strips.size());
+        assertEquals(maxRows, u16(strips.get(0), 13));
+        assertEquals(height - maxRows, u16(strips.get(1), 13));
+        for (byte[] strip : strips) {
+            int p = u16(strip, 3);
+            assertTrue("pL pH " + p + " exceeds 65535", p <= 65535);
+            assertEquals(10 + 512 * u16(strip, 13), p);
+        }
+    }
+
+    @Test
+    public void partialLastByteIsPackedMsbFirst() {
+        // 11 dots wide: black at x = 0, 7, 8 and 10
+        byte[] bits = bits(new RasterEncoder(), (x, y) ->
+                x == 0 || x == 7 || x == 8 || x == 10 ? BLACK : WHITE, 11, 1, RasterEncoder.Dither.THRESHOLD);
+        assertArrayEquals(new byte[] {(byte) 0x81, (byte) 0xA0}, bits);
+    }
+
+    @Test
+    public void transparentPixelsPrintAsPaper() {
+        byte[] bits = bits(new RasterEncoder(), (x, y) -> {
+            switch (x) {
+                case 0: return 0x00000000;                     // Transparent black
+                case 1: return 0x10000000;                     // Nearly transparent black
+                case 2: return BLACK;
+                default: return 0xFF202020;                    // Opaque dark gray
+            }
+        }, 4, 1, RasterEncoder.Dither.THRESHOLD);
+        assertArrayEquals(new byte[] {0x30}, bits);
+
+        // Same for every dither: a fully transparent image stays blank
+        for (RasterEncoder.Dither dither : RasterEncoder.Dither.values()) {
+            byte[] blank = bits(new RasterEncoder(), (x, y) -> 0x00000000, 20, 4, dither);
+            assertArrayEquals(dither.name(), new byte[3 * 4], blank);
+        }
+    }
+
+    @Test
+    public void encoderIsReusableAcrossWidths() {
+        RasterEncoder encoder = new RasterEncoder();
+        byte[] first = bits(encoder, (x, y) -> (x + y) % 3 == 0 ? BLACK : WHITE, 24, 6,
+                RasterEncoder.Dither.FLOYD_STEINBERG);
+        bits(encoder, (x, y) -> BLACK, 9, 2, RasterEncoder.Dither.ATKINSON);
+        byte[] again = bits(encoder, (x, y) -> (x + y) % 3 == 0 ? BLACK : WHITE, 24, 6,
+                RasterEncoder.Dither.FLOYD_STEINBERG);
+        assertArrayEquals(first, again);
+    }
+}
@@ -0,0 +1,107 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Local JVM tests for compiled receipt templates: rendering must produce
+ * exactly the bytes of encoding the same description with the values
+ * filled in.
+ */
+public class ReceiptTemplateTest {
+
+    private static final String TEMPLATE = "["
+            + "{\"op\":\"text\",\"value\":\"Caf\u00e9 \u00d8resund\",\"align\":\"center\",\"bold\":true},"
+            + "{\"op\":\"rule\"},"
+            + "{\"op\":\"text\",\"value\":\"Order {{order}}\"},"
+            + "{\"op\":\"repeat\",\"each\":\"items\",\"ops\":["
+            + "  {\"op\":\"row\",\"left\":\"{{name}}\",\"right\":\"{{price}}\"}"
+            + "]},"
+            + "{\"op\":\"row\",\"left\":\"Total\",\"right\":\"{{total}}\"},"
+            + "{\"op\":\"text\",\"value\":\"Tak - \u20ac velkommen\"},"
+            + "{\"op\":\"cut\"}"
+            + "]";
+
+    private static final String EXPANDED = "["
+            + "{\"op\":\"text\",\"value\":\"Caf\u00e9 \u00d8resund\",\"align\":\"center\",\"bold\":true},"
+            + "{\"op\":\"rule\"},"
+            + "{\"op\":\"text\",\"value\":\"Order \u00f8-17\"},"
+            + "{\"op\":\"row\",\"left\":\"Sm\u00f8rrebr\u00f8d\",\"right\":\"\u20ac8.50\"},"
+            + "{\"op\":\"row\",\"left\":\"K\u00f8belt\",\"right\":\"\u20ac2.00\"},"
+            + "{\"op\":\"row\",\"left\":\"Total\",\"right\":\"\u20ac10.50\"},"
+            + "{\"op\":\"text\",\"value\":\"Tak - \u20ac velkommen\"},"
+            + "{\"op\":\"cut\"}"
+            + "]";
+
+    private static final String VALUES = "{\"order\":\"\u00f8-17\",\"total\":\"\u20ac10.50\",\"items\":["
+            + "{\"name\":\"Sm\u00f8rrebr\u00f8d\",\"price\":\"\u20ac8.50\"},"
+            + "{\"name\":\"K\u00f8belt\",\"price\":\"\u20ac2.00\"}]}";
+
+    private static byte[] direct(EscPosEncoder.CodePage codePage) throws Exception {
+        EscPosEncoder encoder = new EscPosEncoder();
+        ReceiptDescription.encode(new JSONArray(EXPANDED), 32, codePage, encoder);
+        return encoder.toByteArray();
+    }
+
+    private static byte[] rendered(ReceiptTemplate template, EscPosEncoder encoder) throws Exception {
+        encoder.reset();
+        template.render(new JSONObject(VALUES), encoder, null);
+        return encoder.toByteArray();
+    }
+
+    @Test
+    public void renderMatchesDirectEncodingInNonDefaultCodePage() throws Exception {
+        ReceiptTemplate template = ReceiptTemplate.compile("t", 1, new JSONArray(TEMPLATE), 32,
+                EscPosEncoder.CodePage.CP858);
+        byte[] expected = direct(EscPosEncoder.CodePage.CP858);
+
+        // Reused encoder, reset to CP437 between receipts as printTemplate does
+        EscPosEncoder encoder = new EscPosEncoder(64);
+        assertArrayEquals(expected, rendered(template, encoder));
+        assertArrayEquals(expected, rendered(template, encoder));
+    }
+
+    @Test
+    public void slotTextUsesTheTemplateCodePage() throws Exception {
+        ReceiptTemplate template = ReceiptTemplate.compile("t", 1, new JSONArray(TEMPLATE), 32,
+                EscPosEncoder.CodePage.CP858);
+        byte[] bytes = rendered(template, new EscPosEncoder());
+
+        // The order number starts with o-slash, 0x9B in CP858
+        int order = indexOf(bytes, "Order ".getBytes("US-ASCII"));
+        assertTrue(order >= 0);
+        assertEquals((byte) 0x9B, bytes[order + 6]);
+        // Euro sign of each price: 0xD5, never '?'
+        int euros = 0;
+        for (byte b : bytes) {
+            assertNotEquals("unmapped character", (byte) '?', b);
+            if (b == (byte) 0xD5) {
+                euros++;
+            }
+        }
+        assertEquals(4, euros);
+    }
+
+    @Test
+    public void defaultCodePageStillMatches() throws Exception {
+        ReceiptTemplate template = ReceiptTemplate.compile("t", 1, new JSONArray(TEMPLATE), 32,
+                EscPosEncoder.CodePage.CP437);
+        assertArrayEquals(direct(EscPosEncoder.CodePage.CP437), rendered(template, new EscPosEncoder()));
+    }
+
+    private static int indexOf(byte[] data, byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= data.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (data[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Local JVM tests for the TCP transport against the in-process printer
+ * simulator on a loopback port.
+ */
+public class SocketTransportTest {
+
+    private PrinterSimulator simulator;
+    private SocketTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new PrinterSimulator(0, 0);
+    }
+
+    @After
+    public void tearDown() {
+        if (transport != null) {
+            transport.close();
+        }
+        simulator.close();
+    }
+
+    private static TransferCallback countDown(CountDownLatch done, AtomicInteger completed, AtomicReference<String> error) {
+        return new TransferCallback() {
+            @Override
+            public void onProgress(int bytesSent, int totalBytes) {
+            }
+
+            @Override
+            public void onComplete(int bytesTransferred) {
+                completed.incrementAndGet();
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error.set(message);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void pipelinedJobsAllArriveInFull() throws Exception {
+        transport = SocketTransport.connect(simulator.getHost(), simulator.getPort(), null);
+        byte[] receipt = new EscPosEncoder().initialize().line("Order 42").feed(2).cut().toByteArray();
+        int jobs = 500;
+        CountDownLatch done = new CountDownLatch(jobs);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicReference<String> error = new AtomicReference<>();
+        for (int i = 0; i < jobs; i++) {
+            transport.submit(receipt, 0, receipt.length, countDown(done, completed, error));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+        assertEquals(jobs, completed.get());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (simulator.getStats().cuts < jobs && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(jobs, simulator.getStats().cuts);
+        assertEquals(jobs, simulator.getStats().lines);
+    }
+
+    @Test
+    public void reportsSimulatedPaperOut() throws Exception {
+        CountDownLatch paperOut = new CountDownLatch(1);
+        CountDownLatch ready = new CountDownLatch(1);
+        transport = SocketTransport.connect(simulator.getHost(), simulator.getPort(), status -> {
+            (status.isPaperEnd() ? paperOut : ready).countDown();
+        });
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+
+        simulator.setPaperEnd(true);
+        assertTrue(paperOut.await(5, TimeUnit.SECONDS));
+        assertTrue(transport.getStatus().isError());
+    }
+
+    @Test
+    public void closeFailsJobsThatWereNotWritten() throws Exception {
+        transport = SocketTransport.connect(simulator.getHost(), simulator.getPort(), null);
+        transport.close();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicReference<String> error = new AtomicReference<>();
+        transport.submit(new byte[16], 0, 16, countDown(done, completed, error));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, completed.get());
+        assertNotNull(error.get());
+    }
+}
@@ -0,0 +1,159 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * Local JVM tests for the memory-mapped spool journal. Crashes are simulated
+ * by abandoning a journal without closing it and, for torn records, by wiping
+ * the tail of the last record in the file as if the process died mid-write.
+ */
+public class SpoolJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] payload(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static void wipe(File file, long from, long to) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(from);
+            raf.write(new byte[(int) (to - from)]);
+        }
+    }
+
+    @Test
+    public void unacknowledgedJobsAreRecoveredInOrder() throws Exception {
+        File file = folder.newFile("spool.journal");
+        SpoolJournal journal = SpoolJournal.open(file);
+        journal.append(1, PrintJob.PRIORITY_HIGH, payload(100, 1));
+        journal.append(2, PrintJob.PRIORITY_LOW, payload(2000, 2));
+        journal.append(3, PrintJob.PRIORITY_NORMAL, payload(10, 3));
+        journal.acknowledge(2);
+        // Process killed: no close()
+
+        SpoolJournal reopened = SpoolJournal.open(file);
+        List<SpoolJournal.Record> recovered = reopened.getRecoveredJobs();
+        assertEquals(2, recovered.size());
+        assertEquals(1, recovered.get(0).jobId);
+        assertEquals(PrintJob.PRIORITY_HIGH, recovered.get(0).priority);
+        assertArrayEquals(payload(100, 1), recovered.get(0).data);
+        assertEquals(3, recovered.get(1).jobId);
+        assertArrayEquals(payload(10, 3), recovered.get(1).data);
+        reopened.close();
+    }
+
+    @Test
+    public void recordTornMidPayloadIsDiscarded() throws Exception {
+        File file = folder.newFile("spool.journal");
+        SpoolJournal journal = SpoolJournal.open(file);
+        journal.append(1, PrintJob.PRIORITY_NORMAL, payload(500, 1));
+        int tornStart = journal.getWritePosition();
+        journal.append(2, PrintJob.PRIORITY_NORMAL, payload(4000, 2));
+        int tornEnd = journal.getWritePosition();
+
+        // Crash halfway through copying the second payload
+        wipe(file, tornStart + SpoolJournal.RECORD_HEADER_SIZE + 1000, tornEnd);
+
+        SpoolJournal reopened = SpoolJournal.open(file);
+        List<SpoolJournal.Record> recovered = reopened.getRecoveredJobs();
+        assertEquals(1, recovered.size());
+        assertEquals(1, recovered.get(0).jobId);
+        assertArrayEquals(payload(500, 1), recovered.get(0).data);
+        reopened.close();
+    }
+
+    @Test
+    public void recordTornMidHeaderIsDiscarded() throws Exception {
+        File file = folder.newFile("spool.journal");
+        SpoolJournal journal = SpoolJournal.open(file);
+        journal.append(1, PrintJob.PRIORITY_NORMAL, payload(64, 1));
+        int tornStart = journal.getWritePosition();
+        journal.append(2, PrintJob.PRIORITY_NORMAL, payload(64, 2));
+
+        // Only the first bytes of the header made it
+        wipe(file, tornStart + 6, tornStart + SpoolJournal.RECORD_HEADER_SIZE);
+
+        SpoolJournal reopened = SpoolJournal.open(file);
+        assertEquals(1, reopened.getRecoveredJobs().size());
+        assertEquals(1, reopened.getRecoveredJobs().get(0).jobId);
+        reopened.close();
+    }
+
+    @Test
+    public void appendsAfterRecoveryOverwriteTheTornTail() throws Exception {
+        File file = folder.newFile("spool.journal");
+        SpoolJournal journal = SpoolJournal.open(file);
+        journal.append(1, PrintJob.PRIORITY_NORMAL, payload(300, 1));
+        int tornStart = journal.getWritePosition();
+        journal.append(2, PrintJob.PRIORITY_NORMAL, payload(300, 2));
+        wipe(file, tornStart + SpoolJournal.RECORD_HEADER_SIZE + 10, tornStart + SpoolJournal.RECORD_HEADER_SIZE + 20);
+
+        SpoolJournal recovered = SpoolJournal.open(file);
+        assertEquals(1, recovered.getRecoveredJobs().size());
+        recovered.append(3, PrintJob.PRIORITY_HIGH, payload(50, 3));
+
+        SpoolJournal reopened = SpoolJournal.open(file);
+        List<SpoolJournal.Record> jobs = reopened.getRecoveredJobs();
+        assertEquals(2, jobs.size());
+        assertEquals(1, jobs.get(0).jobId);
+        assertEquals(3, jobs.get(1).jobId);
+        assertArrayEquals(payload(50, 3), jobs.get(1).data);
+        reopened.close();
+    }
+
+    @Test
+    public void staleRecordsAfterRewindAreNotReplayed() throws Exception {
+        File file = folder.newFile("spool.journal");
+        SpoolJournal journal = SpoolJournal.open(file);
+        journal.append(1, PrintJob.PRIORITY_NORMAL, payload(40, 1));
+        journal.append(2, PrintJob.PRIORITY_NORMAL, payload(40, 2));
+        journal.acknowledge(1);
+        journal.acknowledge(2);
+        assertEquals(0, journal.getLiveJobCount());
+
+        // Shorter than the records it overwrites; old job 2 still sits behind it
+        journal.append(3, PrintJob.PRIORITY_NORMAL, payload(8, 3));
+
+        SpoolJournal reopened = SpoolJournal.open(file);
+        assertEquals(1, reopened.getRecoveredJobs().size());
+        assertEquals(3, reopened.getRecoveredJobs().get(0).jobId);
+        reopened.close();
+    }
+
+    @Test
+    public void fullJournalCompactsLiveJobs() throws Exception {
+        File file = folder.newFile("spool.journal");
+        SpoolJournal journal = SpoolJournal.open(file);
+        journal.append(1, PrintJob.PRIORITY_NORMAL, payload(1000, 1));
+
+        // Keep job 1 pending while pushing far more than the initial mapping
+        for (int i = 2; i < 40; i++) {
+            assertTrue(journal.append(i, PrintJob.PRIORITY_NORMAL, payload(100 * 1024, i)));
+            journal.acknowledge(i);
+        }
+        journal.append(40, PrintJob.PRIORITY_LOW, payload(64, 40));
+        assertNull(journal.getLastError());
+
+        SpoolJournal reopened = SpoolJournal.open(file);
+        List<SpoolJournal.Record> jobs = reopened.getRecoveredJobs();
+        assertEquals(2, jobs.size());
+        assertEquals(1, jobs.get(0).jobId);
+        assertArrayEquals(payload(1000, 1), jobs.get(0).data);
+        assertEquals(40, jobs.get(1).jobId);
+        reopened.close();
+    }
+}
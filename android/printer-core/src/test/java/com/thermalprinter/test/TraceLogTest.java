@@ -0,0 +1,88 @@
+package com.thermalprinter.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Local JVM tests for the trace ring: formatting at dump time, wrap-around
+ * and the disabled switch.
+ */
+public class TraceLogTest {
+
+    @Before
+    public void setUp() {
+        TraceLog.clear();
+        TraceLog.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        TraceLog.clear();
+        TraceLog.setEnabled(true);
+    }
+
+    @Test
+    public void formatsEventsWhenDumped() throws Exception {
+        TraceLog.event(TraceLog.USB_OPEN, 0x0fe6, 0x811e, 1);
+        TraceLog.event(TraceLog.JOB_CANCELLED, 42);
+
+        List<String> lines = TraceLog.dump();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("usb.open vid=0x0fe6 pid=0x811e interfaces=1"));
+        assertTrue(lines.get(1), lines.get(1).endsWith("job.cancelled id=42"));
+        assertTrue(lines.get(1), lines.get(1).contains("[" + Thread.currentThread().getId() + "]"));
+
+        StringWriter out = new StringWriter();
+        TraceLog.dump(out);
+        assertEquals(lines.get(0) + "\n" + lines.get(1) + "\n", out.toString());
+    }
+
+    @Test
+    public void keepsTheNewestEventsOnWrap() {
+        int total = TraceLog.CAPACITY + 100;
+        for (int i = 0; i < total; i++) {
+            TraceLog.event(TraceLog.JOB_QUEUED, i, 10, 1);
+        }
+
+        List<String> lines = TraceLog.dump();
+        assertEquals(total, TraceLog.getRecorded());
+        assertEquals(TraceLog.CAPACITY, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("job.queued id=100 bytes=10 priority=1"));
+        assertTrue(lines.get(lines.size() - 1).endsWith("id=" + (total - 1) + " bytes=10 priority=1"));
+    }
+
+    @Test
+    public void recordsNothingWhileDisabled() {
+        TraceLog.setEnabled(false);
+        TraceLog.event(TraceLog.JOB_STARTED, 1, 2);
+        assertEquals(0, TraceLog.getRecorded());
+        assertTrue(TraceLog.dump().isEmpty());
+    }
+
+    @Test
+    public void spoolerTracesJobLifecycle() throws Exception {
+        PrintSpooler spooler = new PrintSpooler(4, new PrintSpooler.Listener() {
+            @Override
+            public void onJobStateChanged(PrintJob job) {
+            }
+
+            @Override
+            public void onJobProgress(PrintJob job) {
+            }
+        });
+        spooler.setSink((job, callback) -> callback.onComplete(job.getTotalBytes()));
+        PrintJob job = spooler.submit(new byte[16], PrintJob.PRIORITY_HIGH, null);
+
+        List<String> lines = TraceLog.dump();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith("job.queued id=" + job.getId() + " bytes=16 priority=" + PrintJob.PRIORITY_HIGH));
+        assertTrue(lines.get(1).contains("job.started id=" + job.getId()));
+        assertTrue(lines.get(2).endsWith("job.completed id=" + job.getId() + " bytes=16"));
+    }
+}
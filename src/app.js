@@ -10,7 +10,12 @@ class ThermalPrinterApp {
         this.displayInterval = null;
         this.currentImageIndex = 0;
         this.displayActive = false;
+        this.displayState = null; // Last state sent to the native customer display
+        this.nativeSlideshow = false; // Slides drawn natively from the offline media cache
+        this.displayMode = 'html'; // Customer display renderer: 'html' (second WebView) or 'native'
         this.selectedDevice = null;
+        this.binaryChannel = null;
+        this.storedGraphics = new Set();
         
         this.images = [
             'https://images.unsplash.com/photo-1505740420928-5e560c06d30e?w=800',
@@ -46,6 +51,8 @@ class ThermalPrinterApp {
         if (this.isNativePluginAvailable()) {
             this.log('✓ Capacitor detected - Hardware features enabled', 'success');
             this.log('✓ ThermalPrinter plugin found and ready', 'success');
+            this.setupPrinterListeners();
+            this.openBinaryChannel();
         } else {
             this.log('⚠ Running in browser - Hardware features unavailable (simulation mode only)', 'info');
             if (typeof Capacitor !== 'undefined') {
@@ -72,6 +79,99 @@ class ThermalPrinterApp {
         return window.ThermalPrinter || (typeof Capacitor !== 'undefined' && Capacitor.Plugins && Capacitor.Plugins.ThermalPrinter);
     }
     
+    setupPrinterListeners() {
+        const plugin = this.getPlugin();
+        
+        // Print jobs are spooled natively; completion arrives as events
+        plugin.addListener('printJobStatus', (job) => {
+            const printer = job.station ? `${job.station} printer` : 'printer';
+            if (job.state === 'completed') {
+                this.log(`✓ Job #${job.jobId}: sent ${job.bytesSent} bytes to ${printer}`, 'success');
+            } else if (job.state === 'failed') {
+                this.log(`✗ Job #${job.jobId} (${printer}) failed: ${job.error}`, 'error');
+            }
+        });
+        
+        // Cable bumps: the native side reconnects by itself and queued jobs resume
+        plugin.addListener('printerConnection', (event) => {
+            const name = event.station ? `Station ${event.station}` : 'Printer';
+            if (!event.connected) {
+                this.log(`⚠ ${name} unplugged, jobs are held until it is back`, 'error');
+            } else {
+                this.log(`✓ ${name} reconnected`, 'success');
+            }
+            if (!event.station && this.isConnected) {
+                document.getElementById('statusText').textContent = event.connected ? 'Connected' : 'Reconnecting...';
+                document.getElementById('statusIndicator').classList.toggle('connected', event.connected);
+            }
+        });
+        
+        plugin.addListener('usbDevicesChanged', (event) => {
+            const dev = event.device;
+            this.log(`USB ${event.action}: ${dev.manufacturerName || 'Unknown'} ${dev.productName || ''}`, 'info');
+        });
+        
+        // The customer screen comes back by itself if it was showing when unplugged
+        plugin.addListener('customerDisplayChanged', (event) => {
+            if (event.action === 'detached') {
+                this.log('⚠ Customer display disconnected', 'error');
+                return;
+            }
+            this.log(`✓ Customer display connected: ${event.display.name}`, 'success');
+            if (event.shown && this.displayState) {
+                // Fresh page: send the whole state again
+                this.displayState = {};
+                this.pushDisplayState();
+            }
+        });
+        
+        // Paper, cover and error changes reported by the printer itself
+        plugin.addListener('printerStatus', (status) => {
+            if (status.station) {
+                this.log(`${status.ready ? '✓' : '⚠'} ${status.station} printer: ${status.message}`, status.ready ? 'success' : 'error');
+                return;
+            }
+            if (this.isConnected) {
+                document.getElementById('statusText').textContent = status.ready ? 'Connected' : status.message;
+            }
+            if (!status.ready) {
+                this.log(`⚠ Printer: ${status.message} (jobs are held until it recovers)`, 'error');
+            } else if (status.paperNearEnd) {
+                this.log('⚠ Printer: paper near end', 'info');
+            } else {
+                this.log('✓ Printer ready', 'success');
+            }
+        });
+    }
+    
+    async openBinaryChannel() {
+        try {
+            this.binaryChannel = await this.getPlugin().openBinaryChannel();
+            this.log('✓ Binary print channel ready', 'success');
+        } catch (error) {
+            // printRawData (Base64) remains available as a fallback
+            this.binaryChannel = null;
+            this.log(`ℹ Binary print channel unavailable: ${error}`, 'info');
+        }
+    }
+    
+    async postToBinaryChannel(bytes, priority) {
+        const { url, token } = this.binaryChannel;
+        const response = await fetch(`${url}?token=${token}&priority=${encodeURIComponent(priority)}`, {
+            method: 'POST',
+            headers: { 'Content-Type': 'application/octet-stream' },
+            body: bytes
+        });
+        const job = await response.json();
+        
+        if (!response.ok) {
+            const error = new Error(job.error);
+            error.code = job.code;
+            throw error;
+        }
+        return job;
+    }
+    
     setupEventListeners() {
         document.getElementById('connectBtn').addEventListener('click', () => this.toggleConnection());
         document.getElementById('testPrintBtn').addEventListener('click', () => this.printTestReceipt());
@@ -81,6 +181,8 @@ class ThermalPrinterApp {
         document.getElementById('previewBtn').addEventListener('click', () => this.showPreview());
         document.getElementById('printReceiptBtn').addEventListener('click', () => this.printReceipt());
         document.getElementById('toggleDisplayBtn').addEventListener('click', () => this.toggleDisplay());
+        document.getElementById('displayMode').addEventListener('change', (e) => this.setDisplayMode(e.target.value));
+        document.getElementById('compareDisplayBtn').addEventListener('click', () => this.compareDisplayModes());
         document.getElementById('closePreview').addEventListener('click', () => this.closePreview());
         document.getElementById('printFromPreview').addEventListener('click', () => {
             this.closePreview();
@@ -129,68 +231,28 @@ class ThermalPrinterApp {
                     }
                     
                     result.devices.forEach((dev, idx) => {
-                        const deviceClass = dev.deviceClass === 7 ? 'Printer' : dev.deviceClass === 0 ? 'Interface-defined' : `Class ${dev.deviceClass}`;
-                        this.log(`Device ${idx + 1}: ${dev.manufacturerName || 'Unknown'} ${dev.productName || ''} (VID: 0x${dev.vendorId.toString(16).toUpperCase()}, PID: 0x${dev.productId.toString(16).toUpperCase()}) - ${deviceClass}`);
+                        const kind = dev.isPrinter ? 'Printer' : dev.isDisplay ? 'Display' : `Class ${dev.deviceClass}`;
+                        this.log(`Device ${idx + 1}: ${dev.manufacturerName || 'Unknown'} ${dev.productName || ''} (VID: 0x${dev.vendorId.toString(16).toUpperCase()}, PID: 0x${dev.productId.toString(16).toUpperCase()}) - ${kind}`);
                     });
                     
-                    // Smart device selection - SKIP ILITEK DISPLAYS!
-                    let device = null;
-                    
-                    // Filter out Ilitek touchscreen/display devices by VID and name
-                    const isIlitek = (d) => {
-                        const vid = d.vendorId;
-                        const name = (d.manufacturerName || '').toLowerCase();
-                        // Ilitek VID: 0x222A (8746 decimal)
-                        return vid === 0x222A || vid === 8746 || name.includes('ilitek');
-                    };
-                    
-                    const printerDevices = result.devices.filter(d => !isIlitek(d));
-                    
-                    this.log(`Found ${printerDevices.length} non-display device(s) after filtering`, 'info');
-                    
-                    if (printerDevices.length === 0) {
+                    // Devices are classified and ranked natively (printer class,
+                    // known printer vendors, displays last)
+                    const device = result.preferred;
+                    if (!device) {
                         this.log('✗ No printer devices found (only displays detected)', 'error');
                         return;
                     }
-                    
-                    // 1. Try printer class (7) devices first
-                    device = printerDevices.find(d => d.deviceClass === 7);
-                    if (device) {
-                        this.log(`✓ Selected USB Printer class device: ${device.manufacturerName || 'Unknown'}`, 'info');
-                    }
-                    
-                    // 2. Try Spirit printer (0x483, 0x5720) - your thermal printer!
-                    if (!device) {
-                        device = printerDevices.find(d => 
-                            (d.vendorId === 0x483 || d.vendorId === 1155) && 
-                            (d.productId === 0x5720 || d.productId === 22304)
-                        );
-                        if (device) {
-                            this.log(`✓ Selected Spirit thermal printer (VID: 0x${device.vendorId.toString(16)}, PID: 0x${device.productId.toString(16)})`, 'info');
-                        }
-                    }
-                    
-                    // 3. Try VOLCORA vendor ID
-                    if (!device) {
-                        device = printerDevices.find(d => d.vendorId === 0x1155 || d.vendorId === 4437);
-                        if (device) {
-                            this.log(`✓ Selected VOLCORA printer`, 'info');
-                        }
-                    }
-                    
-                    // 4. Use first non-display device
-                    if (!device) {
-                        device = printerDevices[0];
-                        this.log(`✓ Selected first non-display device: ${device.manufacturerName || 'Unknown'}`, 'info');
-                    }
+                    this.log(`✓ Selected ${device.manufacturerName || 'USB'} ${device.productName || ''} (VID: 0x${device.vendorId.toString(16)}, PID: 0x${device.productId.toString(16)})`, 'info');
                     
                     this.selectedDevice = device;
                     
+                    // On first use Android asks for USB permission; the call completes once answered
                     this.log(`Connecting to ${device.manufacturerName || 'USB'} printer...`);
                     
                     const connectResult = await plugin.connectToPrinter({
                         vendorId: device.vendorId,
-                        productId: device.productId
+                        productId: device.productId,
+                        deviceName: device.deviceName
                     });
                     
                     this.isConnected = true;
@@ -199,11 +261,18 @@ class ThermalPrinterApp {
                     indicator.classList.add('connected');
                     
                     this.log(`✓ ${connectResult.message}`, 'success');
+                    if (connectResult.connectMs !== undefined) {
+                        this.log(`Connected in ${connectResult.connectMs} ms (${connectResult.mode}${connectResult.strategy ? ', ' + connectResult.strategy : ''})`, 'info');
+                    }
                     this.log(`Device: ${device.manufacturerName || 'USB Printer'} ${device.productName || ''}`, 'info');
                 } else {
                     this.log('✗ Native plugin not available. Build APK and install on Android device for hardware access.', 'error');
                 }
             } catch (error) {
+                if (error.code === 'PERMISSION_DENIED' || error.code === 'PERMISSION_TIMEOUT') {
+                    this.log(`✗ USB permission not granted, tap Connect to ask again (${error.message})`, 'error');
+                    return;
+                }
                 this.log(`✗ Connection failed: ${error}`, 'error');
             }
         } else {
@@ -226,7 +295,7 @@ class ThermalPrinterApp {
         }
     }
     
-    async sendToPrinter(data) {
+    async sendToPrinter(data, priority = 'normal') {
         if (!this.isConnected) {
             this.log('✗ Printer not connected', 'error');
             return false;
@@ -237,6 +306,13 @@ class ThermalPrinterApp {
                 const encoder = new TextEncoder();
                 const byteArray = encoder.encode(data);
                 
+                // Raw bytes over the loopback channel, no Base64 round-trip
+                if (this.binaryChannel && byteArray.length <= this.binaryChannel.maxBytes) {
+                    const job = await this.postToBinaryChannel(byteArray, priority);
+                    this.log(`✓ Queued job #${job.jobId} (${job.totalBytes} bytes, ${job.queueDepth} waiting)`, 'success');
+                    return true;
+                }
+                
                 let binary = '';
                 for (let i = 0; i < byteArray.length; i++) {
                     binary += String.fromCharCode(byteArray[i]);
@@ -244,13 +320,22 @@ class ThermalPrinterApp {
                 const base64Data = btoa(binary);
                 
                 const plugin = this.getPlugin();
-                const result = await plugin.printRawData({
-                    data: base64Data
+                const job = await plugin.submitPrintJob({
+                    data: base64Data,
+                    priority
                 });
                 
-                this.log(`✓ Sent ${result.bytesTransferred} bytes to printer`, 'success');
+                this.log(`✓ Queued job #${job.jobId} (${job.totalBytes} bytes, ${job.queueDepth} waiting)`, 'success');
                 return true;
             } catch (error) {
+                if (error.code === 'QUEUE_FULL') {
+                    this.log('✗ Printer queue is full, try again in a moment', 'error');
+                    return false;
+                }
+                if (error.code === 'PRINTER_ERROR') {
+                    this.log(`✗ ${error.message}`, 'error');
+                    return false;
+                }
                 this.log(`✗ Print error: ${error}`, 'error');
                 return false;
             }
@@ -260,6 +345,146 @@ class ThermalPrinterApp {
         }
     }
     
+    // Diagnostic: learned USB pacing for the connected printer and every saved model
+    async showTransportProfile() {
+        if (!this.isNativePluginAvailable()) {
+            return null;
+        }
+        const result = await this.getPlugin().getTransportProfile();
+        const describe = (p) => `${p.name || p.model}: ${(p.bytesPerSecond / 1024).toFixed(1)} KB/s, ~${p.rasterMmPerSecond} mm/s raster, chunk ${p.chunkSize} B x${p.depth}, timeout ${p.chunkTimeoutMs} ms (${p.samples} samples, ${p.stalls} stalls)`;
+        if (result.current) {
+            this.log(`Current: ${describe(result.current)}`, 'info');
+        }
+        result.profiles.forEach(p => this.log(`Saved: ${describe(p)}`, 'info'));
+        return result;
+    }
+    
+    // Opens kitchen/bar/receipt printers once per shift, e.g.
+    // { kitchen: { vendorId, productId, deviceName }, bar: { ... } }
+    async openStations(assignments) {
+        const plugin = this.getPlugin();
+        for (const [station, device] of Object.entries(assignments)) {
+            try {
+                const result = await plugin.openStation({ station, ...device });
+                this.log(`✓ Station ${station} open on ${result.deviceName}`, 'success');
+            } catch (error) {
+                this.log(`✗ Station ${station}: ${error}`, 'error');
+            }
+        }
+    }
+    
+    // Sends one order to several stations in parallel, e.g. { kitchen: text, bar: text };
+    // resolves once `quorum` of them have printed (all by default)
+    async printToStations(tickets, { quorum, priority = 'normal' } = {}) {
+        const encoder = new TextEncoder();
+        const targets = Object.entries(tickets).map(([station, text]) => {
+            const bytes = encoder.encode(text);
+            let binary = '';
+            for (let i = 0; i < bytes.length; i++) {
+                binary += String.fromCharCode(bytes[i]);
+            }
+            return { station, data: btoa(binary) };
+        });
+        
+        try {
+            const result = await this.getPlugin().printToStations({ targets, quorum, priority });
+            this.log(`✓ Order printed on ${result.printed}/${targets.length} stations in ${result.elapsedMs} ms`, 'success');
+            return result;
+        } catch (error) {
+            const failed = (error.data && error.data.results || []).filter(r => r.state === 'failed');
+            failed.forEach(r => this.log(`✗ ${r.station}: ${r.error}`, 'error'));
+            this.log(`✗ Order not printed: ${error.message || error}`, 'error');
+            return null;
+        }
+    }
+    
+    // Connects to a raw TCP printer on port 9100, or with no host starts the
+    // built-in simulator and connects to that, e.g. for load tests.
+    // bytesPerSecond throttles the simulator like a slow print head.
+    async connectNetworkPrinter(host, { port, bytesPerSecond = 0 } = {}) {
+        const plugin = this.getPlugin();
+        try {
+            if (!host) {
+                const simulator = await plugin.startPrinterSimulator({ bytesPerSecond });
+                this.log(`Printer simulator listening on ${simulator.host}:${simulator.port}`, 'info');
+                host = simulator.host;
+                port = simulator.port;
+            }
+            const result = await plugin.connectToNetworkPrinter({ host, port });
+            this.isConnected = true;
+            document.getElementById('connectBtn').textContent = 'Disconnect';
+            document.getElementById('statusText').textContent = 'Connected';
+            document.getElementById('statusIndicator').classList.add('connected');
+            this.log(`✓ ${result.message} ${result.address} in ${result.connectMs} ms`, 'success');
+            return result;
+        } catch (error) {
+            this.log(`✗ Network printer: ${error.message || error}`, 'error');
+            return null;
+        }
+    }
+    
+    async showSimulatorStats() {
+        const stats = await this.getPlugin().getPrinterSimulatorStats();
+        this.log(`Simulator: ${stats.bytes} bytes at ${(stats.bytesPerSecond / 1024).toFixed(1)} KB/s, ${stats.commands} commands, ${stats.lines} lines, ${stats.cuts} cuts, ${stats.rasterBytes + stats.graphicsBytes} image bytes`, 'info');
+        return stats;
+    }
+    
+    // Per-stage print path latencies (p50/p99 in ms) and link counters.
+    // With watch, logs the same summary whenever the native side pushes
+    // a "printerMetrics" update (every few seconds while printing).
+    async showPrinterMetrics({ watch = false } = {}) {
+        const plugin = this.getPlugin();
+        const ms = (h) => `${(h.p50 / 1000).toFixed(1)}/${(h.p99 / 1000).toFixed(1)} ms`;
+        const report = (metrics) => {
+            this.log(`Metrics: decode ${ms(metrics.decode)}, encode ${ms(metrics.encode)} (p50/p99)`, 'info');
+            metrics.printers.forEach(p => this.log(`  ${p.deviceKey}: queue ${ms(p.queueWait)}, transfer ${ms(p.transfer)}, end-to-end ${ms(p.endToEnd)}; ${p.jobs} jobs, ${p.failedJobs} failed, ${p.bytesSent} bytes, ${p.retries} retries, ${p.shortWrites} short writes, ${p.disconnects} disconnects`, 'info'));
+        };
+        const metrics = await plugin.getPrinterMetrics();
+        report(metrics);
+        if (watch && !this.metricsListener) {
+            this.metricsListener = await plugin.addListener('printerMetrics', report);
+        }
+        return metrics;
+    }
+    
+    // Records the exact bytes and timing of every job sent to the printer,
+    // for replaying here or with the printer-core replayCapture task.
+    async startCapture(name) {
+        const capture = await this.getPlugin().startCapture(name ? { name } : {});
+        this.log(`Capturing print jobs to ${capture.path}`, 'info');
+        return capture;
+    }
+    
+    async stopCapture() {
+        const capture = await this.getPlugin().stopCapture();
+        this.log(`Capture saved: ${capture.jobs} jobs, ${capture.bytes} bytes in ${capture.path}${capture.error ? ` (${capture.error})` : ''}`, capture.error ? 'error' : 'success');
+        return capture;
+    }
+    
+    // speed: 'recorded', 'max' or a factor such as 2
+    async replayCapture(name, { speed = 'recorded' } = {}) {
+        try {
+            const result = await this.getPlugin().replayCapture({ name, speed: String(speed) });
+            this.log(`✓ Replayed ${result.jobs} jobs (${result.failed} failed) in ${result.elapsedMs} ms; transfer p50 ${result.recordedTransferP50} → ${result.replayedTransferP50} µs, p99 ${result.recordedTransferP99} → ${result.replayedTransferP99} µs`, 'success');
+            return result;
+        } catch (error) {
+            this.log(`✗ Replay failed: ${error.message || error}`, 'error');
+            return null;
+        }
+    }
+    
+    // Logs the native print path trace, and the one saved by the last
+    // crash if any, for support reports. clear drops both afterwards.
+    async showTrace({ clear = false } = {}) {
+        const trace = await this.getPlugin().dumpTrace({ clear });
+        if (trace.lastCrash) {
+            this.log(`Last crash:\n${trace.lastCrash}`, 'error');
+        }
+        this.log(`Trace: ${trace.events.length} of ${trace.recorded} events${trace.enabled ? '' : ' (disabled)'}`, 'info');
+        trace.events.forEach(line => this.log(line, 'info'));
+        return trace;
+    }
+    
     generateESCPOS(text) {
         const ESC = '\x1B';
         const GS = '\x1D';
@@ -415,6 +640,73 @@ LINE QUALITY TEST
         document.getElementById('subtotal').textContent = `$${subtotal.toFixed(2)}`;
         document.getElementById('tax').textContent = `$${tax.toFixed(2)}`;
         document.getElementById('total').textContent = `$${total.toFixed(2)}`;
+        
+        this.pushDisplayState();
+    }
+    
+    buildDisplayState() {
+        const subtotal = this.cart.reduce((sum, item) => sum + item.total, 0);
+        const tax = subtotal * 0.10;
+        const items = {};
+        this.cart.forEach(item => {
+            items[item.id] = {
+                name: item.name,
+                qty: item.qty,
+                price: `$${item.price.toFixed(2)}`,
+                total: `$${item.total.toFixed(2)}`
+            };
+        });
+        return {
+            items,
+            order: this.cart.map(item => String(item.id)),
+            subtotal: `$${subtotal.toFixed(2)}`,
+            tax: `$${tax.toFixed(2)}`,
+            total: `$${(subtotal + tax).toFixed(2)}`,
+            // The native slideshow draws behind the page; otherwise the page shows the image
+            slideshow: this.nativeSlideshow ? 'native' : 'page',
+            image: this.nativeSlideshow ? null : this.images[this.currentImageIndex]
+        };
+    }
+    
+    // Sends the native customer display only what changed since the last push,
+    // as a JSON merge patch (null removes a key); the page applies it in place
+    pushDisplayState() {
+        if (!this.displayState || !this.isNativePluginAvailable()) return;
+        
+        const previous = this.displayState;
+        const next = this.buildDisplayState();
+        const patch = {};
+        
+        const items = {};
+        let itemsChanged = false;
+        for (const id of Object.keys(next.items)) {
+            const before = previous.items && previous.items[id];
+            const after = next.items[id];
+            if (!before || before.name !== after.name || before.qty !== after.qty ||
+                before.price !== after.price || before.total !== after.total) {
+                items[id] = after;
+                itemsChanged = true;
+            }
+        }
+        for (const id of Object.keys(previous.items || {})) {
+            if (!(id in next.items)) {
+                items[id] = null;
+                itemsChanged = true;
+            }
+        }
+        if (itemsChanged) patch.items = items;
+        if ((previous.order || []).join() !== next.order.join()) patch.order = next.order;
+        for (const key of ['subtotal', 'tax', 'total', 'slideshow', 'image']) {
+            if (previous[key] !== next[key]) patch[key] = next[key];
+        }
+        
+        if (Object.keys(patch).length === 0) return;
+        this.displayState = next;
+        this.getPlugin().updateSecondaryDisplay({ state: patch })
+            .catch(error => {
+                // Unplugged: the whole state is sent again when it comes back
+                if (error.code !== 'NOT_SHOWING') this.log(`✗ Customer display update failed: ${error}`, 'error');
+            });
     }
     
     generateReceiptText() {
@@ -454,6 +746,177 @@ LINE QUALITY TEST
         return receipt;
     }
     
+    // Same layout as generateReceiptText as a native template; only {{fields}} change per sale
+    receiptTemplate() {
+        const withLogo = this.storedGraphics.has('logo');
+        const ops = withLogo ? [{ op: 'graphic', key: 'logo' }] : [];
+        ops.push(
+            { op: 'rule', char: '=' },
+            { op: 'text', value: 'YOUR BUSINESS NAME', align: 'center', bold: true },
+            { op: 'rule', char: '=' },
+            { op: 'text', value: 'Date: {{date}}' },
+            { op: 'text', value: 'Time: {{time}}' },
+            { op: 'text', value: 'Receipt #: {{receiptNo}}' },
+            { op: 'rule' },
+            { op: 'text', value: 'ITEMS', bold: true },
+            { op: 'rule' },
+            { op: 'repeat', each: 'items', ops: [
+                { op: 'row', left: '{{name}}', right: '{{total}}' },
+                { op: 'text', value: '  {{price}} x {{qty}}' }
+            ] },
+            { op: 'rule' },
+            { op: 'row', left: 'Subtotal:', right: '{{subtotal}}' },
+            { op: 'row', left: 'Tax(10%):', right: '{{tax}}' },
+            { op: 'rule', char: '=' },
+            { op: 'row', left: 'TOTAL:', right: '{{total}}' },
+            { op: 'rule', char: '=' },
+            { op: 'feed', lines: 1 },
+            { op: 'text', value: 'Thank you for your business!', align: 'center' },
+            { op: 'feed', lines: 3 },
+            { op: 'cut' }
+        );
+        return { id: withLogo ? 'receipt-logo' : 'receipt', version: 1, columns: 32, ops };
+    }
+    
+    receiptValues() {
+        const subtotal = this.cart.reduce((sum, item) => sum + item.total, 0);
+        const tax = subtotal * 0.10;
+        const now = new Date();
+        
+        return {
+            date: now.toLocaleDateString(),
+            time: now.toLocaleTimeString(),
+            receiptNo: Math.random().toString(36).substr(2, 9).toUpperCase(),
+            items: this.cart.map(item => ({
+                name: item.name,
+                total: `$${item.total.toFixed(2)}`,
+                price: `$${item.price.toFixed(2)}`,
+                qty: item.qty
+            })),
+            subtotal: `$${subtotal.toFixed(2)}`,
+            tax: `$${tax.toFixed(2)}`,
+            total: `$${(subtotal + tax).toFixed(2)}`
+        };
+    }
+    
+    // Expands the template in JS, for the one-off printReceipt path
+    buildReceiptOps() {
+        const fill = (text, values) => text.replace(/\{\{\s*(\w+)\s*\}\}/g, (m, name) => (values[name] != null ? values[name] : ''));
+        const expand = (ops, values) => ops.flatMap(op => {
+            if (op.op === 'repeat') {
+                return (values[op.each] || []).flatMap(item => expand(op.ops, item));
+            }
+            const filled = { ...op };
+            ['value', 'left', 'right'].forEach(field => {
+                if (typeof op[field] === 'string') filled[field] = fill(op[field], values);
+            });
+            return [filled];
+        });
+        return expand(this.receiptTemplate().ops, this.receiptValues());
+    }
+    
+    // Prints through the cached template, registering it on first use or after eviction
+    async printReceiptTemplate(options = {}) {
+        const plugin = this.getPlugin();
+        const template = this.receiptTemplate();
+        const request = { id: template.id, version: template.version, values: this.receiptValues(), priority: 'receipt', ...options };
+        try {
+            return await plugin.printTemplate(request);
+        } catch (error) {
+            if (error.code !== 'TEMPLATE_NOT_FOUND') {
+                throw error;
+            }
+            const compiled = await plugin.registerTemplate(template);
+            this.log(`Template '${template.id}' compiled: ${compiled.segments} segments, ${compiled.slots} slots, ${compiled.staticBytes} static bytes`, 'info');
+            return plugin.printTemplate(request);
+        }
+    }
+    
+    // Compares the JS string path with the native encoder for a receipt of `lines` items
+    async benchmarkReceiptEncoding(lines = 60, iterations = 200) {
+        const savedCart = this.cart;
+        this.cart = [];
+        for (let i = 0; i < lines; i++) {
+            this.cart.push({ name: `Item ${i + 1}`, price: 1.25 + i, qty: 1 + (i % 3), total: (1.25 + i) * (1 + (i % 3)) });
+        }
+        
+        try {
+            const encoder = new TextEncoder();
+            let jsBytes = 0;
+            const start = performance.now();
+            for (let i = 0; i < iterations; i++) {
+                jsBytes = encoder.encode(this.generateESCPOS(this.generateReceiptText())).length;
+            }
+            const jsMicros = (performance.now() - start) * 1000 / iterations;
+            this.log(`JS encode: ${jsMicros.toFixed(1)}µs per receipt (${jsBytes} bytes)`, 'info');
+            
+            if (this.isNativePluginAvailable()) {
+                const result = await this.getPlugin().printReceipt({
+                    ops: this.buildReceiptOps(),
+                    columns: 32,
+                    dryRun: true,
+                    iterations
+                });
+                this.log(`Native encode: ${result.encodeMicros.toFixed(1)}µs per receipt (${result.totalBytes} bytes)`, 'info');
+                
+                const rendered = await this.printReceiptTemplate({ dryRun: true, iterations });
+                this.log(`Template render: ${rendered.renderMicros.toFixed(1)}µs per receipt (${rendered.totalBytes} bytes)`, 'info');
+            }
+        } finally {
+            this.cart = savedCart;
+        }
+    }
+    
+    async imageToBase64(source) {
+        const blob = typeof source === 'string' ? await (await fetch(source)).blob() : source;
+        return new Promise((resolve, reject) => {
+            const reader = new FileReader();
+            reader.onload = () => resolve(reader.result.substring(reader.result.indexOf(',') + 1));
+            reader.onerror = () => reject(reader.error);
+            reader.readAsDataURL(blob);
+        });
+    }
+    
+    // Registers a logo kept in printer memory; receipts then reference it by key
+    async registerGraphic(key, source, { storage = 'nv', width = 576, dither = 'floyd-steinberg' } = {}) {
+        if (!this.isNativePluginAvailable()) {
+            return false;
+        }
+        
+        try {
+            const data = await this.imageToBase64(source);
+            const graphic = await this.getPlugin().registerGraphic({ key, data, storage, width, dither });
+            this.storedGraphics.add(key);
+            this.log(`✓ Graphic '${key}' registered (${graphic.width}x${graphic.height}, ${graphic.totalBytes} bytes, ${graphic.storage})`, 'success');
+            return true;
+        } catch (error) {
+            this.log(`✗ Failed to register graphic '${key}': ${error}`, 'error');
+            return false;
+        }
+    }
+    
+    // Prints a PNG/JPEG (URL, Blob or File); dithering and scaling run natively
+    async printImage(source, { dither = 'floyd-steinberg', format = 'raster', align = 'center', priority = 'normal' } = {}) {
+        if (!this.isConnected || !this.isNativePluginAvailable()) {
+            this.log('✗ Printer not connected', 'error');
+            return false;
+        }
+        
+        try {
+            const data = await this.imageToBase64(source);
+            const job = await this.getPlugin().printImage({ data, dither, format, align, priority });
+            this.log(`✓ Queued image job #${job.jobId} (${job.width}x${job.height}, decode ${(job.decodeMicros / 1000).toFixed(1)}ms, raster ${(job.rasterMicros / 1000).toFixed(1)}ms)`, 'success');
+            return true;
+        } catch (error) {
+            if (error.code === 'QUEUE_FULL') {
+                this.log('✗ Printer queue is full, try again in a moment', 'error');
+                return false;
+            }
+            this.log(`✗ Image print error: ${error}`, 'error');
+            return false;
+        }
+    }
+    
     showPreview() {
         if (this.cart.length === 0) {
             this.log('✗ Cart is empty', 'error');
@@ -482,11 +945,31 @@ LINE QUALITY TEST
         
         this.log('Printing receipt...');
         
-        const receiptText = this.generateReceiptText();
-        const success = await this.sendToPrinter(this.generateESCPOS(receiptText));
+        let success = false;
+        if (this.isConnected && this.isNativePluginAvailable() && this.getPlugin().printTemplate) {
+            // Cached template rendered natively; only the sale data crosses the bridge
+            try {
+                const job = await this.printReceiptTemplate();
+                this.log(`✓ Queued job #${job.jobId} (${job.totalBytes} bytes, rendered in ${job.renderMicros.toFixed(0)}µs)`, 'success');
+                if (job.graphicsUploaded > 0) {
+                    this.log(`  Uploaded ${job.graphicsUploaded} stored graphic(s) with this receipt`, 'info');
+                }
+                success = true;
+            } catch (error) {
+                if (error.code === 'QUEUE_FULL') {
+                    this.log('✗ Printer queue is full, try again in a moment', 'error');
+                    return;
+                }
+                this.log(`Native receipt encoding failed (${error}), using JS path`, 'info');
+            }
+        }
+        if (!success) {
+            const receiptText = this.generateReceiptText();
+            success = await this.sendToPrinter(this.generateESCPOS(receiptText), 'receipt');
+        }
         
         if (success) {
-            this.log('✓ Receipt printed successfully', 'success');
+            this.log('✓ Receipt sent to printer', 'success');
             
             setTimeout(() => {
                 this.clearCart();
@@ -514,10 +997,19 @@ LINE QUALITY TEST
                     
                     this.log(`✓ Secondary display found: ${displayCheck.secondaryDisplayInfo.name}`, 'success');
                     
-                    const html = this.generateCustomerDisplayHTML();
-                    await plugin.showOnSecondaryDisplay({ html });
+                    await this.showDisplay(this.displayMode);
                     
                     this.displayActive = true;
+                    try {
+                        const slideshow = await plugin.startSlideshow({ sources: this.images, intervalMs: 3000 });
+                        this.nativeSlideshow = true;
+                        this.log(`  Native slideshow: ${slideshow.slides} slides, ${slideshow.cacheEntries} cached (${(slideshow.cacheBytes / 1048576).toFixed(1)} MB)`, 'info');
+                    } catch (error) {
+                        this.nativeSlideshow = false;
+                        this.log(`  Native slideshow unavailable, using the page: ${error}`, 'info');
+                    }
+                    this.displayState = {};
+                    this.pushDisplayState();
                     btn.textContent = 'Hide Customer Display';
                     this.startSlideshow();
                     this.log('✓ Customer display activated on secondary screen', 'success');
@@ -536,6 +1028,7 @@ LINE QUALITY TEST
                 }
                 
                 this.displayActive = false;
+                this.displayState = null;
                 btn.textContent = 'Toggle Customer Display';
                 this.stopSlideshow();
                 this.hideSimulatedDisplay();
@@ -546,6 +1039,69 @@ LINE QUALITY TEST
         }
     }
     
+    // Shows the customer display with the given renderer; the HTML goes along
+    // either way so a native show can fall back to the page later
+    async showDisplay(mode) {
+        const plugin = this.getPlugin();
+        const html = this.generateCustomerDisplayHTML();
+        const shown = await plugin.showOnSecondaryDisplay({ html, mode });
+        if (shown.showMs !== undefined) {
+            this.log(`  ${shown.warm ? 'Warm' : 'Cold'} ${shown.mode} show took ${shown.showMs.toFixed(1)} ms${shown.reloaded ? ' (page reloaded)' : ''}`, 'info');
+        }
+        return shown;
+    }
+    
+    async setDisplayMode(mode) {
+        this.displayMode = mode;
+        if (!this.displayActive || !this.displayState || !this.isNativePluginAvailable()) return;
+        try {
+            await this.showDisplay(mode);
+            // New renderer: send the whole state again
+            this.displayState = {};
+            this.pushDisplayState();
+            this.log(`✓ Customer display switched to the ${mode} renderer`, 'success');
+        } catch (error) {
+            this.log(`✗ Could not switch renderer: ${error}`, 'error');
+        }
+    }
+    
+    logDisplayStats(stats) {
+        const frames = stats.frames || { count: 0 };
+        const ms = (us) => (us / 1000).toFixed(1);
+        let line = `  ${stats.mode}: ${frames.count} frames`;
+        if (frames.count > 0) {
+            line += `, p50 ${ms(frames.p50)} ms, p99 ${ms(frames.p99)} ms, max ${ms(frames.max)} ms`;
+        }
+        if (stats.draw && stats.draw.count > 0) {
+            line += `, onDraw p50 ${ms(stats.draw.p50)} ms`;
+        }
+        line += ` | PSS ${(stats.memory.pssKb / 1024).toFixed(1)} MB, Java heap ${(stats.memory.javaHeapKb / 1024).toFixed(1)} MB, native heap ${(stats.memory.nativeHeapKb / 1024).toFixed(1)} MB`;
+        this.log(line, 'info');
+    }
+    
+    // Runs each renderer for a while with the current cart and slideshow, then
+    // logs frame times and memory side by side. Memory is the app process only:
+    // the WebView's renderer process is extra in HTML mode.
+    async compareDisplayModes(seconds = 10) {
+        if (!this.displayActive || !this.displayState || !this.isNativePluginAvailable()) {
+            this.log('⚠ Show the customer display first to compare renderers', 'info');
+            return;
+        }
+        const plugin = this.getPlugin();
+        const original = this.displayMode;
+        this.log(`Comparing customer display renderers, ${seconds} s each...`, 'info');
+        try {
+            for (const mode of ['html', 'native']) {
+                await this.setDisplayMode(mode);
+                await new Promise(resolve => setTimeout(resolve, seconds * 1000));
+                this.logDisplayStats(await plugin.getCustomerDisplayStats());
+            }
+        } catch (error) {
+            this.log(`✗ Renderer comparison failed: ${error}`, 'error');
+        }
+        await this.setDisplayMode(original);
+    }
+    
     showSimulatedDisplay() {
         const display = document.getElementById('customerDisplay');
         const btn = document.getElementById('toggleDisplayBtn');
@@ -561,7 +1117,9 @@ LINE QUALITY TEST
     }
     
     generateCustomerDisplayHTML() {
-        const currentImage = this.images[this.currentImageIndex];
+        // The slideshow image arrives as display state; a page that never changes
+        // lets a warm show skip the reload
+        const currentImage = this.images[0];
         return `
 <!DOCTYPE html>
 <html>
@@ -584,6 +1142,47 @@ LINE QUALITY TEST
             max-height: 100vh;
             object-fit: contain;
         }
+        .cart {
+            position: absolute;
+            top: 0;
+            right: 0;
+            bottom: 0;
+            width: 40%;
+            box-sizing: border-box;
+            padding: 32px;
+            background: rgba(15, 23, 42, 0.92);
+            color: white;
+            font-family: Arial, sans-serif;
+            font-size: 28px;
+            display: flex;
+            flex-direction: column;
+        }
+        .cart[hidden] {
+            display: none;
+        }
+        .cart-lines {
+            flex: 1;
+            overflow: hidden;
+        }
+        .cart-line, .cart-sum {
+            display: flex;
+            justify-content: space-between;
+            padding: 8px 0;
+        }
+        .cart-line .qty {
+            color: #94a3b8;
+            margin-right: 12px;
+        }
+        .cart-line .name {
+            flex: 1;
+        }
+        .cart-sum.total {
+            font-size: 40px;
+            font-weight: bold;
+            border-top: 2px solid #475569;
+            margin-top: 8px;
+            padding-top: 16px;
+        }
         .text-overlay {
             position: absolute;
             bottom: 40px;
@@ -599,8 +1198,85 @@ LINE QUALITY TEST
     </style>
 </head>
 <body>
-    <img src="${currentImage}" alt="Product">
+    <img id="image" src="${currentImage}" alt="Product">
     <div class="text-overlay">Welcome! Thank you for shopping with us.</div>
+    <div class="cart" id="cart" hidden>
+        <div class="cart-lines" id="lines"></div>
+        <div class="cart-sum"><span>Subtotal</span><span id="subtotal"></span></div>
+        <div class="cart-sum"><span>Tax</span><span id="tax"></span></div>
+        <div class="cart-sum total"><span>Total</span><span id="total"></span></div>
+    </div>
+    <script>
+        // Applies state patches pushed by the till (JSON merge patch), touching
+        // only the rows and fields that changed instead of re-rendering the page
+        (function () {
+            var state = { items: {}, order: [] };
+            var rows = {};
+            var lines = document.getElementById('lines');
+            
+            function merge(target, patch) {
+                Object.keys(patch).forEach(function (key) {
+                    var value = patch[key];
+                    if (value === null) {
+                        delete target[key];
+                    } else if (typeof value === 'object' && !Array.isArray(value)) {
+                        if (typeof target[key] !== 'object' || target[key] === null || Array.isArray(target[key])) {
+                            target[key] = {};
+                        }
+                        merge(target[key], value);
+                    } else {
+                        target[key] = value;
+                    }
+                });
+            }
+            
+            function updateRow(id) {
+                var item = state.items && state.items[id];
+                var row = rows[id];
+                if (!item) {
+                    if (row) {
+                        lines.removeChild(row);
+                        delete rows[id];
+                    }
+                    return;
+                }
+                if (!row) {
+                    row = rows[id] = document.createElement('div');
+                    row.className = 'cart-line';
+                    row.innerHTML = '<span class="qty"></span><span class="name"></span><span class="total"></span>';
+                    lines.appendChild(row);
+                }
+                row.children[0].textContent = item.qty + ' x';
+                row.children[1].textContent = item.name;
+                row.children[2].textContent = item.total;
+            }
+            
+            window.applyDisplayState = function (patch) {
+                // items: null (sent when the display is hidden) drops every row
+                var changed = patch.items === null ? Object.keys(rows) : Object.keys(patch.items || {});
+                merge(state, patch);
+                changed.forEach(updateRow);
+                if (patch.order) {
+                    state.order.forEach(function (id) {
+                        if (rows[id]) lines.appendChild(rows[id]);
+                    });
+                }
+                ['subtotal', 'tax', 'total'].forEach(function (key) {
+                    if (key in patch) document.getElementById(key).textContent = state[key] || '';
+                });
+                if (patch.image) {
+                    document.getElementById('image').src = state.image;
+                }
+                if ('slideshow' in patch) {
+                    // Native slides are drawn behind the page: let them through
+                    var native = state.slideshow === 'native';
+                    document.body.style.background = native ? 'transparent' : '';
+                    document.getElementById('image').style.display = native ? 'none' : '';
+                }
+                document.getElementById('cart').hidden = !state.order || state.order.length === 0;
+            };
+        })();
+    </script>
 </body>
 </html>
         `;
@@ -619,6 +1295,7 @@ LINE QUALITY TEST
     updateSlideshow() {
         const img = document.getElementById('slideshowImage');
         img.src = this.images[this.currentImageIndex];
+        this.pushDisplayState();
     }
     
     stopSlideshow() {